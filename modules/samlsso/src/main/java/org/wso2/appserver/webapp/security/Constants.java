@@ -24,6 +24,7 @@ public class Constants {
     //  SAML 2.0 single-sign-on (SSO) parameter name constants
     public static final String HTTP_POST_PARAM_SAML_REQUEST = "SAMLRequest";
     public static final String HTTP_POST_PARAM_SAML_RESPONSE = "SAMLResponse";
+    public static final String HTTP_POST_PARAM_RELAY_STATE = "RelayState";
 
     //  SSO agent configuration property default values
     public static final String DEFAULT_SIGN_VALIDATOR_IMPL = "org.wso2.appserver.webapp.security.saml.signature" +
@@ -32,17 +33,36 @@ public class Constants {
     public static final String SAML2_HTTP_POST_BINDING = "urn:oasis:names:tc:SAML:2.0:bindings:HTTP-POST";
     public static final String DEFAULT_SLO_URL_POSTFIX = "logout";
 
+    //  web application context parameter names, which override the server level SSO agent configurations
+    public static final String SIGN_VALIDATOR_IMPL_CONTEXT_PARAM = "saml2-sso.signature-validator-impl-class";
+    public static final String ROLE_ATTRIBUTES_CONTEXT_PARAM = "saml2-sso.role-attributes";
+    public static final String ROLE_MAPPING_CONTEXT_PARAM = "saml2-sso.role-mapping";
+    public static final String MESSAGE_RETENTION_CONTEXT_PARAM = "saml2-sso.message-retention";
+    public static final String UNSOLICITED_RESPONSES_CONTEXT_PARAM = "saml2-sso.allow-unsolicited-responses";
+    public static final String SUBJECT_ATTRIBUTES_CONTEXT_PARAM = "saml2-sso.subject-attributes";
+    public static final String SIGNATURE_ALGORITHM_CONTEXT_PARAM = "saml2-sso.signature-algorithm";
+    public static final String DIGEST_ALGORITHM_CONTEXT_PARAM = "saml2-sso.digest-algorithm";
+    //  the limits of the inbound messages of the context, overriding those of the valve, each a positive integer, as
+    //  a context may tighten or relax a limit but not disable it
+    public static final String MAX_MESSAGE_SIZE_CONTEXT_PARAM = "saml2-sso.max-message-size";
+    public static final String MAX_DECODED_MESSAGE_SIZE_CONTEXT_PARAM = "saml2-sso.max-decoded-message-size";
+    public static final String MAX_ELEMENT_DEPTH_CONTEXT_PARAM = "saml2-sso.max-element-depth";
+    public static final String MAX_ELEMENT_COUNT_CONTEXT_PARAM = "saml2-sso.max-element-count";
+
     //  HTTP servlet request session notes' property name and attribute name constants
     public static final String LOGGED_IN_SESSION = "LoggedInSession";
     public static final String IS_PASSIVE_AUTH_ENABLED = "IsPassiveAuthn";
     public static final String IS_FORCE_AUTH_ENABLED = "IsForceAuthn";
     public static final String RELAY_STATE = "RelayState";
-    public static final String RELAY_STATE_ID = "RelayStateId";
+    public static final String RELAY_STATES = "RelayStates";
     public static final String REQUEST_PARAM_MAP = "RequestParamMap";
     public static final String REQUEST_URL = "RequestURL";
     public static final String REQUEST_QUERY_STRING = "RequestQueryString";
     public static final String REQUEST_PARAMETERS = "RequestParams";
+    public static final String AUTHN_REQUEST_ID = "AuthnRequestID";
 
     //  miscellaneous constants
     public static final String CONTENT_TYPE_HTML = "text/html";
+    public static final int HTTP_STATUS_TOO_MANY_REQUESTS = 429;
+    public static final String SAML2_AUTH_TYPE = "SAML2";
 }
@@ -0,0 +1,148 @@
+/*
+ *  Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.wso2.appserver.webapp.security.agent;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * This class performs admission control of the unauthenticated and Assertion Consumer Service (ACS) requests,
+ * which are costly to process due to session creation, SAML 2.0 message processing and XML signature/encryption.
+ * <p>
+ * Each client address is rate limited by a token bucket, held in a fixed number of lock-free stripes selected by
+ * the hash of the address, so that memory use is bounded regardless of the number of clients. Addresses whose
+ * hashes collide share a stripe and hence its bucket, so that a client may be rejected due to the requests of
+ * another client of its stripe. Likewise, the clients behind a proxy or a NAT gateway share the bucket of their
+ * common address. The back channel Logout Requests of an identity provider, which fan out a single logout from a
+ * single address, are hence not to be rate limited per client address. The number of requests concurrently in
+ * their cryptographic processing phases is limited globally. Both limits fail fast rather than queueing requests.
+ * An instance of this class is thread-safe.
+ *
+ * @since 6.0.0
+ */
+public class SSOAdmissionController {
+    private static final int STRIPES = 4096;
+
+    //  the theoretical arrival time (in nanoseconds) of the next request of each stripe, as per the generic cell
+    //  rate algorithm, which is equivalent to a token bucket but held in a single value
+    private final AtomicLongArray arrivalTimes;
+    private final long emissionIntervalInNanos;
+    private final long burstToleranceInNanos;
+    private final Semaphore cryptoPermits;
+
+    private final AtomicLong rateLimitedRequests = new AtomicLong();
+    private final AtomicLong overloadedRequests = new AtomicLong();
+
+    /**
+     * Creates an admission controller.
+     *
+     * @param clientRequestRate             the sustained number of requests per second admitted per client
+     *                                      address, or a non-positive value for no rate limit
+     * @param clientRequestBurst            the number of requests of a client address admitted in a burst
+     * @param maxConcurrentCryptoOperations the maximum number of requests concurrently in their cryptographic
+     *                                      processing phases, or a non-positive value for no limit
+     */
+    public SSOAdmissionController(int clientRequestRate, int clientRequestBurst, int maxConcurrentCryptoOperations) {
+        if (clientRequestRate > 0) {
+            arrivalTimes = new AtomicLongArray(STRIPES);
+            emissionIntervalInNanos = TimeUnit.SECONDS.toNanos(1) / clientRequestRate;
+            burstToleranceInNanos = emissionIntervalInNanos * Math.max(0, clientRequestBurst - 1);
+        } else {
+            arrivalTimes = null;
+            emissionIntervalInNanos = 0;
+            burstToleranceInNanos = 0;
+        }
+        cryptoPermits = (maxConcurrentCryptoOperations > 0) ? new Semaphore(maxConcurrentCryptoOperations) : null;
+    }
+
+    /**
+     * Returns true if a request of the specified client address is within the client's rate limit, else false.
+     *
+     * @param clientAddress the client address
+     * @return true if a request of the specified client address is within the client's rate limit, else false
+     */
+    public boolean tryAcquireClientRequest(String clientAddress) {
+        return tryAcquireClientRequest(clientAddress, System.nanoTime());
+    }
+
+    boolean tryAcquireClientRequest(String clientAddress, long now) {
+        if (arrivalTimes == null) {
+            return true;
+        }
+
+        int stripe = ((clientAddress == null) ? 0 : spread(clientAddress.hashCode())) & (STRIPES - 1);
+        while (true) {
+            long arrivalTime = arrivalTimes.get(stripe);
+            //  a zero value denotes a stripe not used yet
+            long earliest = ((arrivalTime == 0) || (arrivalTime - now < 0)) ? now : arrivalTime;
+            if (earliest - now > burstToleranceInNanos) {
+                rateLimitedRequests.incrementAndGet();
+                return false;
+            }
+            if (arrivalTimes.compareAndSet(stripe, arrivalTime, earliest + emissionIntervalInNanos)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Acquires a permit for the cryptographic processing phase of a request, without waiting.
+     * <p>
+     * Every permit acquired must be released by calling {@link #releaseCryptoPermit()}.
+     *
+     * @return true if a permit was acquired, else false if the maximum concurrency has been reached
+     */
+    public boolean tryAcquireCryptoPermit() {
+        if ((cryptoPermits == null) || cryptoPermits.tryAcquire()) {
+            return true;
+        }
+        overloadedRequests.incrementAndGet();
+        return false;
+    }
+
+    /**
+     * Releases a permit acquired by {@link #tryAcquireCryptoPermit()}.
+     */
+    public void releaseCryptoPermit() {
+        if (cryptoPermits != null) {
+            cryptoPermits.release();
+        }
+    }
+
+    /**
+     * Returns the number of requests rejected due to the rate limit of their client address.
+     *
+     * @return the number of requests rejected due to the rate limit of their client address
+     */
+    public long getRateLimitedRequestCount() {
+        return rateLimitedRequests.get();
+    }
+
+    /**
+     * Returns the number of requests rejected due to the maximum cryptographic processing concurrency.
+     *
+     * @return the number of requests rejected due to the maximum cryptographic processing concurrency
+     */
+    public long getOverloadedRequestCount() {
+        return overloadedRequests.get();
+    }
+
+    private static int spread(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+}
@@ -0,0 +1,365 @@
+/*
+ *  Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.wso2.appserver.webapp.security.agent;
+
+import org.apache.catalina.Container;
+import org.apache.catalina.Context;
+import org.apache.catalina.Host;
+import org.opensaml.saml.common.xml.SAMLConstants;
+import org.wso2.appserver.configuration.context.WebAppSingleSignOn;
+import org.wso2.appserver.configuration.server.AppServerSingleSignOn;
+import org.wso2.appserver.webapp.security.Constants;
+import org.wso2.appserver.webapp.security.utils.SSOUtils;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * This class represents the fully resolved, immutable single-sign-on (SSO) policy of a web application context.
+ * <p>
+ * A policy is compiled once per context from the context level and server level single-sign-on configurations,
+ * with all defaults applied and all values derived from the context (issuer, Assertion Consumer URL) resolved
+ * up front. Hence, a single instance can be shared by all request processing threads of the context without
+ * any synchronization.
+ *
+ * @since 6.0.0
+ */
+public class SSOAgentPolicy {
+    private final String issuerId;
+    private final String consumerURL;
+    private final String idpURL;
+    private final String idpEntityId;
+    private final String idpCertificateAlias;
+    private final String httpBinding;
+    private final boolean httpPOSTBinding;
+    private final boolean sloEnabled;
+    private final String sloURLPostfix;
+    private final SSOURIMatcher uriMatcher;
+    private final boolean requestSigningEnabled;
+    private final boolean responseSigningEnabled;
+    private final boolean assertionSigningEnabled;
+    private final boolean assertionEncryptionEnabled;
+    private final String signatureValidatorImplClass;
+    private final SSORoleMapper roleMapper;
+    private final SSOMessageRetention messageRetention;
+    private final boolean unsolicitedResponsesAllowed;
+    private final Set<String> subjectAttributeNames;
+    private final SSOSignatureAlgorithm signatureAlgorithm;
+    private final SSODigestAlgorithm digestAlgorithm;
+    //  the inbound message limits of the context, if they override those of the valve
+    private final Integer maxMessageSize;
+    private final Integer maxDecodedMessageSize;
+    private final Integer maxElementDepth;
+    private final Integer maxElementCount;
+    //  the optional parameters, pre-encoded for each of the supported SAML 2.0 bindings
+    private final String redirectQueryParameters;
+    private final String postFormParameters;
+
+    private SSOAgentPolicy(Context context, WebAppSingleSignOn contextConfiguration,
+                           AppServerSingleSignOn serverConfiguration, String contextPath, Host host) {
+        Optional<AppServerSingleSignOn> server = Optional.ofNullable(serverConfiguration);
+
+        issuerId = Optional.ofNullable(contextConfiguration.getIssuerId())
+                .orElse(SSOUtils.generateIssuerID(contextPath, Optional.ofNullable(host)
+                        .map(Host::getAppBase)
+                        .orElse(""))
+                        .orElse(""));
+
+        String acsBase = server.map(AppServerSingleSignOn::getACSBase)
+                .orElse(SSOUtils.constructApplicationServerURL(host)
+                        .orElse(""));
+        String consumerURLPostfix = Optional.ofNullable(contextConfiguration.getConsumerURLPostfix())
+                .orElse(Constants.DEFAULT_CONSUMER_URL_POSTFIX);
+        consumerURL = Optional.ofNullable(contextConfiguration.getConsumerURL())
+                .orElse(SSOUtils.generateConsumerURL(contextPath, acsBase, consumerURLPostfix)
+                        .orElse(""));
+
+        idpURL = server.map(AppServerSingleSignOn::getIdpURL).orElse(null);
+        idpEntityId = server.map(AppServerSingleSignOn::getIdpEntityId).orElse(null);
+        idpCertificateAlias = server.map(AppServerSingleSignOn::getIdpCertificateAlias).orElse(null);
+
+        httpBinding = Optional.ofNullable(contextConfiguration.getHttpBinding())
+                .orElse(Constants.SAML2_HTTP_POST_BINDING);
+        httpPOSTBinding = SAMLConstants.SAML2_POST_BINDING_URI.equals(httpBinding);
+
+        sloEnabled = Optional.ofNullable(contextConfiguration.isSLOEnabled())
+                .orElse(false);
+        sloURLPostfix = Optional.ofNullable(contextConfiguration.getSLOURLPostfix())
+                .orElse(Constants.DEFAULT_SLO_URL_POSTFIX);
+
+        List<String> skipURIs = Optional.ofNullable(contextConfiguration.getSkipURIs())
+                .map(WebAppSingleSignOn.SkipURIs::getSkipURIs)
+                .orElse(Collections.emptyList());
+        uriMatcher = new SSOURIMatcher(skipURIs, sloEnabled ? sloURLPostfix : null);
+
+        requestSigningEnabled = Optional.ofNullable(contextConfiguration.isRequestSigningEnabled())
+                .orElse(false);
+        responseSigningEnabled = Optional.ofNullable(contextConfiguration.isResponseSigningEnabled())
+                .orElse(false);
+        assertionSigningEnabled = Optional.ofNullable(contextConfiguration.isAssertionSigningEnabled())
+                .orElse(true);
+        assertionEncryptionEnabled = Optional.ofNullable(contextConfiguration.isAssertionEncryptionEnabled())
+                .orElse(false);
+        signatureValidatorImplClass = Optional.ofNullable(context.findParameter(
+                Constants.SIGN_VALIDATOR_IMPL_CONTEXT_PARAM))
+                .orElse(server.map(AppServerSingleSignOn::getSignatureValidatorImplClass)
+                        .orElse(Constants.DEFAULT_SIGN_VALIDATOR_IMPL));
+        roleMapper = SSORoleMapper.compile(context.findParameter(Constants.ROLE_ATTRIBUTES_CONTEXT_PARAM),
+                context.findParameter(Constants.ROLE_MAPPING_CONTEXT_PARAM));
+        messageRetention = SSOMessageRetention.fromName(
+                context.findParameter(Constants.MESSAGE_RETENTION_CONTEXT_PARAM))
+                .orElse(SSOMessageRetention.REFERENCE);
+        //  identity provider initiated single-sign-on, through a Response not solicited by an Authentication Request
+        unsolicitedResponsesAllowed = Boolean.parseBoolean(
+                context.findParameter(Constants.UNSOLICITED_RESPONSES_CONTEXT_PARAM));
+        //  the subject attributes held in the session, always including the role attributes, else all if not set
+        subjectAttributeNames = Optional.ofNullable(context.findParameter(Constants.SUBJECT_ATTRIBUTES_CONTEXT_PARAM))
+                .map(names -> Stream.concat(Arrays.stream(names.split(","))
+                        .map(String::trim)
+                        .filter(name -> !name.isEmpty()), roleMapper.getRoleAttributes().stream())
+                        .map(String::intern)
+                        .collect(Collectors.toSet()))
+                .map(Collections::unmodifiableSet)
+                .orElse(null);
+        //  the algorithms with which the requests are signed, the digest algorithm defaulting to that of OpenSAML
+        signatureAlgorithm = SSOSignatureAlgorithm.fromName(
+                context.findParameter(Constants.SIGNATURE_ALGORITHM_CONTEXT_PARAM))
+                .orElse(SSOSignatureAlgorithm.RSA_SHA1);
+        digestAlgorithm = SSODigestAlgorithm.fromName(context.findParameter(Constants.DIGEST_ALGORITHM_CONTEXT_PARAM))
+                .orElse(null);
+        maxMessageSize = parseMessageLimit(context, Constants.MAX_MESSAGE_SIZE_CONTEXT_PARAM);
+        maxDecodedMessageSize = parseMessageLimit(context, Constants.MAX_DECODED_MESSAGE_SIZE_CONTEXT_PARAM);
+        maxElementDepth = parseMessageLimit(context, Constants.MAX_ELEMENT_DEPTH_CONTEXT_PARAM);
+        maxElementCount = parseMessageLimit(context, Constants.MAX_ELEMENT_COUNT_CONTEXT_PARAM);
+
+        Map<String, String[]> optionalParams =
+                SSOUtils.getSplitQueryParameters(contextConfiguration.getOptionalParams());
+        StringBuilder queryParameters = new StringBuilder();
+        StringBuilder formParameters = new StringBuilder();
+        optionalParams.entrySet()
+                .stream()
+                .filter(entry -> ((entry.getKey() != null) &&
+                        (entry.getValue() != null) && (entry.getValue().length > 0)))
+                .forEach(entry -> {
+                    for (String value : entry.getValue()) {
+                        String encodedValue = SSOUtils.urlEncode(value);
+                        queryParameters.append("&").append(entry.getKey()).append("=").append(encodedValue);
+                        formParameters.append("<input type='hidden' name='").append(entry.getKey())
+                                .append("' value='").append(encodedValue).append("'>\n");
+                    }
+                });
+        redirectQueryParameters = queryParameters.toString();
+        postFormParameters = formParameters.toString();
+    }
+
+    /**
+     * Compiles the single-sign-on (SSO) policy of the specified context.
+     *
+     * @param context              the web application context to which the policy applies
+     * @param contextConfiguration the context level single-sign-on configurations
+     * @param serverConfiguration  the server level single-sign-on configurations
+     * @return the compiled single-sign-on policy of the context
+     */
+    public static SSOAgentPolicy compile(Context context, WebAppSingleSignOn contextConfiguration,
+                                         AppServerSingleSignOn serverConfiguration) {
+        Container parent = context.getParent();
+        Host host = (parent instanceof Host) ? (Host) parent : null;
+        return new SSOAgentPolicy(context, contextConfiguration, serverConfiguration, context.getPath(), host);
+    }
+
+    /**
+     * Parses the inbound message limit set by the specified context parameter.
+     * <p>
+     * A value which is not a positive integer is rejected with a warning, so that the limit of the valve applies
+     * rather than the limit being silently disabled.
+     *
+     * @param context   the web application context
+     * @param parameter the name of the context parameter which sets the limit
+     * @return the inbound message limit, or null if not set or invalid
+     */
+    static Integer parseMessageLimit(Context context, String parameter) {
+        String limit = context.findParameter(parameter);
+        if (limit == null) {
+            return null;
+        }
+        try {
+            int value = Integer.parseInt(limit.trim());
+            if (value > 0) {
+                return value;
+            }
+        } catch (NumberFormatException ignore) {
+            //  reported below, as is a non-positive value
+        }
+        context.getLogger().warn("Ignoring the value " + limit + " of context parameter " + parameter + " of " +
+                context + ", which must be a positive integer, the limit of the valve applies instead");
+        return null;
+    }
+
+    public String getIssuerId() {
+        return issuerId;
+    }
+
+    public String getConsumerURL() {
+        return consumerURL;
+    }
+
+    public String getIdpURL() {
+        return idpURL;
+    }
+
+    public String getIdpEntityId() {
+        return idpEntityId;
+    }
+
+    public String getIdpCertificateAlias() {
+        return idpCertificateAlias;
+    }
+
+    public String getHttpBinding() {
+        return httpBinding;
+    }
+
+    public boolean isHttpPOSTBinding() {
+        return httpPOSTBinding;
+    }
+
+    public boolean isSLOEnabled() {
+        return sloEnabled;
+    }
+
+    public String getSLOURLPostfix() {
+        return sloURLPostfix;
+    }
+
+    public SSOURIMatcher getURIMatcher() {
+        return uriMatcher;
+    }
+
+    public boolean isRequestSigningEnabled() {
+        return requestSigningEnabled;
+    }
+
+    public boolean isResponseSigningEnabled() {
+        return responseSigningEnabled;
+    }
+
+    public boolean isAssertionSigningEnabled() {
+        return assertionSigningEnabled;
+    }
+
+    public boolean isAssertionEncryptionEnabled() {
+        return assertionEncryptionEnabled;
+    }
+
+    public String getSignatureValidatorImplClass() {
+        return signatureValidatorImplClass;
+    }
+
+    public SSORoleMapper getRoleMapper() {
+        return roleMapper;
+    }
+
+    public SSOMessageRetention getMessageRetention() {
+        return messageRetention;
+    }
+
+    public boolean isUnsolicitedResponseAllowed() {
+        return unsolicitedResponsesAllowed;
+    }
+
+    /**
+     * Returns the names of the subject attributes to be held in the logged-in session.
+     *
+     * @return the names of the subject attributes to be held, or an empty {@link Optional} if all are to be held
+     */
+    public Optional<Set<String>> getSubjectAttributeNames() {
+        return Optional.ofNullable(subjectAttributeNames);
+    }
+
+    public SSOSignatureAlgorithm getSignatureAlgorithm() {
+        return signatureAlgorithm;
+    }
+
+    /**
+     * Returns the digest algorithm of the enveloped signatures of the requests.
+     *
+     * @return the digest algorithm, or an empty {@link Optional} if the default digest algorithm is to be used
+     */
+    public Optional<SSODigestAlgorithm> getDigestAlgorithm() {
+        return Optional.ofNullable(digestAlgorithm);
+    }
+
+    /**
+     * Returns the maximum number of characters of an encoded inbound message of the context.
+     *
+     * @return the maximum encoded message size, or an empty {@link Optional} if that of the valve applies
+     */
+    public Optional<Integer> getMaxMessageSize() {
+        return Optional.ofNullable(maxMessageSize);
+    }
+
+    /**
+     * Returns the maximum number of bytes of a decoded inbound message of the context.
+     *
+     * @return the maximum decoded message size, or an empty {@link Optional} if that of the valve applies
+     */
+    public Optional<Integer> getMaxDecodedMessageSize() {
+        return Optional.ofNullable(maxDecodedMessageSize);
+    }
+
+    /**
+     * Returns the maximum nesting depth of the elements of an inbound message of the context.
+     *
+     * @return the maximum element depth, or an empty {@link Optional} if that of the valve applies
+     */
+    public Optional<Integer> getMaxElementDepth() {
+        return Optional.ofNullable(maxElementDepth);
+    }
+
+    /**
+     * Returns the maximum number of elements of an inbound message of the context.
+     *
+     * @return the maximum element count, or an empty {@link Optional} if that of the valve applies
+     */
+    public Optional<Integer> getMaxElementCount() {
+        return Optional.ofNullable(maxElementCount);
+    }
+
+    /**
+     * Returns the optional parameters as a URL encoded query string fragment, in which each parameter is
+     * preceded by an '&amp;' character.
+     *
+     * @return the optional parameters as a URL encoded query string fragment
+     */
+    public String getRedirectQueryParameters() {
+        return redirectQueryParameters;
+    }
+
+    /**
+     * Returns the optional parameters as a set of HTML hidden input fields.
+     *
+     * @return the optional parameters as a set of HTML hidden input fields
+     */
+    public String getPOSTFormParameters() {
+        return postFormParameters;
+    }
+}
@@ -15,16 +15,25 @@
  */
 package org.wso2.appserver.webapp.security.agent;
 
-import com.google.gson.Gson;
-import org.wso2.appserver.webapp.security.Constants;
+import org.apache.catalina.ContainerEvent;
+import org.apache.catalina.ContainerListener;
+import org.apache.catalina.Context;
+import org.apache.catalina.Manager;
+import org.apache.catalina.Session;
 import org.wso2.appserver.webapp.security.bean.LoggedInSession;
 
-import java.util.HashMap;
+import java.io.IOException;
+import java.util.Arrays;
 import java.util.HashSet;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 import javax.servlet.http.HttpSession;
+import javax.servlet.http.HttpSessionEvent;
+import javax.servlet.http.HttpSessionListener;
 
 /**
  * This class manages the authenticated sessions of single-sign-on (SSO) function.
@@ -32,11 +41,29 @@ import javax.servlet.http.HttpSession;
  * Session Index received from the identity provider is mapped to service provider sessions, so that a
  * single-logout (SLO) request can be handled by invalidating the service provider session mapped to
  * identity provider session index.
+ * <p>
+ * The index is safe for concurrent use. The set of sessions of a session index is only ever read or mutated
+ * while holding the lock of its map entry, hence adding a session to and removing all sessions of a session index
+ * are atomic with respect to each other, while operations on different session indexes proceed in parallel.
+ * <p>
+ * Sessions are held by their identifier and {@code Manager}, rather than by reference, and are evicted from the
+ * index when they expire or are invalidated, so that the index tracks the live authenticated sessions only. As a
+ * session identifier may change during the lifetime of a session (for example, to prevent session fixation), the
+ * index is updated with the new identifier of a session when its context reports the change.
+ * <p>
+ * The identity provider session indexes of each session are held by this index as well, rather than in the
+ * session, and sessions are evicted by a listener of their context rather than of each session. Hence, eviction
+ * does not depend on any transient state of a session, which is lost when the session is passivated and activated
+ * again by a persistent {@code Manager}, or is replicated across a cluster.
  *
  * @since 6.0.0
  */
 public class SSOAgentSessionManager {
-    private static final Map<String, Set<HttpSession>> ssoSessionsMap = new HashMap<>();
+    private static final Map<String, Set<SessionReference>> ssoSessionsMap = new ConcurrentHashMap<>();
+    //  the identity provider session indexes of each session in the index
+    private static final Map<SessionReference, Set<String>> sessionIndexesMap = new ConcurrentHashMap<>();
+    private static final AtomicLong indexedSessions = new AtomicLong();
+    private static final ContainerListener sessionIdChangeListener = new SessionIdChangeListener();
 
     /**
      * Prevents instantiating the SSOAgentSessionManager class.
@@ -45,22 +72,62 @@ public class SSOAgentSessionManager {
     }
 
     /**
-     * Adds an authenticated session to the global single-sign-on (SSO) session manager map.
+     * Adds an authenticated session to the global single-sign-on (SSO) session manager map, under the specified
+     * identity provider session index.
+     * <p>
+     * The session is evicted from the map, when it expires or is invalidated, and is held by its new identifier if
+     * its identifier is changed. Adding a session more than once has no further effect.
      *
-     * @param session the authenticated session to be added to the session map
+     * @param sessionIndex the identity provider session index
+     * @param session      the authenticated session to be added to the session map
      */
-    public static void addAuthenticatedSession(HttpSession session) {
-        Gson gson = new Gson();
-        LoggedInSession loggedInSession =
-                gson.fromJson(session.getAttribute(Constants.LOGGED_IN_SESSION).toString(),
-                              LoggedInSession.class);
-        String sessionIndex = loggedInSession.getSAML2SSO().getSessionIndex();
-        if (ssoSessionsMap.get(sessionIndex) != null) {
-            ssoSessionsMap.get(sessionIndex).add(session);
-        } else {
-            Set<HttpSession> sessions = new HashSet<>();
-            sessions.add(session);
-            ssoSessionsMap.put(sessionIndex, sessions);
+    public static void addAuthenticatedSession(String sessionIndex, Session session) {
+        if ((sessionIndex == null) || (session == null)) {
+            return;
+        }
+
+        Optional.ofNullable(session.getManager())
+                .map(Manager::getContext)
+                .ifPresent(SSOAgentSessionManager::registerContext);
+        SessionReference reference = new SessionReference(session.getManager(), session.getIdInternal());
+        ssoSessionsMap.compute(sessionIndex, (index, sessions) -> {
+            Set<SessionReference> indexedReferences = Optional.ofNullable(sessions)
+                    .orElseGet(HashSet::new);
+            if (indexedReferences.add(reference)) {
+                indexedSessions.incrementAndGet();
+            }
+            return indexedReferences;
+        });
+        sessionIndexesMap.computeIfAbsent(reference, key -> ConcurrentHashMap.newKeySet())
+                .add(sessionIndex);
+    }
+
+    /**
+     * Registers the listeners which evict the sessions of the specified context from the session index and follow
+     * their identifier changes, unless already registered.
+     * <p>
+     * The listeners are registered with a context once, on the first authenticated session of the context, and are
+     * to be registered anew when the context is started again, as a context discards its session listeners when
+     * stopped.
+     *
+     * @param context the context of authenticated sessions
+     */
+    public static void registerContext(Context context) {
+        if (isRegistered(context)) {
+            return;
+        }
+        synchronized (sessionIdChangeListener) {
+            if (isRegistered(context)) {
+                return;
+            }
+            if (!Arrays.asList(context.findContainerListeners()).contains(sessionIdChangeListener)) {
+                context.addContainerListener(sessionIdChangeListener);
+            }
+            Object[] listeners = Optional.ofNullable(context.getApplicationLifecycleListeners())
+                    .orElseGet(() -> new Object[0]);
+            Object[] registered = Arrays.copyOf(listeners, listeners.length + 1);
+            registered[listeners.length] = new SessionIndexEvictionListener(context);
+            context.setApplicationLifecycleListeners(registered);
         }
     }
 
@@ -74,34 +141,203 @@ public class SSOAgentSessionManager {
      * @return set of sessions associated with the session index
      */
     public static Set<HttpSession> getAllInvalidatableSessions(HttpSession session) {
-        Gson gson = new Gson();
-        LoggedInSession sessionBean =
-                gson.fromJson(session.getAttribute(Constants.LOGGED_IN_SESSION).toString(),
-                              LoggedInSession.class);
-        Set<HttpSession> sessions = new HashSet<>();
-        if ((sessionBean != null) && (sessionBean.getSAML2SSO() != null)) {
-            String sessionIndex = sessionBean.getSAML2SSO().getSessionIndex();
-            if (sessionIndex != null) {
-                sessions = ssoSessionsMap.remove(sessionIndex);
-            }
-        }
-        sessions = Optional.ofNullable(sessions)
-                .orElse(new HashSet<>());
-        return sessions;
+        return LoggedInSession.getLoggedInSession(session)
+                .map(loggedInSession -> getAllInvalidatableSessions(loggedInSession.getSessionIndex()))
+                .orElseGet(HashSet::new);
     }
 
     /**
      * Returns all sessions associated with a specified session index, which are to be invalidated.
      * <p>
-     * Internally, these sessions are removed from the global single-sign-on (SSO) session manager map.
+     * Internally, these sessions are removed from the global single-sign-on (SSO) session manager map. Sessions
+     * which no longer exist in their {@code Manager} are omitted.
      *
      * @param sessionIndex the session index of whom all sessions are to be invalidated
      * @return set of sessions associated with the session index
      */
     public static Set<HttpSession> getAllInvalidatableSessions(String sessionIndex) {
-        Set<HttpSession> sessions = ssoSessionsMap.remove(sessionIndex);
-        sessions = Optional.ofNullable(sessions)
-                .orElse(new HashSet<>());
+        Set<HttpSession> sessions = new HashSet<>();
+        if (sessionIndex == null) {
+            return sessions;
+        }
+
+        Set<SessionReference> references = ssoSessionsMap.remove(sessionIndex);
+        if (references != null) {
+            indexedSessions.addAndGet(-references.size());
+            references.forEach(reference -> sessionIndexesMap.computeIfPresent(reference, (key, sessionIndexes) -> {
+                sessionIndexes.remove(sessionIndex);
+                return sessionIndexes.isEmpty() ? null : sessionIndexes;
+            }));
+            references.stream()
+                    .map(SessionReference::resolve)
+                    .filter(Objects::nonNull)
+                    .forEach(session -> sessions.add(session.getSession()));
+        }
         return sessions;
     }
+
+    /**
+     * Returns the number of sessions currently held in the session index.
+     *
+     * @return the number of sessions currently held in the session index
+     */
+    public static long getIndexedSessionCount() {
+        return indexedSessions.get();
+    }
+
+    /**
+     * Returns the number of identity provider session indexes currently held in the session index.
+     *
+     * @return the number of identity provider session indexes currently held in the session index
+     */
+    public static int getSessionIndexCount() {
+        return ssoSessionsMap.size();
+    }
+
+    /**
+     * Removes the specified session from the specified identity provider session index.
+     *
+     * @param sessionIndex the identity provider session index
+     * @param reference    the session to be removed
+     */
+    private static void removeSession(String sessionIndex, SessionReference reference) {
+        ssoSessionsMap.computeIfPresent(sessionIndex, (index, references) -> {
+            if (references.remove(reference)) {
+                indexedSessions.decrementAndGet();
+            }
+            return references.isEmpty() ? null : references;
+        });
+    }
+
+    /**
+     * Removes the specified session from all identity provider session indexes under which it has been added.
+     *
+     * @param manager   the {@code Manager} of the session
+     * @param sessionId the identifier of the session
+     */
+    private static void evictSession(Manager manager, String sessionId) {
+        SessionReference reference = new SessionReference(manager, sessionId);
+        Optional.ofNullable(sessionIndexesMap.remove(reference))
+                .ifPresent(sessionIndexes -> sessionIndexes.forEach(sessionIndex ->
+                        removeSession(sessionIndex, reference)));
+    }
+
+    /**
+     * Replaces the specified previous identifier of a session with its new identifier, under all identity provider
+     * session indexes under which the session has been added.
+     *
+     * @param manager the {@code Manager} of the session
+     * @param oldId   the previous identifier of the session
+     * @param newId   the new identifier of the session
+     */
+    private static void changeSessionId(Manager manager, String oldId, String newId) {
+        Set<String> sessionIndexes = sessionIndexesMap.remove(new SessionReference(manager, oldId));
+        if (sessionIndexes == null) {
+            return;
+        }
+        sessionIndexesMap.put(new SessionReference(manager, newId), sessionIndexes);
+        sessionIndexes.forEach(sessionIndex -> ssoSessionsMap.computeIfPresent(sessionIndex, (index, references) -> {
+            if (references.remove(new SessionReference(manager, oldId)) &&
+                    !references.add(new SessionReference(manager, newId))) {
+                indexedSessions.decrementAndGet();
+            }
+            return references;
+        }));
+    }
+
+    /**
+     * Returns true if the session listeners of the session index are registered with the specified context.
+     *
+     * @param context the context
+     * @return true if the session listeners of the session index are registered with the context, else false
+     */
+    private static boolean isRegistered(Context context) {
+        return Optional.ofNullable(context.getApplicationLifecycleListeners())
+                .map(listeners -> Arrays.stream(listeners).anyMatch(SessionIndexEvictionListener.class::isInstance))
+                .orElse(false);
+    }
+
+    /**
+     * A reference to a session, by its {@code Manager} and identifier.
+     */
+    private static class SessionReference {
+        private final Manager manager;
+        private final String sessionId;
+
+        private SessionReference(Manager manager, String sessionId) {
+            this.manager = manager;
+            this.sessionId = sessionId;
+        }
+
+        private Session resolve() {
+            if (manager == null) {
+                return null;
+            }
+            try {
+                return manager.findSession(sessionId);
+            } catch (IOException e) {
+                return null;
+            }
+        }
+
+        @Override
+        public boolean equals(Object object) {
+            if (this == object) {
+                return true;
+            }
+            if (!(object instanceof SessionReference)) {
+                return false;
+            }
+            SessionReference reference = (SessionReference) object;
+            return (manager == reference.manager) && Objects.equals(sessionId, reference.sessionId);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * System.identityHashCode(manager) + Objects.hashCode(sessionId);
+        }
+    }
+
+    /**
+     * A session listener of a context, which evicts a session of the context from its identity provider session
+     * indexes, when the session expires or is invalidated, including a session passivated and activated again.
+     */
+    private static class SessionIndexEvictionListener implements HttpSessionListener {
+        private final Context context;
+
+        private SessionIndexEvictionListener(Context context) {
+            this.context = context;
+        }
+
+        @Override
+        public void sessionCreated(HttpSessionEvent event) {
+        }
+
+        @Override
+        public void sessionDestroyed(HttpSessionEvent event) {
+            evictSession(context.getManager(), event.getSession().getId());
+        }
+    }
+
+    /**
+     * A container listener which updates the session index with the new identifier of a session, when the
+     * identifier of a session of the context is changed.
+     */
+    private static class SessionIdChangeListener implements ContainerListener {
+        @Override
+        public void containerEvent(ContainerEvent event) {
+            if (!Context.CHANGE_SESSION_ID_EVENT.equals(event.getType()) || !(event.getData() instanceof String[]) ||
+                    !(event.getContainer() instanceof Context)) {
+                return;
+            }
+            //  the event data holds the previous and the new identifier of the session, respectively
+            String[] sessionIds = (String[]) event.getData();
+            Manager manager = ((Context) event.getContainer()).getManager();
+            if ((sessionIds.length != 2) || (manager == null)) {
+                return;
+            }
+
+            changeSessionId(manager, sessionIds[0], sessionIds[1]);
+        }
+    }
 }
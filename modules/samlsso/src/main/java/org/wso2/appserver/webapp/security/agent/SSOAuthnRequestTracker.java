@@ -0,0 +1,218 @@
+/*
+ *  Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.wso2.appserver.webapp.security.agent;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * This class tracks the SAML 2.0 Authentication Requests (AuthnRequest) sent and not yet responded to, so that an
+ * unsolicited or stale Response, or a Response to a request sent on behalf of another session, can be rejected by
+ * its InResponseTo value before any of its decryption or signature validation work is performed.
+ * <p>
+ * Outstanding requests are held by identifier, along with the session which owns them, until they are responded
+ * to or time out. The requests of each session are bounded to a maximum number (evicting the oldest), so that
+ * abandoned logins cannot accumulate. Timed out requests are swept periodically, by the first thread to claim the
+ * sweep without blocking. As requests are held in memory, the Response must be received by the node which sent the
+ * request. An instance of this class is thread-safe.
+ *
+ * @since 6.0.0
+ */
+public class SSOAuthnRequestTracker {
+    public static final int DEFAULT_MAX_OUTSTANDING_REQUESTS_PER_OWNER = 10;
+    public static final int DEFAULT_REQUEST_TIMEOUT = 300;
+
+    private static final long SWEEP_INTERVAL_IN_MILLIS = 10000;
+
+    private final Map<String, OutstandingRequest> outstandingRequests = new ConcurrentHashMap<>();
+    //  the identifiers of the outstanding requests of each owner, in the order sent
+    private final Map<String, Deque<String>> ownerRequests = new ConcurrentHashMap<>();
+    private final int maxRequestsPerOwner;
+    private final long timeoutInMillis;
+    private final AtomicLong nextSweep = new AtomicLong();
+
+    private final AtomicLong unmatchedResponses = new AtomicLong();
+    private final AtomicLong evictedRequests = new AtomicLong();
+    private final AtomicLong timedOutRequests = new AtomicLong();
+
+    /**
+     * Creates an Authentication Request tracker.
+     *
+     * @param maxRequestsPerOwner the maximum number of outstanding requests of an owner
+     * @param timeout             the time in seconds for which a request awaits its Response
+     */
+    public SSOAuthnRequestTracker(int maxRequestsPerOwner, int timeout) {
+        this.maxRequestsPerOwner = Math.max(1, maxRequestsPerOwner);
+        this.timeoutInMillis = Math.max(1, timeout) * 1000L;
+    }
+
+    /**
+     * Registers an Authentication Request sent on behalf of the specified owner.
+     * <p>
+     * If the owner has already reached the maximum number of outstanding requests, its oldest request is evicted.
+     *
+     * @param requestId the identifier of the Authentication Request
+     * @param owner     the owner of the request, the identifier of the session
+     */
+    public void register(String requestId, String owner) {
+        register(requestId, owner, System.currentTimeMillis());
+    }
+
+    void register(String requestId, String owner, long now) {
+        sweep(now);
+
+        String requestOwner = Optional.ofNullable(owner).orElse("");
+        outstandingRequests.put(requestId, new OutstandingRequest(requestOwner, now + timeoutInMillis));
+        ownerRequests.compute(requestOwner, (key, requestIds) -> {
+            Deque<String> ownerRequestIds = Optional.ofNullable(requestIds)
+                    .orElseGet(ArrayDeque::new);
+            //  drops the requests already responded to or timed out
+            ownerRequestIds.removeIf(id -> !outstandingRequests.containsKey(id));
+            while (ownerRequestIds.size() >= maxRequestsPerOwner) {
+                if (outstandingRequests.remove(ownerRequestIds.poll()) != null) {
+                    evictedRequests.incrementAndGet();
+                }
+            }
+            ownerRequestIds.add(requestId);
+            return ownerRequestIds;
+        });
+    }
+
+    /**
+     * Returns true if the specified identifier is of an outstanding Authentication Request of the specified owner,
+     * which has not timed out, else false.
+     * <p>
+     * The request remains outstanding, until consumed by {@link #consume(String, String)} once its Response is
+     * validated.
+     *
+     * @param requestId the InResponseTo value of a Response, may be null
+     * @param owner     the owner of the request, the identifier of the session, may be null
+     * @return true if the specified identifier is of an outstanding Authentication Request of the owner, else false
+     */
+    public boolean isOutstanding(String requestId, String owner) {
+        return isOutstanding(requestId, owner, System.currentTimeMillis());
+    }
+
+    boolean isOutstanding(String requestId, String owner, long now) {
+        OutstandingRequest request = (requestId == null) ? null : outstandingRequests.get(requestId);
+        if ((request == null) || (request.expiry <= now) || !request.owner.equals(owner)) {
+            unmatchedResponses.incrementAndGet();
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Removes the specified outstanding Authentication Request of the specified owner, once its Response has been
+     * validated.
+     * <p>
+     * Of concurrent attempts to consume the same request, only one succeeds.
+     *
+     * @param requestId the identifier of the Authentication Request
+     * @param owner     the owner of the request, the identifier of the session
+     * @return true if the request was outstanding for the owner and has been consumed, else false
+     */
+    public boolean consume(String requestId, String owner) {
+        return consume(requestId, owner, System.currentTimeMillis());
+    }
+
+    boolean consume(String requestId, String owner, long now) {
+        OutstandingRequest request = outstandingRequests.get(requestId);
+        if ((request == null) || !request.owner.equals(owner) || !outstandingRequests.remove(requestId, request)) {
+            return false;
+        }
+        removeFromOwner(request.owner, requestId);
+        return request.expiry > now;
+    }
+
+    /**
+     * Removes the timed out requests, unless the sweep interval has not elapsed or another thread is sweeping.
+     *
+     * @param now the current time in milliseconds
+     */
+    private void sweep(long now) {
+        long sweepTime = nextSweep.get();
+        if ((now < sweepTime) || !nextSweep.compareAndSet(sweepTime, now + SWEEP_INTERVAL_IN_MILLIS)) {
+            return;
+        }
+        outstandingRequests.forEach((requestId, request) -> {
+            if ((request.expiry <= now) && outstandingRequests.remove(requestId, request)) {
+                timedOutRequests.incrementAndGet();
+                removeFromOwner(request.owner, requestId);
+            }
+        });
+    }
+
+    private void removeFromOwner(String owner, String requestId) {
+        ownerRequests.computeIfPresent(owner, (key, requestIds) -> {
+            requestIds.remove(requestId);
+            return requestIds.isEmpty() ? null : requestIds;
+        });
+    }
+
+    /**
+     * Returns the number of Authentication Requests currently awaiting their Response.
+     *
+     * @return the number of Authentication Requests currently awaiting their Response
+     */
+    public int getOutstandingRequestCount() {
+        return outstandingRequests.size();
+    }
+
+    /**
+     * Returns the number of Responses which did not correspond to an outstanding Authentication Request.
+     *
+     * @return the number of Responses which did not correspond to an outstanding Authentication Request
+     */
+    public long getUnmatchedResponseCount() {
+        return unmatchedResponses.get();
+    }
+
+    /**
+     * Returns the number of Authentication Requests evicted due to the maximum number of requests per owner.
+     *
+     * @return the number of Authentication Requests evicted due to the maximum number of requests per owner
+     */
+    public long getEvictedRequestCount() {
+        return evictedRequests.get();
+    }
+
+    /**
+     * Returns the number of Authentication Requests which timed out without a Response.
+     *
+     * @return the number of Authentication Requests which timed out without a Response
+     */
+    public long getTimedOutRequestCount() {
+        return timedOutRequests.get();
+    }
+
+    /**
+     * An outstanding Authentication Request, with its owner and time out.
+     */
+    private static class OutstandingRequest {
+        private final String owner;
+        private final long expiry;
+
+        private OutstandingRequest(String owner, long expiry) {
+            this.owner = owner;
+            this.expiry = expiry;
+        }
+    }
+}
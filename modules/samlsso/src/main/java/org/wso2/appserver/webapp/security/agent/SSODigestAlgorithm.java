@@ -0,0 +1,65 @@
+/*
+ *  Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.wso2.appserver.webapp.security.agent;
+
+import org.apache.xml.security.algorithms.MessageDigestAlgorithm;
+
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Optional;
+
+/**
+ * This enum defines the digest algorithms of the references of the enveloped signatures of the SAML 2.0 requests
+ * signed by the service provider.
+ *
+ * @since 6.0.0
+ */
+public enum SSODigestAlgorithm {
+    SHA1(MessageDigestAlgorithm.ALGO_ID_DIGEST_SHA1),
+    SHA256(MessageDigestAlgorithm.ALGO_ID_DIGEST_SHA256),
+    SHA512(MessageDigestAlgorithm.ALGO_ID_DIGEST_SHA512);
+
+    private final String uri;
+
+    SSODigestAlgorithm(String uri) {
+        this.uri = uri;
+    }
+
+    /**
+     * Returns the XML Signature digest algorithm identifier.
+     *
+     * @return the XML Signature digest algorithm identifier
+     */
+    public String getURI() {
+        return uri;
+    }
+
+    /**
+     * Returns the digest algorithm of the specified name, such as {@code sha256}, ignoring case, or of the
+     * specified XML Signature digest algorithm identifier.
+     *
+     * @param name the name or identifier of the digest algorithm, may be null
+     * @return the digest algorithm of the specified name, or an empty {@link Optional} if none matches
+     */
+    public static Optional<SSODigestAlgorithm> fromName(String name) {
+        return Optional.ofNullable(name)
+                .map(String::trim)
+                .flatMap(value -> Arrays.stream(values())
+                        .filter(algorithm -> algorithm.uri.equals(value) ||
+                                algorithm.name().equals(value.replace("-", "").toUpperCase(Locale.ENGLISH)))
+                        .findFirst());
+    }
+}
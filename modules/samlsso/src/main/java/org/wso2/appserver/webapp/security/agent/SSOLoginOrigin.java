@@ -0,0 +1,81 @@
+/*
+ *  Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.wso2.appserver.webapp.security.agent;
+
+import java.io.Serializable;
+import java.util.Objects;
+
+/**
+ * This class represents the identity provider and the validation requirements under which a SAML 2.0 login was
+ * established by a context.
+ * <p>
+ * The origin is registered along with the principal of a host level single-sign-on entry, so that another context
+ * only accepts the login if it was established with the same identity provider and under requirements at least as
+ * strict as its own. Otherwise, a weakly configured context of the host could establish logins for a strict one.
+ *
+ * @since 6.0.0
+ */
+public final class SSOLoginOrigin implements Serializable {
+    private static final long serialVersionUID = 6302855719461093541L;
+
+    private final String idpEntityId;
+    private final String idpURL;
+    private final String idpCertificateAlias;
+    private final String signatureValidatorImplClass;
+    private final boolean responseSigningRequired;
+    private final boolean assertionSigningRequired;
+    private final boolean assertionEncryptionRequired;
+    private final boolean unsolicitedResponsesAllowed;
+
+    private SSOLoginOrigin(SSOAgentPolicy policy) {
+        idpEntityId = policy.getIdpEntityId();
+        idpURL = policy.getIdpURL();
+        idpCertificateAlias = policy.getIdpCertificateAlias();
+        signatureValidatorImplClass = policy.getSignatureValidatorImplClass();
+        responseSigningRequired = policy.isResponseSigningEnabled();
+        assertionSigningRequired = policy.isAssertionSigningEnabled();
+        assertionEncryptionRequired = policy.isAssertionEncryptionEnabled();
+        unsolicitedResponsesAllowed = policy.isUnsolicitedResponseAllowed();
+    }
+
+    /**
+     * Returns the origin of the logins established under the specified single-sign-on (SSO) policy.
+     *
+     * @param policy the single-sign-on policy of the context which established the login
+     * @return the origin of the logins established under the policy
+     */
+    public static SSOLoginOrigin of(SSOAgentPolicy policy) {
+        return new SSOLoginOrigin(policy);
+    }
+
+    /**
+     * Returns true if a login of this origin is acceptable under the specified single-sign-on (SSO) policy, that is
+     * if it was established with the identity provider of the policy, through the same signature validator and under
+     * signing, encryption and solicitation requirements at least as strict as those of the policy.
+     *
+     * @param policy the single-sign-on policy of the context to which the login is to be shared
+     * @return true if a login of this origin is acceptable under the policy, else false
+     */
+    public boolean isAcceptableTo(SSOAgentPolicy policy) {
+        return Objects.equals(idpEntityId, policy.getIdpEntityId()) && Objects.equals(idpURL, policy.getIdpURL()) &&
+                Objects.equals(idpCertificateAlias, policy.getIdpCertificateAlias()) &&
+                Objects.equals(signatureValidatorImplClass, policy.getSignatureValidatorImplClass()) &&
+                (responseSigningRequired || !policy.isResponseSigningEnabled()) &&
+                (assertionSigningRequired || !policy.isAssertionSigningEnabled()) &&
+                (assertionEncryptionRequired || !policy.isAssertionEncryptionEnabled()) &&
+                (!unsolicitedResponsesAllowed || policy.isUnsolicitedResponseAllowed());
+    }
+}
@@ -0,0 +1,177 @@
+/*
+ *  Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.wso2.appserver.webapp.security.agent;
+
+import org.wso2.appserver.webapp.security.utils.XMLLimitingInputStream;
+import org.wso2.appserver.webapp.security.utils.exception.SSOException;
+
+import java.io.InputStream;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * This class holds the limits of the inbound SAML 2.0 messages and counts the messages rejected, per reason,
+ * by the cheap checks performed before any signature validation or decryption work.
+ * <p>
+ * The encoded size of a message is checked before it is decoded, while its decoded size, element depth and element
+ * count are enforced as it is parsed. The structural checks of a parsed message are performed by the
+ * single-sign-on manager, which reports its rejections through this instance. A non-positive limit is not
+ * enforced. The default limits are well above those of realistic messages, including Assertions with large attribute
+ * sets, and may be overridden per context through a guard which shares the rejection counts of this instance. An
+ * instance of this class is thread-safe.
+ *
+ * @since 6.0.0
+ */
+public class SSOMessageGuard {
+    //  the default encoded size is that of the default maximum POST size of the Tomcat connectors
+    public static final int DEFAULT_MAX_MESSAGE_SIZE = 2 * 1024 * 1024;
+    public static final int DEFAULT_MAX_DECODED_MESSAGE_SIZE = 1536 * 1024;
+    public static final int DEFAULT_MAX_ELEMENT_DEPTH = 32;
+    public static final int DEFAULT_MAX_ELEMENT_COUNT = 100000;
+
+    /**
+     * The reasons for which an inbound message is rejected.
+     */
+    public enum RejectReason {
+        MESSAGE_SIZE, DECODED_MESSAGE_SIZE, ELEMENT_DEPTH, ELEMENT_COUNT, VERSION, DESTINATION, ISSUER, STATUS
+    }
+
+    private final int maxMessageSize;
+    private final int maxDecodedMessageSize;
+    private final int maxElementDepth;
+    private final int maxElementCount;
+    private final AtomicLongArray rejectedMessages;
+
+    /**
+     * Creates a message guard.
+     *
+     * @param maxMessageSize        the maximum number of characters of a base64 encoded message
+     * @param maxDecodedMessageSize the maximum number of bytes of a decoded message
+     * @param maxElementDepth       the maximum nesting depth of the elements of a message
+     * @param maxElementCount       the maximum number of elements of a message
+     */
+    public SSOMessageGuard(int maxMessageSize, int maxDecodedMessageSize, int maxElementDepth, int maxElementCount) {
+        this(maxMessageSize, maxDecodedMessageSize, maxElementDepth, maxElementCount,
+                new AtomicLongArray(RejectReason.values().length));
+    }
+
+    private SSOMessageGuard(int maxMessageSize, int maxDecodedMessageSize, int maxElementDepth, int maxElementCount,
+                            AtomicLongArray rejectedMessages) {
+        this.maxMessageSize = maxMessageSize;
+        this.maxDecodedMessageSize = maxDecodedMessageSize;
+        this.maxElementDepth = maxElementDepth;
+        this.maxElementCount = maxElementCount;
+        this.rejectedMessages = rejectedMessages;
+    }
+
+    /**
+     * Creates a message guard with the default limits.
+     *
+     * @return a message guard with the default limits
+     */
+    public static SSOMessageGuard withDefaultLimits() {
+        return new SSOMessageGuard(DEFAULT_MAX_MESSAGE_SIZE, DEFAULT_MAX_DECODED_MESSAGE_SIZE,
+                DEFAULT_MAX_ELEMENT_DEPTH, DEFAULT_MAX_ELEMENT_COUNT);
+    }
+
+    /**
+     * Creates a message guard with the specified limits, which counts its rejections along with those of this guard.
+     *
+     * @param maxMessageSize        the maximum number of characters of a base64 encoded message
+     * @param maxDecodedMessageSize the maximum number of bytes of a decoded message
+     * @param maxElementDepth       the maximum nesting depth of the elements of a message
+     * @param maxElementCount       the maximum number of elements of a message
+     * @return a message guard with the specified limits, sharing the rejection counts of this guard
+     */
+    public SSOMessageGuard withLimits(int maxMessageSize, int maxDecodedMessageSize, int maxElementDepth,
+                                      int maxElementCount) {
+        return new SSOMessageGuard(maxMessageSize, maxDecodedMessageSize, maxElementDepth, maxElementCount,
+                rejectedMessages);
+    }
+
+    /**
+     * Checks the size of the specified base64 encoded message, before it is decoded.
+     *
+     * @param encodedMessage the base64 encoded message
+     * @throws SSOException if the message exceeds the maximum encoded size
+     */
+    public void checkMessageSize(String encodedMessage) throws SSOException {
+        if ((maxMessageSize > 0) && (encodedMessage.length() > maxMessageSize)) {
+            throw reject(RejectReason.MESSAGE_SIZE,
+                    "SAML 2.0 message exceeds the maximum size of " + maxMessageSize + " characters");
+        }
+    }
+
+    /**
+     * Returns a stream which enforces the decoded size, element depth and element count limits on the specified
+     * decoded message stream, as it is parsed.
+     *
+     * @param decodedMessage the decoded message stream
+     * @return the limiting stream
+     */
+    public XMLLimitingInputStream limit(InputStream decodedMessage) {
+        return new XMLLimitingInputStream(decodedMessage, maxDecodedMessageSize, maxElementDepth, maxElementCount);
+    }
+
+    /**
+     * Counts a message rejected for the specified reason and returns the exception to be thrown.
+     *
+     * @param reason  the reason for which the message is rejected
+     * @param message the detail message of the exception
+     * @return the exception to be thrown
+     */
+    public SSOException reject(RejectReason reason, String message) {
+        return reject(reason, message, null);
+    }
+
+    /**
+     * Counts a message rejected for the specified reason and returns the exception to be thrown.
+     *
+     * @param reason  the reason for which the message is rejected
+     * @param message the detail message of the exception
+     * @param cause   the cause of the rejection, may be null
+     * @return the exception to be thrown
+     */
+    public SSOException reject(RejectReason reason, String message, Throwable cause) {
+        rejectedMessages.incrementAndGet(reason.ordinal());
+        return (cause == null) ? new SSOException(message) : new SSOException(message, cause);
+    }
+
+    /**
+     * Returns the number of messages rejected for the specified reason.
+     *
+     * @param reason the reason for which messages were rejected
+     * @return the number of messages rejected for the specified reason
+     */
+    public long getRejectedMessageCount(RejectReason reason) {
+        return rejectedMessages.get(reason.ordinal());
+    }
+
+    /**
+     * Returns the number of messages rejected per reason, in the order of the reasons.
+     *
+     * @return the number of messages rejected per reason
+     */
+    public Map<String, Long> getRejectedMessageCounts() {
+        Map<String, Long> counts = new LinkedHashMap<>();
+        for (RejectReason reason : RejectReason.values()) {
+            counts.put(reason.name(), getRejectedMessageCount(reason));
+        }
+        return Collections.unmodifiableMap(counts);
+    }
+}
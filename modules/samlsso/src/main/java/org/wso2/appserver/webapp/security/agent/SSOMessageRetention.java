@@ -0,0 +1,58 @@
+/*
+ *  Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.wso2.appserver.webapp.security.agent;
+
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Optional;
+
+/**
+ * This enum defines how the received SAML 2.0 Response and Assertion are retained in a user logged-in session.
+ *
+ * @since 6.0.0
+ */
+public enum SSOMessageRetention {
+    /**
+     * Neither the Response nor the Assertion is retained.
+     */
+    NONE,
+    /**
+     * Only the raw bytes of the Assertion are retained.
+     */
+    ASSERTION_ONLY,
+    /**
+     * The raw bytes of the Response are retained DEFLATE compressed, the Assertion being a slice of them.
+     */
+    COMPRESSED,
+    /**
+     * The raw bytes of the Response are retained, the Assertion being a slice of them.
+     */
+    REFERENCE;
+
+    /**
+     * Returns the message retention of the specified name, such as {@code assertion-only}, ignoring case.
+     *
+     * @param name the name of the message retention, may be null
+     * @return the message retention of the specified name, or an empty {@link Optional} if none matches
+     */
+    public static Optional<SSOMessageRetention> fromName(String name) {
+        return Optional.ofNullable(name)
+                .map(value -> value.trim().replace('-', '_').toUpperCase(Locale.ENGLISH))
+                .flatMap(value -> Arrays.stream(values())
+                        .filter(retention -> retention.name().equals(value))
+                        .findFirst());
+    }
+}
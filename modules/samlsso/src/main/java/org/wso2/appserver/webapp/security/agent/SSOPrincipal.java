@@ -0,0 +1,71 @@
+/*
+ *  Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.wso2.appserver.webapp.security.agent;
+
+import org.apache.catalina.realm.GenericPrincipal;
+import org.wso2.appserver.webapp.security.bean.LoggedInSession;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * This class represents a principal authenticated through SAML 2.0 single-sign-on (SSO).
+ * <p>
+ * An instance is registered with the Apache Tomcat single-sign-on entry of the principal, so that the other
+ * contexts of the host can establish a logged-in session locally, without a round trip to the identity provider.
+ * The registered principal holds no roles, as the roles of a principal are mapped per context, but holds the origin
+ * of the login, against which the other contexts check their own policy. The principal of each context is cached in
+ * the context's session.
+ *
+ * @since 6.0.0
+ */
+public class SSOPrincipal extends GenericPrincipal {
+    private static final long serialVersionUID = 4197286497823364325L;
+
+    private final LoggedInSession loggedInSession;
+    private final SSOLoginOrigin loginOrigin;
+
+    public SSOPrincipal(LoggedInSession loggedInSession, SSOLoginOrigin loginOrigin) {
+        super(loggedInSession.getSubjectId(), null, Collections.emptyList());
+        this.loggedInSession = loggedInSession;
+        this.loginOrigin = loginOrigin;
+    }
+
+    public SSOPrincipal(LoggedInSession loggedInSession, List<String> roles) {
+        super(loggedInSession.getSubjectId(), null, roles);
+        this.loggedInSession = loggedInSession;
+        this.loginOrigin = null;
+    }
+
+    /**
+     * Returns the logged-in session established when the principal was authenticated.
+     *
+     * @return the logged-in session established when the principal was authenticated
+     */
+    public LoggedInSession getLoggedInSession() {
+        return loggedInSession;
+    }
+
+    /**
+     * Returns the origin of the login, if this is the principal registered with a single-sign-on entry.
+     *
+     * @return the origin of the login, or an empty {@link Optional} if this is the principal of a context
+     */
+    public Optional<SSOLoginOrigin> getLoginOrigin() {
+        return Optional.ofNullable(loginOrigin);
+    }
+}
@@ -0,0 +1,219 @@
+/*
+ *  Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.wso2.appserver.webapp.security.agent;
+
+import org.wso2.appserver.webapp.security.Constants;
+import org.wso2.appserver.webapp.security.utils.SSOUtils;
+import org.wso2.appserver.webapp.security.utils.exception.SSOException;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.InvalidKeyException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * This class encodes the originally requested resource of an unauthenticated request into a self-contained,
+ * HMAC protected SAML 2.0 RelayState parameter and decodes it back at the Assertion Consumer Service.
+ * <p>
+ * This avoids creating a session merely to hold the relay state of an anonymous request. The encoded relay state is
+ * of the form {@code base64url(expiry | nonce | requestURI[?queryString]) '.' base64url(truncated HMAC-SHA256)} and
+ * never contains the '.' character otherwise, which distinguishes it from the session held relay state identifiers.
+ * <p>
+ * As per the SAML 2.0 bindings specification, a RelayState must not exceed 80 bytes, hence a resource whose URI does
+ * not fit is left to the session held relay states. Rather than carrying the identifier of the Authentication Request
+ * sent along with the relay state, the identifier is derived from the signed relay state by a separate HMAC, so that
+ * the Response may be matched to its request without any state held by the service provider, at no cost in length.
+ * An instance of this class is thread-safe.
+ *
+ * @since 6.0.0
+ */
+public class SSORelayStateCodec {
+    //  the maximum length of a RelayState, as per the SAML 2.0 bindings specification
+    public static final int MAX_RELAY_STATE_LENGTH = 80;
+    public static final int DEFAULT_MAX_RELAY_STATE_LENGTH = MAX_RELAY_STATE_LENGTH;
+    public static final int MIN_SECRET_LENGTH = 32;
+
+    private static final String HMAC_ALGORITHM = "HmacSHA256";
+    private static final int MAC_LENGTH = 16;
+    private static final int EXPIRY_LENGTH = Integer.BYTES;
+    private static final int NONCE_LENGTH = Integer.BYTES;
+    private static final int ID_LENGTH = 20;
+    //  distinguishes the HMAC from which the Authentication Request identifier is derived from that of the payload
+    private static final byte ID_DERIVATION_PREFIX = 0x01;
+    private static final char SEPARATOR = '.';
+
+    private final SecretKeySpec key;
+    private final long timeoutInMillis;
+    private final int maxRelayStateLength;
+    private final ThreadLocal<Mac> macs;
+    private final SecureRandom random = new SecureRandom();
+
+    /**
+     * Creates a relay state codec.
+     *
+     * @param secret              the secret HMAC key of at least {@value #MIN_SECRET_LENGTH} bytes, which must be
+     *                            shared by all nodes of a cluster
+     * @param timeoutInMillis     the time in milliseconds for which an encoded relay state is valid
+     * @param maxRelayStateLength the maximum length of an encoded relay state, capped at
+     *                            {@value #MAX_RELAY_STATE_LENGTH}
+     * @throws SSOException if the secret is too short, the HMAC algorithm is not supported or the key is invalid
+     */
+    public SSORelayStateCodec(byte[] secret, long timeoutInMillis, int maxRelayStateLength) throws SSOException {
+        if (secret.length < MIN_SECRET_LENGTH) {
+            throw new SSOException("The relay state secret must be at least " + MIN_SECRET_LENGTH + " bytes long");
+        }
+        this.key = new SecretKeySpec(secret, HMAC_ALGORITHM);
+        this.timeoutInMillis = timeoutInMillis;
+        this.maxRelayStateLength = Math.min(maxRelayStateLength, MAX_RELAY_STATE_LENGTH);
+
+        //  validates the key up front, so that the per thread initialization below cannot fail
+        createMac(key);
+        this.macs = ThreadLocal.withInitial(() -> {
+            try {
+                return createMac(key);
+            } catch (SSOException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+    }
+
+    private static Mac createMac(SecretKeySpec key) throws SSOException {
+        try {
+            Mac mac = Mac.getInstance(HMAC_ALGORITHM);
+            mac.init(key);
+            return mac;
+        } catch (NoSuchAlgorithmException | InvalidKeyException e) {
+            throw new SSOException("Error when initializing the relay state HMAC", e);
+        }
+    }
+
+    /**
+     * Encodes the specified request URI and query string into a signed relay state.
+     *
+     * @param requestURI  the originally requested URI
+     * @param queryString the originally requested query string, may be null
+     * @return the signed relay state, or an empty {@link Optional} if it would exceed the maximum length
+     */
+    public Optional<String> encode(String requestURI, String queryString) {
+        return encode(requestURI, queryString, System.currentTimeMillis());
+    }
+
+    Optional<String> encode(String requestURI, String queryString, long now) {
+        String requestedURI = (queryString == null) ? requestURI : (requestURI + "?" + queryString);
+        byte[] uri = requestedURI.getBytes(StandardCharsets.UTF_8);
+        int payloadLength = EXPIRY_LENGTH + NONCE_LENGTH + uri.length;
+        //  each 3 bytes are encoded into 4 characters, without padding
+        int length = ((payloadLength * 4 + 2) / 3) + 1 + ((MAC_LENGTH * 4 + 2) / 3);
+        if (length > maxRelayStateLength) {
+            return Optional.empty();
+        }
+
+        byte[] payload = ByteBuffer.allocate(payloadLength)
+                .putInt((int) ((now + timeoutInMillis) / 1000))
+                .putInt(random.nextInt())
+                .put(uri)
+                .array();
+        Base64.Encoder encoder = Base64.getUrlEncoder().withoutPadding();
+        return Optional.of(encoder.encodeToString(payload) + SEPARATOR + encoder.encodeToString(sign(payload)));
+    }
+
+    /**
+     * Decodes the specified signed relay state into the relay state content.
+     *
+     * @param relayState the signed relay state, may be null
+     * @return the relay state content, including the ID of the Authentication Request bound to it, or an empty
+     * {@link Optional} if the specified value is not a signed relay state, or its signature is invalid or it has
+     * expired
+     */
+    public Optional<Map<String, Object>> decode(String relayState) {
+        return decode(relayState, System.currentTimeMillis());
+    }
+
+    Optional<Map<String, Object>> decode(String relayState, long now) {
+        if ((relayState == null) || (relayState.length() > maxRelayStateLength)) {
+            return Optional.empty();
+        }
+        int separator = relayState.indexOf(SEPARATOR);
+        if (separator < 0) {
+            return Optional.empty();
+        }
+
+        byte[] payload;
+        byte[] signature;
+        try {
+            Base64.Decoder decoder = Base64.getUrlDecoder();
+            payload = decoder.decode(relayState.substring(0, separator));
+            signature = decoder.decode(relayState.substring(separator + 1));
+        } catch (IllegalArgumentException e) {
+            return Optional.empty();
+        }
+        if ((payload.length < EXPIRY_LENGTH + NONCE_LENGTH) || !MessageDigest.isEqual(sign(payload), signature)) {
+            return Optional.empty();
+        }
+
+        long expiry = (ByteBuffer.wrap(payload).getInt() & 0xFFFFFFFFL) * 1000;
+        if (expiry <= now) {
+            return Optional.empty();
+        }
+
+        int uriStart = EXPIRY_LENGTH + NONCE_LENGTH;
+        String requestedURI = new String(payload, uriStart, payload.length - uriStart, StandardCharsets.UTF_8);
+        int queryStart = requestedURI.indexOf('?');
+        Map<String, Object> relayStateContent = new HashMap<>();
+        relayStateContent.put(Constants.REQUEST_URL,
+                (queryStart < 0) ? requestedURI : requestedURI.substring(0, queryStart));
+        relayStateContent.put(Constants.REQUEST_QUERY_STRING,
+                (queryStart < 0) ? null : requestedURI.substring(queryStart + 1));
+        relayStateContent.put(Constants.AUTHN_REQUEST_ID, deriveAuthnRequestId(payload));
+        return Optional.of(relayStateContent);
+    }
+
+    /**
+     * Returns the ID of the Authentication Request bound to the specified signed relay state, which is to be sent
+     * along with it.
+     *
+     * @param relayState the signed relay state, as encoded by this codec
+     * @return the ID of the Authentication Request bound to the relay state, or an empty {@link Optional} if the
+     * specified value is not a valid signed relay state
+     */
+    public Optional<String> getAuthnRequestId(String relayState) {
+        return getAuthnRequestId(relayState, System.currentTimeMillis());
+    }
+
+    Optional<String> getAuthnRequestId(String relayState, long now) {
+        return decode(relayState, now)
+                .map(relayStateContent -> (String) relayStateContent.get(Constants.AUTHN_REQUEST_ID));
+    }
+
+    private byte[] sign(byte[] payload) {
+        return Arrays.copyOf(macs.get().doFinal(payload), MAC_LENGTH);
+    }
+
+    private String deriveAuthnRequestId(byte[] payload) {
+        Mac mac = macs.get();
+        mac.update(ID_DERIVATION_PREFIX);
+        return SSOUtils.toID(Arrays.copyOf(mac.doFinal(payload), ID_LENGTH));
+    }
+}
@@ -0,0 +1,220 @@
+/*
+ *  Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.wso2.appserver.webapp.security.agent;
+
+import org.wso2.appserver.webapp.security.Constants;
+import org.wso2.appserver.webapp.security.utils.SSOUtils;
+
+import java.io.Serializable;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.servlet.http.HttpSession;
+import javax.servlet.http.HttpSessionBindingEvent;
+import javax.servlet.http.HttpSessionBindingListener;
+
+/**
+ * This class manages the relay states of the SAML 2.0 Authentication Requests sent on behalf of unauthenticated
+ * requests, which hold the originally requested resource to be restored once authenticated.
+ * <p>
+ * The relay states of a session are held in a single session attribute, which is bounded to a maximum number of
+ * relay states (evicting the oldest) and from which a relay state is removed once consumed or expired. The number
+ * of relay states outstanding across all sessions is tracked, to reveal the memory held by abandoned logins.
+ *
+ * @since 6.0.0
+ */
+public class SSORelayStateStore {
+    public static final int DEFAULT_MAX_RELAY_STATES_PER_SESSION = 10;
+    public static final int DEFAULT_RELAY_STATE_TIMEOUT = 300;
+
+    private final AtomicLong outstandingRelayStates = new AtomicLong();
+    private volatile int maxRelayStatesPerSession = DEFAULT_MAX_RELAY_STATES_PER_SESSION;
+    private volatile long relayStateTimeoutInMillis = DEFAULT_RELAY_STATE_TIMEOUT * 1000L;
+
+    public int getMaxRelayStatesPerSession() {
+        return maxRelayStatesPerSession;
+    }
+
+    public void setMaxRelayStatesPerSession(int maxRelayStatesPerSession) {
+        this.maxRelayStatesPerSession = Math.max(1, maxRelayStatesPerSession);
+    }
+
+    public int getRelayStateTimeout() {
+        return (int) (relayStateTimeoutInMillis / 1000);
+    }
+
+    public void setRelayStateTimeout(int relayStateTimeout) {
+        this.relayStateTimeoutInMillis = Math.max(1, relayStateTimeout) * 1000L;
+    }
+
+    /**
+     * Returns the number of relay states currently held across all sessions.
+     *
+     * @return the number of relay states currently held across all sessions
+     */
+    public long getOutstandingRelayStateCount() {
+        return outstandingRelayStates.get();
+    }
+
+    /**
+     * Saves the specified relay state in the specified session.
+     * <p>
+     * Any expired relay states of the session are removed and if the session has already reached the maximum
+     * number of relay states, the oldest relay state is evicted.
+     *
+     * @param session    the session in which the relay state is to be saved
+     * @param relayState the relay state content
+     * @return the identifier of the saved relay state, to be sent as the SAML 2.0 RelayState parameter
+     */
+    public String save(HttpSession session, Map<String, Object> relayState) {
+        String relayStateId = SSOUtils.createID();
+        getRelayStates(session, true)
+                .ifPresent(relayStates -> relayStates.add(relayStateId, relayState, System.currentTimeMillis(),
+                        maxRelayStatesPerSession, relayStateTimeoutInMillis));
+        return relayStateId;
+    }
+
+    /**
+     * Removes and returns the specified relay state of the specified session, if present and not expired.
+     * <p>
+     * If no relay state identifier is specified, for example when the identity provider does not return the
+     * RelayState parameter, the most recently saved relay state of the session is consumed.
+     *
+     * @param session      the session from which the relay state is to be consumed
+     * @param relayStateId the identifier of the relay state, may be null
+     * @return the relay state content, or an empty {@link Optional} if not present or expired
+     */
+    public Optional<Map<String, Object>> consume(HttpSession session, String relayStateId) {
+        return getRelayStates(session, false)
+                .flatMap(relayStates -> relayStates.remove(relayStateId, System.currentTimeMillis()));
+    }
+
+    private Optional<SessionRelayStates> getRelayStates(HttpSession session, boolean create) {
+        if (session == null) {
+            return Optional.empty();
+        }
+
+        //  Apache Tomcat hands out a single facade instance per session, hence guards the creation of the
+        //  attribute against concurrent requests of the same session
+        synchronized (session) {
+            SessionRelayStates relayStates = (SessionRelayStates) session.getAttribute(Constants.RELAY_STATES);
+            if ((relayStates == null) && create) {
+                relayStates = new SessionRelayStates(outstandingRelayStates);
+                session.setAttribute(Constants.RELAY_STATES, relayStates);
+            }
+            return Optional.ofNullable(relayStates);
+        }
+    }
+
+    /**
+     * The relay states of a single session, in the order saved.
+     * <p>
+     * The outstanding relay state count is decremented for all relay states still held, when the session is
+     * invalidated or expires.
+     */
+    private static class SessionRelayStates implements HttpSessionBindingListener, Serializable {
+        private static final long serialVersionUID = -3651270542468139522L;
+
+        private final Map<String, RelayStateEntry> relayStates = new LinkedHashMap<>();
+        private final transient AtomicLong outstandingRelayStates;
+
+        private SessionRelayStates(AtomicLong outstandingRelayStates) {
+            this.outstandingRelayStates = outstandingRelayStates;
+        }
+
+        private synchronized void add(String relayStateId, Map<String, Object> relayState, long now,
+                                      int maxRelayStates, long timeoutInMillis) {
+            removeExpired(now);
+            Iterator<RelayStateEntry> iterator = relayStates.values().iterator();
+            while ((relayStates.size() >= maxRelayStates) && iterator.hasNext()) {
+                iterator.next();
+                iterator.remove();
+                decrement(1);
+            }
+            relayStates.put(relayStateId, new RelayStateEntry(relayState, now + timeoutInMillis));
+            increment();
+        }
+
+        private synchronized Optional<Map<String, Object>> remove(String relayStateId, long now) {
+            removeExpired(now);
+            RelayStateEntry entry;
+            if (relayStateId != null) {
+                entry = relayStates.remove(relayStateId);
+            } else {
+                entry = relayStates.keySet()
+                        .stream()
+                        .reduce((first, second) -> second)
+                        .map(relayStates::remove)
+                        .orElse(null);
+            }
+            if (entry == null) {
+                return Optional.empty();
+            }
+            decrement(1);
+            return Optional.of(entry.content);
+        }
+
+        private void removeExpired(long now) {
+            Iterator<RelayStateEntry> iterator = relayStates.values().iterator();
+            while (iterator.hasNext()) {
+                if (iterator.next().expiry <= now) {
+                    iterator.remove();
+                    decrement(1);
+                }
+            }
+        }
+
+        private void increment() {
+            if (outstandingRelayStates != null) {
+                outstandingRelayStates.incrementAndGet();
+            }
+        }
+
+        private void decrement(int count) {
+            //  the count is not tracked for relay states of a session restored from persistent storage
+            if ((outstandingRelayStates != null) && (count > 0)) {
+                outstandingRelayStates.addAndGet(-count);
+            }
+        }
+
+        @Override
+        public void valueBound(HttpSessionBindingEvent event) {
+        }
+
+        @Override
+        public synchronized void valueUnbound(HttpSessionBindingEvent event) {
+            decrement(relayStates.size());
+            relayStates.clear();
+        }
+    }
+
+    /**
+     * A relay state with its expiry time.
+     */
+    private static class RelayStateEntry implements Serializable {
+        private static final long serialVersionUID = 2281932746407816397L;
+
+        private final Map<String, Object> content;
+        private final long expiry;
+
+        private RelayStateEntry(Map<String, Object> content, long expiry) {
+            this.content = content;
+            this.expiry = expiry;
+        }
+    }
+}
@@ -0,0 +1,224 @@
+/*
+ *  Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.wso2.appserver.webapp.security.agent;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * This class records the identifiers of the SAML 2.0 Responses and Assertions consumed, so that a replayed
+ * message can be rejected before any of its decryption or signature validation work is performed.
+ * <p>
+ * An identifier is held until its expiry, the time after which the message would be rejected as expired anyway.
+ * Identifiers are held in a hash set and indexed by expiry in a time wheel of one second slots, which is swept
+ * opportunistically as identifiers are added, so that expired identifiers are evicted in time proportional to
+ * their number. The number of identifiers held is bounded, beyond which the identifiers closest to expiry within
+ * a revolution of the wheel are evicted first. An instance of this class is thread-safe.
+ *
+ * @since 6.0.0
+ */
+public class SSOReplayCache {
+    public static final int DEFAULT_MAX_ENTRIES = 100000;
+
+    private static final long TICK_IN_MILLIS = 1000;
+    private static final int SLOTS = 1024;
+
+    private final int maxEntries;
+    private final Map<String, Long> expiries = new ConcurrentHashMap<>();
+    private final List<Queue<String>> wheel = new ArrayList<>(SLOTS);
+    private final ReentrantLock sweepLock = new ReentrantLock();
+    //  the last tick whose slot has been swept
+    private volatile long sweptTick;
+
+    private final AtomicLong replayedMessages = new AtomicLong();
+    private final AtomicLong expiredEvictions = new AtomicLong();
+    private final AtomicLong capacityEvictions = new AtomicLong();
+
+    /**
+     * Creates a replay cache.
+     *
+     * @param maxEntries the maximum number of identifiers held
+     */
+    public SSOReplayCache(int maxEntries) {
+        this(maxEntries, System.currentTimeMillis());
+    }
+
+    SSOReplayCache(int maxEntries, long now) {
+        this.maxEntries = Math.max(1, maxEntries);
+        for (int slot = 0; slot < SLOTS; slot++) {
+            wheel.add(new ConcurrentLinkedQueue<>());
+        }
+        sweptTick = (now / TICK_IN_MILLIS) - 1;
+    }
+
+    /**
+     * Returns true if the specified message identifier has already been consumed and has not expired yet, else
+     * false.
+     *
+     * @param id the message identifier
+     * @return true if the specified message identifier has already been consumed, else false
+     */
+    public boolean isReplayed(String id) {
+        return isReplayed(id, System.currentTimeMillis());
+    }
+
+    boolean isReplayed(String id, long now) {
+        Long expiry = expiries.get(id);
+        if ((expiry != null) && (expiry > now)) {
+            replayedMessages.incrementAndGet();
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Records the specified message identifier as consumed, until the specified expiry.
+     * <p>
+     * Of concurrent attempts to record the same identifier, only one succeeds.
+     *
+     * @param id     the message identifier
+     * @param expiry the time in milliseconds since the epoch, after which the message would be rejected as expired
+     * @return true if the identifier was recorded, else false if it has already been consumed
+     */
+    public boolean add(String id, long expiry) {
+        return add(id, expiry, System.currentTimeMillis());
+    }
+
+    boolean add(String id, long expiry, long now) {
+        sweep(now);
+        if (expiry <= now) {
+            return true;
+        }
+
+        Long previous = expiries.putIfAbsent(id, expiry);
+        if ((previous != null) && ((previous > now) || !expiries.replace(id, previous, expiry))) {
+            replayedMessages.incrementAndGet();
+            return false;
+        }
+        wheel.get(getSlot(expiry / TICK_IN_MILLIS)).add(id);
+
+        if (expiries.size() > maxEntries) {
+            evictForCapacity();
+        }
+        return true;
+    }
+
+    /**
+     * Evicts the identifiers of all slots whose time has fully elapsed, unless another thread is sweeping.
+     *
+     * @param now the current time in milliseconds
+     */
+    private void sweep(long now) {
+        long currentTick = now / TICK_IN_MILLIS;
+        if ((currentTick - 1 <= sweptTick) || !sweepLock.tryLock()) {
+            return;
+        }
+        try {
+            //  a slot is visited at most once per sweep, even after a period of inactivity
+            long fromTick = Math.max(sweptTick + 1, currentTick - SLOTS);
+            for (long tick = fromTick; tick < currentTick; tick++) {
+                Queue<String> slot = wheel.get(getSlot(tick));
+                List<String> retained = new ArrayList<>();
+                String id;
+                while ((id = slot.poll()) != null) {
+                    Long expiry = expiries.get(id);
+                    if (expiry == null) {
+                        continue;
+                    }
+                    if (expiry <= now) {
+                        if (expiries.remove(id, expiry)) {
+                            expiredEvictions.incrementAndGet();
+                        }
+                    } else if (getSlot(expiry / TICK_IN_MILLIS) == getSlot(tick)) {
+                        //  expires beyond a revolution of the wheel
+                        retained.add(id);
+                    }
+                }
+                slot.addAll(retained);
+            }
+            sweptTick = currentTick - 1;
+        } finally {
+            sweepLock.unlock();
+        }
+    }
+
+    /**
+     * Evicts the identifiers closest to expiry, until the maximum number of identifiers is not exceeded.
+     */
+    private void evictForCapacity() {
+        sweepLock.lock();
+        try {
+            long tick = sweptTick + 1;
+            for (int visited = 0; (visited < SLOTS) && (expiries.size() > maxEntries); visited++, tick++) {
+                Queue<String> slot = wheel.get(getSlot(tick));
+                String id;
+                while ((expiries.size() > maxEntries) && ((id = slot.poll()) != null)) {
+                    if (expiries.remove(id) != null) {
+                        capacityEvictions.incrementAndGet();
+                    }
+                }
+            }
+        } finally {
+            sweepLock.unlock();
+        }
+    }
+
+    private static int getSlot(long tick) {
+        return (int) (tick & (SLOTS - 1));
+    }
+
+    /**
+     * Returns the number of message identifiers currently held.
+     *
+     * @return the number of message identifiers currently held
+     */
+    public int getSize() {
+        return expiries.size();
+    }
+
+    /**
+     * Returns the number of replayed messages detected.
+     *
+     * @return the number of replayed messages detected
+     */
+    public long getReplayedMessageCount() {
+        return replayedMessages.get();
+    }
+
+    /**
+     * Returns the number of message identifiers evicted on expiry.
+     *
+     * @return the number of message identifiers evicted on expiry
+     */
+    public long getExpiredEvictionCount() {
+        return expiredEvictions.get();
+    }
+
+    /**
+     * Returns the number of message identifiers evicted before expiry, due to the maximum number of identifiers.
+     *
+     * @return the number of message identifiers evicted before expiry
+     */
+    public long getCapacityEvictionCount() {
+        return capacityEvictions.get();
+    }
+}
@@ -15,12 +15,8 @@
  */
 package org.wso2.appserver.webapp.security.agent;
 
-import org.opensaml.saml.common.xml.SAMLConstants;
-import org.wso2.appserver.configuration.context.WebAppSingleSignOn;
 import org.wso2.appserver.webapp.security.Constants;
 
-import java.util.ArrayList;
-import java.util.Optional;
 import javax.servlet.http.HttpServletRequest;
 
 /**
@@ -30,10 +26,10 @@ import javax.servlet.http.HttpServletRequest;
  * @since 6.0.0
  */
 public class SSORequestResolver {
-    private WebAppSingleSignOn ssoConfiguration;
+    private SSOAgentPolicy ssoConfiguration;
     private HttpServletRequest request;
 
-    public SSORequestResolver(HttpServletRequest request, WebAppSingleSignOn ssoConfiguration) {
+    public SSORequestResolver(HttpServletRequest request, SSOAgentPolicy ssoConfiguration) {
         this.ssoConfiguration = ssoConfiguration;
         this.request = request;
     }
@@ -47,10 +43,23 @@ public class SSORequestResolver {
      * @return true if the request URI is one of the URI(s) to be skipped (as specified by the agent), else false
      */
     public boolean isURLToSkip() {
-        return !((ssoConfiguration == null) || (request == null)) && ssoConfiguration.getSkipURIs() != null &&
-                Optional.ofNullable(ssoConfiguration.getSkipURIs().getSkipURIs())
-                        .orElse(new ArrayList<>())
-                        .contains(request.getRequestURI());
+        return getURIType() == SSOURIMatcher.URIType.SKIP;
+    }
+
+    /**
+     * Returns the type of the request URI, classified in a single pass as a URI to be skipped, a single-logout (SLO)
+     * URI or a protected URI.
+     * <p>
+     * The request URI is classified after being normalized, as it is by the container before mapping the request
+     * to a servlet.
+     *
+     * @return the type of the request URI
+     */
+    public SSOURIMatcher.URIType getURIType() {
+        if ((ssoConfiguration == null) || (request == null)) {
+            return SSOURIMatcher.URIType.PROTECTED;
+        }
+        return ssoConfiguration.getURIMatcher().classify(request.getRequestURI(), request.getPathInfo());
     }
 
     /**
@@ -59,12 +68,7 @@ public class SSORequestResolver {
      * @return true if SAML 2.0 binding type is of HTTP POST type, else false
      */
     public boolean isHttpPOSTBinding() {
-        if (ssoConfiguration == null) {
-            return false;
-        }
-        String httpBindingString = Optional.ofNullable(ssoConfiguration.getHttpBinding())
-                .orElse(Constants.SAML2_HTTP_POST_BINDING);
-        return (httpBindingString != null) && (SAMLConstants.SAML2_POST_BINDING_URI.equals(httpBindingString));
+        return (ssoConfiguration != null) && ssoConfiguration.isHttpPOSTBinding();
     }
 
     /**
@@ -88,8 +92,6 @@ public class SSORequestResolver {
      * SAML 2.0 single-logout (SLO) request(s), else false
      */
     public boolean isSLOURL() {
-        return !((ssoConfiguration == null) || (request == null)) && (ssoConfiguration.isSLOEnabled()) &&
-                (request.getRequestURI().endsWith(Optional.ofNullable(ssoConfiguration.getSLOURLPostfix())
-                        .orElse(Constants.DEFAULT_SLO_URL_POSTFIX)));
+        return getURIType() == SSOURIMatcher.URIType.SLO;
     }
 }
@@ -0,0 +1,123 @@
+/*
+ *  Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.wso2.appserver.webapp.security.agent;
+
+import org.wso2.appserver.webapp.security.bean.LoggedInSession;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * This class maps the SAML 2.0 attributes of an authenticated subject to the container roles of a web application
+ * context, so that the {@code isUserInRole} checks and the security constraints of the context can be applied
+ * to the principal.
+ * <p>
+ * A role mapper is compiled once per context from two context parameters. The role attributes parameter is a comma
+ * separated list of the names of the attributes whose values are roles. The role mapping parameter is a comma
+ * separated list of {@code attributeValue=role} entries, which translate an attribute value into one or more roles.
+ * An attribute value which is not mapped is used as the role as it is. An instance of this class is immutable.
+ *
+ * @since 6.0.0
+ */
+public class SSORoleMapper {
+    private static final String SEPARATOR = ",";
+    private static final String MAPPING_SEPARATOR = "=";
+
+    private final List<String> roleAttributeNames;
+    private final Map<String, List<String>> roleMappings;
+
+    public SSORoleMapper(List<String> roleAttributeNames, Map<String, List<String>> roleMappings) {
+        this.roleAttributeNames = Collections.unmodifiableList(new ArrayList<>(roleAttributeNames));
+        Map<String, List<String>> mappings = new HashMap<>();
+        roleMappings.forEach((value, roles) -> mappings.put(value,
+                Collections.unmodifiableList(new ArrayList<>(roles))));
+        this.roleMappings = Collections.unmodifiableMap(mappings);
+    }
+
+    /**
+     * Compiles a role mapper from the specified role attributes and role mapping context parameter values.
+     *
+     * @param roleAttributes the comma separated names of the attributes whose values are roles, may be null
+     * @param roleMapping    the comma separated {@code attributeValue=role} entries, may be null
+     * @return the compiled role mapper
+     */
+    public static SSORoleMapper compile(String roleAttributes, String roleMapping) {
+        List<String> roleAttributeNames = split(roleAttributes)
+                .collect(Collectors.toList());
+
+        Map<String, List<String>> roleMappings = new HashMap<>();
+        split(roleMapping)
+                .filter(entry -> entry.indexOf(MAPPING_SEPARATOR) > 0)
+                .forEach(entry -> {
+                    int separator = entry.indexOf(MAPPING_SEPARATOR);
+                    String value = entry.substring(0, separator).trim();
+                    String role = entry.substring(separator + 1).trim();
+                    if (!role.isEmpty()) {
+                        roleMappings.computeIfAbsent(value, key -> new ArrayList<>()).add(role);
+                    }
+                });
+        return new SSORoleMapper(roleAttributeNames, roleMappings);
+    }
+
+    /**
+     * Returns the names of the attributes whose values are roles.
+     *
+     * @return the names of the attributes whose values are roles
+     */
+    public List<String> getRoleAttributes() {
+        return roleAttributeNames;
+    }
+
+    /**
+     * Returns the container roles of the subject of the specified logged-in session.
+     *
+     * @param loggedInSession the logged-in session
+     * @return the container roles of the subject, without duplicates
+     */
+    public List<String> getRoles(LoggedInSession loggedInSession) {
+        if (roleAttributeNames.isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        Map<String, List<String>> attributes = loggedInSession.getSubjectAttributes();
+        Set<String> roles = new LinkedHashSet<>();
+        roleAttributeNames.stream()
+                .map(attributes::get)
+                .filter(Objects::nonNull)
+                .flatMap(List::stream)
+                .forEach(value -> roles.addAll(Optional.ofNullable(roleMappings.get(value))
+                        .orElse(Collections.singletonList(value))));
+        return new ArrayList<>(roles);
+    }
+
+    private static Stream<String> split(String value) {
+        return Optional.ofNullable(value)
+                .map(list -> Arrays.stream(list.split(SEPARATOR)))
+                .orElse(Stream.empty())
+                .map(String::trim)
+                .filter(item -> !item.isEmpty());
+    }
+}
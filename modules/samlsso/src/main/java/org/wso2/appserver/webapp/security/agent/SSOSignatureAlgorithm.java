@@ -0,0 +1,90 @@
+/*
+ *  Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.wso2.appserver.webapp.security.agent;
+
+import org.apache.xml.security.signature.XMLSignature;
+
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Optional;
+
+/**
+ * This enum defines the signature algorithms with which the service provider signs its SAML 2.0 requests.
+ * <p>
+ * ECDSA with the P-256 curve signs considerably faster than RSA with a 2048 bit key, while the service provider
+ * key pair must be of the key type of the algorithm.
+ *
+ * @since 6.0.0
+ */
+public enum SSOSignatureAlgorithm {
+    RSA_SHA1(XMLSignature.ALGO_ID_SIGNATURE_RSA_SHA1, "SHA1withRSA"),
+    RSA_SHA256(XMLSignature.ALGO_ID_SIGNATURE_RSA_SHA256, "SHA256withRSA"),
+    RSA_SHA512(XMLSignature.ALGO_ID_SIGNATURE_RSA_SHA512, "SHA512withRSA"),
+    ECDSA_SHA256(XMLSignature.ALGO_ID_SIGNATURE_ECDSA_SHA256, "SHA256withECDSA"),
+    ECDSA_SHA512(XMLSignature.ALGO_ID_SIGNATURE_ECDSA_SHA512, "SHA512withECDSA");
+
+    private final String uri;
+    private final String jcaName;
+
+    SSOSignatureAlgorithm(String uri, String jcaName) {
+        this.uri = uri;
+        this.jcaName = jcaName;
+    }
+
+    /**
+     * Returns the XML Signature algorithm identifier, as sent in the SigAlg parameter and SignatureMethod element.
+     *
+     * @return the XML Signature algorithm identifier
+     */
+    public String getURI() {
+        return uri;
+    }
+
+    /**
+     * Returns the Java Cryptography Architecture standard name of the algorithm.
+     *
+     * @return the Java Cryptography Architecture standard name of the algorithm
+     */
+    public String getJCAName() {
+        return jcaName;
+    }
+
+    /**
+     * Returns true if the signature value of the algorithm is the concatenation of the ECDSA integers r and s, as
+     * specified by XML Signature, rather than their DER encoded sequence produced by the JCA, else false.
+     *
+     * @return true if the signature value of the algorithm is the concatenation of r and s, else false
+     */
+    public boolean isECDSA() {
+        return (this == ECDSA_SHA256) || (this == ECDSA_SHA512);
+    }
+
+    /**
+     * Returns the signature algorithm of the specified name, such as {@code rsa-sha256}, ignoring case, or of the
+     * specified XML Signature algorithm identifier.
+     *
+     * @param name the name or identifier of the signature algorithm, may be null
+     * @return the signature algorithm of the specified name, or an empty {@link Optional} if none matches
+     */
+    public static Optional<SSOSignatureAlgorithm> fromName(String name) {
+        return Optional.ofNullable(name)
+                .map(String::trim)
+                .flatMap(value -> Arrays.stream(values())
+                        .filter(algorithm -> algorithm.uri.equals(value) ||
+                                algorithm.name().equals(value.replace('-', '_').toUpperCase(Locale.ENGLISH)))
+                        .findFirst());
+    }
+}
@@ -0,0 +1,356 @@
+/*
+ *  Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.wso2.appserver.webapp.security.agent;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * This class classifies request URIs of a web application context as URIs to be skipped, single-logout (SLO) URIs
+ * or protected URIs.
+ * <p>
+ * The 'skip-uri' rules are compiled once per context, into a hash set of exact URIs, a trie of URI prefixes
+ * (rules ending with {@code /**}), a table of file extensions (rules of the form {@code *.css|*.js|*.png}) and
+ * a list of glob patterns for any other rule containing a wildcard. Rules are matched against the complete
+ * request URI, including the context path, after it has been normalized the way the container normalizes it
+ * before mapping the request, so that path parameters, percent-encoded characters and dot segments cannot make
+ * a protected resource match a rule. A request URI which cannot be normalized is always protected. An instance
+ * of this class is immutable and thread-safe.
+ *
+ * @since 6.0.0
+ */
+public class SSOURIMatcher {
+    private static final String PREFIX_WILDCARD = "/**";
+    private static final String EXTENSION_WILDCARD = "*.";
+    private static final String RULE_ALTERNATIVE_SEPARATOR = "|";
+
+    private final Set<String> exactURIs = new HashSet<>();
+    private final PrefixNode prefixes = new PrefixNode();
+    private final Set<String> extensions = new HashSet<>();
+    private final List<Pattern> globs = new ArrayList<>();
+    private final String sloURLPostfix;
+
+    /**
+     * The type of a request URI, as classified by this matcher.
+     */
+    public enum URIType {
+        SKIP, SLO, PROTECTED
+    }
+
+    /**
+     * Compiles a URI matcher.
+     *
+     * @param skipURIs      the 'skip-uri' rules
+     * @param sloURLPostfix the postfix of single-logout URIs, or null if single-logout is not enabled
+     */
+    public SSOURIMatcher(Collection<String> skipURIs, String sloURLPostfix) {
+        skipURIs.stream()
+                .filter(rule -> (rule != null) && !rule.trim().isEmpty())
+                .map(String::trim)
+                .forEach(this::compileRule);
+        this.sloURLPostfix = sloURLPostfix;
+    }
+
+    private void compileRule(String rule) {
+        if (rule.startsWith(EXTENSION_WILDCARD)) {
+            boolean extensionRule = Arrays.stream(rule.split("\\" + RULE_ALTERNATIVE_SEPARATOR))
+                    .map(String::trim)
+                    .allMatch(alternative -> alternative.startsWith(EXTENSION_WILDCARD) &&
+                            (alternative.length() > EXTENSION_WILDCARD.length()) &&
+                            (alternative.indexOf('*', EXTENSION_WILDCARD.length()) < 0) &&
+                            (alternative.indexOf('/') < 0));
+            if (extensionRule) {
+                Arrays.stream(rule.split("\\" + RULE_ALTERNATIVE_SEPARATOR))
+                        .map(alternative -> alternative.trim().substring(EXTENSION_WILDCARD.length()))
+                        .map(extension -> extension.toLowerCase(Locale.ENGLISH))
+                        .forEach(extensions::add);
+                return;
+            }
+        }
+
+        //  rules are normalized like request URIs, for example to match '/foo//bar' with '/foo/bar'
+        rule = Optional.ofNullable(normalize(rule))
+                .orElse(rule);
+        if (rule.endsWith(PREFIX_WILDCARD) &&
+                (rule.indexOf('*') == rule.length() - PREFIX_WILDCARD.length() + 1)) {
+            //  '/static/**' matches '/static' and any URI under '/static/'
+            String base = rule.substring(0, rule.length() - PREFIX_WILDCARD.length());
+            exactURIs.add(base);
+            prefixes.add(base + "/");
+        } else if (rule.indexOf('*') >= 0) {
+            globs.add(compileGlob(rule));
+        } else {
+            exactURIs.add(rule);
+        }
+    }
+
+    /**
+     * Classifies the specified request URI in a single pass over the compiled rules.
+     * <p>
+     * File extension rules only apply to requests which are not mapped to a servlet by a path prefix, that is, to
+     * requests without any path info, as a path mapped servlet may serve any path under its prefix.
+     *
+     * @param requestURI the request URI
+     * @param pathInfo   the path info of the request, which is null unless the request is mapped by a path prefix
+     * @return the type of the request URI
+     */
+    public URIType classify(String requestURI, String pathInfo) {
+        String path = normalize(requestURI);
+        if (path == null) {
+            return URIType.PROTECTED;
+        }
+        if (isURIToSkip(path, pathInfo == null)) {
+            return URIType.SKIP;
+        }
+        if ((sloURLPostfix != null) && path.endsWith(sloURLPostfix)) {
+            return URIType.SLO;
+        }
+        return URIType.PROTECTED;
+    }
+
+    private boolean isURIToSkip(String path, boolean matchExtension) {
+        if (exactURIs.contains(path) || prefixes.matches(path)) {
+            return true;
+        }
+        if (matchExtension && !extensions.isEmpty()) {
+            String extension = getExtension(path);
+            if ((extension != null) && extensions.contains(extension)) {
+                return true;
+            }
+        }
+        for (Pattern glob : globs) {
+            if (glob.matcher(path).matches()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Normalizes the specified request URI, by removing the path parameters of each segment, decoding the
+     * percent-encoded UTF-8 characters and removing empty and dot segments, in that order.
+     * <p>
+     * Returns null if the request URI cannot be normalized, that is, if it contains an invalid or non UTF-8
+     * percent-encoding, an encoded '/', a '\' or a NUL character, or a '..' segment above the root.
+     *
+     * @param requestURI the request URI
+     * @return the normalized request URI, or null if it cannot be normalized
+     */
+    static String normalize(String requestURI) {
+        if (requestURI == null) {
+            return null;
+        }
+        if (!requiresNormalization(requestURI)) {
+            return requestURI;
+        }
+
+        StringBuilder withoutParameters = new StringBuilder(requestURI.length());
+        int index = 0;
+        while (index < requestURI.length()) {
+            int parametersStart = requestURI.indexOf(';', index);
+            if (parametersStart < 0) {
+                withoutParameters.append(requestURI, index, requestURI.length());
+                break;
+            }
+            withoutParameters.append(requestURI, index, parametersStart);
+            int segmentEnd = requestURI.indexOf('/', parametersStart);
+            index = (segmentEnd < 0) ? requestURI.length() : segmentEnd;
+        }
+
+        String decoded = decode(withoutParameters.toString());
+        if ((decoded == null) || (decoded.indexOf('\\') >= 0) || (decoded.indexOf('\0') >= 0)) {
+            return null;
+        }
+
+        Deque<String> segments = new ArrayDeque<>();
+        String[] parts = decoded.split("/", -1);
+        for (String part : parts) {
+            if ("..".equals(part)) {
+                if (segments.pollLast() == null) {
+                    return null;
+                }
+            } else if (!part.isEmpty() && !".".equals(part)) {
+                segments.addLast(part);
+            }
+        }
+        String last = parts[parts.length - 1];
+        boolean trailingSlash = last.isEmpty() || ".".equals(last) || "..".equals(last);
+
+        StringBuilder normalized = new StringBuilder(decoded.length());
+        for (String segment : segments) {
+            if ((normalized.length() > 0) || decoded.startsWith("/")) {
+                normalized.append('/');
+            }
+            normalized.append(segment);
+        }
+        if (trailingSlash || (normalized.length() == 0)) {
+            normalized.append('/');
+        }
+        return normalized.toString();
+    }
+
+    private static boolean requiresNormalization(String requestURI) {
+        return (requestURI.indexOf(';') >= 0) || (requestURI.indexOf('%') >= 0) || (requestURI.indexOf('\\') >= 0) ||
+                (requestURI.indexOf('\0') >= 0) || requestURI.contains("//") || requestURI.contains("/.") ||
+                requestURI.startsWith(".");
+    }
+
+    /**
+     * Decodes the percent-encoded UTF-8 characters of the specified path, or returns null if the path contains an
+     * invalid or non UTF-8 percent-encoding or an encoded '/'.
+     */
+    private static String decode(String path) {
+        if (path.indexOf('%') < 0) {
+            return path;
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(path.length());
+        byte[] raw = path.getBytes(StandardCharsets.UTF_8);
+        for (int index = 0; index < raw.length; index++) {
+            if (raw[index] != '%') {
+                bytes.write(raw[index]);
+                continue;
+            }
+            int high = (index + 2 < raw.length) ? Character.digit(raw[index + 1], 16) : -1;
+            int low = (high >= 0) ? Character.digit(raw[index + 2], 16) : -1;
+            if ((low < 0) || (((high << 4) | low) == '/')) {
+                return null;
+            }
+            bytes.write((high << 4) | low);
+            index += 2;
+        }
+        try {
+            return StandardCharsets.UTF_8.newDecoder()
+                    .decode(ByteBuffer.wrap(bytes.toByteArray()))
+                    .toString();
+        } catch (CharacterCodingException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Returns the lower case file extension of the last path segment of the specified normalized URI, or null if
+     * the last segment has no extension.
+     *
+     * @param path the normalized request URI
+     * @return the lower case file extension of the last path segment of the specified URI
+     */
+    private static String getExtension(String path) {
+        int end = path.length();
+        for (int index = end - 1; index >= 0; index--) {
+            char character = path.charAt(index);
+            if (character == '/') {
+                return null;
+            } else if (character == '.') {
+                return (index == end - 1) ? null : path.substring(index + 1, end).toLowerCase(Locale.ENGLISH);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Compiles a glob pattern, in which {@code **} matches any sequence of characters and {@code *} matches any
+     * sequence of characters within a single path segment.
+     *
+     * @param glob the glob pattern
+     * @return the compiled pattern
+     */
+    private static Pattern compileGlob(String glob) {
+        StringBuilder regex = new StringBuilder();
+        int literalStart = 0;
+        for (int index = 0; index < glob.length(); index++) {
+            if (glob.charAt(index) == '*') {
+                if (index > literalStart) {
+                    regex.append(Pattern.quote(glob.substring(literalStart, index)));
+                }
+                if ((index + 1 < glob.length()) && (glob.charAt(index + 1) == '*')) {
+                    regex.append(".*");
+                    index++;
+                } else {
+                    regex.append("[^/]*");
+                }
+                literalStart = index + 1;
+            }
+        }
+        if (literalStart < glob.length()) {
+            regex.append(Pattern.quote(glob.substring(literalStart)));
+        }
+        return Pattern.compile(regex.toString());
+    }
+
+    /**
+     * A node of a character trie of URI prefixes, with children held in parallel sorted arrays.
+     */
+    private static class PrefixNode {
+        private char[] keys = new char[0];
+        private PrefixNode[] children = new PrefixNode[0];
+        private boolean terminal;
+
+        private void add(String prefix) {
+            PrefixNode node = this;
+            for (int index = 0; index < prefix.length(); index++) {
+                node = node.getOrAddChild(prefix.charAt(index));
+            }
+            node.terminal = true;
+        }
+
+        private PrefixNode getOrAddChild(char key) {
+            int position = Arrays.binarySearch(keys, key);
+            if (position >= 0) {
+                return children[position];
+            }
+            int insertion = -(position + 1);
+            char[] newKeys = new char[keys.length + 1];
+            PrefixNode[] newChildren = new PrefixNode[children.length + 1];
+            System.arraycopy(keys, 0, newKeys, 0, insertion);
+            System.arraycopy(children, 0, newChildren, 0, insertion);
+            newKeys[insertion] = key;
+            newChildren[insertion] = new PrefixNode();
+            System.arraycopy(keys, insertion, newKeys, insertion + 1, keys.length - insertion);
+            System.arraycopy(children, insertion, newChildren, insertion + 1, children.length - insertion);
+            keys = newKeys;
+            children = newChildren;
+            return newChildren[insertion];
+        }
+
+        private boolean matches(String uri) {
+            PrefixNode node = this;
+            for (int index = 0; index < uri.length(); index++) {
+                if (node.terminal) {
+                    return true;
+                }
+                int position = Arrays.binarySearch(node.keys, uri.charAt(index));
+                if (position < 0) {
+                    return false;
+                }
+                node = node.children[position];
+            }
+            return node.terminal;
+        }
+    }
+}
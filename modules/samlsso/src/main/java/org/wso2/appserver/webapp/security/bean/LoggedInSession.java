@@ -15,19 +15,92 @@
  */
 package org.wso2.appserver.webapp.security.bean;
 
+import com.google.gson.Gson;
+import org.wso2.appserver.webapp.security.Constants;
+
+import java.io.Serializable;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import javax.servlet.http.HttpSession;
+
 /**
  * A Java bean class which represents a user logged-in session.
+ * <p>
+ * An instance of this class is immutable and is held in the HTTP session under the
+ * {@link Constants#LOGGED_IN_SESSION} attribute. Web applications may read the authenticated subject, the
+ * identity provider session index and the subject attributes through {@link #getLoggedInSession(HttpSession)}.
  *
  * @since 6.0.0
  */
-public class LoggedInSession {
-    private SAML2SSO saml2SSO;
+public class LoggedInSession implements Serializable {
+    private static final long serialVersionUID = 3024573941867152087L;
+    private static final Gson GSON = new Gson();
+
+    private final SAML2SSO saml2SSO;
+
+    public LoggedInSession(SAML2SSO saml2SSO) {
+        this.saml2SSO = saml2SSO;
+    }
+
+    /**
+     * Returns the logged-in session held in the specified HTTP session.
+     *
+     * @param session the HTTP session
+     * @return the logged-in session, or an empty {@link Optional} if the session is not authenticated
+     */
+    public static Optional<LoggedInSession> getLoggedInSession(HttpSession session) {
+        return Optional.ofNullable(session)
+                .map(httpSession -> httpSession.getAttribute(Constants.LOGGED_IN_SESSION))
+                .filter(LoggedInSession.class::isInstance)
+                .map(LoggedInSession.class::cast);
+    }
 
     public SAML2SSO getSAML2SSO() {
         return saml2SSO;
     }
 
-    public void setSAML2SSO(SAML2SSO saml2SSO) {
-        this.saml2SSO = saml2SSO;
+    public String getSubjectId() {
+        return saml2SSO.getSubjectId();
+    }
+
+    public String getSessionIndex() {
+        return saml2SSO.getSessionIndex();
+    }
+
+    public Map<String, List<String>> getSubjectAttributes() {
+        return saml2SSO.getSubjectAttributes();
+    }
+
+    /**
+     * Returns the JSON representation of this logged-in session, which was formerly held in the HTTP session.
+     * <p>
+     * This is a compatibility view for web applications which parse the session attribute as JSON. It is computed
+     * on each call and is not retained, as it embeds the complete SAML 2.0 Response and Assertion.
+     *
+     * @return the JSON representation of this logged-in session
+     */
+    public String toJSON() {
+        Map<String, Object> saml2SSOView = new LinkedHashMap<>();
+        saml2SSOView.put("subjectId", saml2SSO.getSubjectId());
+        saml2SSOView.put("responseString", saml2SSO.getResponseString());
+        saml2SSOView.put("assertionString", saml2SSO.getAssertionString());
+        saml2SSOView.put("sessionIndex", saml2SSO.getSessionIndex());
+        saml2SSOView.put("subjectAttributes", saml2SSO.getSubjectAttributes());
+        return GSON.toJson(Collections.singletonMap("saml2SSO", saml2SSOView));
+    }
+
+    /**
+     * Returns a short description of this logged-in session, for logging. The JSON representation is only
+     * returned by {@link #toJSON()}.
+     *
+     * @return a short description of this logged-in session
+     */
+    @Override
+    public String toString() {
+        return "LoggedInSession[subjectId=" + saml2SSO.getSubjectId() + ", sessionIndex=" +
+                saml2SSO.getSessionIndex() + "]";
     }
 }
@@ -0,0 +1,172 @@
+/*
+ *  Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.wso2.appserver.webapp.security.bean;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Represents an XML fragment of a received SAML 2.0 message, retained in a user logged-in session in its raw,
+ * UTF-8 encoded form.
+ * <p>
+ * The fragment is a slice of a possibly DEFLATE compressed byte array, which may be shared by several fragments,
+ * such as a SAML 2.0 Response and its Assertion. The fragment is only decoded into a {@code String} when
+ * requested. The namespace declarations which a sliced element inherits from its enclosing elements are inserted
+ * into its start tag when decoded, so that the decoded fragment is a well-formed XML document on its own.
+ * An instance of this class is immutable.
+ *
+ * @since 6.0.0
+ */
+public class RetainedXML implements Serializable {
+    private static final long serialVersionUID = -2358412390641782634L;
+
+    private final byte[] content;
+    private final boolean compressed;
+    private final int inflatedLength;
+    private final int offset;
+    private final int length;
+    //  the offset from the start of the fragment, at which the namespace declarations are to be inserted
+    private final int insertionOffset;
+    private final String namespaceDeclarations;
+
+    private RetainedXML(byte[] content, boolean compressed, int inflatedLength, int offset, int length,
+                        int insertionOffset, String namespaceDeclarations) {
+        this.content = content;
+        this.compressed = compressed;
+        this.inflatedLength = inflatedLength;
+        this.offset = offset;
+        this.length = length;
+        this.insertionOffset = insertionOffset;
+        this.namespaceDeclarations = namespaceDeclarations;
+    }
+
+    /**
+     * Retains the specified UTF-8 encoded XML content as it is. The array must not be modified afterwards.
+     *
+     * @param xml the UTF-8 encoded XML content
+     * @return the retained XML content
+     */
+    public static RetainedXML of(byte[] xml) {
+        return new RetainedXML(xml, false, xml.length, 0, xml.length, 0, "");
+    }
+
+    /**
+     * Retains the specified UTF-8 encoded XML content, DEFLATE compressed.
+     *
+     * @param xml the UTF-8 encoded XML content
+     * @return the retained, compressed XML content
+     */
+    public static RetainedXML compress(byte[] xml) {
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED, true);
+        try {
+            deflater.setInput(xml);
+            deflater.finish();
+            ByteArrayOutputStream compressed = new ByteArrayOutputStream(Math.max(64, xml.length / 4));
+            byte[] buffer = new byte[4096];
+            while (!deflater.finished()) {
+                compressed.write(buffer, 0, deflater.deflate(buffer));
+            }
+            return new RetainedXML(compressed.toByteArray(), true, xml.length, 0, xml.length, 0, "");
+        } finally {
+            deflater.end();
+        }
+    }
+
+    /**
+     * Returns a fragment of this XML content, sharing its underlying content.
+     *
+     * @param offset                the offset of the fragment within this content
+     * @param length                the length of the fragment
+     * @param insertionOffset       the offset from the start of the fragment at which the specified namespace
+     *                              declarations are to be inserted, which is the end of the start tag's name
+     * @param namespaceDeclarations the namespace declarations inherited by the fragment, may be empty
+     * @return the fragment of this XML content
+     */
+    public RetainedXML slice(int offset, int length, int insertionOffset, String namespaceDeclarations) {
+        if ((offset < 0) || (length < 0) || (offset + length > this.length) || (insertionOffset < 0) ||
+                (insertionOffset > length)) {
+            throw new IndexOutOfBoundsException("Invalid XML fragment bounds");
+        }
+        return new RetainedXML(content, compressed, inflatedLength, this.offset + offset, length, insertionOffset,
+                (namespaceDeclarations == null) ? "" : namespaceDeclarations);
+    }
+
+    /**
+     * Returns the number of bytes held by the underlying content, which may be shared with other fragments.
+     *
+     * @return the number of bytes held by the underlying content
+     */
+    public int getRetainedSize() {
+        return content.length;
+    }
+
+    /**
+     * Returns true if this and the specified XML content are slices of the same underlying content, else false.
+     *
+     * @param other the XML content to be compared, may be null
+     * @return true if this and the specified XML content are slices of the same underlying content, else false
+     */
+    public boolean sharesContentWith(RetainedXML other) {
+        return (other != null) && (content == other.content);
+    }
+
+    /**
+     * Decodes the retained XML content into a {@code String}.
+     *
+     * @return the retained XML content
+     */
+    public String getString() {
+        byte[] xml = compressed ? inflate() : content;
+        if (namespaceDeclarations.isEmpty()) {
+            return new String(xml, offset, length, StandardCharsets.UTF_8);
+        }
+        return new String(xml, offset, insertionOffset, StandardCharsets.UTF_8) + namespaceDeclarations +
+                new String(xml, offset + insertionOffset, length - insertionOffset, StandardCharsets.UTF_8);
+    }
+
+    private byte[] inflate() {
+        Inflater inflater = new Inflater(true);
+        try {
+            inflater.setInput(content);
+            byte[] xml = new byte[inflatedLength];
+            int inflated = 0;
+            while ((inflated < inflatedLength) && !inflater.finished()) {
+                int count = inflater.inflate(xml, inflated, inflatedLength - inflated);
+                if ((count == 0) && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                inflated += count;
+            }
+            if (inflated != inflatedLength) {
+                throw new IllegalStateException("Retained XML content is corrupt");
+            }
+            return xml;
+        } catch (DataFormatException e) {
+            throw new IllegalStateException("Retained XML content is corrupt", e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return getString();
+    }
+}
@@ -15,58 +15,75 @@
  */
 package org.wso2.appserver.webapp.security.bean;
 
+import java.io.Serializable;
 import java.util.List;
 import java.util.Map;
 
 /**
  * Represents the SAML 2.0 specific single-sign-on (SSO) details to be held
  * in a user logged-in session.
+ * <p>
+ * The received SAML 2.0 Response and Assertion are retained as configured for the context, in their raw form,
+ * and are only decoded when requested. An instance of this class is immutable.
  */
-public class SAML2SSO {
+public class SAML2SSO implements Serializable {
+    private static final long serialVersionUID = -6286420541632749427L;
 
-    private String subjectId;
-    private String responseString;
-    private String assertionString;
-    private String sessionIndex;
-    private Map<String, List<String>> subjectAttributes;
+    private final String subjectId;
+    private final RetainedXML response;
+    private final RetainedXML assertion;
+    private final String sessionIndex;
+    private final SubjectAttributes subjectAttributes;
 
-    public String getSubjectId() {
-        return subjectId;
-    }
-
-    public void setSubjectId(String subjectId) {
+    public SAML2SSO(String subjectId, String sessionIndex, Map<String, List<String>> subjectAttributes,
+                    RetainedXML response, RetainedXML assertion) {
         this.subjectId = subjectId;
+        this.sessionIndex = sessionIndex;
+        this.response = response;
+        this.assertion = assertion;
+        this.subjectAttributes = SubjectAttributes.copyOf(subjectAttributes);
     }
 
-    public Map getSubjectAttributes() {
-        return subjectAttributes;
+    public String getSubjectId() {
+        return subjectId;
     }
 
-    public void setSubjectAttributes(Map<String, List<String>> samlSSOAttributes) {
-        this.subjectAttributes = samlSSOAttributes;
+    public Map<String, List<String>> getSubjectAttributes() {
+        return subjectAttributes;
     }
 
     public String getSessionIndex() {
         return sessionIndex;
     }
 
-    public void setSessionIndex(String sessionIndex) {
-        this.sessionIndex = sessionIndex;
-    }
-
+    /**
+     * Returns the received SAML 2.0 Response, decoded anew on each call.
+     *
+     * @return the received SAML 2.0 Response, or null if not retained
+     */
     public String getResponseString() {
-        return responseString;
+        return (response == null) ? null : response.getString();
     }
 
-    public void setResponseString(String responseString) {
-        this.responseString = responseString;
-    }
-
-    public void setAssertionString(String samlAssertionString) {
-        this.assertionString = samlAssertionString;
+    /**
+     * Returns the received SAML 2.0 Assertion, decoded anew on each call.
+     *
+     * @return the received SAML 2.0 Assertion, or null if not retained
+     */
+    public String getAssertionString() {
+        return (assertion == null) ? null : assertion.getString();
     }
 
-    public String getAssertionString() {
-        return assertionString;
+    /**
+     * Returns the number of bytes held to retain the received SAML 2.0 Response and Assertion.
+     *
+     * @return the number of bytes held to retain the received SAML 2.0 Response and Assertion
+     */
+    public int getRetainedMessageSize() {
+        int responseSize = (response == null) ? 0 : response.getRetainedSize();
+        if ((assertion == null) || assertion.sharesContentWith(response)) {
+            return responseSize;
+        }
+        return responseSize + assertion.getRetainedSize();
     }
 }
@@ -0,0 +1,237 @@
+/*
+ *  Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.wso2.appserver.webapp.security.bean;
+
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.ObjectInputStream;
+import java.io.Serializable;
+import java.util.AbstractList;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.RandomAccess;
+import java.util.Set;
+
+/**
+ * Represents the SAML 2.0 attributes of an authenticated subject, as an immutable map of attribute names to their
+ * values, held in a compact form in the user logged-in session.
+ * <p>
+ * The attribute names are held in ascending order and interned, as the same names recur in every session, and
+ * the values of all attributes are held in a single array. The value lists are views over that array, which
+ * are only created when an attribute is looked up.
+ *
+ * @since 6.0.0
+ */
+public final class SubjectAttributes extends AbstractMap<String, List<String>> implements Serializable {
+    private static final long serialVersionUID = 6154392702658837150L;
+
+    private static final SubjectAttributes EMPTY = new SubjectAttributes(new String[0], new int[] { 0 },
+            new String[0]);
+
+    private final String[] names;
+    //  the values of the attribute at an index are held from its offset up to the offset of the next index
+    private final int[] offsets;
+    private final String[] values;
+
+    private SubjectAttributes(String[] names, int[] offsets, String[] values) {
+        this.names = names;
+        this.offsets = offsets;
+        this.values = values;
+    }
+
+    /**
+     * Returns the subject attributes without any attribute.
+     *
+     * @return the subject attributes without any attribute
+     */
+    public static SubjectAttributes empty() {
+        return EMPTY;
+    }
+
+    /**
+     * Returns the subject attributes holding a copy of the specified attributes.
+     *
+     * @param attributes the attribute names mapped to their values, may be null
+     * @return the subject attributes holding a copy of the specified attributes
+     */
+    public static SubjectAttributes copyOf(Map<String, ? extends Collection<String>> attributes) {
+        if (attributes instanceof SubjectAttributes) {
+            return (SubjectAttributes) attributes;
+        }
+        Builder builder = new Builder();
+        if (attributes != null) {
+            attributes.forEach((name, attributeValues) -> {
+                builder.add(name);
+                if (attributeValues != null) {
+                    attributeValues.forEach(value -> builder.add(name, value));
+                }
+            });
+        }
+        return builder.build();
+    }
+
+    @Override
+    public List<String> get(Object name) {
+        int index = indexOf(name);
+        return (index < 0) ? null : new ValueList(offsets[index], offsets[index + 1]);
+    }
+
+    @Override
+    public boolean containsKey(Object name) {
+        return indexOf(name) >= 0;
+    }
+
+    @Override
+    public int size() {
+        return names.length;
+    }
+
+    @Override
+    public Set<Entry<String, List<String>>> entrySet() {
+        return new AbstractSet<Entry<String, List<String>>>() {
+            @Override
+            public Iterator<Entry<String, List<String>>> iterator() {
+                return new Iterator<Entry<String, List<String>>>() {
+                    private int index = 0;
+
+                    @Override
+                    public boolean hasNext() {
+                        return index < names.length;
+                    }
+
+                    @Override
+                    public Entry<String, List<String>> next() {
+                        if (!hasNext()) {
+                            throw new NoSuchElementException();
+                        }
+                        Entry<String, List<String>> entry = new SimpleImmutableEntry<>(names[index],
+                                new ValueList(offsets[index], offsets[index + 1]));
+                        index++;
+                        return entry;
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return names.length;
+            }
+        };
+    }
+
+    private int indexOf(Object name) {
+        return (name instanceof String) ? Arrays.binarySearch(names, name) : -1;
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        if ((names == null) || (offsets == null) || (values == null) || (offsets.length != names.length + 1) ||
+                (offsets[names.length] != values.length)) {
+            throw new InvalidObjectException("Inconsistent subject attributes");
+        }
+        for (int index = 0; index < names.length; index++) {
+            names[index] = names[index].intern();
+        }
+    }
+
+    /**
+     * An unmodifiable view of the values of an attribute.
+     */
+    private class ValueList extends AbstractList<String> implements RandomAccess {
+        private final int from;
+        private final int to;
+
+        private ValueList(int from, int to) {
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        public String get(int index) {
+            if ((index < 0) || (index >= to - from)) {
+                throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + (to - from));
+            }
+            return values[from + index];
+        }
+
+        @Override
+        public int size() {
+            return to - from;
+        }
+    }
+
+    /**
+     * A builder of subject attributes, which merges the values of an attribute added more than once, in the order
+     * added. A builder is not thread-safe.
+     */
+    public static class Builder {
+        private final Map<String, List<String>> attributes = new LinkedHashMap<>();
+
+        /**
+         * Adds the specified attribute, without any value, if not already added.
+         *
+         * @param name the attribute name
+         * @return this builder
+         */
+        public Builder add(String name) {
+            attributes.computeIfAbsent(name.intern(), key -> new ArrayList<>());
+            return this;
+        }
+
+        /**
+         * Adds a value of the specified attribute.
+         *
+         * @param name  the attribute name
+         * @param value the attribute value
+         * @return this builder
+         */
+        public Builder add(String name, String value) {
+            attributes.computeIfAbsent(name.intern(), key -> new ArrayList<>()).add(value);
+            return this;
+        }
+
+        /**
+         * Builds the subject attributes.
+         *
+         * @return the subject attributes
+         */
+        public SubjectAttributes build() {
+            if (attributes.isEmpty()) {
+                return EMPTY;
+            }
+            String[] names = attributes.keySet().toArray(new String[attributes.size()]);
+            Arrays.sort(names);
+            int[] offsets = new int[names.length + 1];
+            String[] values = new String[attributes.values().stream().mapToInt(List::size).sum()];
+            for (int index = 0; index < names.length; index++) {
+                List<String> attributeValues = attributes.get(names[index]);
+                for (int value = 0; value < attributeValues.size(); value++) {
+                    values[offsets[index] + value] = attributeValues.get(value);
+                }
+                offsets[index + 1] = offsets[index] + attributeValues.size();
+            }
+            return new SubjectAttributes(names, offsets, values);
+        }
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ *  Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.wso2.appserver.webapp.security.saml;
+
+import org.opensaml.saml.saml2.core.Assertion;
+import org.opensaml.saml.saml2.core.EncryptedAssertion;
+import org.opensaml.saml.saml2.encryption.Decrypter;
+import org.opensaml.saml.saml2.encryption.EncryptedElementTypeEncryptedKeyResolver;
+import org.opensaml.security.x509.X509Credential;
+import org.opensaml.xmlsec.encryption.support.ChainingEncryptedKeyResolver;
+import org.opensaml.xmlsec.encryption.support.DecryptionException;
+import org.opensaml.xmlsec.encryption.support.EncryptedKeyResolver;
+import org.opensaml.xmlsec.encryption.support.InlineEncryptedKeyResolver;
+import org.opensaml.xmlsec.keyinfo.KeyInfoCredentialResolver;
+import org.opensaml.xmlsec.keyinfo.impl.StaticKeyInfoCredentialResolver;
+import org.wso2.appserver.webapp.security.utils.exception.SSOException;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * This class decrypts the SAML 2.0 Encrypted Assertions received, using the service provider private key.
+ * <p>
+ * The data encryption key, transported in an EncryptedKey within the EncryptedData or alongside it in the
+ * EncryptedAssertion, is decrypted with the service provider key and then decrypts the Assertion, in a single
+ * pass. The key transport (such as RSA-OAEP) and data encryption (such as AES-GCM or AES-CBC) algorithms are
+ * those declared by the message. The key encryption key resolver and the encrypted key resolver are built once,
+ * per service provider credential, and each thread reuses its own decrypter. The decrypters of a valve are held
+ * by {@link SAML2AssertionDecrypters}, one per credential. An instance of this class is thread-safe.
+ *
+ * @since 6.0.0
+ */
+public class SAML2AssertionDecrypter {
+    private final AtomicLong decryptions = new AtomicLong();
+    private final AtomicLong decryptionTimeInNanos = new AtomicLong();
+
+    private final ThreadLocal<Decrypter> decrypters;
+
+    /**
+     * Creates an Assertion decrypter.
+     *
+     * @param credential the service provider credential holding the private key
+     */
+    public SAML2AssertionDecrypter(X509Credential credential) {
+        KeyInfoCredentialResolver keyEncryptionKeyResolver = new StaticKeyInfoCredentialResolver(credential);
+        EncryptedKeyResolver encryptedKeyResolver = new ChainingEncryptedKeyResolver(Arrays.asList(
+                new InlineEncryptedKeyResolver(), new EncryptedElementTypeEncryptedKeyResolver()));
+        decrypters = ThreadLocal.withInitial(() -> {
+            Decrypter decrypter = new Decrypter(null, keyEncryptionKeyResolver, encryptedKeyResolver);
+            //  the Assertion becomes the root of a new document, so that its signature references resolve
+            decrypter.setRootInNewDocument(true);
+            return decrypter;
+        });
+    }
+
+    /**
+     * Decrypts the specified SAML 2.0 Encrypted Assertion.
+     *
+     * @param encryptedAssertion the SAML 2.0 Encrypted Assertion
+     * @return the decrypted SAML 2.0 Assertion
+     * @throws SSOException if the Assertion cannot be decrypted
+     */
+    public Assertion decrypt(EncryptedAssertion encryptedAssertion) throws SSOException {
+        long start = System.nanoTime();
+        try {
+            return decrypters.get().decrypt(encryptedAssertion);
+        } catch (DecryptionException e) {
+            throw new SSOException("Unable to decrypt the SAML 2.0 Assertion", e);
+        } finally {
+            decryptions.incrementAndGet();
+            decryptionTimeInNanos.addAndGet(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Returns the number of Assertions decrypted or failed to decrypt.
+     *
+     * @return the number of Assertions decrypted or failed to decrypt
+     */
+    public long getDecryptionCount() {
+        return decryptions.get();
+    }
+
+    /**
+     * Returns the total time in nanoseconds spent decrypting Assertions.
+     *
+     * @return the total time in nanoseconds spent decrypting Assertions
+     */
+    public long getDecryptionTimeInNanos() {
+        return decryptionTimeInNanos.get();
+    }
+}
@@ -0,0 +1,70 @@
+/*
+ *  Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.wso2.appserver.webapp.security.saml;
+
+import org.opensaml.security.x509.X509Credential;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * This class holds the SAML 2.0 Assertion decrypters of a single-sign-on (SSO) valve, one per service provider
+ * credential.
+ * <p>
+ * A decrypter is built once for each credential, on its first use, and is shared by the contexts which decrypt with
+ * the same credential, while a decrypter is never shared by distinct credentials. The decryption metrics are held by
+ * the decrypters of an instance, hence start from zero with each instance. An instance of this class is
+ * thread-safe.
+ *
+ * @since 6.0.0
+ */
+public class SAML2AssertionDecrypters {
+    private final Map<X509Credential, SAML2AssertionDecrypter> decrypters = new ConcurrentHashMap<>();
+
+    /**
+     * Returns the Assertion decrypter of the specified service provider credential, building it on first use.
+     *
+     * @param credential the service provider credential holding the private key
+     * @return the Assertion decrypter of the credential
+     */
+    public SAML2AssertionDecrypter getDecrypter(X509Credential credential) {
+        return decrypters.computeIfAbsent(credential, SAML2AssertionDecrypter::new);
+    }
+
+    /**
+     * Returns the number of Assertions decrypted or failed to decrypt, by all decrypters of this instance.
+     *
+     * @return the number of Assertions decrypted or failed to decrypt
+     */
+    public long getDecryptionCount() {
+        return decrypters.values()
+                .stream()
+                .mapToLong(SAML2AssertionDecrypter::getDecryptionCount)
+                .sum();
+    }
+
+    /**
+     * Returns the total time in milliseconds spent decrypting Assertions, by all decrypters of this instance.
+     *
+     * @return the total time in milliseconds spent decrypting Assertions
+     */
+    public long getDecryptionTime() {
+        return decrypters.values()
+                .stream()
+                .mapToLong(SAML2AssertionDecrypter::getDecryptionTimeInNanos)
+                .sum() / 1000000;
+    }
+}
@@ -0,0 +1,166 @@
+/*
+ *  Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.wso2.appserver.webapp.security.saml;
+
+import org.joda.time.DateTime;
+import org.joda.time.chrono.ISOChronology;
+import org.joda.time.format.DateTimeFormatter;
+import org.joda.time.format.ISODateTimeFormat;
+import org.opensaml.saml.saml2.core.AuthnRequest;
+import org.wso2.appserver.webapp.security.utils.SSOUtils;
+import org.wso2.appserver.webapp.security.utils.exception.SSOException;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Optional;
+
+/**
+ * This class represents the precompiled, serialized SAML 2.0 Authentication Requests (AuthnRequest) of a context,
+ * into which the per request ID and IssueInstant are spliced, rather than building and marshalling an OpenSAML
+ * object graph per request.
+ * <p>
+ * Apart from the ID, IssueInstant, ForceAuthn and IsPassive attributes, the Authentication Request of a context
+ * does not vary between requests. Hence, a template is compiled for each combination of the ForceAuthn and
+ * IsPassive flags, by serializing a prototype request carrying placeholder ID and IssueInstant values through the
+ * object graph path, and splitting the result at the placeholders. Each template is verified against a request
+ * serialized through the object graph path, so that a rendered request is byte-identical to it. An instance of
+ * this class is immutable and thread-safe.
+ *
+ * @since 6.0.0
+ */
+public class SAML2AuthnRequestTemplate {
+    //  the placeholder values, which cannot be produced by SSOUtils.createID() nor occur in an issue instant
+    private static final String PLACEHOLDER_ID = "zzzzzzzzzzzzzzzzzzzzzzzzzzzzzzzzzzzzzzzz";
+    private static final DateTime PLACEHOLDER_ISSUE_INSTANT = new DateTime(0L, ISOChronology.getInstanceUTC());
+    //  the SAML 2.0 dateTime format, as used by OpenSAML when marshalling the IssueInstant attribute
+    private static final DateTimeFormatter ISSUE_INSTANT_FORMATTER =
+            ISODateTimeFormat.dateTime().withChronology(ISOChronology.getInstanceUTC());
+
+    //  indexed by the ForceAuthn and IsPassive flags, as in (forceAuthn ? 2 : 0) + (passive ? 1 : 0)
+    private final Segments[] templates;
+
+    private SAML2AuthnRequestTemplate(Segments[] templates) {
+        this.templates = templates;
+    }
+
+    /**
+     * Builds an Authentication Request of a context, identical for equal arguments.
+     */
+    @FunctionalInterface
+    public interface AuthnRequestPrototype {
+        AuthnRequest build(String id, DateTime issueInstant, boolean forceAuthn, boolean passive);
+    }
+
+    /**
+     * Compiles the templates of the Authentication Requests built by the specified prototype.
+     *
+     * @param prototype the prototype which builds the Authentication Requests of a context
+     * @return the compiled templates, or an empty {@link Optional} if the serialized requests cannot be templated
+     * @throws SSOException if an error occurs when serializing a prototype request
+     */
+    public static Optional<SAML2AuthnRequestTemplate> compile(AuthnRequestPrototype prototype) throws SSOException {
+        Segments[] templates = new Segments[4];
+        for (int index = 0; index < templates.length; index++) {
+            boolean forceAuthn = (index & 2) != 0;
+            boolean passive = (index & 1) != 0;
+            byte[] serialized = SSOUtils.serializeRequestMessage(
+                    prototype.build(PLACEHOLDER_ID, PLACEHOLDER_ISSUE_INSTANT, forceAuthn, passive));
+            Optional<Segments> segments = Segments.split(serialized);
+            if (!segments.isPresent()) {
+                return Optional.empty();
+            }
+
+            //  verifies the template against the object graph path, with values unlike the placeholders
+            String id = SSOUtils.createID();
+            DateTime issueInstant = new DateTime();
+            byte[] expected = SSOUtils.serializeRequestMessage(prototype.build(id, issueInstant, forceAuthn, passive));
+            if (!Arrays.equals(segments.get().render(id, issueInstant), expected)) {
+                return Optional.empty();
+            }
+            templates[index] = segments.get();
+        }
+        return Optional.of(new SAML2AuthnRequestTemplate(templates));
+    }
+
+    /**
+     * Renders the serialized Authentication Request with the specified values.
+     *
+     * @param id           the ID of the request, as created by {@link SSOUtils#createID()}
+     * @param issueInstant the IssueInstant of the request
+     * @param forceAuthn   the ForceAuthn flag of the request
+     * @param passive      the IsPassive flag of the request
+     * @return the UTF-8 encoded, serialized Authentication Request
+     */
+    public byte[] render(String id, DateTime issueInstant, boolean forceAuthn, boolean passive) {
+        return templates[(forceAuthn ? 2 : 0) + (passive ? 1 : 0)].render(id, issueInstant);
+    }
+
+    /**
+     * A serialized request, split at its ID and IssueInstant attribute values.
+     */
+    private static class Segments {
+        private final byte[] prefix;
+        private final byte[] infix;
+        private final byte[] suffix;
+        //  true if the ID attribute precedes the IssueInstant attribute, else false
+        private final boolean idFirst;
+
+        private Segments(byte[] prefix, byte[] infix, byte[] suffix, boolean idFirst) {
+            this.prefix = prefix;
+            this.infix = infix;
+            this.suffix = suffix;
+            this.idFirst = idFirst;
+        }
+
+        private static Optional<Segments> split(byte[] serialized) {
+            //  the placeholders consist of ASCII characters, hence are located by their single byte encoding
+            String content = new String(serialized, StandardCharsets.ISO_8859_1);
+            String id = "\"" + PLACEHOLDER_ID + "\"";
+            String issueInstant = "\"" + ISSUE_INSTANT_FORMATTER.print(PLACEHOLDER_ISSUE_INSTANT) + "\"";
+            int idStart = content.indexOf(id);
+            int issueInstantStart = content.indexOf(issueInstant);
+            if ((idStart < 0) || (issueInstantStart < 0) || (content.indexOf(id, idStart + 1) >= 0) ||
+                    (content.indexOf(issueInstant, issueInstantStart + 1) >= 0)) {
+                return Optional.empty();
+            }
+
+            //  the segments retain the quotes enclosing the values
+            boolean idFirst = idStart < issueInstantStart;
+            int firstStart = (idFirst ? idStart : issueInstantStart) + 1;
+            int firstEnd = idFirst ? (idStart + id.length() - 1) : (issueInstantStart + issueInstant.length() - 1);
+            int secondStart = (idFirst ? issueInstantStart : idStart) + 1;
+            int secondEnd = idFirst ? (issueInstantStart + issueInstant.length() - 1) : (idStart + id.length() - 1);
+            return Optional.of(new Segments(Arrays.copyOfRange(serialized, 0, firstStart),
+                    Arrays.copyOfRange(serialized, firstEnd, secondStart),
+                    Arrays.copyOfRange(serialized, secondEnd, serialized.length), idFirst));
+        }
+
+        private byte[] render(String id, DateTime issueInstant) {
+            byte[] idValue = id.getBytes(StandardCharsets.UTF_8);
+            byte[] issueInstantValue = ISSUE_INSTANT_FORMATTER.print(issueInstant).getBytes(StandardCharsets.UTF_8);
+            byte[] first = idFirst ? idValue : issueInstantValue;
+            byte[] second = idFirst ? issueInstantValue : idValue;
+
+            byte[] rendered = new byte[prefix.length + first.length + infix.length + second.length + suffix.length];
+            int offset = 0;
+            for (byte[] segment : new byte[][]{prefix, first, infix, second, suffix}) {
+                System.arraycopy(segment, 0, rendered, offset, segment.length);
+                offset += segment.length;
+            }
+            return rendered;
+        }
+    }
+}
@@ -0,0 +1,159 @@
+/*
+ *  Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.wso2.appserver.webapp.security.saml;
+
+import org.opensaml.core.xml.XMLObject;
+import org.opensaml.saml.saml2.core.LogoutRequest;
+import org.opensaml.saml.saml2.core.LogoutResponse;
+import org.opensaml.saml.saml2.core.Response;
+import org.wso2.appserver.webapp.security.agent.SSOMessageGuard;
+import org.wso2.appserver.webapp.security.utils.Base64DecodingInputStream;
+import org.wso2.appserver.webapp.security.utils.SSOUtils;
+import org.wso2.appserver.webapp.security.utils.XMLLimitingInputStream;
+import org.wso2.appserver.webapp.security.utils.exception.SSOException;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Optional;
+
+/**
+ * This class represents a SAML 2.0 message received by the service provider, decoded and parsed exactly once.
+ * <p>
+ * An inbound message is decoded from its HTTP-POST binding parameter, parsed into its OpenSAML object graph and
+ * classified by its type in a single pass, after which the parsed message and its raw bytes are carried through
+ * every processing stage, rather than being decoded and parsed again by each stage.
+ * <p>
+ * The message is parsed as it is decoded from the base64 encoded parameter, within the size and structure limits of
+ * inbound messages, while the decoded bytes are retained on the way through, so that the raw message is available
+ * without decoding the parameter a second time.
+ *
+ * @since 6.0.0
+ */
+public class SAML2InboundMessage {
+    /**
+     * The types of SAML 2.0 messages received by the service provider.
+     */
+    public enum MessageType {
+        AUTHENTICATION_RESPONSE, LOGOUT_RESPONSE, LOGOUT_REQUEST, UNSUPPORTED
+    }
+
+    private final byte[] rawMessage;
+    private final XMLObject message;
+    private final MessageType messageType;
+
+    private SAML2InboundMessage(byte[] rawMessage, XMLObject message) {
+        this.rawMessage = rawMessage;
+        this.message = message;
+        this.messageType = classify(message);
+    }
+
+    /**
+     * Decodes and parses the specified base64 encoded SAML 2.0 message.
+     *
+     * @param encodedMessage the base64 encoded SAML 2.0 message, as received in an HTTP-POST binding parameter
+     * @return the inbound message, or an empty {@link Optional} if the content is not a known XML object
+     * @throws SSOException if the message cannot be parsed
+     */
+    public static Optional<SAML2InboundMessage> decode(String encodedMessage) throws SSOException {
+        return decode(encodedMessage, SSOMessageGuard.withDefaultLimits());
+    }
+
+    /**
+     * Decodes and parses the specified base64 encoded SAML 2.0 message, within the limits of the specified guard.
+     * <p>
+     * The encoded size is checked before decoding, while the decoded size, element depth and element count are
+     * enforced as the message is parsed, so that an oversized message is rejected before it is fully parsed.
+     *
+     * @param encodedMessage the base64 encoded SAML 2.0 message, as received in an HTTP-POST binding parameter
+     * @param guard          the guard which holds the limits of inbound messages
+     * @return the inbound message, or an empty {@link Optional} if the content is not a known XML object
+     * @throws SSOException if the message exceeds a limit or cannot be parsed
+     */
+    public static Optional<SAML2InboundMessage> decode(String encodedMessage, SSOMessageGuard guard)
+            throws SSOException {
+        guard.checkMessageSize(encodedMessage);
+        Base64DecodingInputStream decodingStream = new Base64DecodingInputStream(encodedMessage, true);
+        XMLLimitingInputStream stream = guard.limit(decodingStream);
+        Optional<XMLObject> message;
+        try {
+            message = SSOUtils.unmarshall(stream);
+        } catch (SSOException e) {
+            Optional<XMLLimitingInputStream.Limit> limit = stream.getExceededLimit();
+            if (!limit.isPresent()) {
+                throw e;
+            }
+            switch (limit.get()) {
+                case SIZE:
+                    throw guard.reject(SSOMessageGuard.RejectReason.DECODED_MESSAGE_SIZE,
+                            "SAML 2.0 message is too large", e);
+                case ELEMENT_DEPTH:
+                    throw guard.reject(SSOMessageGuard.RejectReason.ELEMENT_DEPTH,
+                            "SAML 2.0 message is nested too deeply", e);
+                default:
+                    throw guard.reject(SSOMessageGuard.RejectReason.ELEMENT_COUNT,
+                            "SAML 2.0 message has too many elements", e);
+            }
+        }
+
+        if (!message.isPresent()) {
+            return Optional.empty();
+        }
+        try {
+            return Optional.of(new SAML2InboundMessage(decodingStream.getDecodedContent(), message.get()));
+        } catch (IOException e) {
+            throw new SSOException("Error when decoding the SAML 2.0 message", e);
+        }
+    }
+
+    private static MessageType classify(XMLObject message) {
+        if (message instanceof Response) {
+            return MessageType.AUTHENTICATION_RESPONSE;
+        } else if (message instanceof LogoutResponse) {
+            return MessageType.LOGOUT_RESPONSE;
+        } else if (message instanceof LogoutRequest) {
+            return MessageType.LOGOUT_REQUEST;
+        }
+        return MessageType.UNSUPPORTED;
+    }
+
+    /**
+     * Returns the raw, decoded bytes of the message, as retained when the message was parsed.
+     * <p>
+     * The returned array is shared rather than copied and must not be modified.
+     *
+     * @return the raw, decoded bytes of the message
+     */
+    public byte[] getRawMessage() {
+        return rawMessage;
+    }
+
+    /**
+     * Returns the decoded message as a string.
+     *
+     * @return the decoded message as a string
+     */
+    public String getMessageString() {
+        return new String(rawMessage, StandardCharsets.UTF_8);
+    }
+
+    public XMLObject getMessage() {
+        return message;
+    }
+
+    public MessageType getMessageType() {
+        return messageType;
+    }
+}
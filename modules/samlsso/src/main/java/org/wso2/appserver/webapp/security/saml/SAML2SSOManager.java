@@ -15,11 +15,9 @@
  */
 package org.wso2.appserver.webapp.security.saml;
 
-import com.google.gson.Gson;
-import net.shibboleth.utilities.java.support.codec.Base64Support;
+import org.apache.catalina.Session;
 import org.apache.catalina.connector.Request;
 import org.apache.juli.logging.Log;
-import org.apache.xml.security.signature.XMLSignature;
 import org.joda.time.DateTime;
 import org.opensaml.core.xml.XMLObject;
 import org.opensaml.saml.common.SAMLVersion;
@@ -43,6 +41,9 @@ import org.opensaml.saml.saml2.core.RequestedAuthnContext;
 import org.opensaml.saml.saml2.core.Response;
 import org.opensaml.saml.saml2.core.SessionIndex;
 import org.opensaml.saml.saml2.core.StatusCode;
+import org.opensaml.saml.saml2.core.Subject;
+import org.opensaml.saml.saml2.core.SubjectConfirmation;
+import org.opensaml.saml.saml2.core.SubjectConfirmationData;
 import org.opensaml.saml.saml2.core.impl.AuthnContextClassRefBuilder;
 import org.opensaml.saml.saml2.core.impl.AuthnRequestBuilder;
 import org.opensaml.saml.saml2.core.impl.IssuerBuilder;
@@ -51,27 +52,29 @@ import org.opensaml.saml.saml2.core.impl.NameIDBuilder;
 import org.opensaml.saml.saml2.core.impl.NameIDPolicyBuilder;
 import org.opensaml.saml.saml2.core.impl.RequestedAuthnContextBuilder;
 import org.opensaml.saml.saml2.core.impl.SessionIndexBuilder;
-import org.opensaml.xmlsec.signature.support.SignatureException;
-import org.wso2.appserver.configuration.context.WebAppSingleSignOn;
-import org.wso2.appserver.configuration.listeners.ServerConfigurationLoader;
-import org.wso2.appserver.configuration.server.AppServerSingleSignOn;
 import org.wso2.appserver.webapp.security.Constants;
+import org.wso2.appserver.webapp.security.agent.SSOAgentPolicy;
 import org.wso2.appserver.webapp.security.agent.SSOAgentSessionManager;
+import org.wso2.appserver.webapp.security.agent.SSOAuthnRequestTracker;
+import org.wso2.appserver.webapp.security.agent.SSODigestAlgorithm;
+import org.wso2.appserver.webapp.security.agent.SSOMessageGuard;
+import org.wso2.appserver.webapp.security.agent.SSOMessageRetention;
+import org.wso2.appserver.webapp.security.agent.SSOReplayCache;
 import org.wso2.appserver.webapp.security.bean.LoggedInSession;
+import org.wso2.appserver.webapp.security.bean.RetainedXML;
 import org.wso2.appserver.webapp.security.bean.SAML2SSO;
+import org.wso2.appserver.webapp.security.bean.SubjectAttributes;
 import org.wso2.appserver.webapp.security.saml.signature.SSOX509Credential;
 import org.wso2.appserver.webapp.security.saml.signature.SignatureValidator;
-import org.wso2.appserver.webapp.security.saml.signature.X509CredentialImplementation;
-import org.wso2.appserver.webapp.security.utils.DataHolder;
+import org.wso2.appserver.webapp.security.saml.signature.SignatureValidatorRegistry;
+import org.wso2.appserver.webapp.security.utils.RedirectBindingEncoder;
 import org.wso2.appserver.webapp.security.utils.SSOUtils;
 import org.wso2.appserver.webapp.security.utils.exception.SSOException;
 
-import java.io.UnsupportedEncodingException;
-import java.net.URLEncoder;
 import java.nio.charset.StandardCharsets;
-import java.util.HashMap;
+import java.util.Arrays;
 import java.util.List;
-import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
 import java.util.Set;
 import java.util.stream.Stream;
@@ -80,64 +83,180 @@ import javax.servlet.http.HttpSession;
 /**
  * This class manages the generation of varied request and response types that are utilized
  * within the SAML 2.0 single-sign-on (SSO) and single-logout (SLO) processes.
+ * <p>
+ * A single instance is created per web application context single-sign-on policy and shared by all the request
+ * processing threads of the context. Hence, an instance holds no request specific state.
  *
  * @since 6.0.0
  */
 public class SAML2SSOManager {
-    private AppServerSingleSignOn serverConfiguration;
-    private WebAppSingleSignOn contextConfiguration;
-
-    public SAML2SSOManager(WebAppSingleSignOn context) throws SSOException {
-        serverConfiguration = ServerConfigurationLoader.getServerConfiguration().getSingleSignOnConfiguration();
-        contextConfiguration = context;
+    //  the allowed clock skew between the identity provider and service provider
+    private static final long CLOCK_SKEW_IN_MILLIS = 5 * 60 * 1000;
+    //  the time for which a message identifier is held, if the Assertion does not expire
+    private static final long DEFAULT_REPLAY_WINDOW_IN_MILLIS = 60 * 60 * 1000;
+
+    private final SSOAgentPolicy contextConfiguration;
+    private final SignatureValidator signatureValidator;
+    private final SSOReplayCache replayCache;
+    //  the tracker of the Authentication Requests sent on behalf of sessions, null if tracking is disabled
+    private final SSOAuthnRequestTracker requestTracker;
+    private final SSOMessageGuard messageGuard;
+    private final SAML2AssertionDecrypters assertionDecrypters;
+    //  the precompiled Authentication Requests of the context, null if they cannot be templated
+    private final SAML2AuthnRequestTemplate authnRequestTemplate;
+
+    public SAML2SSOManager(SSOAgentPolicy policy) throws SSOException {
+        this(policy, new SSOReplayCache(SSOReplayCache.DEFAULT_MAX_ENTRIES),
+                new SSOAuthnRequestTracker(SSOAuthnRequestTracker.DEFAULT_MAX_OUTSTANDING_REQUESTS_PER_OWNER,
+                        SSOAuthnRequestTracker.DEFAULT_REQUEST_TIMEOUT), SSOMessageGuard.withDefaultLimits(),
+                new SAML2AssertionDecrypters());
+    }
 
-        loadCustomSignatureValidatorClass();
+    public SAML2SSOManager(SSOAgentPolicy policy, SSOReplayCache replayCache, SSOAuthnRequestTracker requestTracker,
+                           SSOMessageGuard messageGuard, SAML2AssertionDecrypters assertionDecrypters)
+            throws SSOException {
+        contextConfiguration = policy;
+        this.replayCache = replayCache;
+        this.requestTracker = requestTracker;
+        this.messageGuard = messageGuard;
+        this.assertionDecrypters = assertionDecrypters;
+        signatureValidator = SignatureValidatorRegistry.getSignatureValidator(
+                policy.getSignatureValidatorImplClass());
         SSOUtils.doBootstrap();
+        authnRequestTemplate = SAML2AuthnRequestTemplate.compile(this::buildAuthnRequest)
+                .orElse(null);
     }
 
     /**
-     * Loads a custom signature validator class specified in the SSO Agent configurations.
+     * Returns the single-sign-on (SSO) policy of the context managed by this instance.
+     *
+     * @return the single-sign-on policy of the context managed by this instance
      */
-    private void loadCustomSignatureValidatorClass() throws SSOException {
-        try {
-            if (serverConfiguration != null) {
-                DataHolder.getInstance().setObject(Class.
-                        forName(Optional.ofNullable(serverConfiguration.getSignatureValidatorImplClass())
-                                .orElse(Constants.DEFAULT_SIGN_VALIDATOR_IMPL)).newInstance());
-            }
-        } catch (InstantiationException | IllegalAccessException | ClassNotFoundException e) {
-            throw new SSOException("Error loading custom signature validator class", e);
-        }
+    public SSOAgentPolicy getPolicy() {
+        return contextConfiguration;
     }
 
     /**
      * Handles a SAML 2.0 Authentication Request (AuthnRequest) for HTTP POST binding.
      *
-     * @param request the HTTP servlet request with SAML 2.0 message
+     * @param request    the HTTP servlet request with SAML 2.0 message
+     * @param relayState the RelayState parameter to be returned by the identity provider along with the Response
+     * @return the HTML payload to be transmitted
+     * @throws SSOException if an error occurs when handling AuthnRequest
+     */
+    public String handleAuthenticationRequestForPOSTBinding(Request request, String relayState)
+            throws SSOException {
+        return handleAuthenticationRequestForPOSTBinding(request, relayState, null);
+    }
+
+    /**
+     * Handles a SAML 2.0 Authentication Request (AuthnRequest) for HTTP POST binding, with the specified ID if the
+     * request is bound to a signed relay state.
+     *
+     * @param request             the HTTP servlet request with SAML 2.0 message
+     * @param relayState          the RelayState parameter to be returned by the identity provider along with the
+     *                            Response
+     * @param boundAuthnRequestId the ID of the AuthnRequest bound to the signed relay state, or null if the request
+     *                            is to be tracked on the session of the HTTP servlet request
      * @return the HTML payload to be transmitted
      * @throws SSOException if an error occurs when handling AuthnRequest
      */
-    public String handleAuthenticationRequestForPOSTBinding(Request request) throws SSOException {
-        RequestAbstractType requestMessage = buildAuthnRequest(request);
+    public String handleAuthenticationRequestForPOSTBinding(Request request, String relayState,
+                                                            String boundAuthnRequestId) throws SSOException {
+        //  an enveloped signature is computed over the request object, hence a signed request is not templated
+        if (!contextConfiguration.isRequestSigningEnabled()) {
+            Optional<byte[]> renderedRequestMessage = renderAuthnRequest(request, boundAuthnRequestId);
+            if (renderedRequestMessage.isPresent()) {
+                return preparePOSTRequest(SSOUtils.encodeRequestMessage(renderedRequestMessage.get(),
+                        SAMLConstants.SAML2_POST_BINDING_URI), relayState);
+            }
+        }
+
+        RequestAbstractType requestMessage = buildAuthnRequest(request, boundAuthnRequestId);
+        trackAuthnRequest(request, requestMessage.getID(), boundAuthnRequestId);
 
         if (contextConfiguration.isRequestSigningEnabled()) {
-            requestMessage = SSOUtils.setSignature(requestMessage, XMLSignature.ALGO_ID_SIGNATURE_RSA,
-                    new X509CredentialImplementation(SSOX509Credential.getInstance()));
+            requestMessage = signRequest(requestMessage);
         }
 
-        return preparePOSTRequest(requestMessage);
+        return preparePOSTRequest(requestMessage, relayState);
     }
 
     /**
      * Handles a SAML 2.0 Authentication Request (AuthnRequest) for HTTP Redirect binding.
      *
-     * @param request the HTTP servlet request with SAML 2.0 message
+     * @param request    the HTTP servlet request with SAML 2.0 message
+     * @param relayState the RelayState parameter to be returned by the identity provider along with the Response
      * @return the Identity Provider URL with the query string appended based on the SAML 2.0 Request and configurations
      * @throws SSOException if an error occurs when handling AuthnRequest
      */
-    public String handleAuthenticationRequestForRedirectBinding(Request request) throws SSOException {
-        RequestAbstractType requestMessage = buildAuthnRequest(request);
-        return prepareRedirectRequest(requestMessage);
+    public String handleAuthenticationRequestForRedirectBinding(Request request, String relayState)
+            throws SSOException {
+        return handleAuthenticationRequestForRedirectBinding(request, relayState, null);
+    }
+
+    /**
+     * Handles a SAML 2.0 Authentication Request (AuthnRequest) for HTTP Redirect binding, with the specified ID if
+     * the request is bound to a signed relay state.
+     *
+     * @param request             the HTTP servlet request with SAML 2.0 message
+     * @param relayState          the RelayState parameter to be returned by the identity provider along with the
+     *                            Response
+     * @param boundAuthnRequestId the ID of the AuthnRequest bound to the signed relay state, or null if the request
+     *                            is to be tracked on the session of the HTTP servlet request
+     * @return the Identity Provider URL with the query string appended based on the SAML 2.0 Request and configurations
+     * @throws SSOException if an error occurs when handling AuthnRequest
+     */
+    public String handleAuthenticationRequestForRedirectBinding(Request request, String relayState,
+                                                                String boundAuthnRequestId) throws SSOException {
+        //  the signature of the HTTP-Redirect binding is computed over the query string, hence applies as is
+        Optional<byte[]> renderedRequestMessage = renderAuthnRequest(request, boundAuthnRequestId);
+        if (renderedRequestMessage.isPresent()) {
+            return prepareRedirectRequest(renderedRequestMessage.get(), relayState);
+        }
+
+        RequestAbstractType requestMessage = buildAuthnRequest(request, boundAuthnRequestId);
+        trackAuthnRequest(request, requestMessage.getID(), boundAuthnRequestId);
+        return prepareRedirectRequest(requestMessage, relayState);
+    }
+
+    /**
+     * Renders an Authentication Request on behalf of the specified HTTP servlet request from the precompiled
+     * templates of the context, registering it as outstanding unless bound to a signed relay state.
+     * <p>
+     * Requests which carry protocol message extensions are not templated.
+     *
+     * @param request             the HTTP servlet request on behalf of which the Authentication Request is sent
+     * @param boundAuthnRequestId the ID of the Authentication Request bound to the signed relay state, may be null
+     * @return the serialized Authentication Request, or an empty {@link Optional} if it cannot be templated
+     */
+    private Optional<byte[]> renderAuthnRequest(Request request, String boundAuthnRequestId) {
+        if ((authnRequestTemplate == null) || (request.getAttribute(Extensions.DEFAULT_ELEMENT_LOCAL_NAME) != null)) {
+            return Optional.empty();
+        }
+
+        String id = Optional.ofNullable(boundAuthnRequestId)
+                .orElseGet(SSOUtils::createID);
+        byte[] requestMessage = authnRequestTemplate.render(id, new DateTime(), isForceAuthn(request),
+                isPassive(request));
+        trackAuthnRequest(request, id, boundAuthnRequestId);
+        return Optional.of(requestMessage);
+    }
+
+    /**
+     * Registers the specified Authentication Request as outstanding, owned by the session of the request, unless
+     * the request is bound to a signed relay state, the request has no session or tracking is disabled.
+     *
+     * @param request             the HTTP servlet request on behalf of which the Authentication Request is sent
+     * @param authnRequestId      the ID of the Authentication Request
+     * @param boundAuthnRequestId the ID of the Authentication Request bound to the signed relay state, may be null
+     */
+    private void trackAuthnRequest(Request request, String authnRequestId, String boundAuthnRequestId) {
+        if ((requestTracker == null) || (boundAuthnRequestId != null)) {
+            return;
+        }
+        Optional.ofNullable(request.getSessionInternal(false))
+                .ifPresent(session -> requestTracker.register(authnRequestId, session.getIdInternal()));
     }
 
     /**
@@ -148,24 +267,20 @@ public class SAML2SSOManager {
      * @throws SSOException if an error occurs when handling LogoutRequest
      */
     public String handleLogoutRequestForPOSTBinding(Request request) throws SSOException {
-        Gson gson = new Gson();
-        LoggedInSession session = gson.fromJson(
-                request.getSession(false).getAttribute(Constants.LOGGED_IN_SESSION).toString(),
-                LoggedInSession.class);
+        LoggedInSession session = LoggedInSession.getLoggedInSession(request.getSession(false))
+                .orElse(null);
         RequestAbstractType requestMessage;
         if (session != null) {
-            requestMessage = buildLogoutRequest(session.getSAML2SSO().getSubjectId(),
-                    session.getSAML2SSO().getSessionIndex());
+            requestMessage = buildLogoutRequest(session.getSubjectId(), session.getSessionIndex());
             if (contextConfiguration.isRequestSigningEnabled()) {
-                requestMessage = SSOUtils.setSignature(requestMessage, XMLSignature.ALGO_ID_SIGNATURE_RSA,
-                        new X509CredentialImplementation(SSOX509Credential.getInstance()));
+                requestMessage = signRequest(requestMessage);
             }
         } else {
             throw new SSOException(
                     "Single-logout (SLO) Request cannot be built, single-sign-on (SSO) session is null");
         }
 
-        return preparePOSTRequest(requestMessage);
+        return preparePOSTRequest(requestMessage, null);
     }
 
 
@@ -177,19 +292,32 @@ public class SAML2SSOManager {
      * @throws SSOException if an error occurs when handling LogoutRequest
      */
     public String handleLogoutRequestForRedirectBinding(Request request) throws SSOException {
-        Gson gson = new Gson();
-        LoggedInSession session = gson.fromJson(
-                request.getSession(false).getAttribute(Constants.LOGGED_IN_SESSION).toString(),
-                LoggedInSession.class);
+        LoggedInSession session = LoggedInSession.getLoggedInSession(request.getSession(false))
+                .orElse(null);
         RequestAbstractType requestMessage;
         if (session != null) {
-            requestMessage = buildLogoutRequest(session.getSAML2SSO().getSubjectId(),
-                    session.getSAML2SSO().getSessionIndex());
+            requestMessage = buildLogoutRequest(session.getSubjectId(), session.getSessionIndex());
         } else {
             throw new SSOException("Single Logout Request can not be built, single-sign-on session is null");
         }
 
-        return prepareRedirectRequest(requestMessage);
+        return prepareRedirectRequest(requestMessage, null);
+    }
+
+    /**
+     * Applies an enveloped XML Digital Signature to the specified request, with the signature and digest algorithms
+     * of the context.
+     *
+     * @param requestMessage the SAML 2.0 AuthnRequest or LogoutRequest
+     * @return the signed request
+     * @throws SSOException if an error occurs when signing the request
+     */
+    private RequestAbstractType signRequest(RequestAbstractType requestMessage) throws SSOException {
+        return SSOUtils.setSignature(requestMessage, contextConfiguration.getSignatureAlgorithm().getURI(),
+                contextConfiguration.getDigestAlgorithm()
+                        .map(SSODigestAlgorithm::getURI)
+                        .orElse(null),
+                SSOX509Credential.getInstance().getServiceProviderCredential());
     }
 
     /**
@@ -197,58 +325,39 @@ public class SAML2SSOManager {
      *
      * @param rawRequestMessage the {@link RequestAbstractType} which is either a SAML 2.0 AuthnRequest or
      *                          a SAML 2.0 LogoutRequest
+     * @param relayState        the RelayState parameter, may be null
      * @return the HTML payload string
      * @throws SSOException if an error occurs when encoding the request message
      */
-    private String preparePOSTRequest(RequestAbstractType rawRequestMessage) throws SSOException {
-        String encodedRequestMessage = SSOUtils.
-                encodeRequestMessage(rawRequestMessage, SAMLConstants.SAML2_POST_BINDING_URI);
-
-        Map<String, String[]> parameters = new HashMap<>();
-        parameters.put(Constants.HTTP_POST_PARAM_SAML_REQUEST, new String[]{encodedRequestMessage});
-
-        //  add any additional parameters defined
-        Map<String, String[]> queryParams = SSOUtils.getSplitQueryParameters(contextConfiguration.getOptionalParams());
+    private String preparePOSTRequest(RequestAbstractType rawRequestMessage, String relayState)
+            throws SSOException {
+        return preparePOSTRequest(SSOUtils.
+                encodeRequestMessage(rawRequestMessage, SAMLConstants.SAML2_POST_BINDING_URI), relayState);
+    }
 
-        //  encode the optional parameter values
-        queryParams.entrySet()
-                .stream()
-                .forEach(filteredEntry -> filteredEntry.setValue((String[]) Stream.of(filteredEntry.getValue())
-                        .map(value -> {
-                            try {
-                                return URLEncoder.encode(value, StandardCharsets.UTF_8.name());
-                            } catch (UnsupportedEncodingException e) {
-                                //  ignore the exception since every implementation of the Java platform must support
-                                //  the 'UTF-8' character set
-                            }
-                            return null;
-                        })
-                        .toArray()));
-
-        if (!queryParams.isEmpty()) {
-            parameters.putAll(queryParams);
-        }
-
-        StringBuilder htmlParameters = new StringBuilder();
-        parameters.entrySet()
-                .stream()
-                .filter(entry -> ((entry.getKey() != null) &&
-                        (entry.getValue() != null) && (entry.getValue().length > 0)))
-                .forEach(filteredEntry -> Stream.of(filteredEntry.getValue())
-                        .forEach(parameter -> htmlParameters
-                                .append("<input type='hidden' name='")
-                                .append(filteredEntry.getKey())
-                                .append("' value='")
-                                .append(parameter)
-                                .append("'>\n")));
+    /**
+     * Handles the specified encoded SAML 2.0 request for SAML 2.0 HTTP POST binding.
+     *
+     * @param encodedRequestMessage the base64 encoded SAML 2.0 AuthnRequest or LogoutRequest
+     * @param relayState            the RelayState parameter, may be null
+     * @return the HTML payload string
+     */
+    private String preparePOSTRequest(String encodedRequestMessage, String relayState) {
+        //  the optional parameters defined are pre-encoded within the context policy
+        String htmlParameters = "<input type='hidden' name='" + Constants.HTTP_POST_PARAM_SAML_REQUEST +
+                "' value='" + encodedRequestMessage + "'>\n" + contextConfiguration.getPOSTFormParameters();
+        if (relayState != null) {
+            htmlParameters += "<input type='hidden' name='" + Constants.HTTP_POST_PARAM_RELAY_STATE +
+                    "' value='" + relayState + "'>\n";
+        }
 
         return "<html>\n" +
                 "<body>\n" +
-                "<p>You are now redirected back to " + serverConfiguration.getIdpURL() + " \n" +
+                "<p>You are now redirected back to " + contextConfiguration.getIdpURL() + " \n" +
                 "If the redirection fails, please click the post button.</p>\n" +
-                "<form method='post' action='" + serverConfiguration.getIdpURL() + "'>\n" +
+                "<form method='post' action='" + contextConfiguration.getIdpURL() + "'>\n" +
                 "<p>\n" +
-                htmlParameters.toString() +
+                htmlParameters +
                 "<button type='submit'>POST</button>\n" +
                 "</p>\n" +
                 "</form>\n" +
@@ -264,56 +373,47 @@ public class SAML2SSOManager {
      *
      * @param rawRequestMessage the {@link RequestAbstractType} which is either a SAML 2.0 AuthnRequest or
      *                          a SAML 2.0 LogoutRequest
+     * @param relayState        the RelayState parameter, may be null
      * @return the Identity Provider URL with the query string appended based on the SAML 2.0 Request and configurations
      * @throws SSOException if an error occurs when preparing the HTTP Redirect request
      */
-    private String prepareRedirectRequest(RequestAbstractType rawRequestMessage) throws SSOException {
+    private String prepareRedirectRequest(RequestAbstractType rawRequestMessage, String relayState)
+            throws SSOException {
+        return prepareRedirectRequest(SSOUtils.serializeRequestMessage(rawRequestMessage), relayState);
+    }
+
+    /**
+     * Handles the specified serialized SAML 2.0 request for SAML 2.0 HTTP-Redirect binding.
+     *
+     * @param requestMessage the serialized SAML 2.0 AuthnRequest or LogoutRequest
+     * @param relayState     the RelayState parameter, may be null
+     * @return the Identity Provider URL with the query string appended based on the SAML 2.0 Request and configurations
+     * @throws SSOException if an error occurs when signing the HTTP Redirect request
+     */
+    private String prepareRedirectRequest(byte[] requestMessage, String relayState) throws SSOException {
         //  compresses the message using default DEFLATE encoding since SAMLEncoding query string parameter
-        //  is not specified, perform Base64 encoding and then URL encoding
-        String encodedRequestMessage = SSOUtils.
-                encodeRequestMessage(rawRequestMessage, SAMLConstants.SAML2_REDIRECT_BINDING_URI);
-        StringBuilder httpQueryString = new StringBuilder(Constants.HTTP_POST_PARAM_SAML_REQUEST +
-                "=" + encodedRequestMessage);
-
-        //  adds any additional parameters defined
-        Map<String, String[]> queryParams = SSOUtils.getSplitQueryParameters(contextConfiguration.getOptionalParams());
-        if (!queryParams.isEmpty()) {
-            StringBuilder builder = new StringBuilder();
-
-            queryParams.entrySet()
-                    .stream()
-                    .filter(entry -> ((entry.getKey() != null) &&
-                            (entry.getValue() != null) && (entry.getValue().length > 0)))
-                    .forEach(filteredEntry ->
-                            Stream.of(filteredEntry.getValue())
-                                    .forEach(parameterValue -> {
-                                                try {
-                                                    builder
-                                                            .append("&")
-                                                            .append(filteredEntry.getKey())
-                                                            .append("=")
-                                                            .append(URLEncoder.encode(parameterValue,
-                                                                    StandardCharsets.UTF_8.name()));
-                                                } catch (UnsupportedEncodingException e) {
-                                                    //  ignore the exception since every implementation of the Java
-                                                    //  platform must support the 'UTF-8' character set
-                                                }
-                                            }
-                                            ));
-
-            httpQueryString.append(builder);
+        //  is not specified, perform Base64 encoding and then URL encoding, directly into the query string
+        StringBuilder httpQueryString = new StringBuilder(Constants.HTTP_POST_PARAM_SAML_REQUEST).append('=');
+        RedirectBindingEncoder.encode(requestMessage, httpQueryString);
+        if (relayState != null) {
+            httpQueryString.append("&").append(Constants.HTTP_POST_PARAM_RELAY_STATE).append("=")
+                    .append(SSOUtils.urlEncode(relayState));
         }
 
+        //  adds any additional parameters defined, pre-encoded within the context policy
+        httpQueryString.append(contextConfiguration.getRedirectQueryParameters());
+
         if (contextConfiguration.isRequestSigningEnabled()) {
             SSOUtils.addDeflateSignatureToHTTPQueryString(httpQueryString,
-                    new X509CredentialImplementation(SSOX509Credential.getInstance()));
+                    contextConfiguration.getSignatureAlgorithm(),
+                    SSOX509Credential.getInstance().getServiceProviderCredential());
         }
 
         String idpUrl;
-        if (serverConfiguration.getIdpURL().contains("?")) {
-            idpUrl = serverConfiguration.getIdpURL().concat("&").concat(httpQueryString.toString());
+        if (contextConfiguration.getIdpURL().contains("?")) {
+            idpUrl = contextConfiguration.getIdpURL().concat("&").concat(httpQueryString.toString());
         } else {
-            idpUrl = serverConfiguration.getIdpURL().concat("?").concat(httpQueryString.toString());
+            idpUrl = contextConfiguration.getIdpURL().concat("?").concat(httpQueryString.toString());
         }
         return idpUrl;
     }
@@ -322,18 +422,35 @@ public class SAML2SSOManager {
      * Returns a SAML 2.0 Authentication Request (AuthnRequest) instance based on the HTTP servlet request.
      *
      * @param request the HTTP servlet request
+     * @param id      the ID of the request, or null to create a new ID
+     * @return a SAML 2.0 Authentication Request (AuthnRequest) instance
+     */
+    private AuthnRequest buildAuthnRequest(Request request, String id) {
+        AuthnRequest authnRequest = buildAuthnRequest(Optional.ofNullable(id).orElseGet(SSOUtils::createID),
+                new DateTime(), isForceAuthn(request), isPassive(request));
+
+        //  if any optional protocol message extension elements that are agreed on between the communicating parties
+        Optional.ofNullable(request.getAttribute(Extensions.DEFAULT_ELEMENT_LOCAL_NAME))
+                .ifPresent(extensions -> authnRequest.setExtensions((Extensions) extensions));
+
+        return authnRequest;
+    }
+
+    /**
+     * Returns a SAML 2.0 Authentication Request (AuthnRequest) instance of the context, without extensions.
+     * <p>
+     * This also serves as the prototype of the precompiled Authentication Requests of the context, hence must
+     * build identical requests for equal arguments.
+     *
+     * @param id           the ID of the request
+     * @param issueInstant the IssueInstant of the request
+     * @param forceAuthn   true if the identity provider must authenticate the principal directly, else false
+     * @param passive      true if the identity provider must not take control of the user interface, else false
      * @return a SAML 2.0 Authentication Request (AuthnRequest) instance
      */
-    private AuthnRequest buildAuthnRequest(Request request) {
+    private AuthnRequest buildAuthnRequest(String id, DateTime issueInstant, boolean forceAuthn, boolean passive) {
         //  the Issuer element identifies the entity that generated the request message
         Issuer issuer = new IssuerBuilder().buildObject();
-
-        if (contextConfiguration.getIssuerId() == null) {
-            //  generates the service provider entity ID
-            String issuerID = SSOUtils.generateIssuerID(request.getContextPath(), request.getHost().getAppBase())
-                    .orElse("");
-            contextConfiguration.setIssuerId(issuerID);
-        }
         issuer.setValue(contextConfiguration.getIssuerId());
 
         //  the NameIDPolicy element tailors the subject name identifier of assertions resulting from AuthnRequest
@@ -364,43 +481,33 @@ public class SAML2SSOManager {
         AuthnRequest authnRequest = new AuthnRequestBuilder().buildObject();
 
         //  sets the mandatory attributes of a SAML 2.0 Request
-        authnRequest.setID(SSOUtils.createID());
+        authnRequest.setID(id);
         authnRequest.setVersion(SAMLVersion.VERSION_20);
-        authnRequest.setIssueInstant(new DateTime());
-
-        authnRequest.setForceAuthn(
-                Optional.ofNullable((Boolean) (request.getAttribute(Constants.IS_FORCE_AUTH_ENABLED)))
-                        .orElse(false));
-        authnRequest.setIsPassive(
-                Optional.ofNullable((Boolean) (request.getAttribute(Constants.IS_PASSIVE_AUTH_ENABLED)))
-                        .orElse(false));
-        authnRequest.setProtocolBinding(contextConfiguration.getHttpBinding());
+        authnRequest.setIssueInstant(issueInstant);
 
-        if (contextConfiguration.getConsumerURL() == null) {
-            //  generates the SAML 2.0 Assertion Consumer URL
-            String acsBase = Optional.ofNullable(serverConfiguration.getACSBase())
-                    .orElse(SSOUtils.constructApplicationServerURL(request)
-                            .orElse(""));
-            String consumerURLPostfix = Optional.ofNullable(contextConfiguration.getConsumerURLPostfix())
-                    .orElse(Constants.DEFAULT_CONSUMER_URL_POSTFIX);
-            String consumerURL = SSOUtils.generateConsumerURL(request.getContextPath(), acsBase, consumerURLPostfix)
-                    .orElse("");
-            contextConfiguration.setConsumerURL(consumerURL);
-        }
+        authnRequest.setForceAuthn(forceAuthn);
+        authnRequest.setIsPassive(passive);
+        authnRequest.setProtocolBinding(contextConfiguration.getHttpBinding());
         authnRequest.setAssertionConsumerServiceURL(contextConfiguration.getConsumerURL());
 
         authnRequest.setIssuer(issuer);
         authnRequest.setNameIDPolicy(nameIdPolicy);
         authnRequest.setRequestedAuthnContext(requestedAuthnContext);
-        authnRequest.setDestination(serverConfiguration.getIdpURL());
-
-        //  if any optional protocol message extension elements that are agreed on between the communicating parties
-        Optional.ofNullable(request.getAttribute(Extensions.DEFAULT_ELEMENT_LOCAL_NAME))
-                .ifPresent(extensions -> authnRequest.setExtensions((Extensions) extensions));
+        authnRequest.setDestination(contextConfiguration.getIdpURL());
 
         return authnRequest;
     }
 
+    private static boolean isForceAuthn(Request request) {
+        return Optional.ofNullable((Boolean) (request.getAttribute(Constants.IS_FORCE_AUTH_ENABLED)))
+                .orElse(false);
+    }
+
+    private static boolean isPassive(Request request) {
+        return Optional.ofNullable((Boolean) (request.getAttribute(Constants.IS_PASSIVE_AUTH_ENABLED)))
+                .orElse(false);
+    }
+
     /**
      * Returns a SAML 2.0 Logout Request (LogoutRequest) instance.
      *
@@ -429,7 +536,7 @@ public class SAML2SSOManager {
         logoutRequest.setID(SSOUtils.createID());
         logoutRequest.setIssueInstant(issueInstant);
 
-        logoutRequest.setDestination(serverConfiguration.getIdpURL());
+        logoutRequest.setDestination(contextConfiguration.getIdpURL());
         //  time at which the request expires, after which the recipient may discard the message
         logoutRequest.setNotOnOrAfter(new DateTime(issueInstant.getMillis() + (5 * 60 * 1000)));
         logoutRequest.setIssuer(issuer);
@@ -445,53 +552,108 @@ public class SAML2SSOManager {
      * Processes a SAML 2.0 response depending on its type, either a SAML 2.0 Response for a single-sign-on (SSO)
      * SAML 2.0 Request by the client application or a SAML 2.0 Response for a single-logout (SLO) SAML 2.0 Request
      * from a service provider.
+     * <p>
+     * The response is decoded, parsed and classified exactly once, and the parsed message is dispatched to the
+     * processing of its type.
      *
      * @param request the servlet request processed
+     * @return the logged-in session established, if the response is a successful single-sign-on Response, else
+     * an empty {@link Optional}
      * @throws SSOException if SAML 2.0 response is null
      */
-    public void processResponse(Request request) throws SSOException {
-        String saml2SSOResponse = request.getParameter(Constants.HTTP_POST_PARAM_SAML_RESPONSE);
+    public Optional<LoggedInSession> processResponse(Request request) throws SSOException {
+        return processResponse(request, null);
+    }
 
-        if (saml2SSOResponse != null) {
-            String decodedResponse = new String(Base64Support.decode(saml2SSOResponse), StandardCharsets.UTF_8);
-            Optional<XMLObject> samlObject = SSOUtils.unmarshall(decodedResponse);
-            if (samlObject.isPresent()) {
-                if (samlObject.get() instanceof LogoutResponse) {
-                    //  this is a SAML 2.0 Response for a single logout request from the service provider
-                    performSingleLogout(request);
-                } else {
-                    processSingleSignInResponse(request);
-                }
-            }
-        } else {
-            throw new SSOException("Invalid SAML 2.0 Response, SAML Response cannot be null");
+    /**
+     * Processes a SAML 2.0 response depending on its type, where a single-sign-on (SSO) Response must correspond to
+     * the specified Authentication Request, if bound to the signed relay state returned with the response.
+     *
+     * @param request             the servlet request processed
+     * @param boundAuthnRequestId the ID of the Authentication Request bound to the signed relay state returned with
+     *                            the response, or null if none
+     * @return the logged-in session established, if the response is a successful single-sign-on Response, else
+     * an empty {@link Optional}
+     * @throws SSOException if SAML 2.0 response is null
+     */
+    public Optional<LoggedInSession> processResponse(Request request, String boundAuthnRequestId)
+            throws SSOException {
+        Optional<SAML2InboundMessage> message = decodeResponse(request);
+        if (!message.isPresent()) {
+            return Optional.empty();
         }
+        return processResponse(request, message.get(), boundAuthnRequestId);
     }
 
     /**
-     * Processes a single-sign-in SAML 2.0 Response received for an Authentication Request sent.
+     * Decodes and parses the SAML 2.0 message received in the SAML 2.0 Response parameter of the request, within
+     * the limits of inbound messages of this manager, so that the message can be classified before its processing.
      *
-     * @param request the HTTP servlet request
-     * @throws SSOException if the received SAML 2.0 Response is invalid
+     * @param request the servlet request processed
+     * @return the inbound message, or an empty {@link Optional} if the content is not a known XML object
+     * @throws SSOException if the SAML 2.0 Response parameter is absent, or if the message exceeds a limit or
+     *                      cannot be parsed
      */
-    private void processSingleSignInResponse(Request request) throws SSOException {
-        LoggedInSession session = new LoggedInSession();
-        SAML2SSO saml2SSO = new SAML2SSO();
-        Gson gson = new Gson();
+    public Optional<SAML2InboundMessage> decodeResponse(Request request) throws SSOException {
+        String saml2SSOResponse = request.getParameter(Constants.HTTP_POST_PARAM_SAML_RESPONSE);
 
-        String saml2ResponseString = new String(Base64Support.decode(request.getParameter(
-                Constants.HTTP_POST_PARAM_SAML_RESPONSE)), StandardCharsets.UTF_8);
+        if (saml2SSOResponse == null) {
+            throw new SSOException("Invalid SAML 2.0 Response, SAML Response cannot be null");
+        }
+        return SAML2InboundMessage.decode(saml2SSOResponse, messageGuard);
+    }
 
-        Optional<XMLObject> xmlObject = SSOUtils.unmarshall(saml2ResponseString);
-        if (!xmlObject.isPresent()) {
-            return;
+    /**
+     * Processes a decoded SAML 2.0 message depending on its type, where a single-sign-on (SSO) Response must
+     * correspond to the specified Authentication Request, if bound to the signed relay state returned with it.
+     *
+     * @param request             the servlet request processed
+     * @param message             the inbound SAML 2.0 message, as decoded by {@link #decodeResponse(Request)}
+     * @param boundAuthnRequestId the ID of the Authentication Request bound to the signed relay state returned with
+     *                            the response, or null if none
+     * @return the logged-in session established, if the message is a successful single-sign-on Response, else
+     * an empty {@link Optional}
+     * @throws SSOException if the message is invalid or of an unsupported type
+     */
+    public Optional<LoggedInSession> processResponse(Request request, SAML2InboundMessage message,
+                                                     String boundAuthnRequestId) throws SSOException {
+        switch (message.getMessageType()) {
+            case AUTHENTICATION_RESPONSE:
+                return processSingleSignInResponse(request, message, boundAuthnRequestId);
+            case LOGOUT_RESPONSE:
+            case LOGOUT_REQUEST:
+                //  a SAML 2.0 Response for a single logout request from the service provider, or a single logout
+                //  request of another session participant
+                performSingleLogout(request, message);
+                return Optional.empty();
+            default:
+                throw new SSOException("Unsupported SAML 2.0 message type received");
         }
+    }
 
-        Response saml2Response = (Response) xmlObject.get();
-        saml2SSO.setResponseString(saml2ResponseString);
+    /**
+     * Processes a single-sign-in SAML 2.0 Response received for an Authentication Request sent.
+     *
+     * @param request             the HTTP servlet request
+     * @param message             the inbound SAML 2.0 Response
+     * @param boundAuthnRequestId the ID of the Authentication Request bound to the signed relay state, may be null
+     * @return the logged-in session established, or an empty {@link Optional} if the identity provider could not
+     * authenticate the principal passively
+     * @throws SSOException if the received SAML 2.0 Response is invalid
+     */
+    private Optional<LoggedInSession> processSingleSignInResponse(Request request, SAML2InboundMessage message,
+                                                                  String boundAuthnRequestId) throws SSOException {
+        Response saml2Response = (Response) message.getMessage();
+        validateResponseStructure(saml2Response);
+        //  rejects a replayed Response before any of its decryption or signature validation work
+        rejectReplay(saml2Response.getID());
+        //  rejects an unsolicited or stale Response, unless identity provider initiated single-sign-on is allowed
+        String inResponseTo = saml2Response.getInResponseTo();
+        String requestOwner = validateInResponseTo(request, inResponseTo, boundAuthnRequestId);
 
         Assertion assertion = null;
-        if (contextConfiguration.isAssertionEncryptionEnabled()) {
+        boolean assertionEncrypted = contextConfiguration.isAssertionEncryptionEnabled();
+        if (assertionEncrypted) {
             List<EncryptedAssertion> encryptedAssertions = saml2Response.getEncryptedAssertions();
             EncryptedAssertion encryptedAssertion;
             if (!((encryptedAssertions == null) || (encryptedAssertions.isEmpty()))) {
@@ -499,11 +661,9 @@ public class SAML2SSOManager {
                         .stream()
                         .findFirst()
                         .orElse(null);
-                try {
-                    assertion = SSOUtils.decryptAssertion(SSOX509Credential.getInstance(), encryptedAssertion);
-                } catch (Exception e) {
-                    throw new SSOException("Unable to decrypt the SAML 2.0 Assertion");
-                }
+                assertion = assertionDecrypters
+                        .getDecrypter(SSOX509Credential.getInstance().getServiceProviderCredential())
+                        .decrypt(encryptedAssertion);
             }
         } else {
             List<Assertion> assertions = saml2Response.getAssertions();
@@ -521,15 +681,18 @@ public class SAML2SSOManager {
                 if (containerLog.isDebugEnabled()) {
                     containerLog.debug("Cannot authenticate in passive mode");
                 }
-                return;
+                return Optional.empty();
             }
             throw new SSOException("SAML 2.0 Assertion not found in the Response");
         }
+        rejectReplay(assertion.getID());
+        long now = System.currentTimeMillis();
+        long replayExpiry = validateValidityPeriod(assertion, now);
 
         String idPEntityIdValue = assertion.getIssuer().getValue();
         if ((idPEntityIdValue == null) || (idPEntityIdValue.isEmpty())) {
             throw new SSOException("SAML 2.0 Response does not contain an Issuer value");
-        } else if (!idPEntityIdValue.equals(serverConfiguration.getIdpEntityId())) {
+        } else if (!idPEntityIdValue.equals(contextConfiguration.getIdpEntityId())) {
             throw new SSOException("SAML 2.0 Response Issuer verification failed");
         }
 
@@ -542,63 +705,108 @@ public class SAML2SSOManager {
             throw new SSOException("SAML 2.0 Response does not contain the name of the subject");
         }
 
-        //  sets the subject in the session bean
-        saml2SSO.setSubjectId(subject);
-
         //  validates the audience restriction
         validateAudienceRestriction(assertion);
 
         //  validates the signature
         validateSignature(saml2Response, assertion);
 
-        //  marshalling SAML 2.0 assertion after signature validation due to an issue in OpenSAML
-        saml2SSO.setAssertionString(SSOUtils.marshall(assertion));
+        //  records the consumed message identifiers, of which only one of concurrent deliveries succeeds
+        boolean responseRecorded = replayCache.add(saml2Response.getID(), replayExpiry);
+        if (!(responseRecorded && replayCache.add(assertion.getID(), replayExpiry))) {
+            throw new SSOException("SAML 2.0 Response has already been consumed");
+        }
+        if ((requestOwner != null) && !requestTracker.consume(inResponseTo, requestOwner)) {
+            throw new SSOException("SAML 2.0 Authentication Request of the Response has already been responded to");
+        }
 
-        saml2SSO.setSubjectAttributes(SSOUtils.getAssertionStatements(assertion));
+        //  the session index is shared with the other contexts authenticated through the same single-sign-on entry
+        String sessionId = assertion.getAuthnStatements()
+                .stream()
+                .findFirst()
+                .map(AuthnStatement::getSessionIndex)
+                .orElse(null);
+        if ((sessionId == null) && contextConfiguration.isSLOEnabled()) {
+            throw new SSOException("Single Logout is enabled but IdP Session ID not found in SAML 2.0 Assertion");
+        }
+        LoggedInSession session = new LoggedInSession(createSAML2SSO(message, assertion, assertionEncrypted,
+                subject, sessionId));
+        request.getSession().setAttribute(Constants.LOGGED_IN_SESSION, session);
 
         //  for removing the session when the single-logout request made by the service provider itself
         if (contextConfiguration.isSLOEnabled()) {
-            Optional<AuthnStatement> authnStatement = assertion.getAuthnStatements()
-                    .stream()
-                    .findFirst();
-            String sessionId = null;
-            if (authnStatement.isPresent()) {
-                sessionId = authnStatement.get().getSessionIndex();
-            }
-            if (sessionId == null) {
-                throw new SSOException("Single Logout is enabled but IdP Session ID not found in SAML 2.0 Assertion");
-            }
-            saml2SSO.setSessionIndex(sessionId);
-            session.setSAML2SSO(saml2SSO);
-            request.getSession().setAttribute(Constants.LOGGED_IN_SESSION, gson.toJson(session));
-            SSOAgentSessionManager.addAuthenticatedSession(request.getSession(false));
+            SSOAgentSessionManager.addAuthenticatedSession(sessionId, request.getSessionInternal(false));
         }
+        return Optional.of(session);
     }
 
     /**
-     * Performs single-logout (SLO) function based on the HTTP servlet request.
+     * Creates the SAML 2.0 single-sign-on details of a logged-in session, retaining the received SAML 2.0 Response
+     * and Assertion as per the message retention of the context.
+     * <p>
+     * The Assertion is retained as a slice of the raw bytes of the received Response, without serializing it
+     * again, unless it was received encrypted.
      *
-     * @param request the HTTP servlet request
-     * @throws SSOException if the SAML 2.0 Single Logout Request/Response is invalid
+     * @param message            the inbound SAML 2.0 Response
+     * @param assertion          the validated SAML 2.0 Assertion
+     * @param assertionEncrypted true if the Assertion was received encrypted, else false
+     * @param subject            the name of the authenticated subject
+     * @param sessionIndex       the identity provider session index
+     * @return the SAML 2.0 single-sign-on details
+     * @throws SSOException if an error occurs when serializing a decrypted Assertion
      */
-    private void performSingleLogout(Request request) throws SSOException {
-        XMLObject saml2Object = null;
-
-        if (request.getParameter(Constants.HTTP_POST_PARAM_SAML_REQUEST) != null) {
-            Optional<XMLObject> xmlObject = SSOUtils.unmarshall(new String(Base64Support.decode(request.getParameter(
-                    Constants.HTTP_POST_PARAM_SAML_REQUEST)), StandardCharsets.UTF_8));
-            if (xmlObject.isPresent()) {
-                saml2Object = xmlObject.get();
-            }
+    private SAML2SSO createSAML2SSO(SAML2InboundMessage message, Assertion assertion, boolean assertionEncrypted,
+                                    String subject, String sessionIndex) throws SSOException {
+        SubjectAttributes attributes = SSOUtils.getAssertionStatements(assertion,
+                contextConfiguration.getSubjectAttributeNames().orElse(null));
+        SSOMessageRetention retention = contextConfiguration.getMessageRetention();
+        if (retention == SSOMessageRetention.NONE) {
+            return new SAML2SSO(subject, sessionIndex, attributes, null, null);
         }
-        if (saml2Object == null) {
-            Optional<XMLObject> xmlObject = SSOUtils.unmarshall(new String(Base64Support.decode(request.getParameter(
-                    Constants.HTTP_POST_PARAM_SAML_RESPONSE)), StandardCharsets.UTF_8));
-            if (xmlObject.isPresent()) {
-                saml2Object = xmlObject.get();
+
+        byte[] rawResponse = message.getRawMessage();
+        Optional<int[]> location = Optional.empty();
+        if (!assertionEncrypted && (assertion.getDOM() != null)) {
+            location = SSOUtils.locateElement(rawResponse, assertion.getDOM());
+        }
+        String namespaceDeclarations = location.isPresent() ?
+                SSOUtils.getInheritedNamespaceDeclarations(assertion.getDOM()) : "";
+
+        RetainedXML response = null;
+        RetainedXML retainedAssertion;
+        if (location.isPresent()) {
+            int[] slice = location.get();
+            if (retention == SSOMessageRetention.ASSERTION_ONLY) {
+                retainedAssertion = RetainedXML.of(Arrays.copyOfRange(rawResponse, slice[0], slice[0] + slice[1]))
+                        .slice(0, slice[1], slice[2], namespaceDeclarations);
+            } else {
+                response = (retention == SSOMessageRetention.COMPRESSED) ?
+                        RetainedXML.compress(rawResponse) : RetainedXML.of(rawResponse);
+                retainedAssertion = response.slice(slice[0], slice[1], slice[2], namespaceDeclarations);
+            }
+        } else {
+            //  marshalling SAML 2.0 assertion after signature validation due to an issue in OpenSAML
+            byte[] rawAssertion = SSOUtils.marshall(assertion).getBytes(StandardCharsets.UTF_8);
+            if (retention == SSOMessageRetention.COMPRESSED) {
+                response = RetainedXML.compress(rawResponse);
+                retainedAssertion = RetainedXML.compress(rawAssertion);
+            } else {
+                response = (retention == SSOMessageRetention.REFERENCE) ? RetainedXML.of(rawResponse) : null;
+                retainedAssertion = RetainedXML.of(rawAssertion);
             }
         }
+        return new SAML2SSO(subject, sessionIndex, attributes, response, retainedAssertion);
+    }
 
+    /**
+     * Performs single-logout (SLO) function based on the inbound SAML 2.0 single logout message.
+     *
+     * @param request the HTTP servlet request
+     * @param message the inbound SAML 2.0 Logout Request/Response
+     * @throws SSOException if the SAML 2.0 Single Logout Request/Response is invalid
+     */
+    private void performSingleLogout(Request request, SAML2InboundMessage message) throws SSOException {
+        XMLObject saml2Object = message.getMessage();
         if (saml2Object instanceof LogoutResponse) {
             Optional.ofNullable(request.getSession(false))
                     .ifPresent(session -> {
@@ -633,6 +841,45 @@ public class SAML2SSOManager {
         }
     }
 
+    /**
+     * Performs the cheap structural checks of the specified SAML 2.0 Response, before any of its decryption or
+     * signature validation work.
+     * <p>
+     * The Response must be of SAML version 2.0, its Destination and Issuer, if present, must match the Assertion
+     * Consumer Service URL and the identity provider entity ID of the context, respectively, and its status must
+     * be success, unless the identity provider could not authenticate the principal passively.
+     *
+     * @param response the SAML 2.0 Response to be validated
+     * @throws SSOException if the Response fails a structural check
+     */
+    private void validateResponseStructure(Response response) throws SSOException {
+        if (!SAMLVersion.VERSION_20.equals(response.getVersion())) {
+            throw messageGuard.reject(SSOMessageGuard.RejectReason.VERSION,
+                    "SAML 2.0 Response has an unsupported SAML version");
+        }
+
+        String destination = response.getDestination();
+        if ((destination != null) && !destination.equals(contextConfiguration.getConsumerURL())) {
+            throw messageGuard.reject(SSOMessageGuard.RejectReason.DESTINATION,
+                    "SAML 2.0 Response Destination verification failed");
+        }
+
+        Issuer issuer = response.getIssuer();
+        if ((issuer != null) && (issuer.getValue() != null) &&
+                !issuer.getValue().equals(contextConfiguration.getIdpEntityId())) {
+            throw messageGuard.reject(SSOMessageGuard.RejectReason.ISSUER,
+                    "SAML 2.0 Response Issuer verification failed");
+        }
+
+        boolean success = (response.getStatus() != null) &&
+                (response.getStatus().getStatusCode() != null) &&
+                StatusCode.SUCCESS.equals(response.getStatus().getStatusCode().getValue());
+        if (!(success || isNoPassive(response))) {
+            throw messageGuard.reject(SSOMessageGuard.RejectReason.STATUS,
+                    "SAML 2.0 Response does not have a success status");
+        }
+    }
+
     /**
      * Returns true if the identity provider cannot authenticate the principal passively, as requested, else false.
      *
@@ -683,6 +930,110 @@ public class SAML2SSOManager {
         }
     }
 
+    /**
+     * Rejects the specified SAML 2.0 message identifier, if missing or already consumed.
+     *
+     * @param id the SAML 2.0 message identifier
+     * @throws SSOException if the identifier is missing or has already been consumed
+     */
+    private void rejectReplay(String id) throws SSOException {
+        if ((id == null) || (id.isEmpty())) {
+            throw new SSOException("SAML 2.0 Response does not contain a message identifier");
+        }
+        if (replayCache.isReplayed(id)) {
+            throw new SSOException("SAML 2.0 Response has already been consumed");
+        }
+    }
+
+    /**
+     * Validates whether the specified InResponseTo value of a SAML 2.0 Response refers to an Authentication Request
+     * sent on behalf of the same client, that is, the request bound to the signed relay state returned with the
+     * Response, else an outstanding request of the session of the HTTP servlet request.
+     * <p>
+     * A Response without an InResponseTo value is accepted only if unsolicited Responses are allowed. If the
+     * tracking of Authentication Requests is disabled, a Response to a request which is not bound to a signed relay
+     * state is accepted as is.
+     *
+     * @param request             the HTTP servlet request
+     * @param inResponseTo        the InResponseTo value of a SAML 2.0 Response, may be null
+     * @param boundAuthnRequestId the ID of the Authentication Request bound to the signed relay state, may be null
+     * @return the owner of the outstanding Authentication Request to be consumed, or null if none
+     * @throws SSOException if the Response does not correspond to an Authentication Request of the same client
+     */
+    private String validateInResponseTo(Request request, String inResponseTo, String boundAuthnRequestId)
+            throws SSOException {
+        if ((inResponseTo == null) && contextConfiguration.isUnsolicitedResponseAllowed()) {
+            return null;
+        }
+        if ((inResponseTo != null) && (boundAuthnRequestId != null)) {
+            if (!boundAuthnRequestId.equals(inResponseTo)) {
+                throw new SSOException("SAML 2.0 Response does not correspond to the Authentication Request of " +
+                        "the RelayState");
+            }
+            return null;
+        }
+        if (requestTracker == null) {
+            if (inResponseTo == null) {
+                throw new SSOException("Unsolicited SAML 2.0 Response received");
+            }
+            return null;
+        }
+
+        String owner = Optional.ofNullable(request.getSessionInternal(false))
+                .map(Session::getIdInternal)
+                .orElse(null);
+        if (!requestTracker.isOutstanding(inResponseTo, owner)) {
+            throw new SSOException((inResponseTo == null) ? "Unsolicited SAML 2.0 Response received" :
+                    "SAML 2.0 Response does not correspond to an outstanding Authentication Request");
+        }
+        return owner;
+    }
+
+    /**
+     * Validates the validity period of the specified SAML 2.0 Assertion, as restricted by its Conditions and its
+     * bearer SubjectConfirmationData, allowing for clock skew.
+     *
+     * @param assertion the SAML 2.0 Assertion whose validity period is to be validated
+     * @param now       the current time in milliseconds
+     * @return the time after which the Assertion would be rejected as expired, for which its message identifiers
+     * are to be held for replay detection
+     * @throws SSOException if the Assertion is not yet valid or has expired
+     */
+    private long validateValidityPeriod(Assertion assertion, long now) throws SSOException {
+        Optional<Conditions> conditions = Optional.ofNullable(assertion.getConditions());
+        Optional<DateTime> notBefore = conditions.map(Conditions::getNotBefore);
+        if (notBefore.isPresent() && (now + CLOCK_SKEW_IN_MILLIS < notBefore.get().getMillis())) {
+            throw new SSOException("SAML 2.0 Assertion is not yet valid");
+        }
+
+        //  the Assertion is valid until its Conditions expire, through any of its subject confirmations
+        Optional<Long> conditionsExpiry = conditions
+                .map(Conditions::getNotOnOrAfter)
+                .map(DateTime::getMillis);
+        Optional<Long> confirmationExpiry = Optional.ofNullable(assertion.getSubject())
+                .map(Subject::getSubjectConfirmations)
+                .flatMap(confirmations -> confirmations
+                        .stream()
+                        .map(SubjectConfirmation::getSubjectConfirmationData)
+                        .filter(Objects::nonNull)
+                        .map(SubjectConfirmationData::getNotOnOrAfter)
+                        .filter(Objects::nonNull)
+                        .map(DateTime::getMillis)
+                        .max(Long::compare));
+        Optional<Long> expiry = Stream.of(conditionsExpiry, confirmationExpiry)
+                .filter(Optional::isPresent)
+                .map(Optional::get)
+                .min(Long::compare);
+
+        if (!expiry.isPresent()) {
+            return now + DEFAULT_REPLAY_WINDOW_IN_MILLIS;
+        }
+        if (expiry.get() + CLOCK_SKEW_IN_MILLIS <= now) {
+            throw new SSOException("SAML 2.0 Assertion has expired");
+        }
+        return expiry.get() + CLOCK_SKEW_IN_MILLIS;
+    }
+
     /**
      * Validates the XML Digital Signature of specified SAML 2.0 based Response and Assertion.
      *
@@ -691,41 +1042,7 @@ public class SAML2SSOManager {
      * @throws SSOException if an error occurs during the signature validation
      */
     private void validateSignature(Response response, Assertion assertion) throws SSOException {
-        if (DataHolder.getInstance().getObject() != null) {
-            //  custom implementation of signature validation
-            SignatureValidator signatureValidatorUtility =
-                    (SignatureValidator) DataHolder.getInstance().getObject();
-            signatureValidatorUtility.validateSignature(response, assertion,
-                    contextConfiguration.isResponseSigningEnabled(), contextConfiguration.isAssertionSigningEnabled());
-        } else {
-            SSOX509Credential ssoX509Credential = SSOX509Credential.getInstance();
-            //  if custom implementation not found, execute the default implementation
-            if (contextConfiguration.isResponseSigningEnabled()) {
-                if (response.getSignature() == null) {
-                    throw new SSOException("SAML 2.0 Response signing is enabled, but signature element not found " +
-                            "in SAML 2.0 Response element");
-                } else {
-                    try {
-                        org.opensaml.xmlsec.signature.support.SignatureValidator.validate(response.getSignature(),
-                                new X509CredentialImplementation(ssoX509Credential.getEntityCertificate()));
-                    } catch (SignatureException e) {
-                        throw new SSOException("Signature validation failed for SAML 2.0 Response", e);
-                    }
-                }
-            }
-            if (contextConfiguration.isAssertionSigningEnabled()) {
-                if (assertion.getSignature() == null) {
-                    throw new SSOException("SAML 2.0 Assertion signing is enabled, but signature element not found in" +
-                            " SAML 2.0 Assertion element");
-                } else {
-                    try {
-                        org.opensaml.xmlsec.signature.support.SignatureValidator.validate(assertion.getSignature(),
-                                new X509CredentialImplementation(ssoX509Credential.getEntityCertificate()));
-                    } catch (SignatureException e) {
-                        throw new SSOException("Signature validation failed for SAML 2.0 Assertion", e);
-                    }
-                }
-            }
-        }
+        signatureValidator.validateSignature(response, assertion,
+                contextConfiguration.isResponseSigningEnabled(), contextConfiguration.isAssertionSigningEnabled());
     }
 }
@@ -17,37 +17,478 @@
  */
 package org.wso2.appserver.webapp.security.saml;
 
+import org.apache.catalina.Context;
+import org.apache.catalina.Lifecycle;
+import org.apache.catalina.LifecycleEvent;
+import org.apache.catalina.LifecycleException;
+import org.apache.catalina.LifecycleListener;
+import org.apache.catalina.Session;
 import org.apache.catalina.authenticator.SingleSignOn;
+import org.apache.catalina.authenticator.SingleSignOnEntry;
 import org.apache.catalina.connector.Request;
 import org.apache.catalina.connector.Response;
+import org.opensaml.saml.saml2.core.LogoutRequest;
 import org.wso2.appserver.configuration.context.AppServerWebAppConfiguration;
 import org.wso2.appserver.configuration.context.WebAppSingleSignOn;
 import org.wso2.appserver.configuration.listeners.ContextConfigurationLoader;
+import org.wso2.appserver.configuration.listeners.ServerConfigurationLoader;
+import org.wso2.appserver.configuration.server.ApplicationServerConfiguration;
 import org.wso2.appserver.webapp.security.Constants;
+import org.wso2.appserver.webapp.security.agent.SSOAdmissionController;
+import org.wso2.appserver.webapp.security.agent.SSOAgentPolicy;
+import org.wso2.appserver.webapp.security.agent.SSOAgentSessionManager;
+import org.wso2.appserver.webapp.security.agent.SSOAuthnRequestTracker;
+import org.wso2.appserver.webapp.security.agent.SSOLoginOrigin;
+import org.wso2.appserver.webapp.security.agent.SSOMessageGuard;
+import org.wso2.appserver.webapp.security.agent.SSOPrincipal;
+import org.wso2.appserver.webapp.security.agent.SSORelayStateCodec;
+import org.wso2.appserver.webapp.security.agent.SSORelayStateStore;
+import org.wso2.appserver.webapp.security.agent.SSOReplayCache;
 import org.wso2.appserver.webapp.security.agent.SSORequestResolver;
+import org.wso2.appserver.webapp.security.agent.SSOURIMatcher;
+import org.wso2.appserver.webapp.security.bean.LoggedInSession;
 import org.wso2.appserver.webapp.security.utils.SSOUtils;
 import org.wso2.appserver.webapp.security.utils.exception.SSOException;
 
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.Principal;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
 import javax.servlet.ServletException;
+import javax.servlet.http.Cookie;
+import javax.servlet.http.HttpServletResponse;
 
 /**
  * This class implements an Apache Tomcat Valve, which performs SAML 2.0 based single-sign-on (SSO) and
  * single-logout (SLO) functions.
  * <p>
- * This is a sub-class of the {@code org.apache.catalina.authenticator.SingleSignOn} class.
+ * This is a sub-class of the {@code org.apache.catalina.authenticator.SingleSignOn} class. A principal
+ * authenticated by one context is registered with a host level single-sign-on entry, through which the other
+ * contexts of the host authenticate the principal locally. Invalidating any session associated with the entry,
+ * as done by single-logout, tears down the entire entry.
  *
  * @since 6.0.0
  */
 public class SAML2SSOValve extends SingleSignOn {
-    //  holds a reference to the context level single-sign-on configurations representation depending on the
-    //  context of the request passed through the invoke method of the Valve.
-    private WebAppSingleSignOn contextConfiguration;
+    //  holds the single-sign-on manager of each context served by this Valve, an empty manager
+    //  indicates that single-sign-on is not configured or not enabled for the context
+    private final Map<Context, Optional<SAML2SSOManager>> contextManagers = new ConcurrentHashMap<>();
+    private final SSORelayStateStore relayStateStore = new SSORelayStateStore();
+    private SSORelayStateCodec relayStateCodec;
+    private boolean statelessRelayState = false;
+    private String relayStateSecret;
+    private int maxRelayStateLength = SSORelayStateCodec.DEFAULT_MAX_RELAY_STATE_LENGTH;
+    private SSOAdmissionController admissionController;
+    private int clientRequestRate = 0;
+    private int clientRequestBurst = 10;
+    private int maxConcurrentCryptoOperations = 0;
+    private SSOReplayCache replayCache;
+    private int maxReplayCacheSize = SSOReplayCache.DEFAULT_MAX_ENTRIES;
+    private SSOAuthnRequestTracker requestTracker;
+    private int maxOutstandingAuthnRequests = SSOAuthnRequestTracker.DEFAULT_MAX_OUTSTANDING_REQUESTS_PER_OWNER;
+    private int authnRequestTimeout = SSOAuthnRequestTracker.DEFAULT_REQUEST_TIMEOUT;
+    private boolean authnRequestTracking = true;
+    private SSOMessageGuard messageGuard;
+    private int maxMessageSize = SSOMessageGuard.DEFAULT_MAX_MESSAGE_SIZE;
+    private int maxDecodedMessageSize = SSOMessageGuard.DEFAULT_MAX_DECODED_MESSAGE_SIZE;
+    private int maxElementDepth = SSOMessageGuard.DEFAULT_MAX_ELEMENT_DEPTH;
+    private int maxElementCount = SSOMessageGuard.DEFAULT_MAX_ELEMENT_COUNT;
+    private SAML2AssertionDecrypters assertionDecrypters;
 
-    //  the request resolver based on configurations and request content
-    private SSORequestResolver requestResolver;
+    /**
+     * Sets the maximum number of relay states held per session, beyond which the oldest relay state is evicted.
+     *
+     * @param maxRelayStatesPerSession the maximum number of relay states held per session
+     */
+    public void setMaxRelayStatesPerSession(int maxRelayStatesPerSession) {
+        relayStateStore.setMaxRelayStatesPerSession(maxRelayStatesPerSession);
+    }
+
+    public int getMaxRelayStatesPerSession() {
+        return relayStateStore.getMaxRelayStatesPerSession();
+    }
+
+    /**
+     * Sets the time in seconds after which an unconsumed relay state expires.
+     *
+     * @param relayStateTimeout the time in seconds after which an unconsumed relay state expires
+     */
+    public void setRelayStateTimeout(int relayStateTimeout) {
+        relayStateStore.setRelayStateTimeout(relayStateTimeout);
+    }
+
+    public int getRelayStateTimeout() {
+        return relayStateStore.getRelayStateTimeout();
+    }
+
+    /**
+     * Returns the number of relay states currently held across all sessions.
+     *
+     * @return the number of relay states currently held across all sessions
+     */
+    public long getOutstandingRelayStateCount() {
+        return relayStateStore.getOutstandingRelayStateCount();
+    }
+
+    /**
+     * Returns the number of authenticated sessions currently held in the single-logout session index.
+     *
+     * @return the number of authenticated sessions currently held in the single-logout session index
+     */
+    public long getIndexedSessionCount() {
+        return SSOAgentSessionManager.getIndexedSessionCount();
+    }
+
+    /**
+     * Returns the number of identity provider session indexes currently held in the single-logout session index.
+     *
+     * @return the number of identity provider session indexes currently held in the single-logout session index
+     */
+    public int getSessionIndexCount() {
+        return SSOAgentSessionManager.getSessionIndexCount();
+    }
+
+    /**
+     * Sets whether the relay state of an unauthenticated GET request is carried in a signed RelayState parameter
+     * rather than in a session, so that no session is created until the SAML 2.0 Response is validated.
+     *
+     * @param statelessRelayState true to carry relay states in signed RelayState parameters, else false
+     */
+    public void setStatelessRelayState(boolean statelessRelayState) {
+        this.statelessRelayState = statelessRelayState;
+    }
+
+    public boolean isStatelessRelayState() {
+        return statelessRelayState;
+    }
+
+    /**
+     * Sets the secret used to sign stateless relay states, of at least 32 bytes when UTF-8 encoded.
+     * <p>
+     * If not set, a random secret is generated on start, which is only valid for relay states issued by this node
+     * since its last start. Hence, the same secret must be set on all nodes of a cluster, else a login completed on
+     * a node other than the one which started it, or across a restart, falls back to the context root.
+     *
+     * @param relayStateSecret the secret used to sign stateless relay states
+     */
+    public void setRelayStateSecret(String relayStateSecret) {
+        this.relayStateSecret = relayStateSecret;
+    }
+
+    /**
+     * Sets the maximum length of a stateless relay state, beyond which the relay state is held in the session. The
+     * length is capped at the 80 bytes allowed by the SAML 2.0 bindings specification.
+     *
+     * @param maxRelayStateLength the maximum length of a stateless relay state
+     */
+    public void setMaxRelayStateLength(int maxRelayStateLength) {
+        this.maxRelayStateLength = maxRelayStateLength;
+    }
+
+    public int getMaxRelayStateLength() {
+        return maxRelayStateLength;
+    }
+
+    /**
+     * Sets the sustained number of unauthenticated and Assertion Consumer Service requests per second admitted
+     * per client address, a non-positive value (default) disables the rate limit.
+     *
+     * @param clientRequestRate the number of requests per second admitted per client address
+     */
+    public void setClientRequestRate(int clientRequestRate) {
+        this.clientRequestRate = clientRequestRate;
+    }
+
+    public int getClientRequestRate() {
+        return clientRequestRate;
+    }
+
+    /**
+     * Sets the number of requests of a client address admitted in a burst, above the sustained rate.
+     *
+     * @param clientRequestBurst the number of requests of a client address admitted in a burst
+     */
+    public void setClientRequestBurst(int clientRequestBurst) {
+        this.clientRequestBurst = clientRequestBurst;
+    }
+
+    public int getClientRequestBurst() {
+        return clientRequestBurst;
+    }
+
+    /**
+     * Sets the maximum number of requests concurrently building, signing, parsing, decrypting or verifying SAML 2.0
+     * messages, a non-positive value (default) disables the limit.
+     *
+     * @param maxConcurrentCryptoOperations the maximum number of requests concurrently in cryptographic phases
+     */
+    public void setMaxConcurrentCryptoOperations(int maxConcurrentCryptoOperations) {
+        this.maxConcurrentCryptoOperations = maxConcurrentCryptoOperations;
+    }
+
+    public int getMaxConcurrentCryptoOperations() {
+        return maxConcurrentCryptoOperations;
+    }
+
+    /**
+     * Returns the number of requests rejected with HTTP 429 due to the rate limit of their client address.
+     *
+     * @return the number of requests rejected due to the rate limit of their client address
+     */
+    public long getRateLimitedRequestCount() {
+        return (admissionController != null) ? admissionController.getRateLimitedRequestCount() : 0;
+    }
+
+    /**
+     * Returns the number of requests rejected with HTTP 503 due to the maximum cryptographic concurrency.
+     *
+     * @return the number of requests rejected due to the maximum cryptographic concurrency
+     */
+    public long getOverloadedRequestCount() {
+        return (admissionController != null) ? admissionController.getOverloadedRequestCount() : 0;
+    }
+
+    /**
+     * Sets the maximum number of consumed SAML 2.0 message identifiers held for replay detection, beyond which
+     * the identifiers closest to expiry are evicted.
+     *
+     * @param maxReplayCacheSize the maximum number of message identifiers held for replay detection
+     */
+    public void setMaxReplayCacheSize(int maxReplayCacheSize) {
+        this.maxReplayCacheSize = maxReplayCacheSize;
+    }
+
+    public int getMaxReplayCacheSize() {
+        return maxReplayCacheSize;
+    }
+
+    /**
+     * Returns the number of consumed SAML 2.0 message identifiers currently held for replay detection.
+     *
+     * @return the number of message identifiers currently held for replay detection
+     */
+    public int getReplayCacheSize() {
+        return (replayCache != null) ? replayCache.getSize() : 0;
+    }
+
+    /**
+     * Returns the number of replayed SAML 2.0 Responses rejected.
+     *
+     * @return the number of replayed SAML 2.0 Responses rejected
+     */
+    public long getReplayedMessageCount() {
+        return (replayCache != null) ? replayCache.getReplayedMessageCount() : 0;
+    }
+
+    /**
+     * Returns the number of message identifiers evicted from the replay cache on expiry.
+     *
+     * @return the number of message identifiers evicted on expiry
+     */
+    public long getReplayCacheExpiredEvictionCount() {
+        return (replayCache != null) ? replayCache.getExpiredEvictionCount() : 0;
+    }
+
+    /**
+     * Returns the number of message identifiers evicted from the replay cache before expiry, due to its maximum
+     * size. A non-zero value indicates the replay cache is undersized for the login rate.
+     *
+     * @return the number of message identifiers evicted before expiry
+     */
+    public long getReplayCacheCapacityEvictionCount() {
+        return (replayCache != null) ? replayCache.getCapacityEvictionCount() : 0;
+    }
+
+    /**
+     * Returns the number of encrypted SAML 2.0 Assertions decrypted, including those which failed to decrypt.
+     *
+     * @return the number of encrypted SAML 2.0 Assertions decrypted
+     */
+    public long getAssertionDecryptionCount() {
+        return (assertionDecrypters != null) ? assertionDecrypters.getDecryptionCount() : 0;
+    }
+
+    /**
+     * Returns the total time in milliseconds spent decrypting encrypted SAML 2.0 Assertions, which divided by the
+     * decryption count yields the mean decryption time.
+     *
+     * @return the total time in milliseconds spent decrypting encrypted SAML 2.0 Assertions
+     */
+    public long getAssertionDecryptionTime() {
+        return (assertionDecrypters != null) ? assertionDecrypters.getDecryptionTime() : 0;
+    }
+
+    /**
+     * Sets the maximum number of Authentication Requests of a session awaiting their Response, beyond which the
+     * oldest request is evicted.
+     *
+     * @param maxOutstandingAuthnRequests the maximum number of outstanding Authentication Requests per owner
+     */
+    public void setMaxOutstandingAuthnRequests(int maxOutstandingAuthnRequests) {
+        this.maxOutstandingAuthnRequests = maxOutstandingAuthnRequests;
+    }
+
+    public int getMaxOutstandingAuthnRequests() {
+        return maxOutstandingAuthnRequests;
+    }
+
+    /**
+     * Sets the time in seconds for which an Authentication Request awaits its Response.
+     *
+     * @param authnRequestTimeout the time in seconds for which an Authentication Request awaits its Response
+     */
+    public void setAuthnRequestTimeout(int authnRequestTimeout) {
+        this.authnRequestTimeout = authnRequestTimeout;
+    }
+
+    public int getAuthnRequestTimeout() {
+        return authnRequestTimeout;
+    }
+
+    /**
+     * Sets whether the Authentication Requests sent on behalf of sessions are tracked by this node, so that a
+     * Response is only accepted by the session which sent its request. Tracking must be disabled on a cluster which
+     * may route a Response to a node other than the one which sent the request, in which case requests bound to a
+     * signed relay state are still matched to their Response.
+     *
+     * @param authnRequestTracking true to track the Authentication Requests of sessions (default), else false
+     */
+    public void setAuthnRequestTracking(boolean authnRequestTracking) {
+        this.authnRequestTracking = authnRequestTracking;
+    }
+
+    public boolean isAuthnRequestTracking() {
+        return authnRequestTracking;
+    }
+
+    /**
+     * Returns the number of Authentication Requests currently awaiting their Response.
+     *
+     * @return the number of Authentication Requests currently awaiting their Response
+     */
+    public int getOutstandingAuthnRequestCount() {
+        return (requestTracker != null) ? requestTracker.getOutstandingRequestCount() : 0;
+    }
+
+    /**
+     * Returns the number of Responses rejected as unsolicited or stale, as they did not correspond to an
+     * outstanding Authentication Request.
+     *
+     * @return the number of Responses rejected as unsolicited or stale
+     */
+    public long getUnsolicitedResponseCount() {
+        return (requestTracker != null) ? requestTracker.getUnmatchedResponseCount() : 0;
+    }
+
+    /**
+     * Sets the maximum number of characters of a base64 encoded inbound SAML 2.0 message, checked before the
+     * message is decoded, a non-positive value disables the limit.
+     *
+     * @param maxMessageSize the maximum number of characters of an encoded inbound message
+     */
+    public void setMaxMessageSize(int maxMessageSize) {
+        this.maxMessageSize = maxMessageSize;
+    }
+
+    public int getMaxMessageSize() {
+        return maxMessageSize;
+    }
+
+    /**
+     * Sets the maximum number of bytes of a decoded inbound SAML 2.0 message, enforced as the message is parsed,
+     * a non-positive value disables the limit.
+     *
+     * @param maxDecodedMessageSize the maximum number of bytes of a decoded inbound message
+     */
+    public void setMaxDecodedMessageSize(int maxDecodedMessageSize) {
+        this.maxDecodedMessageSize = maxDecodedMessageSize;
+    }
+
+    public int getMaxDecodedMessageSize() {
+        return maxDecodedMessageSize;
+    }
+
+    /**
+     * Sets the maximum nesting depth of the elements of an inbound SAML 2.0 message, a non-positive value disables
+     * the limit.
+     *
+     * @param maxElementDepth the maximum nesting depth of the elements of an inbound message
+     */
+    public void setMaxElementDepth(int maxElementDepth) {
+        this.maxElementDepth = maxElementDepth;
+    }
+
+    public int getMaxElementDepth() {
+        return maxElementDepth;
+    }
+
+    /**
+     * Sets the maximum number of elements of an inbound SAML 2.0 message, a non-positive value disables the limit.
+     *
+     * @param maxElementCount the maximum number of elements of an inbound message
+     */
+    public void setMaxElementCount(int maxElementCount) {
+        this.maxElementCount = maxElementCount;
+    }
+
+    public int getMaxElementCount() {
+        return maxElementCount;
+    }
+
+    /**
+     * Returns the number of inbound SAML 2.0 messages rejected by the size, structure and content checks performed
+     * before any signature validation or decryption, per reason.
+     *
+     * @return the number of inbound messages rejected before any signature validation or decryption, per reason
+     */
+    public Map<String, Long> getRejectedMessageCounts() {
+        return (messageGuard != null) ? messageGuard.getRejectedMessageCounts() : Collections.emptyMap();
+    }
+
+    @Override
+    protected synchronized void startInternal() throws LifecycleException {
+        admissionController = new SSOAdmissionController(clientRequestRate, clientRequestBurst,
+                maxConcurrentCryptoOperations);
+        //  shared by all contexts, as an identity provider message may be replayed to any context of the host
+        replayCache = new SSOReplayCache(maxReplayCacheSize);
+        requestTracker = authnRequestTracking ?
+                new SSOAuthnRequestTracker(maxOutstandingAuthnRequests, authnRequestTimeout) : null;
+        messageGuard = new SSOMessageGuard(maxMessageSize, maxDecodedMessageSize, maxElementDepth, maxElementCount);
+        //  built anew on each start, so that the decryption metrics start from zero
+        assertionDecrypters = new SAML2AssertionDecrypters();
+
+        byte[] secret;
+        if (relayStateSecret != null) {
+            secret = relayStateSecret.getBytes(StandardCharsets.UTF_8);
+        } else {
+            if (statelessRelayState) {
+                containerLog.warn("No relayStateSecret is set, signing stateless relay states with a random secret " +
+                        "which is not shared with other nodes or kept across restarts. Logins completed on another " +
+                        "node or after a restart will be redirected to the context root.");
+            }
+            secret = new byte[SSORelayStateCodec.MIN_SECRET_LENGTH];
+            new SecureRandom().nextBytes(secret);
+        }
+        try {
+            relayStateCodec = new SSORelayStateCodec(secret, relayStateStore.getRelayStateTimeout() * 1000L,
+                    maxRelayStateLength);
+        } catch (SSOException e) {
+            throw new LifecycleException("Error when initializing the SAML 2.0 single-sign-on valve", e);
+        }
+        super.startInternal();
+    }
+
+    @Override
+    protected synchronized void stopInternal() throws LifecycleException {
+        super.stopInternal();
+        //  the managers hold the message limits, hence are recreated on restart
+        contextManagers.clear();
+    }
 
     /**
      * Performs single-sign-on(SSO) or single-logout(SLO) processing based on the request, using SAML 2.0.
@@ -63,45 +504,19 @@ public class SAML2SSOValve extends SingleSignOn {
     @Override
     public void invoke(Request request, Response response) throws IOException, ServletException {
         containerLog.debug("Invoking SAML 2.0 single-sign-on valve. Request URI : " + request.getRequestURI());
+        request.removeNote(org.apache.catalina.authenticator.Constants.REQ_SSOID_NOTE);
 
-        Optional<AppServerWebAppConfiguration> contextConfiguration =
-                ContextConfigurationLoader.getContextConfiguration(request.getContext());
-        if (contextConfiguration.isPresent()) {
-            //  retrieves the configuration instance for the context, if exists
-            this.contextConfiguration = contextConfiguration.get().getSingleSignOnConfiguration();
-            if (this.contextConfiguration == null) {
-                if (containerLog.isDebugEnabled()) {
-                    containerLog.debug("No context level, single-sign-on configuration found for " +
-                            request.getContext() + ", skipping SAML 2.0 based single-sign-on/single-logout...");
-                }
-                getNext().invoke(request, response);
-                return;
-            }
-        } else {
-            //  invokes next valve and moves on to it, if no configuration instance exists
-            if (containerLog.isDebugEnabled()) {
-                containerLog.debug("No context level configuration found for " +
-                        request.getContext() + ", skipping SAML 2.0 based single-sign-on/single-logout...");
-            }
+        Optional<SAML2SSOManager> manager = getContextManager(request.getContext());
+        if (!manager.isPresent()) {
+            //  moves onto the next valve, if single-sign-on is not configured or not enabled for the context
             getNext().invoke(request, response);
             return;
         }
 
-        //  checks if single-sign-on feature is enabled
-        if (!Optional.ofNullable(this.contextConfiguration.isSSOEnabled())
-                .orElse(false)) {
-            if (containerLog.isDebugEnabled()) {
-                containerLog.debug("SAML 2.0 single-sign-on not enabled in web app " + request.getContext().getName() +
-                        ", skipping SAML 2.0 based single-sign-on...");
-            }
-            //  moves onto the next valve, if single-sign-on is not enabled
-            getNext().invoke(request, response);
-            return;
-        }
-
-        requestResolver = new SSORequestResolver(request, this.contextConfiguration);
+        SSORequestResolver requestResolver = new SSORequestResolver(request, manager.get().getPolicy());
+        SSOURIMatcher.URIType uriType = requestResolver.getURIType();
         //  if the request URL matches one of the URL(s) to skip, moves on to the next valve
-        if (requestResolver.isURLToSkip()) {
+        if (uriType == SSOURIMatcher.URIType.SKIP) {
             if (containerLog.isDebugEnabled()) {
                 containerLog.debug("Request matched a URL to skip. Skipping...");
             }
@@ -115,15 +530,46 @@ public class SAML2SSOValve extends SingleSignOn {
                     containerLog.debug("Processing a SAML 2.0 Response...");
                 }
 
-                handleResponse(request);
+                Optional<SAML2InboundMessage> message;
+                try {
+                    message = manager.get().decodeResponse(request);
+                } catch (SSOException e) {
+                    //  a message which cannot be decoded still counts against the rate limit of its client
+                    admissionController.tryAcquireClientRequest(request.getRemoteAddr());
+                    throw e;
+                }
+                //  the back channel Logout Requests of the identity provider are exempt from the rate limit of their
+                //  client address, as the identity provider fans out a single logout to every session participant
+                if (!admitRequest(request, response, !isIdentityProviderLogoutRequest(message, manager.get()))) {
+                    return;
+                }
+                Optional<LoggedInSession> loggedInSession = Optional.empty();
+                try {
+                    if (message.isPresent()) {
+                        loggedInSession = handleResponse(request, message.get(), manager.get());
+                    }
+                } finally {
+                    admissionController.releaseCryptoPermit();
+                }
+                loggedInSession.ifPresent(session -> registerSingleSignOnEntry(request, response, session,
+                        manager.get()));
                 if (request.getSession(false) != null) {
                     //  handle redirection after being authenticated
-                    String relayStateID = (String) request.getSession(false).getAttribute(Constants.RELAY_STATE_ID);
-                    Map relayState = (Map) request.getSession(false).getAttribute(relayStateID);
+                    String relayStateParameter = request.getParameter(Constants.HTTP_POST_PARAM_RELAY_STATE);
+                    Optional<Map<String, Object>> relayState = relayStateCodec.decode(relayStateParameter);
+                    if (!relayState.isPresent()) {
+                        relayState = relayStateStore.consume(request.getSession(false), relayStateParameter);
+                    }
+                    if (!relayState.isPresent()) {
+                        //  the relay state has expired, been evicted or the login was initiated by the identity
+                        //  provider, hence redirects to the context root
+                        response.sendRedirect(request.getContextPath() + "/");
+                        return;
+                    }
 
-                    String requestURL = (String) relayState.get(Constants.REQUEST_URL);
-                    String requestQueryString = (String) relayState.get(Constants.REQUEST_QUERY_STRING);
-                    Map requestParameters = (Map) relayState.get(Constants.REQUEST_PARAMETERS);
+                    String requestURL = (String) relayState.get().get(Constants.REQUEST_URL);
+                    String requestQueryString = (String) relayState.get().get(Constants.REQUEST_QUERY_STRING);
+                    Map requestParameters = (Map) relayState.get().get(Constants.REQUEST_PARAMETERS);
 
                     StringBuilder requestedURI = new StringBuilder(requestURL);
                     Optional.ofNullable(requestQueryString)
@@ -134,22 +580,37 @@ public class SAML2SSOValve extends SingleSignOn {
                     response.sendRedirect(requestedURI.toString());
                     return;
                 }
-            } else if (requestResolver.isSLOURL()) {
+            } else if (uriType == SSOURIMatcher.URIType.SLO) {
                 //  handles single logout request initiated directly at the service provider
                 if (containerLog.isDebugEnabled()) {
                     containerLog.debug("Processing SAML 2.0 Single Logout URL...");
                 }
 
-                handleLogoutRequest(request, response);
+                handleLogoutRequest(request, response, manager.get(), requestResolver);
                 return;
             } else if ((request.getSession(false) == null) ||
                     (request.getSession(false).getAttribute(Constants.LOGGED_IN_SESSION) == null)) {
-                if (containerLog.isDebugEnabled()) {
-                    containerLog.debug("Processing an SAML 2.0 Authentication Request...");
-                }
+                if (authenticateFromSingleSignOnEntry(request, response, manager.get())) {
+                    if (containerLog.isDebugEnabled()) {
+                        containerLog.debug("Authenticated the request through the host level single-sign-on entry");
+                    }
+                } else {
+                    if (containerLog.isDebugEnabled()) {
+                        containerLog.debug("Processing an SAML 2.0 Authentication Request...");
+                    }
 
-                handleUnauthenticatedRequest(request, response);
-                return;
+                    if (!admitRequest(request, response, true)) {
+                        return;
+                    }
+                    try {
+                        handleUnauthenticatedRequest(request, response, manager.get(), requestResolver);
+                    } finally {
+                        admissionController.releaseCryptoPermit();
+                    }
+                    return;
+                }
+            } else {
+                setUserPrincipal(request, manager.get());
             }
         } catch (SSOException e) {
             containerLog.error("An error has occurred when processing the request", e);
@@ -161,41 +622,187 @@ public class SAML2SSOValve extends SingleSignOn {
     }
 
     /**
-     * Handles the unauthenticated requests for all contexts.
+     * Admits the request for processing if its client address is within the rate limit, unless exempt, and a
+     * permit for its cryptographic processing phase is available, else rejects the request immediately.
+     * <p>
+     * The permit acquired for an admitted request must be released by the caller.
      *
-     * @param request  the servlet request processed
-     * @param response the servlet response generated
-     * @throws SSOException if an error occurs when handling an unauthenticated request
+     * @param request           the servlet request processed
+     * @param response          the servlet response generated
+     * @param clientRateLimited true if the request is subject to the rate limit of its client address
+     * @return true if the request was admitted, else false if the request was rejected
+     * @throws IOException if an input/output error occurs when rejecting the request
      */
-    private void handleUnauthenticatedRequest(Request request, Response response) throws SSOException {
-        if (contextConfiguration == null) {
-            throw new SSOException("Context level configurations may not be initialized");
+    private boolean admitRequest(Request request, Response response, boolean clientRateLimited) throws IOException {
+        if (clientRateLimited && !admissionController.tryAcquireClientRequest(request.getRemoteAddr())) {
+            if (containerLog.isDebugEnabled()) {
+                containerLog.debug("Rejected request of " + request.getRemoteAddr() + ", rate limit exceeded");
+            }
+            response.setHeader("Retry-After", "1");
+            response.sendError(Constants.HTTP_STATUS_TOO_MANY_REQUESTS);
+            return false;
+        }
+        if (!admissionController.tryAcquireCryptoPermit()) {
+            if (containerLog.isDebugEnabled()) {
+                containerLog.debug("Rejected request, maximum concurrent SAML 2.0 processing reached");
+            }
+            response.setHeader("Retry-After", "1");
+            response.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Returns the single-sign-on (SSO) manager of the specified context, creating it on first use.
+     * <p>
+     * The manager is evicted when the context stops, so that a reloaded context picks up its current
+     * configurations. A manager which cannot be created fails the request, rather than letting it through
+     * unauthenticated.
+     *
+     * @param context the context whose single-sign-on manager is to be returned
+     * @return the single-sign-on manager, or an empty {@link Optional} if single-sign-on is not configured or
+     * not enabled for the context
+     * @throws ServletException if an error occurs when creating the single-sign-on manager
+     */
+    private Optional<SAML2SSOManager> getContextManager(Context context) throws ServletException {
+        if (context == null) {
+            return Optional.empty();
         }
 
-        if (requestResolver == null) {
-            throw new SSOException("SSO Agent request resolver has not been initialized");
+        Optional<SAML2SSOManager> manager = contextManagers.get(context);
+        if (manager != null) {
+            return manager;
         }
 
-        SAML2SSOManager manager = new SAML2SSOManager(contextConfiguration);
+        try {
+            Optional<SSOAgentPolicy> policy = compileContextPolicy(context);
+            manager = policy.isPresent() ?
+                    Optional.of(new SAML2SSOManager(policy.get(), replayCache, requestTracker,
+                            getContextMessageGuard(policy.get()), assertionDecrypters)) :
+                    Optional.empty();
+        } catch (SSOException e) {
+            throw new ServletException("Error when creating the SAML 2.0 single-sign-on manager of " + context, e);
+        }
+        Optional<SAML2SSOManager> existing = contextManagers.putIfAbsent(context, manager);
+        if (existing != null) {
+            return existing;
+        }
+        //  registers the session index listeners as the context is (re)started, so that the sessions restored by the
+        //  context are evicted from the session index even before the next login of the context
+        manager.filter(contextManager -> contextManager.getPolicy().isSLOEnabled())
+                .ifPresent(contextManager -> SSOAgentSessionManager.registerContext(context));
 
-        //  setup relay state
-        String relayStateID = SSOUtils.createID();
-        request.getSession(true).setAttribute(Constants.RELAY_STATE_ID, relayStateID);
-        request.getSession(false).setAttribute(relayStateID, SSOUtils.generateRelayState(request));
+        context.addLifecycleListener(new LifecycleListener() {
+            @Override
+            public void lifecycleEvent(LifecycleEvent event) {
+                if (Lifecycle.AFTER_STOP_EVENT.equals(event.getType())) {
+                    contextManagers.remove(context);
+                    context.removeLifecycleListener(this);
+                }
+            }
+        });
+        return manager;
+    }
 
-        contextConfiguration.enableRequestSigning(Optional.ofNullable(contextConfiguration.isRequestSigningEnabled())
-                .orElse(false));
+    /**
+     * Returns the guard of the inbound messages of the context of the specified policy, which applies the limits of
+     * the context where set, else those of this valve.
+     *
+     * @param policy the single-sign-on policy of the context
+     * @return the guard of the inbound messages of the context
+     */
+    private SSOMessageGuard getContextMessageGuard(SSOAgentPolicy policy) {
+        if (!policy.getMaxMessageSize().isPresent() && !policy.getMaxDecodedMessageSize().isPresent() &&
+                !policy.getMaxElementDepth().isPresent() && !policy.getMaxElementCount().isPresent()) {
+            return messageGuard;
+        }
+        return messageGuard.withLimits(policy.getMaxMessageSize().orElse(maxMessageSize),
+                policy.getMaxDecodedMessageSize().orElse(maxDecodedMessageSize),
+                policy.getMaxElementDepth().orElse(maxElementDepth),
+                policy.getMaxElementCount().orElse(maxElementCount));
+    }
+
+    /**
+     * Compiles the single-sign-on (SSO) policy of the specified context.
+     *
+     * @param context the context whose single-sign-on policy is to be compiled
+     * @return the compiled single-sign-on policy, or an empty {@link Optional} if single-sign-on is not
+     * configured or not enabled for the context
+     */
+    private Optional<SSOAgentPolicy> compileContextPolicy(Context context) {
+
+        Optional<AppServerWebAppConfiguration> configuration =
+                ContextConfigurationLoader.getContextConfiguration(context);
+        if (!configuration.isPresent()) {
+            if (containerLog.isDebugEnabled()) {
+                containerLog.debug("No context level configuration found for " +
+                        context + ", skipping SAML 2.0 based single-sign-on/single-logout...");
+            }
+            return Optional.empty();
+        }
+
+        WebAppSingleSignOn contextConfiguration = configuration.get().getSingleSignOnConfiguration();
+        if (contextConfiguration == null) {
+            if (containerLog.isDebugEnabled()) {
+                containerLog.debug("No context level, single-sign-on configuration found for " +
+                        context + ", skipping SAML 2.0 based single-sign-on/single-logout...");
+            }
+            return Optional.empty();
+        }
+
+        //  checks if single-sign-on feature is enabled
+        if (!Optional.ofNullable(contextConfiguration.isSSOEnabled())
+                .orElse(false)) {
+            if (containerLog.isDebugEnabled()) {
+                containerLog.debug("SAML 2.0 single-sign-on not enabled in web app " + context.getName() +
+                        ", skipping SAML 2.0 based single-sign-on...");
+            }
+            return Optional.empty();
+        }
+
+        ApplicationServerConfiguration serverConfiguration = ServerConfigurationLoader.getServerConfiguration();
+        return Optional.of(SSOAgentPolicy.compile(context, contextConfiguration,
+                (serverConfiguration != null) ? serverConfiguration.getSingleSignOnConfiguration() : null));
+    }
+
+    /**
+     * Handles the unauthenticated requests for all contexts.
+     *
+     * @param request         the servlet request processed
+     * @param response        the servlet response generated
+     * @param manager         the single-sign-on manager of the request context
+     * @param requestResolver the request resolver of the request processed
+     * @throws SSOException if an error occurs when handling an unauthenticated request
+     */
+    private void handleUnauthenticatedRequest(Request request, Response response, SAML2SSOManager manager,
+                                              SSORequestResolver requestResolver) throws SSOException {
+        //  setup relay state, in a signed RelayState parameter if enabled and the originally requested resource is
+        //  fully described by its URI and query string, else in the session
+        //  an Authentication Request sent along with a signed relay state is bound to it, else to the session
+        Optional<String> signedRelayState = Optional.empty();
+        String boundAuthnRequestId = null;
+        if (statelessRelayState && "GET".equals(request.getMethod()) &&
+                (request.getAttribute(Constants.RELAY_STATE) == null)) {
+            signedRelayState = relayStateCodec.encode(request.getRequestURI(), request.getQueryString());
+            boundAuthnRequestId = signedRelayState.flatMap(relayStateCodec::getAuthnRequestId)
+                    .orElse(null);
+        }
+        String relayStateId = signedRelayState.isPresent() ? signedRelayState.get() :
+                relayStateStore.save(request.getSession(true), SSOUtils.generateRelayState(request));
 
         if (requestResolver.isHttpPOSTBinding()) {
             containerLog.debug("Handling the SAML 2.0 Authentication Request for HTTP-POST binding...");
-            String htmlPayload = manager.handleAuthenticationRequestForPOSTBinding(request);
+            String htmlPayload = manager.handleAuthenticationRequestForPOSTBinding(request, relayStateId,
+                    boundAuthnRequestId);
             response.setContentType(Constants.CONTENT_TYPE_HTML);
             SSOUtils.sendCharacterData(response, htmlPayload);
         } else {
             containerLog.debug("Handling the SAML 2.0 Authentication Request for " +
-                    contextConfiguration.getHttpBinding() + "...");
+                    manager.getPolicy().getHttpBinding() + "...");
             try {
-                response.sendRedirect(manager.handleAuthenticationRequestForRedirectBinding(request));
+                response.sendRedirect(manager.handleAuthenticationRequestForRedirectBinding(request, relayStateId,
+                        boundAuthnRequestId));
             } catch (IOException e) {
                 throw new SSOException("Error when handling SAML 2.0 HTTP-Redirect binding", e);
             }
@@ -205,40 +812,198 @@ public class SAML2SSOValve extends SingleSignOn {
     /**
      * Handles single-sign-on (SSO) and single-logout (SLO) responses.
      *
-     * @param request  the servlet request processed
+     * @param request the servlet request processed
+     * @param message the inbound SAML 2.0 message decoded from the request
+     * @param manager the single-sign-on manager of the request context
+     * @return the logged-in session established, if the response is a successful single-sign-on Response
      * @throws SSOException if an error occurs when handling a response
      */
-    private void handleResponse(Request request) throws SSOException {
-        if (contextConfiguration == null) {
-            throw new SSOException("Context level configurations may not be initialized");
-        }
+    private Optional<LoggedInSession> handleResponse(Request request, SAML2InboundMessage message,
+                                                     SAML2SSOManager manager) throws SSOException {
+        String boundAuthnRequestId = relayStateCodec.getAuthnRequestId(
+                request.getParameter(Constants.HTTP_POST_PARAM_RELAY_STATE))
+                .orElse(null);
+        return manager.processResponse(request, message, boundAuthnRequestId);
+    }
 
-        contextConfiguration.enableResponseSigning(Optional.ofNullable(contextConfiguration.isResponseSigningEnabled())
-                .orElse(false));
-        contextConfiguration.enableAssertionSigning(
-                Optional.ofNullable(contextConfiguration.isAssertionSigningEnabled())
-                        .orElse(true));
-        contextConfiguration.enableAssertionEncryption(
-                Optional.ofNullable(contextConfiguration.isAssertionEncryptionEnabled())
-                        .orElse(false));
+    /**
+     * Returns true if the specified inbound message is a back channel Logout Request issued by the identity
+     * provider of the request context, else false.
+     *
+     * @param message the inbound SAML 2.0 message decoded from the request, if any
+     * @param manager the single-sign-on manager of the request context
+     * @return true if the message is a Logout Request of the identity provider of the request context, else false
+     */
+    static boolean isIdentityProviderLogoutRequest(Optional<SAML2InboundMessage> message, SAML2SSOManager manager) {
+        return message
+                .filter(inbound -> inbound.getMessageType() == SAML2InboundMessage.MessageType.LOGOUT_REQUEST)
+                .map(inbound -> ((LogoutRequest) inbound.getMessage()).getIssuer())
+                .filter(issuer -> (issuer.getValue() != null) &&
+                        issuer.getValue().equals(manager.getPolicy().getIdpEntityId()))
+                .isPresent();
+    }
+
+    /**
+     * Registers a host level single-sign-on entry for the principal of the specified logged-in session, which is
+     * associated with the current session and identified by a single-sign-on cookie added to the response.
+     *
+     * @param request         the servlet request processed
+     * @param response        the servlet response generated
+     * @param loggedInSession the logged-in session established for the request
+     * @param manager         the single-sign-on manager of the request context
+     */
+    void registerSingleSignOnEntry(Request request, Response response, LoggedInSession loggedInSession,
+                                   SAML2SSOManager manager) {
+        Session session = request.getSessionInternal(false);
+        if (session == null) {
+            return;
+        }
 
-        SAML2SSOManager manager = new SAML2SSOManager(contextConfiguration);
-        manager.processResponse(request);
+        String ssoId = SSOUtils.createID();
+        register(ssoId, new SSOPrincipal(loggedInSession, SSOLoginOrigin.of(manager.getPolicy())),
+                Constants.SAML2_AUTH_TYPE, loggedInSession.getSubjectId(), null);
+        associate(ssoId, session);
+        cachePrincipal(session, loggedInSession, manager);
+        addSingleSignOnCookie(request, response, ssoId, -1);
+        request.setNote(org.apache.catalina.authenticator.Constants.REQ_SSOID_NOTE, ssoId);
     }
 
     /**
-     * Handles a logout request from a session participant.
+     * Authenticates the request locally, if it carries the cookie of a host level single-sign-on entry registered
+     * by another context, with the identity provider of the request context and under requirements at least as
+     * strict as those of the request context.
+     * <p>
+     * The current session is associated with the entry and is given the logged-in session of the entry's
+     * principal, including the identity provider session index for single-logout (SLO), which is that of the
+     * identity provider of the request context.
      *
      * @param request  the servlet request processed
      * @param response the servlet response generated
-     * @throws SSOException if an error occurs when handling a logout request
+     * @param manager  the single-sign-on manager of the request context
+     * @return true if the request was authenticated through a single-sign-on entry, else false
      */
-    private void handleLogoutRequest(Request request, Response response) throws SSOException {
-        if (requestResolver == null) {
-            throw new SSOException("SSO Agent request resolver has not been initialized");
+    boolean authenticateFromSingleSignOnEntry(Request request, Response response, SAML2SSOManager manager) {
+        Optional<String> ssoId = Optional.ofNullable(request.getCookies())
+                .flatMap(cookies -> Arrays.stream(cookies)
+                        .filter(cookie -> org.apache.catalina.authenticator.Constants.SINGLE_SIGN_ON_COOKIE
+                                .equals(cookie.getName()))
+                        .map(Cookie::getValue)
+                        .findFirst());
+        if (!ssoId.isPresent()) {
+            return false;
+        }
+
+        SingleSignOnEntry entry = cache.get(ssoId.get());
+        if (entry == null) {
+            //  expires the cookie of an entry which no longer exists, for example after single-logout
+            addSingleSignOnCookie(request, response, "", 0);
+            return false;
+        }
+        if (!(entry.getPrincipal() instanceof SSOPrincipal) ||
+                (((SSOPrincipal) entry.getPrincipal()).getLoggedInSession() == null)) {
+            return false;
+        }
+
+        SSOPrincipal principal = (SSOPrincipal) entry.getPrincipal();
+        if (!principal.getLoginOrigin()
+                .filter(origin -> origin.isAcceptableTo(manager.getPolicy()))
+                .isPresent()) {
+            if (containerLog.isDebugEnabled()) {
+                containerLog.debug("Single-sign-on entry not accepted by " + request.getContext() + ", as it was " +
+                        "established with another identity provider or under weaker requirements");
+            }
+            return false;
+        }
+        Session session = request.getSessionInternal(true);
+        if (!associate(ssoId.get(), session)) {
+            //  the entry has been concurrently deregistered
+            return false;
+        }
+
+        LoggedInSession loggedInSession = principal.getLoggedInSession();
+        session.getSession().setAttribute(Constants.LOGGED_IN_SESSION, loggedInSession);
+        if (manager.getPolicy().isSLOEnabled()) {
+            SSOAgentSessionManager.addAuthenticatedSession(loggedInSession.getSessionIndex(), session);
+        }
+
+        request.setNote(org.apache.catalina.authenticator.Constants.REQ_SSOID_NOTE, ssoId.get());
+        request.setAuthType(entry.getAuthType());
+        request.setUserPrincipal(cachePrincipal(session, loggedInSession, manager));
+        return true;
+    }
+
+    /**
+     * Sets the principal of an authenticated request to the principal cached in its session, creating and caching
+     * the principal if the session holds none, for example when the session was restored from persistent storage.
+     *
+     * @param request the servlet request processed
+     * @param manager the single-sign-on manager of the request context
+     */
+    private void setUserPrincipal(Request request, SAML2SSOManager manager) {
+        Session session = request.getSessionInternal(false);
+        if (session == null) {
+            return;
+        }
+
+        Principal principal = session.getPrincipal();
+        if (!(principal instanceof SSOPrincipal)) {
+            Optional<LoggedInSession> loggedInSession = LoggedInSession.getLoggedInSession(session.getSession());
+            if (!loggedInSession.isPresent()) {
+                return;
+            }
+            principal = cachePrincipal(session, loggedInSession.get(), manager);
         }
+        request.setAuthType(Constants.SAML2_AUTH_TYPE);
+        request.setUserPrincipal(principal);
+    }
 
-        SAML2SSOManager manager = new SAML2SSOManager(contextConfiguration);
+    /**
+     * Creates the principal of the specified logged-in session, with the container roles mapped from the subject
+     * attributes as per the request context, and caches it in the specified session.
+     *
+     * @param session         the session of the request context
+     * @param loggedInSession the logged-in session
+     * @param manager         the single-sign-on manager of the request context
+     * @return the principal created
+     */
+    private SSOPrincipal cachePrincipal(Session session, LoggedInSession loggedInSession, SAML2SSOManager manager) {
+        SSOPrincipal principal = new SSOPrincipal(loggedInSession,
+                manager.getPolicy().getRoleMapper().getRoles(loggedInSession));
+        session.setAuthType(Constants.SAML2_AUTH_TYPE);
+        session.setPrincipal(principal);
+        return principal;
+    }
+
+    /**
+     * Adds the single-sign-on cookie with the specified value and maximum age to the response.
+     *
+     * @param request  the servlet request processed
+     * @param response the servlet response generated
+     * @param ssoId    the single-sign-on entry identifier
+     * @param maxAge   the maximum age of the cookie in seconds, 0 to expire the cookie or -1 for a session cookie
+     */
+    private void addSingleSignOnCookie(Request request, Response response, String ssoId, int maxAge) {
+        Cookie cookie = new Cookie(org.apache.catalina.authenticator.Constants.SINGLE_SIGN_ON_COOKIE, ssoId);
+        cookie.setMaxAge(maxAge);
+        cookie.setPath("/");
+        cookie.setSecure(request.isSecure());
+        cookie.setHttpOnly(request.getContext().getUseHttpOnly());
+        Optional.ofNullable(getCookieDomain())
+                .ifPresent(cookie::setDomain);
+        response.addCookie(cookie);
+    }
+
+    /**
+     * Handles a logout request from a session participant.
+     *
+     * @param request         the servlet request processed
+     * @param response        the servlet response generated
+     * @param manager         the single-sign-on manager of the request context
+     * @param requestResolver the request resolver of the request processed
+     * @throws SSOException if an error occurs when handling a logout request
+     */
+    private void handleLogoutRequest(Request request, Response response, SAML2SSOManager manager,
+                                     SSORequestResolver requestResolver) throws SSOException {
         try {
             if (requestResolver.isHttpPOSTBinding()) {
                 if (request.getSession(false).getAttribute(Constants.LOGGED_IN_SESSION) != null) {
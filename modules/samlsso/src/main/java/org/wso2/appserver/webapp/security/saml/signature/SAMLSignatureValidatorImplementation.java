@@ -17,19 +17,48 @@ package org.wso2.appserver.webapp.security.saml.signature;
 
 import org.opensaml.saml.saml2.core.Assertion;
 import org.opensaml.saml.saml2.core.Response;
+import org.opensaml.saml.security.impl.SAMLSignatureProfileValidator;
+import org.opensaml.xmlsec.signature.Signature;
 import org.opensaml.xmlsec.signature.support.SignatureException;
 import org.wso2.appserver.webapp.security.utils.exception.SSOException;
 
 /**
  * This is a class which implements the XML Signature validator interface {@code SignatureValidator}.
+ * <p>
+ * The identity provider verification credential is built once with the entity credential and the SAML signature
+ * profile validator is stateless, hence both are shared by all concurrent validations without allocation or
+ * locking per signature.
  *
  * @since 6.0.0
  */
 public class SAMLSignatureValidatorImplementation implements SignatureValidator {
+    private static final SAMLSignatureProfileValidator profileValidator = new SAMLSignatureProfileValidator();
+
     @Override
     public void validateSignature(Response response, Assertion assertion, boolean isResponseSigningEnabled,
                                   boolean isAssertionSigningEnabled) throws SSOException {
-        SSOX509Credential ssoX509Credential = SSOX509Credential.getInstance();
+        if (!(isResponseSigningEnabled || isAssertionSigningEnabled)) {
+            return;
+        }
+        validateSignature(response, assertion, isResponseSigningEnabled, isAssertionSigningEnabled,
+                SSOX509Credential.getInstance());
+    }
+
+    /**
+     * Validates the signatures of the specified Response and Assertion, as required, with the identity provider
+     * verification credential of the specified entity credential.
+     *
+     * @param response                  the SAML 2.0 Response
+     * @param assertion                 the SAML 2.0 Assertion
+     * @param isResponseSigningEnabled  true if the Response must be signed, else false
+     * @param isAssertionSigningEnabled true if the Assertion must be signed, else false
+     * @param entityCredential          the entity credential which holds the identity provider certificate
+     * @throws SSOException if a required signature is absent or invalid, or the identity provider certificate is
+     *                      not found
+     */
+    void validateSignature(Response response, Assertion assertion, boolean isResponseSigningEnabled,
+                           boolean isAssertionSigningEnabled, SSOX509Credential entityCredential) throws SSOException {
+        X509CredentialImplementation credential = entityCredential.getVerificationCredential();
 
         if (isResponseSigningEnabled) {
             if (response.getSignature() == null) {
@@ -37,8 +66,7 @@ public class SAMLSignatureValidatorImplementation implements SignatureValidator
                         "in SAML 2.0 Response element");
             } else {
                 try {
-                    org.opensaml.xmlsec.signature.support.SignatureValidator.validate(response.getSignature(),
-                            new X509CredentialImplementation(ssoX509Credential.getEntityCertificate()));
+                    validate(response.getSignature(), credential);
                 } catch (SignatureException e) {
                     throw new SSOException("Signature validation failed for SAML 2.0 Response", e);
                 }
@@ -50,12 +78,25 @@ public class SAMLSignatureValidatorImplementation implements SignatureValidator
                         "SAML 2.0 Assertion element");
             } else {
                 try {
-                    org.opensaml.xmlsec.signature.support.SignatureValidator.validate(assertion.getSignature(),
-                            new X509CredentialImplementation(ssoX509Credential.getEntityCertificate()));
+                    validate(assertion.getSignature(), credential);
                 } catch (SignatureException e) {
                     throw new SSOException("Signature validation failed for SAML 2.0 Assertion", e);
                 }
             }
         }
     }
+
+    /**
+     * Validates the specified XML Digital Signature against the SAML signature profile, which ensures it is an
+     * enveloped signature of its parent element, before validating it cryptographically.
+     *
+     * @param signature  the XML Digital Signature to be validated
+     * @param credential the identity provider verification credential
+     * @throws SignatureException if the signature does not conform to the profile or is invalid
+     */
+    private static void validate(Signature signature, X509CredentialImplementation credential)
+            throws SignatureException {
+        profileValidator.validate(signature);
+        org.opensaml.xmlsec.signature.support.SignatureValidator.validate(signature, credential);
+    }
 }
@@ -32,6 +32,10 @@ import java.util.Optional;
 
 /**
  * This is a singleton class which represents an entity credential associated with X.509 Public Key Infrastructure.
+ * <p>
+ * The single instance is read once and never modified thereafter. It pre-builds the OpenSAML credentials used to
+ * verify the identity provider signatures and to sign and decrypt on behalf of the service provider, which are
+ * immutable and shared read-only by all request processing threads.
  *
  * @since 6.0.0
  */
@@ -39,14 +43,44 @@ public class SSOX509Credential {
     private PublicKey publicKey;
     private PrivateKey privateKey;
     private X509Certificate entityCertificate;
-    private String idpCertificateAlias;
+    private final String idpCertificateAlias;
+    private final X509CredentialImplementation verificationCredential;
+    private final X509CredentialImplementation serviceProviderCredential;
 
-    //  reference to the single instance of entity credential
-    private static SSOX509Credential ssoX509Credential;
+    //  reference to the single instance of entity credential, safely published for lock-free reads
+    private static volatile SSOX509Credential ssoX509Credential;
 
     private SSOX509Credential(ApplicationServerConfiguration serverConfiguration) throws SSOException {
-        this.idpCertificateAlias = serverConfiguration.getSingleSignOnConfiguration().getIdpCertificateAlias();
-        readX509Credentials(serverConfiguration.getSecurityConfiguration());
+        this(serverConfiguration.getSingleSignOnConfiguration().getIdpCertificateAlias(),
+                (KeyStore) SSOUtils.generateKeyStore().orElse(null),
+                Optional.ofNullable(serverConfiguration.getSecurityConfiguration())
+                        .map(AppServerSecurity::getKeystore)
+                        .map(keystore -> keystore.getKeyAlias())
+                        .orElse(null),
+                Optional.ofNullable(serverConfiguration.getSecurityConfiguration())
+                        .map(AppServerSecurity::getKeystore)
+                        .map(keystore -> keystore.getKeyPassword())
+                        .orElse(null));
+    }
+
+    /**
+     * Creates an entity credential from the specified key store.
+     *
+     * @param idpCertificateAlias the alias of the identity provider certificate
+     * @param keyStore            the key store, or null if none is configured
+     * @param privateKeyAlias     the alias of the service provider private key
+     * @param privateKeyPassword  the password of the service provider private key
+     * @throws SSOException if an error occurred while reading credentials
+     */
+    SSOX509Credential(String idpCertificateAlias, KeyStore keyStore, String privateKeyAlias,
+                      String privateKeyPassword) throws SSOException {
+        this.idpCertificateAlias = idpCertificateAlias;
+        if (keyStore != null) {
+            readX509Credentials(keyStore, privateKeyAlias, privateKeyPassword);
+        }
+        verificationCredential = (entityCertificate != null) ?
+                new X509CredentialImplementation(entityCertificate) : null;
+        serviceProviderCredential = new X509CredentialImplementation(this);
     }
 
     public PrivateKey getPrivateKey() {
@@ -61,49 +95,74 @@ public class SSOX509Credential {
         return entityCertificate;
     }
 
-    public static synchronized SSOX509Credential getInstance() throws SSOException {
-        if (ssoX509Credential == null) {
-            ssoX509Credential = new SSOX509Credential(ServerConfigurationLoader.getServerConfiguration());
+    /**
+     * Returns the credential which verifies the signatures of the identity provider, holding the identity provider
+     * certificate and its public key.
+     *
+     * @return the credential which verifies the signatures of the identity provider
+     * @throws SSOException if the identity provider certificate is not found
+     */
+    public X509CredentialImplementation getVerificationCredential() throws SSOException {
+        if (verificationCredential == null) {
+            throw new SSOException("Identity provider certificate not found with certificateAlias " +
+                    idpCertificateAlias);
         }
+        return verificationCredential;
+    }
 
-        return ssoX509Credential;
+    /**
+     * Returns the credential which signs and decrypts messages on behalf of the service provider, holding the
+     * service provider private key.
+     *
+     * @return the credential which signs and decrypts messages on behalf of the service provider
+     */
+    public X509CredentialImplementation getServiceProviderCredential() {
+        return serviceProviderCredential;
+    }
+
+    public static SSOX509Credential getInstance() throws SSOException {
+        SSOX509Credential credential = ssoX509Credential;
+        if (credential != null) {
+            return credential;
+        }
+
+        synchronized (SSOX509Credential.class) {
+            if (ssoX509Credential == null) {
+                ssoX509Credential = new SSOX509Credential(ServerConfigurationLoader.getServerConfiguration());
+            }
+            return ssoX509Credential;
+        }
     }
 
     /**
-     * Reads the appropriate X.509 certificate credentials using the keystore configuration properties specified.
+     * Reads the appropriate X.509 certificate credentials from the specified key store.
      *
-     * @param securityConfiguration the keystore configuration properties
+     * @param keyStore           the key store
+     * @param privateKeyAlias    the alias of the service provider private key
+     * @param privateKeyPassword the password of the service provider private key
      * @throws SSOException if an error occurred while reading credentials
      */
-    private void readX509Credentials(AppServerSecurity securityConfiguration) throws SSOException {
-        Optional generatedKeyStore = SSOUtils.generateKeyStore();
-        if (generatedKeyStore.isPresent()) {
-            KeyStore keyStore = (KeyStore) generatedKeyStore.get();
-            try {
-                if (idpCertificateAlias != null) {
-                    entityCertificate = (X509Certificate) keyStore.getCertificate(idpCertificateAlias);
-                }
-            } catch (KeyStoreException e) {
-                throw new SSOException("Error occurred while retrieving public certificate with certificateAlias " +
-                        idpCertificateAlias, e);
+    private void readX509Credentials(KeyStore keyStore, String privateKeyAlias, String privateKeyPassword)
+            throws SSOException {
+        try {
+            if (idpCertificateAlias != null) {
+                entityCertificate = (X509Certificate) keyStore.getCertificate(idpCertificateAlias);
             }
+        } catch (KeyStoreException e) {
+            throw new SSOException("Error occurred while retrieving public certificate with certificateAlias " +
+                    idpCertificateAlias, e);
+        }
 
-            try {
-                if ((securityConfiguration != null) && (securityConfiguration.getKeystore() != null)) {
-                    String privateKeyAlias = securityConfiguration.getKeystore().getKeyAlias();
-                    String privateKeyPassword = securityConfiguration.getKeystore().getKeyPassword();
-
-                    if ((privateKeyAlias != null) && (privateKeyPassword != null)) {
-                        privateKey = (PrivateKey) keyStore.getKey(privateKeyAlias, privateKeyPassword.toCharArray());
-                    }
-                }
-            } catch (KeyStoreException | NoSuchAlgorithmException | UnrecoverableKeyException e) {
-                throw new SSOException("Error occurred while retrieving the private key", e);
+        try {
+            if ((privateKeyAlias != null) && (privateKeyPassword != null)) {
+                privateKey = (PrivateKey) keyStore.getKey(privateKeyAlias, privateKeyPassword.toCharArray());
             }
+        } catch (KeyStoreException | NoSuchAlgorithmException | UnrecoverableKeyException e) {
+            throw new SSOException("Error occurred while retrieving the private key", e);
+        }
 
-            if (entityCertificate != null) {
-                publicKey = entityCertificate.getPublicKey();
-            }
+        if (entityCertificate != null) {
+            publicKey = entityCertificate.getPublicKey();
         }
     }
 }
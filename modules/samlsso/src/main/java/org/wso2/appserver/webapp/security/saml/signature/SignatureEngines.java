@@ -0,0 +1,136 @@
+/*
+ *  Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.wso2.appserver.webapp.security.saml.signature;
+
+import org.wso2.appserver.webapp.security.agent.SSOSignatureAlgorithm;
+import org.wso2.appserver.webapp.security.utils.exception.SSOException;
+
+import java.security.InvalidKeyException;
+import java.security.NoSuchAlgorithmException;
+import java.security.PrivateKey;
+import java.security.Signature;
+import java.security.SignatureException;
+import java.security.interfaces.ECKey;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * This class computes the signature values of the SAML 2.0 requests signed by the service provider, such as the
+ * HTTP-Redirect binding query string signature.
+ * <p>
+ * A {@code Signature} engine is cached per thread and algorithm, with the private key already initialized, as an
+ * engine returns to its initialized state after signing. Hence, neither the provider lookup nor the key
+ * initialization is repeated per request. The engine is initialized anew if the private key changes.
+ *
+ * @since 6.0.0
+ */
+public class SignatureEngines {
+    private static final ThreadLocal<Map<SSOSignatureAlgorithm, Engine>> engines =
+            ThreadLocal.withInitial(() -> new EnumMap<>(SSOSignatureAlgorithm.class));
+
+    /**
+     * Prevents instantiating the SignatureEngines utility class.
+     */
+    private SignatureEngines() {
+    }
+
+    /**
+     * Signs the specified content with the specified algorithm and private key.
+     * <p>
+     * An ECDSA signature value is returned as the concatenation of the integers r and s, as specified by XML
+     * Signature, rather than their DER encoded sequence.
+     *
+     * @param algorithm the signature algorithm
+     * @param key       the private key, of the key type of the algorithm
+     * @param content   the content to be signed
+     * @return the signature value
+     * @throws SSOException if the algorithm is not supported or the key is not of the key type of the algorithm
+     */
+    public static byte[] sign(SSOSignatureAlgorithm algorithm, PrivateKey key, byte[] content) throws SSOException {
+        Map<SSOSignatureAlgorithm, Engine> threadEngines = engines.get();
+        try {
+            Engine engine = threadEngines.get(algorithm);
+            if ((engine == null) || (engine.key != key)) {
+                Signature signature = Signature.getInstance(algorithm.getJCAName());
+                signature.initSign(key);
+                engine = new Engine(key, signature);
+                threadEngines.put(algorithm, engine);
+            }
+
+            engine.signature.update(content);
+            byte[] value = engine.signature.sign();
+            return algorithm.isECDSA() ? toConcatenatedIntegers(value, key) : value;
+        } catch (NoSuchAlgorithmException | InvalidKeyException | SignatureException e) {
+            //  an engine left in an unknown state is not reused
+            threadEngines.remove(algorithm);
+            throw new SSOException("Error when signing with the " + algorithm.getURI() + " signature algorithm", e);
+        }
+    }
+
+    /**
+     * Converts the specified DER encoded ECDSA signature into the concatenation of its integers r and s, each
+     * padded to the length of the order of the curve of the specified key.
+     *
+     * @param der the DER encoded sequence of the integers r and s
+     * @param key the ECDSA private key
+     * @return the concatenation of the integers r and s
+     * @throws SignatureException if the signature is not a DER encoded sequence of two integers
+     */
+    static byte[] toConcatenatedIntegers(byte[] der, PrivateKey key) throws SignatureException {
+        if (!(key instanceof ECKey)) {
+            throw new SignatureException("ECDSA signing requires an EC private key");
+        }
+        int length = (((ECKey) key).getParams().getOrder().bitLength() + 7) / 8;
+
+        byte[] concatenated = new byte[2 * length];
+        //  skips the sequence tag and its length, which spans two bytes beyond 127 bytes
+        int offset = ((der.length > 1) && (der[1] == (byte) 0x81)) ? 3 : 2;
+        for (int integer = 0; integer < 2; integer++) {
+            if ((offset + 2 > der.length) || (der[offset] != 0x02)) {
+                throw new SignatureException("Invalid DER encoded ECDSA signature");
+            }
+            int integerLength = der[offset + 1] & 0xFF;
+            int start = offset + 2;
+            offset = start + integerLength;
+            if (offset > der.length) {
+                throw new SignatureException("Invalid DER encoded ECDSA signature");
+            }
+            //  drops the sign padding of the integer
+            while ((integerLength > length) && (der[start] == 0)) {
+                start++;
+                integerLength--;
+            }
+            if (integerLength > length) {
+                throw new SignatureException("Invalid DER encoded ECDSA signature");
+            }
+            System.arraycopy(der, start, concatenated, (integer + 1) * length - integerLength, integerLength);
+        }
+        return concatenated;
+    }
+
+    /**
+     * A {@code Signature} engine initialized with a private key.
+     */
+    private static class Engine {
+        private final PrivateKey key;
+        private final Signature signature;
+
+        private Engine(PrivateKey key, Signature signature) {
+            this.key = key;
+            this.signature = signature;
+        }
+    }
+}
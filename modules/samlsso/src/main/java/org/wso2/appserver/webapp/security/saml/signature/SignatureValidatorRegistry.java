@@ -0,0 +1,69 @@
+/*
+ *  Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.wso2.appserver.webapp.security.saml.signature;
+
+import org.wso2.appserver.webapp.security.utils.exception.SSOException;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * This class is a registry of {@code SignatureValidator} instances, keyed by their implementation class name.
+ * <p>
+ * Each configured implementation class is loaded and instantiated only once and the resulting instance is
+ * shared by all contexts configured with that class. Hence, signature validator implementations must be
+ * thread-safe.
+ *
+ * @since 6.0.0
+ */
+public class SignatureValidatorRegistry {
+    private static final Map<String, SignatureValidator> signatureValidators = new ConcurrentHashMap<>();
+
+    /**
+     * Prevents instantiating the SignatureValidatorRegistry class.
+     */
+    private SignatureValidatorRegistry() {
+    }
+
+    /**
+     * Returns the {@code SignatureValidator} instance of the specified implementation class, loading and
+     * instantiating the class if not already registered.
+     *
+     * @param className the fully qualified name of the signature validator implementation class
+     * @return the {@link SignatureValidator} instance of the specified implementation class
+     * @throws SSOException if an error occurs when loading the signature validator implementation class
+     */
+    public static SignatureValidator getSignatureValidator(String className) throws SSOException {
+        SignatureValidator signatureValidator = signatureValidators.get(className);
+        if (signatureValidator != null) {
+            return signatureValidator;
+        }
+
+        try {
+            Class<?> validatorClass = Class.forName(className);
+            if (!SignatureValidator.class.isAssignableFrom(validatorClass)) {
+                throw new SSOException("Signature validator class " + className + " does not implement " +
+                        SignatureValidator.class.getName());
+            }
+            signatureValidator = (SignatureValidator) validatorClass.newInstance();
+        } catch (InstantiationException | IllegalAccessException | ClassNotFoundException e) {
+            throw new SSOException("Error loading custom signature validator class " + className, e);
+        }
+
+        SignatureValidator existing = signatureValidators.putIfAbsent(className, signatureValidator);
+        return (existing != null) ? existing : signatureValidator;
+    }
+}
@@ -19,14 +19,12 @@ import org.opensaml.security.credential.Credential;
 import org.opensaml.security.credential.CredentialContextSet;
 import org.opensaml.security.credential.UsageType;
 import org.opensaml.security.x509.X509Credential;
-import org.wso2.appserver.webapp.security.utils.exception.SSOException;
-
 import java.security.PrivateKey;
 import java.security.PublicKey;
 import java.security.cert.X509CRL;
 import java.security.cert.X509Certificate;
-import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import javax.crypto.SecretKey;
@@ -34,21 +32,23 @@ import javax.crypto.SecretKey;
 /**
  * This class represents an entity credential associated with X.509 Public Key Infrastructure.
  * <p>
- * This class implements the org.opensaml.xml.security.x509.X509Credential interface.
+ * This class implements the org.opensaml.xml.security.x509.X509Credential interface. An instance is immutable,
+ * hence may be shared by concurrent signature operations.
  *
  * @since 6.0.0
  */
 public class X509CredentialImplementation implements X509Credential {
-    private PublicKey publicKey;
-    private X509Certificate entityCertificate;
-    private PrivateKey privateKey;
+    private final PublicKey publicKey;
+    private final X509Certificate entityCertificate;
+    private final PrivateKey privateKey;
 
     public X509CredentialImplementation(X509Certificate certificate) {
         publicKey = certificate.getPublicKey();
         entityCertificate = certificate;
+        privateKey = null;
     }
 
-    public X509CredentialImplementation(SSOX509Credential credential) throws SSOException {
+    public X509CredentialImplementation(SSOX509Credential credential) {
         publicKey = credential.getPublicKey();
         entityCertificate = credential.getEntityCertificate();
         privateKey = credential.getPrivateKey();
@@ -79,13 +79,13 @@ public class X509CredentialImplementation implements X509Credential {
     @Nonnull
     @Override
     public Collection<X509Certificate> getEntityCertificateChain() {
-        return new ArrayList<>();
+        return Collections.emptyList();
     }
 
     @Nullable
     @Override
     public Collection<X509CRL> getCRLs() {
-        return new ArrayList<>();
+        return Collections.emptyList();
     }
 
     @Nullable
@@ -103,7 +103,7 @@ public class X509CredentialImplementation implements X509Credential {
     @Nonnull
     @Override
     public Collection<String> getKeyNames() {
-        return new ArrayList<>();
+        return Collections.emptyList();
     }
 
     @Nullable
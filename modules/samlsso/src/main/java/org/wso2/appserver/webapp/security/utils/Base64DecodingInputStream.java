@@ -0,0 +1,191 @@
+/*
+ *  Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.wso2.appserver.webapp.security.utils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+/**
+ * An {@code InputStream} which decodes base64 encoded content directly from a {@code CharSequence}.
+ * <p>
+ * The content is decoded as it is read, into the buffer of the reader, so that a base64 encoded message can be
+ * fed into an XML parser without materializing the decoded bytes or any intermediate {@code String}. Both the
+ * basic and the URL and filename safe alphabets are accepted and whitespace, such as the line breaks of MIME
+ * encoded content, is ignored. The decoded content may optionally be retained as it is read, so that a consumer
+ * which also needs the raw bytes, once the content has been parsed, does not have to decode it again. An instance of
+ * this class is not thread-safe.
+ *
+ * @since 6.0.0
+ */
+public class Base64DecodingInputStream extends InputStream {
+    private static final int[] DECODING_TABLE = new int[128];
+    private static final char PADDING = '=';
+
+    static {
+        Arrays.fill(DECODING_TABLE, -1);
+        String alphabet = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/";
+        for (int index = 0; index < alphabet.length(); index++) {
+            DECODING_TABLE[alphabet.charAt(index)] = index;
+        }
+        DECODING_TABLE['-'] = 62;
+        DECODING_TABLE['_'] = 63;
+    }
+
+    private final CharSequence encoded;
+    private int position;
+    //  the bytes of the most recently decoded quantum, not yet read
+    private final byte[] decoded = new byte[3];
+    private int decodedOffset;
+    private int decodedLength;
+    private boolean finished;
+    //  the decoded content retained so far, if retained at all
+    private final byte[] retained;
+    private int retainedLength;
+
+    public Base64DecodingInputStream(CharSequence encoded) {
+        this(encoded, false);
+    }
+
+    /**
+     * Creates a stream which decodes the specified content, optionally retaining the decoded content.
+     *
+     * @param encoded       the base64 encoded content
+     * @param retainDecoded true if the decoded content is to be retained, for {@link #getDecodedContent()}
+     */
+    public Base64DecodingInputStream(CharSequence encoded, boolean retainDecoded) {
+        this.encoded = encoded;
+        //  every (possibly partial) quantum of four characters decodes into at most three bytes
+        this.retained = retainDecoded ? new byte[(encoded.length() / 4) * 3 + 3] : null;
+    }
+
+    @Override
+    public int read() throws IOException {
+        if ((decodedOffset == decodedLength) && !decodeQuantum()) {
+            return -1;
+        }
+        return decoded[decodedOffset++] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) throws IOException {
+        if ((offset < 0) || (length < 0) || (length > buffer.length - offset)) {
+            throw new IndexOutOfBoundsException();
+        }
+        if (length == 0) {
+            return 0;
+        }
+
+        int count = 0;
+        while (count < length) {
+            if ((decodedOffset == decodedLength) && !decodeQuantum()) {
+                break;
+            }
+            int available = Math.min(decodedLength - decodedOffset, length - count);
+            System.arraycopy(decoded, decodedOffset, buffer, offset + count, available);
+            decodedOffset += available;
+            count += available;
+        }
+        return (count == 0) ? -1 : count;
+    }
+
+    /**
+     * Returns the decoded content retained by this stream.
+     * <p>
+     * Any content not yet read is decoded first, so that the complete content is returned even if the reader
+     * stopped short of the end of the content, after which this stream is at its end.
+     *
+     * @return the complete decoded content
+     * @throws IOException           if the content not yet read is not valid base64
+     * @throws IllegalStateException if this stream does not retain the decoded content
+     */
+    public byte[] getDecodedContent() throws IOException {
+        if (retained == null) {
+            throw new IllegalStateException("The decoded content is not retained by this stream");
+        }
+        while (decodeQuantum()) {
+            decodedOffset = decodedLength;
+        }
+        return (retainedLength == retained.length) ? retained : Arrays.copyOf(retained, retainedLength);
+    }
+
+    /**
+     * Decodes the next quantum of up to four base64 characters.
+     *
+     * @return true if at least one byte was decoded, else false if the end of the content has been reached
+     * @throws IOException if the content is not valid base64
+     */
+    private boolean decodeQuantum() throws IOException {
+        if (finished) {
+            return false;
+        }
+
+        int bits = 0;
+        int characters = 0;
+        while (characters < 4) {
+            int character = nextCharacter();
+            if ((character < 0) || (character == PADDING)) {
+                finished = true;
+                break;
+            }
+            int value = (character < DECODING_TABLE.length) ? DECODING_TABLE[character] : -1;
+            if (value < 0) {
+                throw new IOException("Invalid base64 character at index " + (position - 1));
+            }
+            bits = (bits << 6) | value;
+            characters++;
+        }
+
+        decodedOffset = 0;
+        switch (characters) {
+            case 4:
+                decoded[0] = (byte) (bits >> 16);
+                decoded[1] = (byte) (bits >> 8);
+                decoded[2] = (byte) bits;
+                decodedLength = 3;
+                break;
+            case 3:
+                decoded[0] = (byte) (bits >> 10);
+                decoded[1] = (byte) (bits >> 2);
+                decodedLength = 2;
+                break;
+            case 2:
+                decoded[0] = (byte) (bits >> 4);
+                decodedLength = 1;
+                break;
+            case 0:
+                decodedLength = 0;
+                return false;
+            default:
+                throw new IOException("Truncated base64 content");
+        }
+        if (retained != null) {
+            System.arraycopy(decoded, 0, retained, retainedLength, decodedLength);
+            retainedLength += decodedLength;
+        }
+        return true;
+    }
+
+    private int nextCharacter() {
+        while (position < encoded.length()) {
+            char character = encoded.charAt(position++);
+            if (!Character.isWhitespace(character)) {
+                return character;
+            }
+        }
+        return -1;
+    }
+}
@@ -1,46 +0,0 @@
-/*
- *  Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
- *
- *  Licensed under the Apache License, Version 2.0 (the "License");
- *  you may not use this file except in compliance with the License.
- *  You may obtain a copy of the License at
- *
- *  http://www.apache.org/licenses/LICENSE-2.0
- *
- *  Unless required by applicable law or agreed to in writing, software
- *  distributed under the License is distributed on an "AS IS" BASIS,
- *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
- *  See the License for the specific language governing permissions and
- *  limitations under the License.
- */
-package org.wso2.appserver.webapp.security.utils;
-
-/**
- * This is a singleton, utility class in which the single instance acts as a holder for {@code Object} type
- * instances.
- *
- * @since 6.0.0
- */
-public class DataHolder {
-    private static final DataHolder instance = new DataHolder();
-
-    private Object object;
-
-    /**
-     * Prevents instantiating the DataHolder class.
-     */
-    private DataHolder() {
-    }
-
-    public Object getObject() {
-        return object;
-    }
-
-    public void setObject(Object object) {
-        this.object = object;
-    }
-
-    public static DataHolder getInstance() {
-        return instance;
-    }
-}
@@ -0,0 +1,144 @@
+/*
+ *  Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.wso2.appserver.webapp.security.utils;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.Deflater;
+
+/**
+ * This class encodes SAML 2.0 messages for the HTTP-Redirect binding, by DEFLATE compressing, base64 encoding and
+ * URL encoding them in a single streaming pass, directly into the query string being built.
+ * <p>
+ * The {@code Deflater}s, which hold native zlib memory, are pooled and reused rather than created per message and
+ * left to finalization. The pool is bounded, and a {@code Deflater} in excess of it is ended when released, so that
+ * the native memory held is bounded by the pool size. The compressed output passes through a small per-thread
+ * buffer, and is never materialized as a whole. This class is thread-safe.
+ *
+ * @since 6.0.0
+ */
+public class RedirectBindingEncoder {
+    private static final int POOL_SIZE = Runtime.getRuntime().availableProcessors() * 2;
+    private static final int BUFFER_SIZE = 4096;
+    private static final char[] ALPHABET =
+            "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/".toCharArray();
+
+    private static final BlockingQueue<Deflater> deflaters = new ArrayBlockingQueue<>(POOL_SIZE);
+    private static final ThreadLocal<byte[]> buffers = ThreadLocal.withInitial(() -> new byte[BUFFER_SIZE]);
+    private static final AtomicLong createdDeflaters = new AtomicLong();
+
+    /**
+     * Prevents instantiating the RedirectBindingEncoder utility class.
+     */
+    private RedirectBindingEncoder() {
+    }
+
+    /**
+     * DEFLATE compresses, base64 encodes and URL encodes the specified message, appending the result to the
+     * specified target.
+     * <p>
+     * The result is identical to URL encoding the base64 encoding of the raw DEFLATE compressed message.
+     *
+     * @param message the message to be encoded
+     * @param target  the target to which the encoded message is appended
+     */
+    public static void encode(byte[] message, StringBuilder target) {
+        Deflater deflater = acquire();
+        try {
+            deflater.setInput(message);
+            deflater.finish();
+
+            byte[] buffer = buffers.get();
+            //  the number of bytes at the start of the buffer left over from the previous base64 group boundary
+            int carried = 0;
+            while (!deflater.finished()) {
+                int length = carried + deflater.deflate(buffer, carried, buffer.length - carried);
+                int encoded = deflater.finished() ? length : (length - (length % 3));
+                appendBase64(buffer, encoded, target);
+                carried = length - encoded;
+                System.arraycopy(buffer, encoded, buffer, 0, carried);
+            }
+        } finally {
+            release(deflater);
+        }
+    }
+
+    /**
+     * Returns the number of {@code Deflater}s created, which levels off once the pool is warm.
+     *
+     * @return the number of {@code Deflater}s created
+     */
+    public static long getCreatedDeflaterCount() {
+        return createdDeflaters.get();
+    }
+
+    private static Deflater acquire() {
+        Deflater deflater = deflaters.poll();
+        if (deflater == null) {
+            createdDeflaters.incrementAndGet();
+            //  retains the compression level and raw (nowrap) format of the former per message Deflater
+            deflater = new Deflater(Deflater.DEFLATED, true);
+        }
+        return deflater;
+    }
+
+    private static void release(Deflater deflater) {
+        //  resetting also drops the reference to the input message
+        deflater.reset();
+        if (!deflaters.offer(deflater)) {
+            deflater.end();
+        }
+    }
+
+    private static void appendBase64(byte[] bytes, int length, StringBuilder target) {
+        int index = 0;
+        for (; index + 3 <= length; index += 3) {
+            int group = ((bytes[index] & 0xFF) << 16) | ((bytes[index + 1] & 0xFF) << 8) | (bytes[index + 2] & 0xFF);
+            appendURLEncoded(ALPHABET[(group >>> 18) & 0x3F], target);
+            appendURLEncoded(ALPHABET[(group >>> 12) & 0x3F], target);
+            appendURLEncoded(ALPHABET[(group >>> 6) & 0x3F], target);
+            appendURLEncoded(ALPHABET[group & 0x3F], target);
+        }
+
+        int remaining = length - index;
+        if (remaining > 0) {
+            int group = (bytes[index] & 0xFF) << 16;
+            if (remaining == 2) {
+                group |= (bytes[index + 1] & 0xFF) << 8;
+            }
+            appendURLEncoded(ALPHABET[(group >>> 18) & 0x3F], target);
+            appendURLEncoded(ALPHABET[(group >>> 12) & 0x3F], target);
+            if (remaining == 2) {
+                appendURLEncoded(ALPHABET[(group >>> 6) & 0x3F], target);
+            } else {
+                target.append("%3D");
+            }
+            target.append("%3D");
+        }
+    }
+
+    private static void appendURLEncoded(char character, StringBuilder target) {
+        //  the base64 alphabet holds no characters which are URL encoded, other than '+' and '/'
+        if (character == '+') {
+            target.append("%2B");
+        } else if (character == '/') {
+            target.append("%2F");
+        } else {
+            target.append(character);
+        }
+    }
+}
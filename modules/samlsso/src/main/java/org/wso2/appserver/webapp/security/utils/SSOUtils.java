@@ -16,14 +16,18 @@
 package org.wso2.appserver.webapp.security.utils;
 
 import net.shibboleth.utilities.java.support.codec.Base64Support;
+import net.shibboleth.utilities.java.support.component.ComponentInitializationException;
+import net.shibboleth.utilities.java.support.xml.BasicParserPool;
+import net.shibboleth.utilities.java.support.xml.ParserPool;
+import net.shibboleth.utilities.java.support.xml.XMLParserException;
 import net.shibboleth.utilities.java.support.xml.SerializeSupport;
 import org.apache.catalina.Engine;
+import org.apache.catalina.Host;
 import org.apache.catalina.connector.Connector;
 import org.apache.catalina.connector.Request;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.xml.security.Init;
 import org.apache.xml.security.c14n.Canonicalizer;
-import org.apache.xml.security.signature.XMLSignature;
 import org.opensaml.core.config.InitializationException;
 import org.opensaml.core.config.InitializationService;
 import org.opensaml.core.xml.XMLObject;
@@ -33,20 +37,11 @@ import org.opensaml.core.xml.io.Marshaller;
 import org.opensaml.core.xml.io.MarshallingException;
 import org.opensaml.core.xml.io.Unmarshaller;
 import org.opensaml.core.xml.io.UnmarshallingException;
+import org.opensaml.saml.common.SAMLObjectContentReference;
 import org.opensaml.saml.common.xml.SAMLConstants;
 import org.opensaml.saml.saml2.core.Assertion;
-import org.opensaml.saml.saml2.core.AttributeStatement;
-import org.opensaml.saml.saml2.core.EncryptedAssertion;
 import org.opensaml.saml.saml2.core.RequestAbstractType;
-import org.opensaml.saml.saml2.encryption.Decrypter;
-import org.opensaml.security.credential.BasicCredential;
-import org.opensaml.security.credential.Credential;
 import org.opensaml.security.x509.X509Credential;
-import org.opensaml.xmlsec.encryption.EncryptedKey;
-import org.opensaml.xmlsec.encryption.EncryptionMethod;
-import org.opensaml.xmlsec.encryption.support.DecryptionException;
-import org.opensaml.xmlsec.keyinfo.KeyInfoCredentialResolver;
-import org.opensaml.xmlsec.keyinfo.impl.StaticKeyInfoCredentialResolver;
 import org.opensaml.xmlsec.signature.KeyInfo;
 import org.opensaml.xmlsec.signature.Signature;
 import org.opensaml.xmlsec.signature.X509Certificate;
@@ -54,17 +49,19 @@ import org.opensaml.xmlsec.signature.X509Data;
 import org.opensaml.xmlsec.signature.support.SignatureException;
 import org.opensaml.xmlsec.signature.support.Signer;
 import org.w3c.dom.Document;
+import org.w3c.dom.Attr;
 import org.w3c.dom.Element;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
 import org.w3c.dom.bootstrap.DOMImplementationRegistry;
 import org.w3c.dom.ls.DOMImplementationLS;
 import org.w3c.dom.ls.LSOutput;
 import org.w3c.dom.ls.LSSerializer;
 import org.wso2.appserver.webapp.security.Constants;
-import org.wso2.appserver.webapp.security.saml.signature.SSOX509Credential;
-import org.wso2.appserver.webapp.security.saml.signature.X509CredentialImplementation;
+import org.wso2.appserver.webapp.security.agent.SSOSignatureAlgorithm;
+import org.wso2.appserver.webapp.security.bean.SubjectAttributes;
+import org.wso2.appserver.webapp.security.saml.signature.SignatureEngines;
 import org.wso2.appserver.webapp.security.utils.exception.SSOException;
-import org.xml.sax.EntityResolver;
-import org.xml.sax.SAXException;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
@@ -78,7 +75,6 @@ import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.security.InvalidKeyException;
 import java.security.KeyStore;
 import java.security.KeyStoreException;
 import java.security.NoSuchAlgorithmException;
@@ -88,19 +84,17 @@ import java.security.cert.CertificateException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
 import java.util.stream.IntStream;
 import java.util.stream.Stream;
-import java.util.zip.Deflater;
-import java.util.zip.DeflaterOutputStream;
-import javax.crypto.SecretKey;
 import javax.servlet.http.HttpServletResponse;
+import javax.xml.XMLConstants;
 import javax.xml.namespace.QName;
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.parsers.ParserConfigurationException;
 
 /**
  * This class contains utility functions used within the single-sign-on (SSO) implementation.
@@ -109,7 +103,11 @@ import javax.xml.parsers.ParserConfigurationException;
  */
 public class SSOUtils {
     //  indicates whether the OpenSAML library modules have been already bootstrapped or not
-    private static boolean isBootstrapped = false;
+    private static volatile boolean isBootstrapped = false;
+    //  the maximum number of idle XML parsers retained for reuse, parsers in excess are discarded once used
+    private static final int MAX_PARSER_POOL_SIZE = 50;
+    //  the pool of preconfigured, hardened XML parsers used to parse the inbound SAML 2.0 messages
+    private static volatile ParserPool parserPool;
 
     /**
      * Prevents instantiating the SSOUtils utility class.
@@ -130,6 +128,17 @@ public class SSOUtils {
         SecureRandom random = new SecureRandom();
         byte[] bytes = new byte[20]; // 160 bit
         random.nextBytes(bytes);
+        return toID(bytes);
+    }
+
+    /**
+     * Returns the id which represents the specified 160 bit value, of the form of the ids generated by
+     * {@link #createID()}.
+     *
+     * @param bytes the 160 bit value
+     * @return the id which represents the specified value
+     */
+    public static String toID(byte[] bytes) {
         char[] characterMapping = {'a', 'b', 'c', 'd', 'e', 'f', 'g', 'h', 'i', 'j', 'k', 'l', 'm', 'n', 'o', 'p'};
 
         char[] characters = new char[40];
@@ -158,13 +167,26 @@ public class SSOUtils {
         if (request == null) {
             return Optional.empty();
         }
+        return constructApplicationServerURL(request.getHost());
+    }
+
+    /**
+     * Returns an application server URL constructed using the specified Tomcat host.
+     *
+     * @param host the Tomcat host
+     * @return the application server URL constructed
+     */
+    public static Optional<String> constructApplicationServerURL(Host host) {
+        if ((host == null) || !(host.getParent() instanceof Engine)) {
+            return Optional.empty();
+        }
 
         String sslConnectorScheme = "https";
         StringBuilder appServerURL = new StringBuilder(sslConnectorScheme + "://");
-        String requestHost = request.getHost().getName();
+        String requestHost = host.getName();
 
         Optional<Connector> sslConnector =
-                Arrays.stream(((Engine) request.getHost().getParent()).getService().findConnectors())
+                Arrays.stream(((Engine) host.getParent()).getService().findConnectors())
                         .filter(connector -> connector.getScheme().equals(sslConnectorScheme))
                         .findFirst();
         if (sslConnector.isPresent()) {
@@ -211,6 +233,22 @@ public class SSOUtils {
         return queryParameters;
     }
 
+    /**
+     * Returns the specified value, URL encoded using the UTF-8 character set.
+     *
+     * @param value the value to be URL encoded
+     * @return the URL encoded value
+     */
+    public static String urlEncode(String value) {
+        try {
+            return URLEncoder.encode(value, StandardCharsets.UTF_8.name());
+        } catch (UnsupportedEncodingException e) {
+            //  ignore the exception since every implementation of the Java platform must support
+            //  the 'UTF-8' character set
+            return null;
+        }
+    }
+
     /**
      * Returns a map of SAML 2.0 Relay State content in the form of key-value pairs.
      *
@@ -337,16 +375,55 @@ public class SSOUtils {
      * @throws SSOException if an error occurs when bootstrapping the OpenSAML2 library
      */
     public static void doBootstrap() throws SSOException {
-        try {
-            if (!isBootstrapped) {
-                InitializationService.initialize();
-                isBootstrapped = true;
+        if (isBootstrapped) {
+            return;
+        }
+        synchronized (SSOUtils.class) {
+            try {
+                if (!isBootstrapped) {
+                    InitializationService.initialize();
+                    //  initializes the Apache Santuario library once, rather than per signature
+                    Init.init();
+                    parserPool = createParserPool();
+                    isBootstrapped = true;
+                }
+            } catch (InitializationException | ComponentInitializationException e) {
+                throw new SSOException("Error in bootstrapping the OpenSAML library", e);
             }
-        } catch (InitializationException e) {
-            throw new SSOException("Error in bootstrapping the OpenSAML library", e);
         }
     }
 
+    /**
+     * Creates a bounded pool of XML parsers hardened against XML External Entity (XXE), entity expansion and
+     * XInclude based attacks.
+     * <p>
+     * Parsers are created from a single, preconfigured factory and are reset when returned to the pool, hence
+     * neither the factory lookup nor the parser construction is repeated per parse.
+     *
+     * @return the initialized parser pool
+     * @throws ComponentInitializationException if the parser pool cannot be initialized
+     */
+    private static ParserPool createParserPool() throws ComponentInitializationException {
+        BasicParserPool pool = new BasicParserPool();
+        pool.setMaxPoolSize(MAX_PARSER_POOL_SIZE);
+        pool.setNamespaceAware(true);
+        pool.setExpandEntityReferences(false);
+        pool.setXincludeAware(false);
+        pool.setIgnoreComments(true);
+        pool.setEntityResolver(new XMLEntityResolver());
+
+        Map<String, Boolean> features = new HashMap<>();
+        features.put(XMLConstants.FEATURE_SECURE_PROCESSING, true);
+        features.put("http://apache.org/xml/features/disallow-doctype-decl", true);
+        features.put("http://xml.org/sax/features/external-general-entities", false);
+        features.put("http://xml.org/sax/features/external-parameter-entities", false);
+        features.put("http://apache.org/xml/features/nonvalidating/load-external-dtd", false);
+        pool.setBuilderFeatures(features);
+
+        pool.initialize();
+        return pool;
+    }
+
     /**
      * Applies the XML Digital Signature to the SAML 2.0 based Request.
      *
@@ -358,9 +435,33 @@ public class SSOUtils {
      */
     public static RequestAbstractType setSignature(RequestAbstractType request, String signatureAlgorithm,
                                                    X509Credential credential) throws SSOException {
+        return setSignature(request, signatureAlgorithm, null, credential);
+    }
+
+    /**
+     * Applies the XML Digital Signature to the SAML 2.0 based Request, with the specified digest algorithm.
+     *
+     * @param request            the SAML 2.0 based Request
+     * @param signatureAlgorithm the algorithm used to compute the signature
+     * @param digestAlgorithm    the algorithm used to compute the reference digest, or null for the default
+     * @param credential         the signature signing credential
+     * @return the SAML 2.0 based Request with XML Digital Signature set
+     * @throws SSOException if an error occurs while signing the SAML 2.0 based Request message
+     */
+    public static RequestAbstractType setSignature(RequestAbstractType request, String signatureAlgorithm,
+                                                   String digestAlgorithm, X509Credential credential)
+            throws SSOException {
         try {
             Signature signature = setSignatureRaw(signatureAlgorithm, credential);
             request.setSignature(signature);
+            //  the content reference of the request is added, when the signature is set
+            if (digestAlgorithm != null) {
+                signature.getContentReferences()
+                        .stream()
+                        .filter(reference -> reference instanceof SAMLObjectContentReference)
+                        .forEach(reference -> ((SAMLObjectContentReference) reference)
+                                .setDigestAlgorithm(digestAlgorithm));
+            }
 
             List<Signature> signatureList = new ArrayList<>();
             signatureList.add(signature);
@@ -371,8 +472,7 @@ public class SSOUtils {
                 marshaller.marshall(request);
             }
 
-            //  initializes and configures the library
-            Init.init();
+            doBootstrap();
             //  signer is responsible for creating the digital signatures for the given XML Objects,
             //  signs the XML Objects based on the given order of the Signature list
             Signer.signObjects(signatureList);
@@ -438,6 +538,17 @@ public class SSOUtils {
      * @throws SSOException if an error occurs while encoding SAML request
      */
     public static String encodeRequestMessage(RequestAbstractType requestMessage, String binding) throws SSOException {
+        return encodeRequestMessage(serializeRequestMessage(requestMessage), binding);
+    }
+
+    /**
+     * Serializes the SAML 2.0 based request XML object into its corresponding XML syntax representation.
+     *
+     * @param requestMessage the {@link RequestAbstractType} XML object to be serialized
+     * @return the UTF-8 encoded XML syntax representation of the request XML object
+     * @throws SSOException if an error occurs when marshalling the request XML object
+     */
+    public static byte[] serializeRequestMessage(RequestAbstractType requestMessage) throws SSOException {
         Marshaller marshaller = XMLObjectProviderRegistrySupport.getMarshallerFactory().getMarshaller(requestMessage);
         Element authDOM = null;
         try {
@@ -455,27 +566,27 @@ public class SSOUtils {
         if (authDOM != null) {
             SerializeSupport.writeNode(authDOM, outputStream);
         }
+        return outputStream.toByteArray();
+    }
 
+    /**
+     * Encodes the serialized SAML 2.0 request into its corresponding Base64 notation, based on the type of
+     * SAML 2.0 binding.
+     *
+     * @param requestMessage the UTF-8 encoded XML syntax representation of the request
+     * @param binding        the SAML 2.0 binding type
+     * @return encoded {@link String} corresponding to the request
+     * @throws SSOException if an error occurs while encoding SAML request
+     */
+    public static String encodeRequestMessage(byte[] requestMessage, String binding) throws SSOException {
         if (SAMLConstants.SAML2_REDIRECT_BINDING_URI.equals(binding)) {
             //  compresses the message using default DEFLATE encoding, Base 64 encode and URL encode
-            Deflater deflater = new Deflater(Deflater.DEFLATED, true);
-            ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
-            try (DeflaterOutputStream deflaterOutputStream = new DeflaterOutputStream(byteArrayOutputStream,
-                    deflater)) {
-                deflaterOutputStream.write(outputStream.toByteArray());
-            } catch (IOException e) {
-                throw new SSOException("Error occurred while deflate encoding SAML 2.0 request", e);
-            }
-
-            String encodedRequestMessage = Base64Support.encode(byteArrayOutputStream.toByteArray(), false);
-            try {
-                return URLEncoder.encode(encodedRequestMessage, StandardCharsets.UTF_8.name()).trim();
-            } catch (UnsupportedEncodingException e) {
-                throw new SSOException("Error occurred while encoding SAML 2.0 request", e);
-            }
+            StringBuilder encodedRequestMessage = new StringBuilder();
+            RedirectBindingEncoder.encode(requestMessage, encodedRequestMessage);
+            return encodedRequestMessage.toString();
         } else {
             //  if the binding type encountered is HTTP-POST binding or an unsupported binding type
-            return Base64Support.encode(outputStream.toByteArray(), false);
+            return Base64Support.encode(requestMessage, false);
         }
     }
 
@@ -516,10 +627,34 @@ public class SSOUtils {
      * @throws SSOException if an error occurs when unmarshalling the XML string representation
      */
     public static Optional<XMLObject> unmarshall(String xmlString) throws SSOException {
+        return unmarshall(xmlString.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Returns a SAML 2.0 based XML content representation from the UTF-8 encoded bytes of the XML syntax.
+     *
+     * @param xmlBytes the UTF-8 encoded bytes of the XML content
+     * @return an XML object from the bytes representing the XML syntax
+     * @throws SSOException if an error occurs when unmarshalling the XML representation
+     */
+    public static Optional<XMLObject> unmarshall(byte[] xmlBytes) throws SSOException {
+        return unmarshall(new ByteArrayInputStream(xmlBytes));
+    }
+
+    /**
+     * Returns a SAML 2.0 based XML content representation, parsed directly from the specified stream of the XML
+     * syntax.
+     * <p>
+     * The stream is not closed.
+     *
+     * @param xmlStream the stream of the XML content
+     * @return an XML object from the stream of the XML syntax
+     * @throws SSOException if an error occurs when unmarshalling the XML representation
+     */
+    public static Optional<XMLObject> unmarshall(InputStream xmlStream) throws SSOException {
+        doBootstrap();
         try {
-            DocumentBuilder docBuilder = SSOUtils.getDocumentBuilder(false, true, new XMLEntityResolver());
-            ByteArrayInputStream inputStream = new ByteArrayInputStream(xmlString.getBytes(StandardCharsets.UTF_8));
-            Document document = docBuilder.parse(inputStream);
+            Document document = parserPool.parse(xmlStream);
             Element element = document.getDocumentElement();
             Unmarshaller unmarshaller = XMLObjectProviderRegistrySupport.getUnmarshallerFactory()
                     .getUnmarshaller(element);
@@ -527,69 +662,215 @@ public class SSOUtils {
                 return Optional.empty();
             }
             return Optional.of(unmarshaller.unmarshall(element));
-        } catch (UnmarshallingException | SAXException | IOException e) {
+        } catch (UnmarshallingException | XMLParserException e) {
             throw new SSOException("Error in unmarshalling the XML string representation", e);
         }
     }
 
     /**
-     * Returns a decrypted SAML 2.0 {@code Assertion} from the specified SAML 2.0 encrypted {@code Assertion}.
+     * Locates the specified element within the raw, UTF-8 encoded XML content from which it was parsed, by its
+     * qualified name and ID attribute.
+     * <p>
+     * The returned array holds the offset of the element's start tag, the length of the element and the offset
+     * of the end of the start tag's name relative to the start of the element, respectively.
+     * <p>
+     * The element is only located if every '{@code <}' of the content is markup of an element, that is, if the
+     * content holds no comments, CDATA sections, declarations or processing instructions (other than a leading
+     * XML declaration), and if exactly one start tag carries the qualified name and ID of the element. Otherwise,
+     * text which is not part of the parsed (and signature validated) element, such as a start tag within a
+     * comment, could be mistaken for it.
      *
-     * @param ssoAgentX509Credential credential for the resolver
-     * @param encryptedAssertion     the {@link EncryptedAssertion} instance to be decrypted
-     * @return a decrypted SAML 2.0 {@link Assertion} from the specified SAML 2.0 {@link EncryptedAssertion}
-     * @throws SSOException if an error occurs during the decryption process
+     * @param xml     the raw, UTF-8 encoded XML content
+     * @param element the element parsed from the XML content, which must carry an ID attribute
+     * @return the location of the element, or an empty {@link Optional} if the element cannot be located
+     * unambiguously
      */
-    public static Assertion decryptAssertion(SSOX509Credential ssoAgentX509Credential,
-                                             EncryptedAssertion encryptedAssertion) throws SSOException {
-        try {
-            KeyInfoCredentialResolver keyResolver = new StaticKeyInfoCredentialResolver(
-                    new X509CredentialImplementation(ssoAgentX509Credential));
+    public static Optional<int[]> locateElement(byte[] xml, Element element) {
+        String id = element.getAttributeNS(null, "ID");
+        if (id.isEmpty() || !hasElementMarkupOnly(xml)) {
+            return Optional.empty();
+        }
+        byte[] startTag = ("<" + element.getTagName()).getBytes(StandardCharsets.UTF_8);
+        byte[] endTag = ("</" + element.getTagName()).getBytes(StandardCharsets.UTF_8);
+        byte[] idAttribute = ("ID=").getBytes(StandardCharsets.UTF_8);
+        byte[] idValue = id.getBytes(StandardCharsets.UTF_8);
+
+        int[] location = null;
+        int start = indexOf(xml, startTag, 0, xml.length);
+        while (start >= 0) {
+            int nameEnd = start + startTag.length;
+            int tagEnd = (nameEnd < xml.length) && isNameDelimiter(xml[nameEnd]) ? findTagEnd(xml, nameEnd) : -1;
+            if ((tagEnd >= 0) && hasAttribute(xml, nameEnd, tagEnd, idAttribute, idValue)) {
+                if (location != null) {
+                    //  more than one candidate start tag
+                    return Optional.empty();
+                }
+                int end = (xml[tagEnd - 1] == '/') ? (tagEnd + 1) : findElementEnd(xml, startTag, endTag, tagEnd + 1);
+                if (end < 0) {
+                    return Optional.empty();
+                }
+                location = new int[]{start, end - start, nameEnd - start};
+            }
+            start = indexOf(xml, startTag, start + 1, xml.length);
+        }
+        return Optional.ofNullable(location);
+    }
 
-            KeyInfo keyInfo = encryptedAssertion.getEncryptedData().getKeyInfo();
-            Optional<EncryptedKey> key = Optional.empty();
-            if (keyInfo != null) {
-                key = keyInfo.getEncryptedKeys()
-                        .stream()
-                        .findFirst();
+    /**
+     * Returns true if every '{@code <}' of the specified XML content opens an element start or end tag, other than
+     * a leading XML declaration, else false.
+     */
+    private static boolean hasElementMarkupOnly(byte[] xml) {
+        for (int index = 0; index < xml.length - 1; index++) {
+            if (xml[index] == '<') {
+                byte next = xml[index + 1];
+                //  '<!' opens a comment, CDATA section or declaration, '<?' a processing instruction
+                if ((next == '!') || ((next == '?') && !isLeadingXMLDeclaration(xml, index))) {
+                    return false;
+                }
             }
+        }
+        return true;
+    }
 
-            EncryptedKey encryptedKey = null;
-            if (key.isPresent()) {
-                encryptedKey = key.get();
+    private static boolean isLeadingXMLDeclaration(byte[] xml, int index) {
+        //  the XML declaration may only be preceded by a UTF-8 byte order mark
+        return (index == 0) || ((index == 3) && (xml[0] == (byte) 0xEF) && (xml[1] == (byte) 0xBB) &&
+                (xml[2] == (byte) 0xBF));
+    }
+
+    /**
+     * Returns the namespace declarations which the specified element inherits from its ancestors and does not
+     * redeclare itself, as a sequence of attributes to be inserted into its start tag.
+     *
+     * @param element the element
+     * @return the inherited namespace declarations, each preceded by a space, or an empty string if none
+     */
+    public static String getInheritedNamespaceDeclarations(Element element) {
+        Set<String> declaredPrefixes = new HashSet<>();
+        StringBuilder declarations = new StringBuilder();
+        collectNamespaceDeclarations(element, declaredPrefixes, null);
+        for (Node ancestor = element.getParentNode(); ancestor instanceof Element;
+             ancestor = ancestor.getParentNode()) {
+            collectNamespaceDeclarations((Element) ancestor, declaredPrefixes, declarations);
+        }
+        return declarations.toString();
+    }
+
+    private static void collectNamespaceDeclarations(Element element, Set<String> declaredPrefixes,
+                                                     StringBuilder declarations) {
+        NamedNodeMap attributes = element.getAttributes();
+        for (int index = 0; index < attributes.getLength(); index++) {
+            Attr attribute = (Attr) attributes.item(index);
+            if (XMLConstants.XMLNS_ATTRIBUTE_NS_URI.equals(attribute.getNamespaceURI()) &&
+                    declaredPrefixes.add(attribute.getName()) && (declarations != null)) {
+                declarations.append(' ')
+                        .append(attribute.getName())
+                        .append("=\"")
+                        .append(attribute.getValue()
+                                .replace("&", "&amp;")
+                                .replace("<", "&lt;")
+                                .replace("\"", "&quot;"))
+                        .append('"');
             }
+        }
+    }
 
-            Decrypter decrypter = new Decrypter(null, keyResolver, null);
-            SecretKey decrypterKey = null;
-            if (encryptedKey != null) {
-                EncryptionMethod encryptionMethod = encryptedAssertion.getEncryptedData().getEncryptionMethod();
-                if (encryptionMethod != null) {
-                    String algorithm = encryptionMethod.getAlgorithm();
-                    if (algorithm != null) {
-                        decrypterKey = (SecretKey) decrypter.decryptKey(encryptedKey, algorithm);
-                    }
+    private static int indexOf(byte[] content, byte[] pattern, int from, int to) {
+        outer:
+        for (int index = from; index <= to - pattern.length; index++) {
+            for (int offset = 0; offset < pattern.length; offset++) {
+                if (content[index + offset] != pattern[offset]) {
+                    continue outer;
                 }
-                Credential shared = SSOUtils.getSimpleCredential(decrypterKey);
-                decrypter = new Decrypter(new StaticKeyInfoCredentialResolver(shared), null, null);
-                decrypter.setRootInNewDocument(true);
             }
-            return decrypter.decrypt(encryptedAssertion);
-        } catch (DecryptionException e) {
-            throw new SSOException("Decrypted assertion error", e);
+            return index;
         }
+        return -1;
+    }
+
+    private static boolean isNameDelimiter(byte character) {
+        return (character == '>') || (character == '/') || (character == ' ') || (character == '\t') ||
+                (character == '\n') || (character == '\r');
     }
 
     /**
-     * Get a simple, minimal credential containing a secret (symmetric) key.
-     *
-     * @param secretKey the symmetric key to wrap
-     * @return a credential containing the secret key specified
+     * Returns the index of the '>' character closing the start tag, which begins before the specified index,
+     * skipping quoted attribute values.
      */
-    private static BasicCredential getSimpleCredential(SecretKey secretKey) {
-        if (secretKey == null) {
-            throw new IllegalArgumentException("A secret key is required");
+    private static int findTagEnd(byte[] xml, int from) {
+        byte quote = 0;
+        for (int index = from; index < xml.length; index++) {
+            byte character = xml[index];
+            if (quote != 0) {
+                if (character == quote) {
+                    quote = 0;
+                }
+            } else if ((character == '"') || (character == '\'')) {
+                quote = character;
+            } else if (character == '>') {
+                return index;
+            }
         }
-        return new BasicCredential(secretKey);
+        return -1;
+    }
+
+    private static boolean hasAttribute(byte[] xml, int from, int to, byte[] attribute, byte[] value) {
+        int index = indexOf(xml, attribute, from, to);
+        while (index >= 0) {
+            int valueStart = index + attribute.length + 1;
+            if (isNameDelimiter(xml[index - 1]) && (valueStart + value.length < to) &&
+                    ((xml[valueStart - 1] == '"') || (xml[valueStart - 1] == '\'')) &&
+                    (xml[valueStart + value.length] == xml[valueStart - 1]) &&
+                    (indexOf(xml, value, valueStart, valueStart + value.length) == valueStart)) {
+                return true;
+            }
+            index = indexOf(xml, attribute, index + 1, to);
+        }
+        return false;
+    }
+
+    /**
+     * Returns the index following the end tag of the element whose start tag ends before the specified index,
+     * accounting for nested elements of the same name.
+     */
+    private static int findElementEnd(byte[] xml, byte[] startTag, byte[] endTag, int from) {
+        int depth = 1;
+        int index = from;
+        while (index < xml.length) {
+            int nextStart = indexOf(xml, startTag, index, xml.length);
+            int nextEnd = indexOf(xml, endTag, index, xml.length);
+            if (nextEnd < 0) {
+                return -1;
+            }
+            if ((nextStart >= 0) && (nextStart < nextEnd)) {
+                int nameEnd = nextStart + startTag.length;
+                if ((nameEnd < xml.length) && isNameDelimiter(xml[nameEnd])) {
+                    int tagEnd = findTagEnd(xml, nameEnd);
+                    if (tagEnd < 0) {
+                        return -1;
+                    }
+                    if (xml[tagEnd - 1] != '/') {
+                        depth++;
+                    }
+                    index = tagEnd + 1;
+                } else {
+                    index = nameEnd;
+                }
+                continue;
+            }
+
+            int nameEnd = nextEnd + endTag.length;
+            int tagEnd = nameEnd;
+            while ((tagEnd < xml.length) && isNameDelimiter(xml[tagEnd]) && (xml[tagEnd] != '>')) {
+                tagEnd++;
+            }
+            if ((tagEnd < xml.length) && (xml[tagEnd] == '>') && (--depth == 0)) {
+                return tagEnd + 1;
+            }
+            index = nameEnd;
+        }
+        return -1;
     }
 
     /**
@@ -599,21 +880,35 @@ public class SSOUtils {
      * @return the SAML 2.0 Assertion Attribute Statement content of the SAML 2.0 Assertion specified
      */
     public static Map<String, List<String>> getAssertionStatements(Assertion assertion) {
-        Map<String, List<String>> results = new HashMap<>();
+        return getAssertionStatements(assertion, null);
+    }
+
+    /**
+     * Returns the SAML 2.0 Assertion Attribute Statement content, restricted to the specified attributes.
+     * <p>
+     * The values of an attribute which recurs within or across Attribute Statements are merged, in order. The
+     * values of the attributes not requested are never read.
+     *
+     * @param assertion      the SAML Assertion whose content is to be returned
+     * @param attributeNames the names of the attributes to be returned, or null for all attributes
+     * @return the SAML 2.0 Assertion Attribute Statement content of the SAML 2.0 Assertion specified
+     */
+    public static SubjectAttributes getAssertionStatements(Assertion assertion, Set<String> attributeNames) {
+        SubjectAttributes.Builder attributes = new SubjectAttributes.Builder();
         if ((assertion != null) && (assertion.getAttributeStatements() != null)) {
-            Stream<AttributeStatement> attributeStatements =
-                    assertion.getAttributeStatements().stream();
-            attributeStatements.forEach(attributeStatement -> attributeStatement
-                    .getAttributes().stream().forEach(attribute -> {
-                        List<String> attributeValues = new ArrayList<>();
+            assertion.getAttributeStatements().stream()
+                    .flatMap(attributeStatement -> attributeStatement.getAttributes().stream())
+                    .filter(attribute -> (attribute.getName() != null) &&
+                            ((attributeNames == null) || attributeNames.contains(attribute.getName())))
+                    .forEach(attribute -> {
+                        attributes.add(attribute.getName());
                         attribute.getAttributeValues().stream()
-                                 .forEach(value -> Optional.ofNullable(value.getDOM())
-                                                           .ifPresent(dom -> attributeValues
-                                                                   .add(dom.getTextContent())));
-                        results.put(attribute.getName(), attributeValues);
-                    }));
+                                .map(XMLObject::getDOM)
+                                .filter(Objects::nonNull)
+                                .forEach(dom -> attributes.add(attribute.getName(), dom.getTextContent()));
+                    });
         }
-        return results;
+        return attributes.build();
     }
 
     /**
@@ -625,52 +920,27 @@ public class SSOUtils {
      */
     public static void addDeflateSignatureToHTTPQueryString(StringBuilder httpQueryString, X509Credential credential)
             throws SSOException {
-        try {
-            httpQueryString.append("&SigAlg=").
-                    append(URLEncoder.encode(XMLSignature.ALGO_ID_SIGNATURE_RSA, StandardCharsets.UTF_8.name()).trim());
-
-            java.security.Signature signature = java.security.Signature.getInstance("SHA1withRSA");
-            signature.initSign(credential.getPrivateKey());
-            signature.update(httpQueryString.toString().getBytes(StandardCharsets.UTF_8));
-            byte[] signatureByteArray = signature.sign();
-
-            String signatureBase64EncodedString = Base64Support.encode(signatureByteArray, false);
-            httpQueryString.append("&Signature=").
-                    append(URLEncoder.encode(signatureBase64EncodedString, StandardCharsets.UTF_8.name()).trim());
-        } catch (NoSuchAlgorithmException | InvalidKeyException |
-                java.security.SignatureException | UnsupportedEncodingException e) {
-            throw new SSOException("Error applying SAML 2.0 Redirect Binding signature", e);
-        }
+        addDeflateSignatureToHTTPQueryString(httpQueryString, SSOSignatureAlgorithm.RSA_SHA1, credential);
     }
 
     /**
-     * Generates a {@code javax.xml.parsers.DocumentBuilder} instance based on the specified configurations.
+     * Applies the XML Digital Signature of the specified algorithm to the HTTP query string specified.
+     * <p>
+     * The signature is computed by a per thread {@code Signature} engine, initialized with the private key once.
      *
-     * @param expandEntityReferences true if the parser is to expand entity reference nodes, else false
-     * @param namespaceAware         true if the parser provides support for XML namespaces, else false
-     * @param entityResolver         the {@link EntityResolver} to be used within the parser, if {@code entityResolver}
-     *                               is set to null default implementation is used
-     * @return the generated {@link DocumentBuilder} instance
-     * @throws SSOException if an error occurs when generating the new DocumentBuilder
-     */
-    private static DocumentBuilder getDocumentBuilder(boolean expandEntityReferences, boolean namespaceAware,
-                                                      EntityResolver entityResolver) throws SSOException {
-        DocumentBuilderFactory documentBuilderFactory = DocumentBuilderFactory.newInstance();
-        if (!expandEntityReferences) {
-            documentBuilderFactory.setExpandEntityReferences(false);
-        }
-        if (namespaceAware) {
-            documentBuilderFactory.setNamespaceAware(true);
-        }
-
-        DocumentBuilder docBuilder;
-        try {
-            docBuilder = documentBuilderFactory.newDocumentBuilder();
-        } catch (ParserConfigurationException e) {
-            throw new SSOException("Error when generating the new DocumentBuilder", e);
-        }
-        Optional.ofNullable(entityResolver).ifPresent(docBuilder::setEntityResolver);
-
-        return docBuilder;
+     * @param httpQueryString    the primary HTTP query string which is to be digitally signed
+     * @param signatureAlgorithm the algorithm used to compute the signature
+     * @param credential         an entity credential associated with X.509 Public Key Infrastructure
+     * @throws SSOException if an error occurs while applying the SAML 2.0 Redirect binding signature
+     */
+    public static void addDeflateSignatureToHTTPQueryString(StringBuilder httpQueryString,
+                                                            SSOSignatureAlgorithm signatureAlgorithm,
+                                                            X509Credential credential) throws SSOException {
+        httpQueryString.append("&SigAlg=").append(urlEncode(signatureAlgorithm.getURI()));
+
+        byte[] signatureByteArray = SignatureEngines.sign(signatureAlgorithm, credential.getPrivateKey(),
+                httpQueryString.toString().getBytes(StandardCharsets.UTF_8));
+        String signatureBase64EncodedString = Base64Support.encode(signatureByteArray, false);
+        httpQueryString.append("&Signature=").append(urlEncode(signatureBase64EncodedString));
     }
 }
@@ -0,0 +1,223 @@
+/*
+ *  Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.wso2.appserver.webapp.security.utils;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Optional;
+
+/**
+ * An {@code InputStream} which bounds the size and the element structure of the XML content read through it.
+ * <p>
+ * The markup is scanned as it is read by the XML parser, so that an oversized or deeply nested message is rejected
+ * as soon as the limit is crossed, rather than after it has been fully parsed, and without reading the content
+ * twice. The scan works on the bytes of an ASCII compatible encoding such as UTF-8, in which multi-byte characters
+ * never contain the markup delimiters, and skips comments, CDATA sections, declarations and processing
+ * instructions. A non-positive limit is not enforced. An instance of this class is not thread-safe.
+ *
+ * @since 6.0.0
+ */
+public class XMLLimitingInputStream extends FilterInputStream {
+    /**
+     * The limits enforced on the XML content.
+     */
+    public enum Limit {
+        SIZE, ELEMENT_DEPTH, ELEMENT_COUNT
+    }
+
+    /**
+     * The states of the markup scan.
+     */
+    private enum State {
+        TEXT, TAG_OPEN, START_TAG, END_TAG, MARKUP_OPEN, COMMENT, CDATA, DECLARATION, PROCESSING_INSTRUCTION
+    }
+
+    private final long maxSize;
+    private final int maxElementDepth;
+    private final int maxElementCount;
+
+    private long size;
+    private int elementDepth;
+    private int elementCount;
+    private State state = State.TEXT;
+    //  the quote character of the attribute value being scanned within a start tag, else zero
+    private int quote;
+    private int previous;
+    //  the number of consecutive characters matched towards the end of the current markup
+    private int matched;
+    private Limit exceededLimit;
+
+    public XMLLimitingInputStream(InputStream in, long maxSize, int maxElementDepth, int maxElementCount) {
+        super(in);
+        this.maxSize = maxSize;
+        this.maxElementDepth = maxElementDepth;
+        this.maxElementCount = maxElementCount;
+    }
+
+    /**
+     * Returns the limit exceeded by the content read, if any.
+     *
+     * @return the limit exceeded by the content read, or an empty {@link Optional} if none
+     */
+    public Optional<Limit> getExceededLimit() {
+        return Optional.ofNullable(exceededLimit);
+    }
+
+    @Override
+    public int read() throws IOException {
+        int value = super.read();
+        if (value >= 0) {
+            count(1);
+            scan(value);
+        }
+        return value;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) throws IOException {
+        int read = super.read(buffer, offset, length);
+        if (read > 0) {
+            count(read);
+            for (int index = offset; index < offset + read; index++) {
+                scan(buffer[index] & 0xFF);
+            }
+        }
+        return read;
+    }
+
+    @Override
+    public long skip(long length) throws IOException {
+        throw new IOException("Skipping is not supported");
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    private void count(int read) throws IOException {
+        size += read;
+        if ((maxSize > 0) && (size > maxSize)) {
+            exceed(Limit.SIZE, "XML content exceeds the maximum size of " + maxSize + " bytes");
+        }
+    }
+
+    private void scan(int value) throws IOException {
+        switch (state) {
+            case TEXT:
+                if (value == '<') {
+                    state = State.TAG_OPEN;
+                }
+                break;
+            case TAG_OPEN:
+                if (value == '/') {
+                    state = State.END_TAG;
+                } else if (value == '!') {
+                    state = State.MARKUP_OPEN;
+                    matched = 0;
+                } else if (value == '?') {
+                    state = State.PROCESSING_INSTRUCTION;
+                } else {
+                    state = State.START_TAG;
+                    quote = 0;
+                    openElement();
+                }
+                break;
+            case START_TAG:
+                if (quote != 0) {
+                    if (value == quote) {
+                        quote = 0;
+                    }
+                } else if ((value == '"') || (value == '\'')) {
+                    quote = value;
+                } else if (value == '>') {
+                    if (previous == '/') {
+                        elementDepth--;
+                    }
+                    state = State.TEXT;
+                }
+                break;
+            case END_TAG:
+                if (value == '>') {
+                    elementDepth--;
+                    state = State.TEXT;
+                }
+                break;
+            case MARKUP_OPEN:
+                if ((value == '-') && (matched == 0)) {
+                    matched = 1;
+                } else if ((value == '-') && (matched == 1)) {
+                    state = State.COMMENT;
+                    matched = 0;
+                } else if ((value == '[') && (matched == 0)) {
+                    state = State.CDATA;
+                } else {
+                    state = (value == '>') ? State.TEXT : State.DECLARATION;
+                }
+                break;
+            case COMMENT:
+                if (value == '-') {
+                    matched++;
+                } else {
+                    if ((value == '>') && (matched >= 2)) {
+                        state = State.TEXT;
+                    }
+                    matched = 0;
+                }
+                break;
+            case CDATA:
+                if (value == ']') {
+                    matched++;
+                } else {
+                    if ((value == '>') && (matched >= 2)) {
+                        state = State.TEXT;
+                    }
+                    matched = 0;
+                }
+                break;
+            case DECLARATION:
+                if (value == '>') {
+                    state = State.TEXT;
+                }
+                break;
+            case PROCESSING_INSTRUCTION:
+                if ((value == '>') && (previous == '?')) {
+                    state = State.TEXT;
+                }
+                break;
+            default:
+                break;
+        }
+        previous = value;
+    }
+
+    private void openElement() throws IOException {
+        elementCount++;
+        elementDepth++;
+        if ((maxElementCount > 0) && (elementCount > maxElementCount)) {
+            exceed(Limit.ELEMENT_COUNT, "XML content exceeds the maximum of " + maxElementCount + " elements");
+        }
+        if ((maxElementDepth > 0) && (elementDepth > maxElementDepth)) {
+            exceed(Limit.ELEMENT_DEPTH, "XML content exceeds the maximum element depth of " + maxElementDepth);
+        }
+    }
+
+    private void exceed(Limit limit, String message) throws IOException {
+        exceededLimit = limit;
+        throw new IOException(message);
+    }
+}
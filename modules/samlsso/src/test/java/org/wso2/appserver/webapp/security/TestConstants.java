@@ -45,6 +45,7 @@ public class TestConstants {
     public static final String DEFAULT_QUERY_PARAMS = "keyOne=valOne&keyTwo=valTwo";
     public static final String DEFAULT_HTTP_BINDING = "urn:oasis:names:tc:SAML:2.0:bindings:HTTP-POST";
     public static final String DEFAULT_SLO_URL_POSTFIX = "logout";
+    public static final String RELAY_STATE_ID = "_5c2f0b1d8e7a4c3f9b6d2e1a0f8c7b6a";
     public static final String INVALID_KEYSTORE_LOCATION = TEST_RESOURCES_LOCATION + "/conf/wso2carbon.jks";
     public static final String INVALID_KEYSTORE_PASSWORD = "wso2carbonjks";
     public static final String INVALID_KEYSTORE_TYPE = "PKCS";
@@ -53,6 +54,18 @@ public class TestConstants {
     public static final String SKIP_URI_ONE = SSL_PROTOCOL + "://" + DEFAULT_TOMCAT_HOST + ":" + SSL_PORT + "/skip1";
     public static final String SKIP_URI_TWO = SSL_PROTOCOL + "://" + DEFAULT_TOMCAT_HOST + ":" + SSL_PORT + "/skip2";
     public static final String NON_SKIP_URI = SSL_PROTOCOL + "://" + DEFAULT_TOMCAT_HOST + ":" + SSL_PORT + "/non-skip";
+    public static final String SKIP_PREFIX_RULE = "/" + FOO_CONTEXT + "/static/**";
+    public static final String SKIP_EXTENSION_RULE = "*.css|*.js|*.png";
+    public static final String SKIP_GLOB_RULE = "/" + FOO_CONTEXT + "/api/*/health";
+    public static final String PREFIX_SKIP_URI = "/" + FOO_CONTEXT + "/static/js/lib/app";
+    public static final String EXTENSION_SKIP_URI = "/" + FOO_CONTEXT + "/images/logo.PNG;jsessionid=1234";
+    public static final String GLOB_SKIP_URI = "/" + FOO_CONTEXT + "/api/orders/health";
+    public static final String NON_GLOB_SKIP_URI = "/" + FOO_CONTEXT + "/api/orders/items/health";
+    public static final String DOT_DOT_PARAMETER_URI = "/" + FOO_CONTEXT + "/static/..;/admin";
+    public static final String ENCODED_DOT_DOT_URI = "/" + FOO_CONTEXT + "/static/%2e%2e/admin";
+    public static final String SESSION_ID_PARAMETER_URI = "/" + FOO_CONTEXT + "/admin;jsessionid=1234";
+    public static final String ENCODED_PREFIX_SKIP_URI = "/" + FOO_CONTEXT + "/st%61tic;jsessionid=1234/js/app";
+    public static final String SERVLET_EXTENSION_URI = "/" + FOO_CONTEXT + "/api/users/x.css";
     public static final String LOGOUT_REQ_URI = SSL_PROTOCOL + "://" + DEFAULT_TOMCAT_HOST + ":" + SSL_PORT + "/logout";
     public static final String NON_LOGOUT_REQ_URI = SSL_PROTOCOL + "://" + DEFAULT_TOMCAT_HOST + ":" + SSL_PORT +
             "/end";
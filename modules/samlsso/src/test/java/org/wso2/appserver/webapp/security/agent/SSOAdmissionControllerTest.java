@@ -0,0 +1,79 @@
+/*
+ *  Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.wso2.appserver.webapp.security.agent;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+/**
+ * This class defines unit tests for the admission control of unauthenticated and ACS requests.
+ *
+ * @since 6.0.0
+ */
+public class SSOAdmissionControllerTest {
+    private static final String CLIENT_ONE = "192.168.1.10";
+    private static final String CLIENT_TWO = "192.168.1.11";
+    private static final long NOW = TimeUnit.SECONDS.toNanos(1000);
+
+    @Test(description = "Tests whether a client is limited to its burst and then to its sustained rate")
+    public void testClientRateLimit() {
+        SSOAdmissionController controller = new SSOAdmissionController(10, 5, 0);
+
+        long admitted = IntStream.range(0, 20)
+                .filter(index -> controller.tryAcquireClientRequest(CLIENT_ONE, NOW))
+                .count();
+        Assert.assertEquals(admitted, 5);
+        Assert.assertEquals(controller.getRateLimitedRequestCount(), 15);
+
+        //  a new token is available after the emission interval of 100 milliseconds
+        Assert.assertFalse(controller.tryAcquireClientRequest(CLIENT_ONE, NOW + TimeUnit.MILLISECONDS.toNanos(50)));
+        Assert.assertTrue(controller.tryAcquireClientRequest(CLIENT_ONE, NOW + TimeUnit.MILLISECONDS.toNanos(100)));
+    }
+
+    @Test(description = "Tests whether clients are rate limited independently")
+    public void testIndependentClients() {
+        SSOAdmissionController controller = new SSOAdmissionController(1, 1, 0);
+
+        Assert.assertTrue(controller.tryAcquireClientRequest(CLIENT_ONE, NOW));
+        Assert.assertFalse(controller.tryAcquireClientRequest(CLIENT_ONE, NOW));
+        Assert.assertTrue(controller.tryAcquireClientRequest(CLIENT_TWO, NOW));
+    }
+
+    @Test(description = "Tests whether the cryptographic processing concurrency is limited")
+    public void testConcurrencyLimit() {
+        SSOAdmissionController controller = new SSOAdmissionController(0, 0, 2);
+
+        Assert.assertTrue(controller.tryAcquireCryptoPermit());
+        Assert.assertTrue(controller.tryAcquireCryptoPermit());
+        Assert.assertFalse(controller.tryAcquireCryptoPermit());
+        Assert.assertEquals(controller.getOverloadedRequestCount(), 1);
+
+        controller.releaseCryptoPermit();
+        Assert.assertTrue(controller.tryAcquireCryptoPermit());
+    }
+
+    @Test(description = "Tests whether no limits apply by default")
+    public void testNoLimits() {
+        SSOAdmissionController controller = new SSOAdmissionController(0, 0, 0);
+
+        Assert.assertTrue(IntStream.range(0, 1000)
+                .allMatch(index -> controller.tryAcquireClientRequest(CLIENT_ONE, NOW) &&
+                        controller.tryAcquireCryptoPermit()));
+    }
+}
@@ -0,0 +1,72 @@
+/*
+ *  Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.wso2.appserver.webapp.security.agent;
+
+import org.apache.catalina.Context;
+import org.apache.catalina.core.StandardContext;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+import org.wso2.appserver.webapp.security.Constants;
+import org.wso2.appserver.webapp.security.TestConstants;
+
+import java.util.Optional;
+
+/**
+ * This class defines unit tests for the context parameters of the compiled single-sign-on (SSO) policy.
+ *
+ * @since 6.0.0
+ */
+public class SSOAgentPolicyTest {
+    @Test(description = "Tests whether the inbound message limits of a context override those of the valve")
+    public void testContextMessageLimits() {
+        Context context = createContext();
+        context.addParameter(Constants.MAX_MESSAGE_SIZE_CONTEXT_PARAM, " 4096 ");
+        context.addParameter(Constants.MAX_ELEMENT_DEPTH_CONTEXT_PARAM, "64");
+
+        SSOAgentPolicy policy = compilePolicy(context);
+        Assert.assertEquals(policy.getMaxMessageSize(), Optional.of(4096));
+        Assert.assertEquals(policy.getMaxElementDepth(), Optional.of(64));
+        Assert.assertFalse(policy.getMaxDecodedMessageSize().isPresent());
+        Assert.assertFalse(policy.getMaxElementCount().isPresent());
+    }
+
+    @Test(description = "Tests whether a malformed or non-positive inbound message limit of a context is rejected, " +
+            "rather than disabling the limit of the valve")
+    public void testInvalidContextMessageLimits() {
+        Context context = createContext();
+        context.addParameter(Constants.MAX_MESSAGE_SIZE_CONTEXT_PARAM, "64k");
+        context.addParameter(Constants.MAX_DECODED_MESSAGE_SIZE_CONTEXT_PARAM, "0");
+        context.addParameter(Constants.MAX_ELEMENT_DEPTH_CONTEXT_PARAM, "-1");
+        context.addParameter(Constants.MAX_ELEMENT_COUNT_CONTEXT_PARAM, "");
+
+        SSOAgentPolicy policy = compilePolicy(context);
+        Assert.assertFalse(policy.getMaxMessageSize().isPresent());
+        Assert.assertFalse(policy.getMaxDecodedMessageSize().isPresent());
+        Assert.assertFalse(policy.getMaxElementDepth().isPresent());
+        Assert.assertFalse(policy.getMaxElementCount().isPresent());
+        Assert.assertNull(SSOAgentPolicy.parseMessageLimit(context, Constants.MAX_ELEMENT_DEPTH_CONTEXT_PARAM));
+    }
+
+    private static Context createContext() {
+        Context context = new StandardContext();
+        context.setPath("/" + TestConstants.FOO_CONTEXT);
+        return context;
+    }
+
+    private static SSOAgentPolicy compilePolicy(Context context) {
+        return SSOAgentPolicy.compile(context, SSORequestResolverTest.getDefaultWebAppSSOConfiguration(), null);
+    }
+}
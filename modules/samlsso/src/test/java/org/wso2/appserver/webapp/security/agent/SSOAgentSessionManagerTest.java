@@ -0,0 +1,270 @@
+/*
+ *  Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.wso2.appserver.webapp.security.agent;
+
+import org.apache.catalina.Context;
+import org.apache.catalina.core.StandardContext;
+import org.apache.catalina.session.StandardManager;
+import org.apache.catalina.session.StandardSession;
+import org.testng.Assert;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.IntStream;
+
+/**
+ * This class defines unit tests and multithreaded stress tests for the single-sign-on (SSO) session index.
+ *
+ * @since 6.0.0
+ */
+public class SSOAgentSessionManagerTest {
+    private static final int THREADS = 8;
+    private static final int OPERATIONS_PER_THREAD = 10000;
+    private static final int SESSION_INDEXES = 64;
+
+    private final StandardManager manager = new StandardManager();
+    private final AtomicInteger sessionIds = new AtomicInteger();
+
+    @BeforeClass
+    public void init() {
+        Context context = new StandardContext();
+        manager.setContext(context);
+        context.setManager(manager);
+    }
+
+    @Test(description = "Tests whether a session is evicted from the session index once destroyed")
+    public void testEvictionOnSessionDestroyed() {
+        String sessionIndex = "eviction-index";
+        StandardSession destroyed = createSession();
+        StandardSession live = createSession();
+        SSOAgentSessionManager.addAuthenticatedSession(sessionIndex, destroyed);
+        SSOAgentSessionManager.addAuthenticatedSession(sessionIndex, live);
+        long indexed = SSOAgentSessionManager.getIndexedSessionCount();
+
+        destroyed.expire();
+        Assert.assertEquals(SSOAgentSessionManager.getIndexedSessionCount(), indexed - 1);
+
+        live.invalidate();
+        Assert.assertEquals(SSOAgentSessionManager.getIndexedSessionCount(), indexed - 2);
+        Assert.assertTrue(SSOAgentSessionManager.getAllInvalidatableSessions(sessionIndex).isEmpty());
+    }
+
+    @Test(description = "Tests whether a session added more than once is indexed and evicted once, by a single " +
+            "listener of its context")
+    public void testRepeatedAddition() {
+        String sessionIndex = "repeated-addition-index";
+        StandardSession session = createSession();
+        SSOAgentSessionManager.addAuthenticatedSession(sessionIndex, session);
+        long indexed = SSOAgentSessionManager.getIndexedSessionCount();
+        SSOAgentSessionManager.addAuthenticatedSession(sessionIndex, session);
+        SSOAgentSessionManager.addAuthenticatedSession(sessionIndex, session);
+
+        Assert.assertEquals(SSOAgentSessionManager.getIndexedSessionCount(), indexed);
+        Assert.assertEquals(manager.getContext().getApplicationLifecycleListeners().length, 1);
+        session.expire();
+        Assert.assertEquals(SSOAgentSessionManager.getIndexedSessionCount(), indexed - 1);
+    }
+
+    @Test(description = "Tests whether a session is evicted once destroyed, after being passivated and restored")
+    public void testEvictionOfRestoredSession() throws IOException, ClassNotFoundException {
+        String sessionIndex = "restored-eviction-index";
+        StandardSession session = createSession();
+        SSOAgentSessionManager.addAuthenticatedSession(sessionIndex, session);
+        long indexed = SSOAgentSessionManager.getIndexedSessionCount();
+
+        //  passivates the session and restores it, as a persistent manager swaps a session out and in again
+        session.passivate();
+        ByteArrayOutputStream content = new ByteArrayOutputStream();
+        try (ObjectOutputStream stream = new ObjectOutputStream(content)) {
+            session.writeObjectData(stream);
+        }
+        manager.remove(session);
+        StandardSession restored = new StandardSession(manager);
+        try (ObjectInputStream stream = new ObjectInputStream(new ByteArrayInputStream(content.toByteArray()))) {
+            restored.readObjectData(stream);
+        }
+        restored.setManager(manager);
+        manager.add(restored);
+        restored.activate();
+
+        Assert.assertEquals(SSOAgentSessionManager.getIndexedSessionCount(), indexed);
+        restored.expire();
+        Assert.assertEquals(SSOAgentSessionManager.getIndexedSessionCount(), indexed - 1);
+        Assert.assertTrue(SSOAgentSessionManager.getAllInvalidatableSessions(sessionIndex).isEmpty());
+    }
+
+    @Test(description = "Tests whether the sessions of a session index are resolved through their manager")
+    public void testResolvingInvalidatableSessions() {
+        String sessionIndex = "resolution-index";
+        StandardSession session = createSession();
+        SSOAgentSessionManager.addAuthenticatedSession(sessionIndex, session);
+
+        Assert.assertTrue(SSOAgentSessionManager.getAllInvalidatableSessions(sessionIndex)
+                .contains(session.getSession()));
+        Assert.assertTrue(SSOAgentSessionManager.getAllInvalidatableSessions(sessionIndex).isEmpty());
+    }
+
+    @Test(description = "Tests whether a session is resolved by its new identifier, once its identifier is changed")
+    public void testSessionIdChange() {
+        String sessionIndex = "id-change-index";
+        StandardManager contextManager = new StandardManager();
+        Context context = new StandardContext();
+        contextManager.setContext(context);
+        context.setManager(contextManager);
+
+        StandardSession session = new StandardSession(contextManager);
+        session.setValid(true);
+        session.setId("session-before-change", false);
+        SSOAgentSessionManager.addAuthenticatedSession(sessionIndex, session);
+        long indexed = SSOAgentSessionManager.getIndexedSessionCount();
+
+        session.setId("session-after-change", false);
+        context.fireContainerEvent(Context.CHANGE_SESSION_ID_EVENT,
+                new String[]{"session-before-change", "session-after-change"});
+        Assert.assertEquals(SSOAgentSessionManager.getIndexedSessionCount(), indexed);
+        Assert.assertTrue(SSOAgentSessionManager.getAllInvalidatableSessions(sessionIndex)
+                .contains(session.getSession()));
+    }
+
+    @Test(description = "Tests whether a session is evicted by its new identifier, once its identifier is changed")
+    public void testEvictionAfterSessionIdChange() {
+        String sessionIndex = "id-change-eviction-index";
+        StandardManager contextManager = new StandardManager();
+        Context context = new StandardContext();
+        contextManager.setContext(context);
+        context.setManager(contextManager);
+
+        StandardSession session = new StandardSession(contextManager);
+        session.setValid(true);
+        session.setId("evicted-before-change", false);
+        SSOAgentSessionManager.addAuthenticatedSession(sessionIndex, session);
+        long indexed = SSOAgentSessionManager.getIndexedSessionCount();
+
+        session.setId("evicted-after-change", false);
+        context.fireContainerEvent(Context.CHANGE_SESSION_ID_EVENT,
+                new String[]{"evicted-before-change", "evicted-after-change"});
+        session.expire();
+        Assert.assertEquals(SSOAgentSessionManager.getIndexedSessionCount(), indexed - 1);
+        Assert.assertTrue(SSOAgentSessionManager.getAllInvalidatableSessions(sessionIndex).isEmpty());
+    }
+
+    @Test(description = "Tests concurrent additions of sessions under shared session indexes for lost updates")
+    public void testConcurrentAdditions() throws InterruptedException, ExecutionException {
+        String prefix = "addition-";
+        runConcurrently(THREADS, thread -> IntStream.range(0, OPERATIONS_PER_THREAD)
+                .forEach(operation -> SSOAgentSessionManager.addAuthenticatedSession(
+                        prefix + (operation % SESSION_INDEXES), createSession())));
+
+        long indexed = drainAll(prefix);
+        Assert.assertEquals(indexed, (long) THREADS * OPERATIONS_PER_THREAD);
+    }
+
+    @Test(description = "Tests concurrent additions and removals of sessions under shared session indexes for " +
+            "lost updates")
+    public void testConcurrentAdditionsAndRemovals() throws InterruptedException, ExecutionException {
+        String prefix = "removal-";
+        AtomicLong removed = new AtomicLong();
+        AtomicBoolean adding = new AtomicBoolean(true);
+        CountDownLatch addersDone = new CountDownLatch(THREADS / 2);
+
+        runConcurrently(THREADS, thread -> {
+            if (thread % 2 == 0) {
+                try {
+                    IntStream.range(0, OPERATIONS_PER_THREAD)
+                            .forEach(operation -> SSOAgentSessionManager.addAuthenticatedSession(
+                                    prefix + (operation % SESSION_INDEXES), createSession()));
+                } finally {
+                    addersDone.countDown();
+                }
+            } else {
+                while (adding.get()) {
+                    String sessionIndex = prefix + ThreadLocalRandom.current().nextInt(SESSION_INDEXES);
+                    removed.addAndGet(SSOAgentSessionManager.getAllInvalidatableSessions(sessionIndex).size());
+                }
+            }
+        }, () -> {
+            try {
+                addersDone.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            adding.set(false);
+        });
+
+        long remaining = drainAll(prefix);
+        Assert.assertEquals(removed.get() + remaining, (long) (THREADS / 2) * OPERATIONS_PER_THREAD);
+    }
+
+    private StandardSession createSession() {
+        StandardSession session = new StandardSession(manager);
+        session.setValid(true);
+        session.setId("session-" + sessionIds.incrementAndGet(), false);
+        return session;
+    }
+
+    private static long drainAll(String prefix) {
+        return IntStream.range(0, SESSION_INDEXES)
+                .mapToLong(index -> SSOAgentSessionManager.getAllInvalidatableSessions(prefix + index).size())
+                .sum();
+    }
+
+    private static void runConcurrently(int threads, ThreadTask task, Runnable... coordinators)
+            throws InterruptedException, ExecutionException {
+        ExecutorService executor = Executors.newFixedThreadPool(threads + coordinators.length);
+        try {
+            CountDownLatch start = new CountDownLatch(1);
+            List<Future<?>> futures = new ArrayList<>();
+            IntStream.range(0, threads)
+                    .forEach(thread -> futures.add(executor.submit(() -> {
+                        start.await();
+                        task.run(thread);
+                        return null;
+                    })));
+            for (Runnable coordinator : coordinators) {
+                futures.add(executor.submit(coordinator));
+            }
+            start.countDown();
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * A task run by each of the concurrent threads.
+     */
+    private interface ThreadTask {
+        void run(int thread);
+    }
+}
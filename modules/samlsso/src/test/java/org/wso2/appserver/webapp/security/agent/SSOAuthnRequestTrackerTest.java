@@ -0,0 +1,101 @@
+/*
+ *  Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.wso2.appserver.webapp.security.agent;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+/**
+ * This class defines unit tests for the tracking of outstanding SAML 2.0 Authentication Requests.
+ *
+ * @since 6.0.0
+ */
+public class SSOAuthnRequestTrackerTest {
+    private static final String OWNER = "session-1";
+    private static final long NOW = TimeUnit.SECONDS.toMillis(1000000);
+    private static final long TIMEOUT = TimeUnit.SECONDS.toMillis(300);
+
+    @Test(description = "Tests whether a Response is matched to its outstanding Authentication Request only once")
+    public void testMatchingResponse() {
+        SSOAuthnRequestTracker tracker = new SSOAuthnRequestTracker(10, 300);
+        tracker.register("request-1", OWNER, NOW);
+
+        Assert.assertTrue(tracker.isOutstanding("request-1", OWNER, NOW + 1000));
+        Assert.assertTrue(tracker.consume("request-1", OWNER, NOW + 1000));
+        Assert.assertFalse(tracker.isOutstanding("request-1", OWNER, NOW + 2000));
+        Assert.assertFalse(tracker.consume("request-1", OWNER, NOW + 2000));
+        Assert.assertEquals(tracker.getOutstandingRequestCount(), 0);
+    }
+
+    @Test(description = "Tests whether unsolicited and timed out Responses are not matched")
+    public void testUnmatchedResponses() {
+        SSOAuthnRequestTracker tracker = new SSOAuthnRequestTracker(10, 300);
+        tracker.register("request-1", OWNER, NOW);
+
+        Assert.assertFalse(tracker.isOutstanding(null, OWNER, NOW));
+        Assert.assertFalse(tracker.isOutstanding("unknown", OWNER, NOW));
+        Assert.assertFalse(tracker.isOutstanding("request-1", OWNER, NOW + TIMEOUT));
+        Assert.assertFalse(tracker.consume("request-1", OWNER, NOW + TIMEOUT));
+        Assert.assertEquals(tracker.getUnmatchedResponseCount(), 3);
+    }
+
+    @Test(description = "Tests whether a Response is not matched to a request sent on behalf of another session")
+    public void testResponseOfAnotherOwner() {
+        SSOAuthnRequestTracker tracker = new SSOAuthnRequestTracker(10, 300);
+        tracker.register("request-1", OWNER, NOW);
+
+        Assert.assertFalse(tracker.isOutstanding("request-1", "session-2", NOW));
+        Assert.assertFalse(tracker.isOutstanding("request-1", null, NOW));
+        Assert.assertFalse(tracker.consume("request-1", "session-2", NOW));
+        Assert.assertEquals(tracker.getUnmatchedResponseCount(), 2);
+
+        //  the request remains outstanding for its own session
+        Assert.assertTrue(tracker.consume("request-1", OWNER, NOW));
+    }
+
+    @Test(description = "Tests whether the oldest requests of an owner are evicted beyond the maximum per owner")
+    public void testEvictionPerOwner() {
+        SSOAuthnRequestTracker tracker = new SSOAuthnRequestTracker(3, 300);
+        IntStream.range(0, 5).forEach(index -> tracker.register("request-" + index, OWNER, NOW));
+        tracker.register("other-request", "session-2", NOW);
+
+        Assert.assertFalse(tracker.isOutstanding("request-0", OWNER, NOW));
+        Assert.assertFalse(tracker.isOutstanding("request-1", OWNER, NOW));
+        Assert.assertTrue(tracker.isOutstanding("request-4", OWNER, NOW));
+        Assert.assertTrue(tracker.isOutstanding("other-request", "session-2", NOW));
+        Assert.assertEquals(tracker.getOutstandingRequestCount(), 4);
+        Assert.assertEquals(tracker.getEvictedRequestCount(), 2);
+
+        //  a request responded to frees its slot
+        Assert.assertTrue(tracker.consume("request-4", OWNER, NOW));
+        tracker.register("request-5", OWNER, NOW);
+        Assert.assertTrue(tracker.isOutstanding("request-2", OWNER, NOW));
+        Assert.assertEquals(tracker.getEvictedRequestCount(), 2);
+    }
+
+    @Test(description = "Tests whether timed out requests are swept")
+    public void testTimedOutSweep() {
+        SSOAuthnRequestTracker tracker = new SSOAuthnRequestTracker(10, 300);
+        IntStream.range(0, 5).forEach(index -> tracker.register("request-" + index, "session-" + index, NOW));
+
+        tracker.register("request-5", OWNER, NOW + TIMEOUT);
+        Assert.assertEquals(tracker.getOutstandingRequestCount(), 1);
+        Assert.assertEquals(tracker.getTimedOutRequestCount(), 5);
+    }
+}
@@ -0,0 +1,70 @@
+/*
+ *  Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.wso2.appserver.webapp.security.agent;
+
+import org.apache.catalina.Context;
+import org.apache.catalina.core.StandardContext;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+import org.wso2.appserver.configuration.context.WebAppSingleSignOn;
+import org.wso2.appserver.configuration.server.AppServerSingleSignOn;
+import org.wso2.appserver.webapp.security.TestConstants;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * This class defines unit tests for the origin of logins shared across the contexts of a host.
+ *
+ * @since 6.0.0
+ */
+public class SSOLoginOriginTest {
+    private static final String IDP_ENTITY_ID = "localhost";
+
+    @Test(description = "Tests whether a login is acceptable to a context with the same identity provider and " +
+            "requirements")
+    public void testSameOrigin() {
+        SSOAgentPolicy policy = compilePolicy(IDP_ENTITY_ID, false);
+        Assert.assertTrue(SSOLoginOrigin.of(policy).isAcceptableTo(compilePolicy(IDP_ENTITY_ID, false)));
+    }
+
+    @Test(description = "Tests whether a login of another identity provider is not acceptable")
+    public void testAnotherIdentityProvider() {
+        SSOAgentPolicy policy = compilePolicy("another-idp", false);
+        Assert.assertFalse(SSOLoginOrigin.of(policy).isAcceptableTo(compilePolicy(IDP_ENTITY_ID, false)));
+    }
+
+    @Test(description = "Tests whether a login is only acceptable to contexts with requirements as strict or weaker")
+    public void testWeakerRequirements() {
+        SSOAgentPolicy weakPolicy = compilePolicy(IDP_ENTITY_ID, false);
+        SSOAgentPolicy strictPolicy = compilePolicy(IDP_ENTITY_ID, true);
+
+        Assert.assertFalse(SSOLoginOrigin.of(weakPolicy).isAcceptableTo(strictPolicy));
+        Assert.assertTrue(SSOLoginOrigin.of(strictPolicy).isAcceptableTo(weakPolicy));
+    }
+
+    public static SSOAgentPolicy compilePolicy(String idpEntityId, boolean assertionSigningEnabled) {
+        Context context = new StandardContext();
+        context.setPath("/" + TestConstants.FOO_CONTEXT);
+        WebAppSingleSignOn contextConfiguration = SSORequestResolverTest.getDefaultWebAppSSOConfiguration();
+        contextConfiguration.enableAssertionSigning(assertionSigningEnabled);
+
+        AppServerSingleSignOn serverConfiguration = mock(AppServerSingleSignOn.class);
+        when(serverConfiguration.getIdpEntityId()).thenReturn(idpEntityId);
+        when(serverConfiguration.getIdpURL()).thenReturn(TestConstants.DEFAULT_IDP_URL);
+        return SSOAgentPolicy.compile(context, contextConfiguration, serverConfiguration);
+    }
+}
@@ -0,0 +1,74 @@
+/*
+ *  Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.wso2.appserver.webapp.security.agent;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+import org.wso2.appserver.webapp.security.utils.XMLLimitingInputStream;
+import org.wso2.appserver.webapp.security.utils.exception.SSOException;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * This class defines unit tests for the limits of inbound SAML 2.0 messages.
+ *
+ * @since 6.0.0
+ */
+public class SSOMessageGuardTest {
+    @Test(description = "Tests whether the default limits accept an Assertion with a large attribute set")
+    public void testDefaultLimitsWithLargeAttributeSet() throws IOException {
+        StringBuilder xml = new StringBuilder("<saml:Assertion xmlns:saml=\"urn:oasis:names:tc:SAML:2.0:assertion\">" +
+                "<saml:AttributeStatement>");
+        for (int index = 0; index < 5000; index++) {
+            xml.append("<saml:Attribute Name=\"a").append(index).append("\"><saml:AttributeValue>")
+                    .append(index).append("</saml:AttributeValue></saml:Attribute>");
+        }
+        xml.append("</saml:AttributeStatement></saml:Assertion>");
+
+        XMLLimitingInputStream stream = SSOMessageGuard.withDefaultLimits()
+                .limit(new ByteArrayInputStream(xml.toString().getBytes(StandardCharsets.UTF_8)));
+        readFully(stream);
+        Assert.assertFalse(stream.getExceededLimit().isPresent());
+    }
+
+    @Test(description = "Tests whether a guard with the limits of a context shares the rejection counts")
+    public void testContextLimits() {
+        SSOMessageGuard guard = SSOMessageGuard.withDefaultLimits();
+        SSOMessageGuard contextGuard = guard.withLimits(8, 0, 0, 0);
+
+        try {
+            contextGuard.checkMessageSize("PHNhbWxwOlJlc3BvbnNlLz4=");
+            Assert.fail("An oversized message was accepted");
+        } catch (SSOException e) {
+            Assert.assertEquals(guard.getRejectedMessageCount(SSOMessageGuard.RejectReason.MESSAGE_SIZE), 1);
+        }
+        try {
+            guard.checkMessageSize("PHNhbWxwOlJlc3BvbnNlLz4=");
+        } catch (SSOException e) {
+            Assert.fail("A message within the limits of the valve was rejected", e);
+        }
+    }
+
+    private static void readFully(InputStream stream) throws IOException {
+        byte[] buffer = new byte[512];
+        while (stream.read(buffer, 0, buffer.length) != -1) {
+            //  discard the content, only its limits are of interest
+        }
+    }
+}
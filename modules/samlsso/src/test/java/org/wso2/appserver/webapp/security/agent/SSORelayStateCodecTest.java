@@ -0,0 +1,135 @@
+/*
+ *  Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.wso2.appserver.webapp.security.agent;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+import org.wso2.appserver.webapp.security.Constants;
+import org.wso2.appserver.webapp.security.TestConstants;
+import org.wso2.appserver.webapp.security.utils.exception.SSOException;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * This class defines unit tests for the signed, stateless relay state codec.
+ *
+ * @since 6.0.0
+ */
+public class SSORelayStateCodecTest {
+    private static final byte[] SECRET = "relay-state-secret-of-at-least-32-bytes".getBytes(StandardCharsets.UTF_8);
+    private static final long TIMEOUT = 300 * 1000L;
+    private static final long NOW = 1470000000000L;
+    private static final String REQUEST_URI = "/" + TestConstants.FOO_CONTEXT + "/orders";
+    private static final String QUERY_STRING = "id=7";
+
+    @Test(description = "Tests whether an encoded relay state decodes back to the requested resource")
+    public void testEncodingAndDecoding() throws SSOException {
+        SSORelayStateCodec codec = new SSORelayStateCodec(SECRET, TIMEOUT,
+                SSORelayStateCodec.DEFAULT_MAX_RELAY_STATE_LENGTH);
+
+        Optional<String> relayState = codec.encode(REQUEST_URI, QUERY_STRING, NOW);
+        Assert.assertTrue(relayState.isPresent());
+
+        Optional<Map<String, Object>> content = codec.decode(relayState.get(), NOW);
+        Assert.assertTrue(content.isPresent());
+        Assert.assertEquals(content.get().get(Constants.REQUEST_URL), REQUEST_URI);
+        Assert.assertEquals(content.get().get(Constants.REQUEST_QUERY_STRING), QUERY_STRING);
+    }
+
+    @Test(description = "Tests whether a unique Authentication Request ID is bound to each relay state")
+    public void testAuthnRequestBinding() throws SSOException {
+        SSORelayStateCodec codec = new SSORelayStateCodec(SECRET, TIMEOUT,
+                SSORelayStateCodec.DEFAULT_MAX_RELAY_STATE_LENGTH);
+
+        String relayState = codec.encode(REQUEST_URI, QUERY_STRING, NOW).orElse("");
+        String otherRelayState = codec.encode(REQUEST_URI, QUERY_STRING, NOW).orElse("");
+        Optional<String> authnRequestId = codec.getAuthnRequestId(relayState, NOW);
+        Assert.assertTrue(authnRequestId.isPresent());
+        Assert.assertEquals(authnRequestId.get().length(), 40);
+        Assert.assertEquals(codec.decode(relayState, NOW)
+                .map(content -> content.get(Constants.AUTHN_REQUEST_ID))
+                .orElse(null), authnRequestId.get());
+        Assert.assertNotEquals(codec.getAuthnRequestId(otherRelayState, NOW).orElse(null), authnRequestId.get());
+
+        SSORelayStateCodec foreignCodec = new SSORelayStateCodec(
+                "another-relay-state-secret-of-32-bytes".getBytes(StandardCharsets.UTF_8), TIMEOUT,
+                SSORelayStateCodec.DEFAULT_MAX_RELAY_STATE_LENGTH);
+        Assert.assertFalse(foreignCodec.getAuthnRequestId(relayState, NOW).isPresent());
+    }
+
+    @Test(description = "Tests whether a tampered or foreign relay state is rejected")
+    public void testTamperedRelayState() throws SSOException {
+        SSORelayStateCodec codec = new SSORelayStateCodec(SECRET, TIMEOUT,
+                SSORelayStateCodec.DEFAULT_MAX_RELAY_STATE_LENGTH);
+        SSORelayStateCodec foreignCodec = new SSORelayStateCodec(
+                "another-relay-state-secret-of-32-bytes".getBytes(StandardCharsets.UTF_8), TIMEOUT,
+                SSORelayStateCodec.DEFAULT_MAX_RELAY_STATE_LENGTH);
+
+        String relayState = codec.encode(REQUEST_URI, null, NOW).orElse("");
+        String tampered = ((relayState.charAt(0) == 'A') ? 'B' : 'A') + relayState.substring(1);
+
+        Assert.assertFalse(codec.decode(tampered, NOW).isPresent());
+        Assert.assertFalse(foreignCodec.decode(relayState, NOW).isPresent());
+        Assert.assertFalse(codec.decode(TestConstants.RELAY_STATE_ID, NOW).isPresent());
+    }
+
+    @Test(description = "Tests whether an expired relay state is rejected")
+    public void testExpiredRelayState() throws SSOException {
+        SSORelayStateCodec codec = new SSORelayStateCodec(SECRET, TIMEOUT,
+                SSORelayStateCodec.DEFAULT_MAX_RELAY_STATE_LENGTH);
+
+        String relayState = codec.encode(REQUEST_URI, null, NOW).orElse("");
+        Assert.assertTrue(codec.decode(relayState, NOW + TIMEOUT - 1000).isPresent());
+        Assert.assertFalse(codec.decode(relayState, NOW + TIMEOUT).isPresent());
+    }
+
+    @Test(description = "Tests whether a relay state exceeding the maximum length is not encoded")
+    public void testMaximumLength() throws SSOException {
+        SSORelayStateCodec codec = new SSORelayStateCodec(SECRET, TIMEOUT, 64);
+
+        Assert.assertTrue(codec.encode(REQUEST_URI, null, NOW).isPresent());
+        Assert.assertFalse(codec.encode(REQUEST_URI, TestConstants.DEFAULT_QUERY_PARAMS, NOW).isPresent());
+    }
+
+    @Test(description = "Tests whether an encoded relay state never exceeds the 80 bytes allowed by the SAML 2.0 " +
+            "bindings specification, even if a larger maximum length is configured")
+    public void testSpecificationLengthLimit() throws SSOException {
+        SSORelayStateCodec codec = new SSORelayStateCodec(SECRET, TIMEOUT, 256);
+
+        StringBuilder requestURI = new StringBuilder("/" + TestConstants.FOO_CONTEXT);
+        int encodedCount = 0;
+        for (int length = 0; length < 64; length++) {
+            Optional<String> relayState = codec.encode(requestURI.toString(), null, NOW);
+            if (relayState.isPresent()) {
+                Assert.assertTrue(relayState.get().getBytes(StandardCharsets.UTF_8).length <=
+                        SSORelayStateCodec.MAX_RELAY_STATE_LENGTH, relayState.get());
+                encodedCount++;
+            }
+            requestURI.append('a');
+        }
+        Assert.assertTrue(encodedCount > 0);
+        Assert.assertFalse(codec.encode(requestURI.toString(), null, NOW).isPresent());
+    }
+
+    @Test(description = "Tests whether a secret shorter than 32 bytes is rejected",
+            expectedExceptions = SSOException.class)
+    public void testShortSecret() throws SSOException {
+        new SSORelayStateCodec("relay-state-secret".getBytes(StandardCharsets.UTF_8), TIMEOUT,
+                SSORelayStateCodec.DEFAULT_MAX_RELAY_STATE_LENGTH);
+    }
+}
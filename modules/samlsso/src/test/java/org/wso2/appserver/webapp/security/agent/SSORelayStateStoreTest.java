@@ -0,0 +1,112 @@
+/*
+ *  Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.wso2.appserver.webapp.security.agent;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+import org.wso2.appserver.webapp.security.Constants;
+import org.wso2.appserver.webapp.security.TestConstants;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import javax.servlet.http.HttpSession;
+import javax.servlet.http.HttpSessionBindingListener;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * This class defines unit tests for the bounded, expiring relay state store.
+ *
+ * @since 6.0.0
+ */
+public class SSORelayStateStoreTest {
+    @Test(description = "Tests whether a relay state is removed once consumed")
+    public void testConsumingRelayState() {
+        SSORelayStateStore store = new SSORelayStateStore();
+        HttpSession session = createSession();
+
+        String relayStateId = store.save(session, createRelayState("/" + TestConstants.FOO_CONTEXT));
+        Assert.assertEquals(store.getOutstandingRelayStateCount(), 1);
+
+        Optional<Map<String, Object>> relayState = store.consume(session, relayStateId);
+        Assert.assertTrue(relayState.isPresent());
+        Assert.assertEquals(relayState.get().get(Constants.REQUEST_URL), "/" + TestConstants.FOO_CONTEXT);
+        Assert.assertFalse(store.consume(session, relayStateId).isPresent());
+        Assert.assertEquals(store.getOutstandingRelayStateCount(), 0);
+    }
+
+    @Test(description = "Tests whether the most recent relay state is consumed if no identifier is returned")
+    public void testConsumingMostRecentRelayState() {
+        SSORelayStateStore store = new SSORelayStateStore();
+        HttpSession session = createSession();
+
+        store.save(session, createRelayState("/" + TestConstants.FOO_CONTEXT));
+        store.save(session, createRelayState("/" + TestConstants.BAR_CONTEXT));
+
+        Optional<Map<String, Object>> relayState = store.consume(session, null);
+        Assert.assertTrue(relayState.isPresent());
+        Assert.assertEquals(relayState.get().get(Constants.REQUEST_URL), "/" + TestConstants.BAR_CONTEXT);
+    }
+
+    @Test(description = "Tests whether the oldest relay states are evicted beyond the per session limit")
+    public void testPerSessionLimit() {
+        SSORelayStateStore store = new SSORelayStateStore();
+        store.setMaxRelayStatesPerSession(2);
+        HttpSession session = createSession();
+
+        String oldest = store.save(session, createRelayState("/one"));
+        String older = store.save(session, createRelayState("/two"));
+        String newest = store.save(session, createRelayState("/three"));
+
+        Assert.assertEquals(store.getOutstandingRelayStateCount(), 2);
+        Assert.assertFalse(store.consume(session, oldest).isPresent());
+        Assert.assertTrue(store.consume(session, older).isPresent());
+        Assert.assertTrue(store.consume(session, newest).isPresent());
+    }
+
+    @Test(description = "Tests whether the outstanding count is released when the session is invalidated")
+    public void testSessionInvalidation() {
+        SSORelayStateStore store = new SSORelayStateStore();
+        HttpSession session = createSession();
+
+        store.save(session, createRelayState("/one"));
+        store.save(session, createRelayState("/two"));
+        Assert.assertEquals(store.getOutstandingRelayStateCount(), 2);
+
+        ((HttpSessionBindingListener) session.getAttribute(Constants.RELAY_STATES)).valueUnbound(null);
+        Assert.assertEquals(store.getOutstandingRelayStateCount(), 0);
+    }
+
+    private static Map<String, Object> createRelayState(String requestURL) {
+        Map<String, Object> relayState = new HashMap<>();
+        relayState.put(Constants.REQUEST_URL, requestURL);
+        return relayState;
+    }
+
+    private static HttpSession createSession() {
+        Map<String, Object> attributes = new HashMap<>();
+        HttpSession session = mock(HttpSession.class);
+        when(session.getAttribute(anyString())).then(invocation -> attributes.get(invocation.getArguments()[0]));
+        doAnswer(invocation -> attributes.put((String) invocation.getArguments()[0], invocation.getArguments()[1]))
+                .when(session).setAttribute(anyString(), any());
+        return session;
+    }
+}
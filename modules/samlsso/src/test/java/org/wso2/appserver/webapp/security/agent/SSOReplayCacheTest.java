@@ -0,0 +1,143 @@
+/*
+ *  Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.wso2.appserver.webapp.security.agent;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+/**
+ * This class defines unit tests for the replay detection of consumed SAML 2.0 messages.
+ *
+ * @since 6.0.0
+ */
+public class SSOReplayCacheTest {
+    private static final long NOW = TimeUnit.SECONDS.toMillis(1000000);
+    private static final long MINUTE = TimeUnit.MINUTES.toMillis(1);
+    private static final int THREADS = 8;
+
+    @Test(description = "Tests whether a consumed message identifier is detected as replayed until it expires")
+    public void testReplayDetection() {
+        SSOReplayCache cache = new SSOReplayCache(100, NOW);
+
+        Assert.assertFalse(cache.isReplayed("id-1", NOW));
+        Assert.assertTrue(cache.add("id-1", NOW + MINUTE, NOW));
+        Assert.assertTrue(cache.isReplayed("id-1", NOW + 1000));
+        Assert.assertFalse(cache.add("id-1", NOW + MINUTE, NOW + 1000));
+        Assert.assertEquals(cache.getReplayedMessageCount(), 2);
+
+        Assert.assertFalse(cache.isReplayed("id-1", NOW + MINUTE));
+        Assert.assertTrue(cache.add("id-1", NOW + 3 * MINUTE, NOW + MINUTE));
+    }
+
+    @Test(description = "Tests whether expired message identifiers are evicted as time passes")
+    public void testExpiredEviction() {
+        SSOReplayCache cache = new SSOReplayCache(100, NOW);
+
+        IntStream.range(0, 10).forEach(index -> cache.add("short-" + index, NOW + MINUTE, NOW));
+        IntStream.range(0, 10).forEach(index -> cache.add("long-" + index, NOW + 5 * MINUTE, NOW));
+        Assert.assertEquals(cache.getSize(), 20);
+
+        cache.add("later", NOW + 10 * MINUTE, NOW + 2 * MINUTE);
+        Assert.assertEquals(cache.getSize(), 11);
+        Assert.assertEquals(cache.getExpiredEvictionCount(), 10);
+    }
+
+    @Test(description = "Tests whether message identifiers expiring beyond a revolution of the wheel are retained")
+    public void testLongLivedEntries() {
+        SSOReplayCache cache = new SSOReplayCache(100, NOW);
+
+        cache.add("long-lived", NOW + 60 * MINUTE, NOW);
+        cache.add("other", NOW + 90 * MINUTE, NOW + 30 * MINUTE);
+        Assert.assertTrue(cache.isReplayed("long-lived", NOW + 30 * MINUTE));
+
+        cache.add("another", NOW + 120 * MINUTE, NOW + 61 * MINUTE);
+        Assert.assertFalse(cache.isReplayed("long-lived", NOW + 61 * MINUTE));
+        Assert.assertEquals(cache.getSize(), 2);
+    }
+
+    @Test(description = "Tests whether the message identifiers closest to expiry are evicted beyond the maximum size")
+    public void testCapacityEviction() {
+        SSOReplayCache cache = new SSOReplayCache(10, NOW);
+
+        IntStream.range(0, 10).forEach(index -> cache.add("id-" + index, NOW + (index + 1) * MINUTE, NOW));
+        cache.add("id-10", NOW + 30 * MINUTE, NOW);
+        Assert.assertEquals(cache.getSize(), 10);
+        Assert.assertEquals(cache.getCapacityEvictionCount(), 1);
+        Assert.assertFalse(cache.isReplayed("id-0", NOW));
+        Assert.assertTrue(cache.isReplayed("id-1", NOW));
+        Assert.assertTrue(cache.isReplayed("id-10", NOW));
+    }
+
+    @Test(description = "Tests whether only one of concurrent deliveries of the same message is accepted")
+    public void testConcurrentReplays() throws InterruptedException, ExecutionException {
+        SSOReplayCache cache = new SSOReplayCache(SSOReplayCache.DEFAULT_MAX_ENTRIES);
+        long expiry = System.currentTimeMillis() + MINUTE;
+        int messages = 1000;
+        AtomicInteger accepted = new AtomicInteger();
+
+        runConcurrently(() -> IntStream.range(0, messages)
+                .filter(message -> cache.add("message-" + message, expiry))
+                .forEach(message -> accepted.incrementAndGet()));
+
+        Assert.assertEquals(accepted.get(), messages);
+        Assert.assertEquals(cache.getReplayedMessageCount(), (long) (THREADS - 1) * messages);
+        Assert.assertEquals(cache.getSize(), messages);
+    }
+
+    @Test(description = "Tests whether the maximum size holds under concurrent additions")
+    public void testConcurrentCapacity() throws InterruptedException, ExecutionException {
+        SSOReplayCache cache = new SSOReplayCache(500);
+        long expiry = System.currentTimeMillis() + MINUTE;
+        AtomicInteger ids = new AtomicInteger();
+
+        runConcurrently(() -> IntStream.range(0, 1000)
+                .forEach(message -> cache.add("message-" + ids.incrementAndGet(), expiry)));
+
+        Assert.assertTrue(cache.getSize() <= 500);
+        Assert.assertEquals(cache.getSize() + cache.getCapacityEvictionCount(), (long) THREADS * 1000);
+    }
+
+    private static void runConcurrently(Runnable task) throws InterruptedException, ExecutionException {
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            CountDownLatch start = new CountDownLatch(1);
+            List<Future<?>> futures = new ArrayList<>();
+            IntStream.range(0, THREADS)
+                    .forEach(thread -> futures.add(executor.submit(() -> {
+                        start.await();
+                        task.run();
+                        return null;
+                    })));
+            start.countDown();
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -15,7 +15,9 @@
  */
 package org.wso2.appserver.webapp.security.agent;
 
+import org.apache.catalina.Context;
 import org.apache.catalina.connector.Request;
+import org.apache.catalina.core.StandardContext;
 import org.testng.Assert;
 import org.testng.annotations.BeforeClass;
 import org.testng.annotations.Test;
@@ -36,11 +38,13 @@ import static org.mockito.Mockito.when;
  * @since 6.0.0
  */
 public class SSORequestResolverTest {
-    private WebAppSingleSignOn ssoConfiguration;
+    private SSOAgentPolicy ssoConfiguration;
 
     @BeforeClass
     public void init() throws SSOException {
-        ssoConfiguration = getDefaultWebAppSSOConfiguration();
+        Context context = new StandardContext();
+        context.setPath("/" + TestConstants.FOO_CONTEXT);
+        ssoConfiguration = SSOAgentPolicy.compile(context, getDefaultWebAppSSOConfiguration(), null);
     }
 
     @Test(description = "Tests for a request URI to be skipped")
@@ -63,6 +67,45 @@ public class SSORequestResolverTest {
         Assert.assertFalse(resolver.isURLToSkip());
     }
 
+    @Test(description = "Tests for request URIs matching the prefix, extension and glob skip rules")
+    public void testSkipURIRules() {
+        Assert.assertTrue(isURLToSkip(TestConstants.PREFIX_SKIP_URI));
+        Assert.assertTrue(isURLToSkip(TestConstants.EXTENSION_SKIP_URI));
+        Assert.assertTrue(isURLToSkip(TestConstants.GLOB_SKIP_URI));
+        Assert.assertFalse(isURLToSkip(TestConstants.NON_GLOB_SKIP_URI));
+    }
+
+    @Test(description = "Tests the single pass classification of request URIs")
+    public void testURIClassification() {
+        Assert.assertEquals(getURIType(TestConstants.SKIP_URI_TWO), SSOURIMatcher.URIType.SKIP);
+        Assert.assertEquals(getURIType(TestConstants.LOGOUT_REQ_URI), SSOURIMatcher.URIType.SLO);
+        Assert.assertEquals(getURIType(TestConstants.NON_SKIP_URI), SSOURIMatcher.URIType.PROTECTED);
+    }
+
+    @Test(description = "Tests whether request URIs are classified after removing path parameters, decoding and " +
+            "removing dot segments, so that a protected URI cannot match a rule to skip")
+    public void testURIClassificationOfNormalizedURIs() {
+        Assert.assertEquals(getURIType(TestConstants.DOT_DOT_PARAMETER_URI), SSOURIMatcher.URIType.PROTECTED);
+        Assert.assertEquals(getURIType(TestConstants.ENCODED_DOT_DOT_URI), SSOURIMatcher.URIType.PROTECTED);
+        Assert.assertEquals(getURIType(TestConstants.SESSION_ID_PARAMETER_URI), SSOURIMatcher.URIType.PROTECTED);
+        Assert.assertEquals(getURIType(TestConstants.ENCODED_PREFIX_SKIP_URI), SSOURIMatcher.URIType.SKIP);
+        Assert.assertEquals(getURIType("/" + TestConstants.FOO_CONTEXT + "/static/%2Fadmin"),
+                SSOURIMatcher.URIType.PROTECTED);
+        Assert.assertEquals(getURIType("/" + TestConstants.FOO_CONTEXT + "/static/../../../admin"),
+                SSOURIMatcher.URIType.PROTECTED);
+    }
+
+    @Test(description = "Tests whether file extension rules are not applied to requests mapped by a path prefix")
+    public void testExtensionRuleForPathMappedServlet() {
+        Request request = mock(Request.class);
+        when(request.getRequestURI()).thenReturn(TestConstants.SERVLET_EXTENSION_URI);
+        when(request.getPathInfo()).thenReturn("/x.css");
+        Assert.assertEquals(new SSORequestResolver(request, ssoConfiguration).getURIType(),
+                SSOURIMatcher.URIType.PROTECTED);
+
+        Assert.assertEquals(getURIType(TestConstants.SERVLET_EXTENSION_URI), SSOURIMatcher.URIType.SKIP);
+    }
+
     @Test(description = "Tests whether the resolver recognizes the agent's HTTP binding type as HTTP-POST")
     public void testCheckForPOSTBinding() {
         //  mocks a Request object
@@ -102,6 +145,18 @@ public class SSORequestResolverTest {
         Assert.assertFalse(resolver.isSLOURL());
     }
 
+    private boolean isURLToSkip(String requestURI) {
+        Request request = mock(Request.class);
+        when(request.getRequestURI()).thenReturn(requestURI);
+        return new SSORequestResolver(request, ssoConfiguration).isURLToSkip();
+    }
+
+    private SSOURIMatcher.URIType getURIType(String requestURI) {
+        Request request = mock(Request.class);
+        when(request.getRequestURI()).thenReturn(requestURI);
+        return new SSORequestResolver(request, ssoConfiguration).getURIType();
+    }
+
     public static WebAppSingleSignOn getDefaultWebAppSSOConfiguration() {
         WebAppSingleSignOn configuration = new WebAppSingleSignOn();
 
@@ -114,6 +169,9 @@ public class SSORequestResolverTest {
         List<String> skipURIs = new ArrayList<>();
         skipURIs.add(TestConstants.SKIP_URI_ONE);
         skipURIs.add(TestConstants.SKIP_URI_TWO);
+        skipURIs.add(TestConstants.SKIP_PREFIX_RULE);
+        skipURIs.add(TestConstants.SKIP_EXTENSION_RULE);
+        skipURIs.add(TestConstants.SKIP_GLOB_RULE);
         WebAppSingleSignOn.SkipURIs uris = new WebAppSingleSignOn.SkipURIs();
         uris.setSkipURIs(skipURIs);
         configuration.setSkipURIs(uris);
@@ -0,0 +1,80 @@
+/*
+ *  Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.wso2.appserver.webapp.security.agent;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+import org.wso2.appserver.webapp.security.bean.LoggedInSession;
+import org.wso2.appserver.webapp.security.bean.SAML2SSO;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * This class defines unit tests for the mapping of SAML 2.0 attributes to container roles.
+ *
+ * @since 6.0.0
+ */
+public class SSORoleMapperTest {
+    private static final String ROLE_ATTRIBUTE = "http://wso2.org/claims/role";
+    private static final String GROUP_ATTRIBUTE = "http://wso2.org/claims/group";
+
+    @Test(description = "Tests whether no roles are mapped when no role attribute is configured")
+    public void testNoRoleAttributes() {
+        SSORoleMapper roleMapper = SSORoleMapper.compile(null, "admin=manager");
+
+        Assert.assertTrue(roleMapper.getRoles(createLoggedInSession()).isEmpty());
+    }
+
+    @Test(description = "Tests whether the values of the role attributes are used as roles, when not mapped")
+    public void testUnmappedRoles() {
+        SSORoleMapper roleMapper = SSORoleMapper.compile(ROLE_ATTRIBUTE + " , " + GROUP_ATTRIBUTE, null);
+
+        Assert.assertEquals(roleMapper.getRoles(createLoggedInSession()),
+                Arrays.asList("admin", "everyone", "developers"));
+    }
+
+    @Test(description = "Tests whether attribute values are mapped to one or more roles, without duplicates")
+    public void testMappedRoles() {
+        SSORoleMapper roleMapper = SSORoleMapper.compile(ROLE_ATTRIBUTE + "," + GROUP_ATTRIBUTE,
+                "admin=manager, admin=tomcat, developers=tomcat, malformed, =ignored");
+
+        Assert.assertEquals(roleMapper.getRoles(createLoggedInSession()),
+                Arrays.asList("manager", "tomcat", "everyone"));
+    }
+
+    @Test(description = "Tests whether the roles mapped are applied to the principal")
+    public void testPrincipalRoles() {
+        LoggedInSession loggedInSession = createLoggedInSession();
+        SSORoleMapper roleMapper = SSORoleMapper.compile(ROLE_ATTRIBUTE, "admin=manager");
+        SSOPrincipal principal = new SSOPrincipal(loggedInSession, roleMapper.getRoles(loggedInSession));
+
+        Assert.assertEquals(principal.getName(), "admin");
+        Assert.assertTrue(principal.hasRole("manager"));
+        Assert.assertTrue(principal.hasRole("everyone"));
+        Assert.assertFalse(principal.hasRole("admin"));
+    }
+
+    private static LoggedInSession createLoggedInSession() {
+        Map<String, List<String>> attributes = new HashMap<>();
+        attributes.put(ROLE_ATTRIBUTE, Arrays.asList("admin", "everyone"));
+        attributes.put(GROUP_ATTRIBUTE, Collections.singletonList("developers"));
+        return new LoggedInSession(new SAML2SSO("admin", null, attributes, null, null));
+    }
+}
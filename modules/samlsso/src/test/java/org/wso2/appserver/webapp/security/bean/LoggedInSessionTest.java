@@ -0,0 +1,101 @@
+/*
+ *  Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.wso2.appserver.webapp.security.bean;
+
+import com.google.gson.Gson;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+import org.wso2.appserver.webapp.security.Constants;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import javax.servlet.http.HttpSession;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * This class defines unit tests for the typed logged-in session held in the HTTP session.
+ *
+ * @since 6.0.0
+ */
+public class LoggedInSessionTest {
+    private static final String SUBJECT_ID = "admin";
+    private static final String SESSION_INDEX = "a0f3c6b2-0c1d-4b0a-9a1e-3f5e2d7c8b91";
+    private static final String ROLE_ATTRIBUTE = "http://wso2.org/claims/role";
+
+    @Test(description = "Tests retrieving the logged-in session held in an HTTP session")
+    public void testRetrievingLoggedInSession() {
+        LoggedInSession loggedInSession = createLoggedInSession();
+        HttpSession session = mock(HttpSession.class);
+        when(session.getAttribute(Constants.LOGGED_IN_SESSION)).thenReturn(loggedInSession);
+
+        Optional<LoggedInSession> actual = LoggedInSession.getLoggedInSession(session);
+        Assert.assertTrue(actual.isPresent());
+        Assert.assertEquals(actual.get().getSubjectId(), SUBJECT_ID);
+        Assert.assertEquals(actual.get().getSessionIndex(), SESSION_INDEX);
+        Assert.assertEquals(actual.get().getSubjectAttributes().get(ROLE_ATTRIBUTE), getRoles());
+    }
+
+    @Test(description = "Tests retrieving the logged-in session of an unauthenticated HTTP session")
+    public void testRetrievingAbsentLoggedInSession() {
+        HttpSession session = mock(HttpSession.class);
+
+        Assert.assertFalse(LoggedInSession.getLoggedInSession(session).isPresent());
+        Assert.assertFalse(LoggedInSession.getLoggedInSession(null).isPresent());
+    }
+
+    @Test(description = "Tests whether the subject attributes cannot be modified once held in the session",
+            expectedExceptions = UnsupportedOperationException.class)
+    public void testImmutableSubjectAttributes() {
+        createLoggedInSession().getSubjectAttributes().get(ROLE_ATTRIBUTE).add("everyone");
+    }
+
+    @Test(description = "Tests whether the JSON compatibility view matches the formerly held JSON value")
+    public void testJSONCompatibilityView() {
+        LoggedInSession loggedInSession = createLoggedInSession();
+
+        LoggedInSession parsed = new Gson().fromJson(loggedInSession.toJSON(), LoggedInSession.class);
+        Assert.assertEquals(parsed.getSAML2SSO().getSubjectId(), SUBJECT_ID);
+        Assert.assertEquals(parsed.getSAML2SSO().getSessionIndex(), SESSION_INDEX);
+        Assert.assertEquals(parsed.getSAML2SSO().getSubjectAttributes().get(ROLE_ATTRIBUTE), getRoles());
+    }
+
+    @Test(description = "Tests whether the string value of a logged-in session is a short description, rather than " +
+            "its JSON representation")
+    public void testShortDescription() {
+        String description = createLoggedInSession().toString();
+
+        Assert.assertEquals(description, "LoggedInSession[subjectId=" + SUBJECT_ID + ", sessionIndex=" +
+                SESSION_INDEX + "]");
+    }
+
+    private static LoggedInSession createLoggedInSession() {
+        Map<String, List<String>> attributes = new HashMap<>();
+        attributes.put(ROLE_ATTRIBUTE, new ArrayList<>(getRoles()));
+        return new LoggedInSession(new SAML2SSO(SUBJECT_ID, SESSION_INDEX, attributes, null, null));
+    }
+
+    private static List<String> getRoles() {
+        List<String> roles = new ArrayList<>();
+        Collections.addAll(roles, "admin", "internal/everyone");
+        return roles;
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ *  Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.wso2.appserver.webapp.security.bean;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * This class defines unit tests for the retention of raw XML content in a logged-in session.
+ *
+ * @since 6.0.0
+ */
+public class RetainedXMLTest {
+    private static final String ASSERTION = "<saml:Assertion ID=\"_a1\"><saml:Subject>\u00e9</saml:Subject>" +
+            "</saml:Assertion>";
+    private static final String RESPONSE = "<samlp:Response xmlns:samlp=\"urn:oasis:names:tc:SAML:2.0:protocol\" " +
+            "xmlns:saml=\"urn:oasis:names:tc:SAML:2.0:assertion\">" + ASSERTION + "</samlp:Response>";
+    private static final String NAMESPACE_DECLARATION = " xmlns:saml=\"urn:oasis:names:tc:SAML:2.0:assertion\"";
+
+    @Test(description = "Tests retaining XML content and a slice of it, as it is")
+    public void testRetainingReference() {
+        RetainedXML response = RetainedXML.of(getBytes(RESPONSE));
+        RetainedXML assertion = slice(response);
+
+        Assert.assertEquals(response.getString(), RESPONSE);
+        Assert.assertEquals(assertion.getString(), "<saml:Assertion" + NAMESPACE_DECLARATION +
+                ASSERTION.substring("<saml:Assertion".length()));
+        Assert.assertTrue(assertion.sharesContentWith(response));
+    }
+
+    @Test(description = "Tests retaining XML content and a slice of it, compressed")
+    public void testRetainingCompressed() {
+        String response = RESPONSE.replace(ASSERTION, ASSERTION + ASSERTION + ASSERTION);
+        RetainedXML compressed = RetainedXML.compress(getBytes(response));
+
+        Assert.assertEquals(compressed.getString(), response);
+        Assert.assertTrue(compressed.getRetainedSize() < getBytes(response).length);
+        Assert.assertEquals(slice(compressed).getString(), slice(RetainedXML.of(getBytes(response))).getString());
+    }
+
+    @Test(description = "Tests whether slices share their content once serialized with the session")
+    public void testSerializingSlices() throws IOException, ClassNotFoundException {
+        RetainedXML response = RetainedXML.compress(getBytes(RESPONSE));
+        SAML2SSO saml2SSO = new SAML2SSO("admin", null, null, response, slice(response));
+
+        ByteArrayOutputStream serialized = new ByteArrayOutputStream();
+        try (ObjectOutputStream outputStream = new ObjectOutputStream(serialized)) {
+            outputStream.writeObject(saml2SSO);
+        }
+        SAML2SSO deserialized;
+        try (ObjectInputStream inputStream = new ObjectInputStream(
+                new ByteArrayInputStream(serialized.toByteArray()))) {
+            deserialized = (SAML2SSO) inputStream.readObject();
+        }
+
+        Assert.assertEquals(deserialized.getResponseString(), RESPONSE);
+        Assert.assertEquals(deserialized.getAssertionString(), saml2SSO.getAssertionString());
+        Assert.assertEquals(deserialized.getRetainedMessageSize(), response.getRetainedSize());
+    }
+
+    @Test(description = "Tests slicing outside of the bounds of the content",
+            expectedExceptions = IndexOutOfBoundsException.class)
+    public void testSlicingOutOfBounds() {
+        RetainedXML.of(getBytes(ASSERTION)).slice(1, getBytes(ASSERTION).length, 0, null);
+    }
+
+    private static RetainedXML slice(RetainedXML response) {
+        String content = response.getString();
+        int start = getBytes(content.substring(0, content.indexOf("<saml:Assertion"))).length;
+        return response.slice(start, getBytes(ASSERTION).length, "<saml:Assertion".length(), NAMESPACE_DECLARATION);
+    }
+
+    private static byte[] getBytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+}
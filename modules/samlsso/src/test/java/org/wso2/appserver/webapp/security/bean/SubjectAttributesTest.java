@@ -0,0 +1,100 @@
+/*
+ *  Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.wso2.appserver.webapp.security.bean;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * This class defines unit tests for the compact subject attributes held in the logged-in session.
+ *
+ * @since 6.0.0
+ */
+public class SubjectAttributesTest {
+    private static final String ROLE_ATTRIBUTE = "http://wso2.org/claims/role";
+    private static final String EMAIL_ATTRIBUTE = "http://wso2.org/claims/emailaddress";
+
+    @Test(description = "Tests whether the values of a recurring attribute are merged, in order")
+    public void testMergingValues() {
+        SubjectAttributes attributes = new SubjectAttributes.Builder()
+                .add(ROLE_ATTRIBUTE, "admin")
+                .add(EMAIL_ATTRIBUTE, "admin@wso2.com")
+                .add(ROLE_ATTRIBUTE, "internal/everyone")
+                .add("empty")
+                .build();
+
+        Assert.assertEquals(attributes.size(), 3);
+        Assert.assertEquals(attributes.get(ROLE_ATTRIBUTE), Arrays.asList("admin", "internal/everyone"));
+        Assert.assertEquals(attributes.get(EMAIL_ATTRIBUTE), Collections.singletonList("admin@wso2.com"));
+        Assert.assertEquals(attributes.get("empty"), Collections.emptyList());
+        Assert.assertNull(attributes.get("absent"));
+        Assert.assertFalse(attributes.containsKey("absent"));
+    }
+
+    @Test(description = "Tests whether the subject attributes equal the map they were copied from")
+    public void testCopying() {
+        Map<String, List<String>> map = new HashMap<>();
+        map.put(ROLE_ATTRIBUTE, Arrays.asList("admin", "internal/everyone"));
+        map.put(EMAIL_ATTRIBUTE, Collections.singletonList("admin@wso2.com"));
+
+        SubjectAttributes attributes = SubjectAttributes.copyOf(map);
+        Assert.assertEquals(attributes, map);
+        Assert.assertEquals(map, attributes);
+        Assert.assertEquals(attributes.hashCode(), map.hashCode());
+        Assert.assertSame(SubjectAttributes.copyOf(attributes), attributes);
+        Assert.assertTrue(SubjectAttributes.copyOf(null).isEmpty());
+    }
+
+    @Test(description = "Tests whether the attribute values cannot be modified",
+            expectedExceptions = UnsupportedOperationException.class)
+    public void testImmutableValues() {
+        new SubjectAttributes.Builder()
+                .add(ROLE_ATTRIBUTE, "admin")
+                .build()
+                .get(ROLE_ATTRIBUTE)
+                .add("everyone");
+    }
+
+    @Test(description = "Tests whether the attribute names are interned once serialized with the session")
+    public void testSerialization() throws IOException, ClassNotFoundException {
+        SubjectAttributes attributes = new SubjectAttributes.Builder()
+                .add(new String(ROLE_ATTRIBUTE.toCharArray()), "admin")
+                .build();
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(attributes);
+        }
+        SubjectAttributes deserialized;
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            deserialized = (SubjectAttributes) in.readObject();
+        }
+
+        Assert.assertEquals(deserialized, attributes);
+        Assert.assertSame(deserialized.keySet().iterator().next(), ROLE_ATTRIBUTE);
+    }
+}
@@ -0,0 +1,128 @@
+/*
+ *  Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.wso2.appserver.webapp.security.saml;
+
+import org.opensaml.saml.saml2.core.Assertion;
+import org.opensaml.saml.saml2.core.EncryptedAssertion;
+import org.opensaml.saml.saml2.core.impl.AssertionBuilder;
+import org.opensaml.saml.saml2.encryption.Encrypter;
+import org.opensaml.xmlsec.encryption.support.DataEncryptionParameters;
+import org.opensaml.xmlsec.encryption.support.DecryptionException;
+import org.opensaml.xmlsec.encryption.support.EncryptionConstants;
+import org.opensaml.xmlsec.encryption.support.EncryptionException;
+import org.opensaml.xmlsec.encryption.support.KeyEncryptionParameters;
+import org.testng.Assert;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+import org.wso2.appserver.webapp.security.saml.signature.SSOX509Credential;
+import org.wso2.appserver.webapp.security.saml.signature.SSOX509CredentialTest;
+import org.wso2.appserver.webapp.security.utils.SSOUtils;
+import org.wso2.appserver.webapp.security.utils.exception.SSOException;
+
+import java.util.Base64;
+import java.util.Optional;
+
+/**
+ * This class defines unit tests for the decryption of SAML 2.0 Encrypted Assertions, with the service provider
+ * credential of the test key store.
+ *
+ * @since 6.0.0
+ */
+public class SAML2AssertionDecrypterTest {
+    private static final String ASSERTION_ID = "_3c4d5e6f708192a3b4c5d6e7f8091a2b";
+
+    private SSOX509Credential credential;
+
+    @BeforeClass
+    public void init() throws SSOException {
+        SSOUtils.doBootstrap();
+        credential = SSOX509CredentialTest.createCredential("wso2carbon");
+    }
+
+    @Test(description = "Tests decrypting Assertions encrypted with RSA-OAEP key transport and AES-GCM or AES-CBC " +
+            "data encryption")
+    public void testDecryptingAssertions() throws SSOException {
+        SAML2AssertionDecrypters decrypters = new SAML2AssertionDecrypters();
+        SAML2AssertionDecrypter decrypter = decrypters.getDecrypter(credential.getServiceProviderCredential());
+
+        for (String algorithm : new String[]{EncryptionConstants.ALGO_ID_BLOCKCIPHER_AES128_GCM,
+                EncryptionConstants.ALGO_ID_BLOCKCIPHER_AES256_GCM, EncryptionConstants.ALGO_ID_BLOCKCIPHER_AES128,
+                EncryptionConstants.ALGO_ID_BLOCKCIPHER_AES256}) {
+            Assertion assertion = decrypter.decrypt(encrypt(algorithm));
+            Assert.assertEquals(assertion.getID(), ASSERTION_ID);
+        }
+        Assert.assertEquals(decrypters.getDecryptionCount(), 4);
+        Assert.assertSame(decrypters.getDecrypter(credential.getServiceProviderCredential()), decrypter);
+    }
+
+    @Test(description = "Tests whether the decryption metrics and decrypters are held per instance and credential")
+    public void testDecryptersPerCredential() throws SSOException {
+        SAML2AssertionDecrypters decrypters = new SAML2AssertionDecrypters();
+        SSOX509Credential otherCredential = SSOX509CredentialTest.createCredential("wso2carbon");
+
+        Assert.assertEquals(decrypters.getDecryptionCount(), 0);
+        Assert.assertNotSame(decrypters.getDecrypter(otherCredential.getServiceProviderCredential()),
+                decrypters.getDecrypter(credential.getServiceProviderCredential()));
+        Assert.assertNotSame(new SAML2AssertionDecrypters().getDecrypter(credential.getServiceProviderCredential()),
+                decrypters.getDecrypter(credential.getServiceProviderCredential()));
+    }
+
+    @Test(description = "Tests whether the cause of a decryption failure is preserved")
+    public void testDecryptionFailure() throws SSOException {
+        SAML2AssertionDecrypters decrypters = new SAML2AssertionDecrypters();
+        EncryptedAssertion encryptedAssertion = encrypt(EncryptionConstants.ALGO_ID_BLOCKCIPHER_AES128_GCM);
+        //  corrupts the encrypted Assertion, so that its authentication tag no longer matches
+        encryptedAssertion.getEncryptedData().getCipherData().getCipherValue()
+                .setValue(Base64.getEncoder().encodeToString(new byte[64]));
+
+        try {
+            decrypters.getDecrypter(credential.getServiceProviderCredential()).decrypt(encryptedAssertion);
+            Assert.fail("A corrupted Assertion has been decrypted");
+        } catch (SSOException e) {
+            Assert.assertTrue(e.getCause() instanceof DecryptionException);
+        }
+        Assert.assertEquals(decrypters.getDecryptionCount(), 1);
+    }
+
+    /**
+     * Encrypts an Assertion for the service provider, with RSA-OAEP key transport and the specified data encryption
+     * algorithm, and returns the Encrypted Assertion as received from the identity provider.
+     */
+    private EncryptedAssertion encrypt(String dataEncryptionAlgorithm) throws SSOException {
+        Assertion assertion = new AssertionBuilder().buildObject();
+        assertion.setID(ASSERTION_ID);
+
+        DataEncryptionParameters dataEncryptionParameters = new DataEncryptionParameters();
+        dataEncryptionParameters.setAlgorithm(dataEncryptionAlgorithm);
+        KeyEncryptionParameters keyEncryptionParameters = new KeyEncryptionParameters();
+        keyEncryptionParameters.setEncryptionCredential(credential.getVerificationCredential());
+        keyEncryptionParameters.setAlgorithm(EncryptionConstants.ALGO_ID_KEYTRANSPORT_RSAOAEP);
+        Encrypter encrypter = new Encrypter(dataEncryptionParameters, keyEncryptionParameters);
+        encrypter.setKeyPlacement(Encrypter.KeyPlacement.INLINE);
+
+        EncryptedAssertion encryptedAssertion;
+        try {
+            encryptedAssertion = encrypter.encrypt(assertion);
+        } catch (EncryptionException e) {
+            throw new SSOException("Error when encrypting the SAML 2.0 Assertion", e);
+        }
+        Optional<EncryptedAssertion> received = SSOUtils.unmarshall(SSOUtils.marshall(encryptedAssertion))
+                .filter(EncryptedAssertion.class::isInstance)
+                .map(EncryptedAssertion.class::cast);
+        Assert.assertTrue(received.isPresent());
+        return received.get();
+    }
+}
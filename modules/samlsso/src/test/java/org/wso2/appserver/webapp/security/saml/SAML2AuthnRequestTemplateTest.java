@@ -0,0 +1,78 @@
+/*
+ *  Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.wso2.appserver.webapp.security.saml;
+
+import org.joda.time.DateTime;
+import org.opensaml.saml.common.SAMLVersion;
+import org.opensaml.saml.common.xml.SAMLConstants;
+import org.opensaml.saml.saml2.core.AuthnRequest;
+import org.opensaml.saml.saml2.core.Issuer;
+import org.opensaml.saml.saml2.core.impl.AuthnRequestBuilder;
+import org.opensaml.saml.saml2.core.impl.IssuerBuilder;
+import org.testng.Assert;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+import org.wso2.appserver.webapp.security.utils.SSOUtils;
+import org.wso2.appserver.webapp.security.utils.exception.SSOException;
+
+import java.util.Optional;
+
+/**
+ * This class defines unit tests for the precompiled SAML 2.0 Authentication Requests.
+ *
+ * @since 6.0.0
+ */
+public class SAML2AuthnRequestTemplateTest {
+    @BeforeClass
+    public void init() throws SSOException {
+        SSOUtils.doBootstrap();
+    }
+
+    @Test(description = "Tests whether a rendered request is byte-identical to the request serialized from its " +
+            "object graph, for every combination of the ForceAuthn and IsPassive flags")
+    public void testRenderingRequests() throws SSOException {
+        Optional<SAML2AuthnRequestTemplate> template = SAML2AuthnRequestTemplate
+                .compile(SAML2AuthnRequestTemplateTest::buildAuthnRequest);
+        Assert.assertTrue(template.isPresent());
+
+        for (boolean forceAuthn : new boolean[]{false, true}) {
+            for (boolean passive : new boolean[]{false, true}) {
+                String id = SSOUtils.createID();
+                DateTime issueInstant = new DateTime();
+                Assert.assertEquals(template.get().render(id, issueInstant, forceAuthn, passive),
+                        SSOUtils.serializeRequestMessage(buildAuthnRequest(id, issueInstant, forceAuthn, passive)));
+            }
+        }
+    }
+
+    private static AuthnRequest buildAuthnRequest(String id, DateTime issueInstant, boolean forceAuthn,
+                                                  boolean passive) {
+        Issuer issuer = new IssuerBuilder().buildObject();
+        issuer.setValue("foo & <bar>");
+
+        AuthnRequest authnRequest = new AuthnRequestBuilder().buildObject();
+        authnRequest.setID(id);
+        authnRequest.setVersion(SAMLVersion.VERSION_20);
+        authnRequest.setIssueInstant(issueInstant);
+        authnRequest.setForceAuthn(forceAuthn);
+        authnRequest.setIsPassive(passive);
+        authnRequest.setProtocolBinding(SAMLConstants.SAML2_POST_BINDING_URI);
+        authnRequest.setAssertionConsumerServiceURL("http://localhost:8080/foo/acs?caf\u00e9=1&bar=2");
+        authnRequest.setDestination("https://localhost:9443/samlsso");
+        authnRequest.setIssuer(issuer);
+        return authnRequest;
+    }
+}
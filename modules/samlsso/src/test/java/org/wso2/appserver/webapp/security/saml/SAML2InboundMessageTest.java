@@ -0,0 +1,129 @@
+/*
+ *  Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.wso2.appserver.webapp.security.saml;
+
+import net.shibboleth.utilities.java.support.codec.Base64Support;
+import org.opensaml.core.xml.XMLObject;
+import org.opensaml.saml.saml2.core.LogoutRequest;
+import org.opensaml.saml.saml2.core.LogoutResponse;
+import org.opensaml.saml.saml2.core.Response;
+import org.opensaml.saml.saml2.core.impl.LogoutRequestBuilder;
+import org.opensaml.saml.saml2.core.impl.LogoutResponseBuilder;
+import org.opensaml.saml.saml2.core.impl.ResponseBuilder;
+import org.opensaml.saml.saml2.core.impl.SessionIndexBuilder;
+import org.testng.Assert;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+import org.wso2.appserver.webapp.security.agent.SSOMessageGuard;
+import org.wso2.appserver.webapp.security.utils.SSOUtils;
+import org.wso2.appserver.webapp.security.utils.exception.SSOException;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Optional;
+
+/**
+ * This class defines unit tests for the single-pass decoding, parsing and classification of inbound SAML 2.0
+ * messages.
+ *
+ * @since 6.0.0
+ */
+public class SAML2InboundMessageTest {
+    private static final String MESSAGE_ID = "_0a1b2c3d4e5f60718293a4b5c6d7e8f9";
+
+    @BeforeClass
+    public void init() throws SSOException {
+        SSOUtils.doBootstrap();
+    }
+
+    @Test(description = "Tests decoding and classifying a SAML 2.0 Response")
+    public void testDecodingAuthenticationResponse() throws SSOException {
+        Response response = new ResponseBuilder().buildObject();
+        response.setID(MESSAGE_ID);
+
+        SAML2InboundMessage message = decode(response);
+        Assert.assertEquals(message.getMessageType(), SAML2InboundMessage.MessageType.AUTHENTICATION_RESPONSE);
+        Assert.assertEquals(((Response) message.getMessage()).getID(), MESSAGE_ID);
+        Assert.assertEquals(message.getMessageString(),
+                new String(message.getRawMessage(), StandardCharsets.UTF_8));
+    }
+
+    @Test(description = "Tests decoding and classifying a SAML 2.0 Logout Response")
+    public void testDecodingLogoutResponse() throws SSOException {
+        LogoutResponse logoutResponse = new LogoutResponseBuilder().buildObject();
+        logoutResponse.setID(MESSAGE_ID);
+
+        SAML2InboundMessage message = decode(logoutResponse);
+        Assert.assertEquals(message.getMessageType(), SAML2InboundMessage.MessageType.LOGOUT_RESPONSE);
+        Assert.assertEquals(((LogoutResponse) message.getMessage()).getID(), MESSAGE_ID);
+    }
+
+    @Test(description = "Tests decoding and classifying a SAML 2.0 Logout Request")
+    public void testDecodingLogoutRequest() throws SSOException {
+        LogoutRequest logoutRequest = new LogoutRequestBuilder().buildObject();
+        logoutRequest.setID(MESSAGE_ID);
+
+        SAML2InboundMessage message = decode(logoutRequest);
+        Assert.assertEquals(message.getMessageType(), SAML2InboundMessage.MessageType.LOGOUT_REQUEST);
+    }
+
+    @Test(description = "Tests decoding a message which is not well-formed XML", expectedExceptions = SSOException.class)
+    public void testDecodingMalformedMessage() throws SSOException {
+        SAML2InboundMessage.decode(Base64Support.encode("<samlp:Response".getBytes(StandardCharsets.UTF_8),
+                Base64Support.UNCHUNKED));
+    }
+
+    @Test(description = "Tests whether an oversized message is rejected before it is decoded")
+    public void testRejectingOversizedMessage() throws SSOException {
+        SSOMessageGuard guard = new SSOMessageGuard(64, 0, 0, 0);
+        Response response = new ResponseBuilder().buildObject();
+        response.setID(MESSAGE_ID);
+
+        try {
+            SAML2InboundMessage.decode(encode(response), guard);
+            Assert.fail();
+        } catch (SSOException e) {
+            Assert.assertEquals(guard.getRejectedMessageCount(SSOMessageGuard.RejectReason.MESSAGE_SIZE), 1);
+        }
+    }
+
+    @Test(description = "Tests whether a message exceeding the maximum element depth is rejected while parsed")
+    public void testRejectingDeeplyNestedMessage() throws SSOException {
+        SSOMessageGuard guard = new SSOMessageGuard(0, 0, 1, 0);
+        LogoutRequest logoutRequest = new LogoutRequestBuilder().buildObject();
+        logoutRequest.setID(MESSAGE_ID);
+        logoutRequest.getSessionIndexes().add(new SessionIndexBuilder().buildObject());
+
+        try {
+            SAML2InboundMessage.decode(encode(logoutRequest), guard);
+            Assert.fail();
+        } catch (SSOException e) {
+            Assert.assertEquals(guard.getRejectedMessageCount(SSOMessageGuard.RejectReason.ELEMENT_DEPTH), 1);
+        }
+    }
+
+    private static String encode(XMLObject xmlObject) throws SSOException {
+        return Base64Support.encode(SSOUtils.marshall(xmlObject).getBytes(StandardCharsets.UTF_8),
+                Base64Support.UNCHUNKED);
+    }
+
+    static SAML2InboundMessage decode(XMLObject xmlObject) throws SSOException {
+        String encodedMessage = Base64Support.encode(SSOUtils.marshall(xmlObject).getBytes(StandardCharsets.UTF_8),
+                Base64Support.UNCHUNKED);
+        Optional<SAML2InboundMessage> message = SAML2InboundMessage.decode(encodedMessage);
+        Assert.assertTrue(message.isPresent());
+        return message.get();
+    }
+}
@@ -37,6 +37,7 @@ import org.wso2.appserver.configuration.listeners.ContextConfigurationLoader;
 import org.wso2.appserver.configuration.listeners.ServerConfigurationLoader;
 import org.wso2.appserver.webapp.security.Constants;
 import org.wso2.appserver.webapp.security.TestConstants;
+import org.wso2.appserver.webapp.security.agent.SSOAgentPolicy;
 import org.wso2.appserver.webapp.security.utils.exception.SSOException;
 
 import java.nio.file.Paths;
@@ -86,7 +87,9 @@ public class SAML2SSOManagerTest {
         Optional<AppServerWebAppConfiguration> configuration =
                 ContextConfigurationLoader.getContextConfiguration(fooContext);
         if (configuration.isPresent()) {
-            manager = new SAML2SSOManager(configuration.get().getSingleSignOnConfiguration());
+            manager = new SAML2SSOManager(SSOAgentPolicy.compile(fooContext,
+                    configuration.get().getSingleSignOnConfiguration(),
+                    ServerConfigurationLoader.getServerConfiguration().getSingleSignOnConfiguration()));
 
             Request request = mock(Request.class);
             when(request.getContextPath()).thenReturn("/" + TestConstants.FOO_CONTEXT);
@@ -94,14 +97,17 @@ public class SAML2SSOManagerTest {
             request.setAttribute(Constants.IS_FORCE_AUTH_ENABLED, "false");
             request.setAttribute(Constants.IS_PASSIVE_AUTH_ENABLED, "true");
 
-            String payload = manager.handleAuthenticationRequestForPOSTBinding(request);
+            String payload = manager.handleAuthenticationRequestForPOSTBinding(request, TestConstants.RELAY_STATE_ID);
 
             boolean checkRedirectURL = payload.contains("<p>You are now redirected back to " + TestConstants
                     .DEFAULT_IDP_URL);
             boolean checkActionURL = payload.contains("<form method='post' action='" + TestConstants
                     .DEFAULT_IDP_URL + "'");
 
-            Assert.assertTrue(checkRedirectURL && checkActionURL);
+            boolean checkRelayState = payload.contains("<input type='hidden' name='" +
+                    Constants.HTTP_POST_PARAM_RELAY_STATE + "' value='" + TestConstants.RELAY_STATE_ID + "'>");
+
+            Assert.assertTrue(checkRedirectURL && checkActionURL && checkRelayState);
         } else {
             Assert.fail();
         }
@@ -112,7 +118,9 @@ public class SAML2SSOManagerTest {
         Optional<AppServerWebAppConfiguration> configuration =
                 ContextConfigurationLoader.getContextConfiguration(barContext);
         if (configuration.isPresent()) {
-            manager = new SAML2SSOManager(configuration.get().getSingleSignOnConfiguration());
+            manager = new SAML2SSOManager(SSOAgentPolicy.compile(barContext,
+                    configuration.get().getSingleSignOnConfiguration(),
+                    ServerConfigurationLoader.getServerConfiguration().getSingleSignOnConfiguration()));
 
             Request request = mock(Request.class);
             when(request.getContextPath()).thenReturn("/" + TestConstants.BAR_CONTEXT);
@@ -120,8 +128,9 @@ public class SAML2SSOManagerTest {
             request.setAttribute(Constants.IS_FORCE_AUTH_ENABLED, "false");
             request.setAttribute(Constants.IS_PASSIVE_AUTH_ENABLED, "true");
 
-            String url = manager.handleAuthenticationRequestForRedirectBinding(request);
-            Assert.assertTrue(url.startsWith(TestConstants.DEFAULT_IDP_URL));
+            String url = manager.handleAuthenticationRequestForRedirectBinding(request, TestConstants.RELAY_STATE_ID);
+            Assert.assertTrue(url.startsWith(TestConstants.DEFAULT_IDP_URL) &&
+                    url.contains("&" + Constants.HTTP_POST_PARAM_RELAY_STATE + "=" + TestConstants.RELAY_STATE_ID));
         } else {
             Assert.fail();
         }
@@ -147,8 +156,10 @@ public class SAML2SSOManagerTest {
         host.setParent(engine);
 
         fooContext.setParent(host);
+        fooContext.setPath("/" + TestConstants.FOO_CONTEXT);
         fooContext.setDocBase(TestConstants.FOO_CONTEXT);
         barContext.setParent(host);
+        barContext.setPath("/" + TestConstants.BAR_CONTEXT);
         barContext.setDocBase(TestConstants.BAR_CONTEXT);
     }
 }
@@ -0,0 +1,228 @@
+/*
+ *  Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.wso2.appserver.webapp.security.saml;
+
+import org.apache.catalina.Context;
+import org.apache.catalina.Engine;
+import org.apache.catalina.Host;
+import org.apache.catalina.LifecycleException;
+import org.apache.catalina.connector.Request;
+import org.apache.catalina.connector.Response;
+import org.apache.catalina.core.StandardContext;
+import org.apache.catalina.core.StandardEngine;
+import org.apache.catalina.core.StandardHost;
+import org.apache.catalina.session.StandardManager;
+import org.apache.catalina.session.StandardSession;
+import org.mockito.ArgumentCaptor;
+import org.opensaml.saml.saml2.core.Issuer;
+import org.opensaml.saml.saml2.core.LogoutRequest;
+import org.opensaml.saml.saml2.core.LogoutResponse;
+import org.opensaml.saml.saml2.core.impl.IssuerBuilder;
+import org.opensaml.saml.saml2.core.impl.LogoutRequestBuilder;
+import org.opensaml.saml.saml2.core.impl.LogoutResponseBuilder;
+import org.testng.Assert;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+import org.wso2.appserver.webapp.security.Constants;
+import org.wso2.appserver.webapp.security.TestConstants;
+import org.wso2.appserver.webapp.security.agent.SSOAgentPolicy;
+import org.wso2.appserver.webapp.security.agent.SSOAgentSessionManager;
+import org.wso2.appserver.webapp.security.agent.SSOLoginOriginTest;
+import org.wso2.appserver.webapp.security.bean.LoggedInSession;
+import org.wso2.appserver.webapp.security.bean.SAML2SSO;
+import org.wso2.appserver.webapp.security.utils.SSOUtils;
+import org.wso2.appserver.webapp.security.utils.exception.SSOException;
+
+import java.util.Collections;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.servlet.http.Cookie;
+import javax.servlet.http.HttpSession;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * This class defines unit tests for the logins shared across the contexts of a host, through the host level
+ * single-sign-on entries of the SAML 2.0 single-sign-on valve.
+ *
+ * @since 6.0.0
+ */
+public class SAML2SSOValveTest {
+    private static final String IDP_ENTITY_ID = "localhost";
+
+    private final AtomicInteger sessionIds = new AtomicInteger();
+    private SAML2SSOValve valve;
+    private Context fooContext;
+    private Context barContext;
+
+    @BeforeClass
+    public void init() throws LifecycleException, SSOException {
+        SSOUtils.doBootstrap();
+        Engine engine = new StandardEngine();
+        engine.setName(TestConstants.DEFAULT_TOMCAT_HOST);
+        Host host = new StandardHost();
+        host.setName(TestConstants.DEFAULT_TOMCAT_HOST);
+        host.setParent(engine);
+        fooContext = createContext(host, TestConstants.FOO_CONTEXT);
+        barContext = createContext(host, TestConstants.BAR_CONTEXT);
+
+        valve = new SAML2SSOValve();
+        valve.setContainer(host);
+        valve.init();
+    }
+
+    @Test(description = "Tests whether a login of a context is shared with another context of the same identity " +
+            "provider, including its identity provider session index for single-logout")
+    public void testCrossContextLogin() {
+        String sessionIndex = "cross-context-index";
+        SAML2SSOManager fooManager = createManager(IDP_ENTITY_ID, true);
+        SAML2SSOManager barManager = createManager(IDP_ENTITY_ID, true);
+
+        StandardSession fooSession = createSession(fooContext);
+        Cookie cookie = login(fooSession, fooManager, sessionIndex);
+
+        StandardSession barSession = createSession(barContext);
+        Request request = createRequest(barContext, barSession, cookie);
+        Assert.assertTrue(valve.authenticateFromSingleSignOnEntry(request, mock(Response.class), barManager));
+        Assert.assertTrue(LoggedInSession.getLoggedInSession(barSession.getSession()).isPresent());
+        Assert.assertEquals(barSession.getPrincipal().getName(), TestConstants.DEFAULT_SP_ENTITY_ID);
+
+        //  single-logout of the identity provider session invalidates the sessions of both contexts
+        Set<HttpSession> sessions = SSOAgentSessionManager.getAllInvalidatableSessions(sessionIndex);
+        Assert.assertTrue(sessions.contains(fooSession.getSession()));
+        Assert.assertTrue(sessions.contains(barSession.getSession()));
+    }
+
+    @Test(description = "Tests whether a login is not shared with a context of another identity provider or " +
+            "with stricter requirements")
+    public void testCrossContextLoginOfAnotherOrigin() {
+        String sessionIndex = "another-origin-index";
+        StandardSession fooSession = createSession(fooContext);
+        Cookie cookie = login(fooSession, createManager(IDP_ENTITY_ID, false), sessionIndex);
+
+        StandardSession anotherIdPSession = createSession(barContext);
+        Assert.assertFalse(valve.authenticateFromSingleSignOnEntry(createRequest(barContext, anotherIdPSession,
+                cookie), mock(Response.class), createManager("another-idp", false)));
+        StandardSession strictSession = createSession(barContext);
+        Assert.assertFalse(valve.authenticateFromSingleSignOnEntry(createRequest(barContext, strictSession, cookie),
+                mock(Response.class), createManager(IDP_ENTITY_ID, true)));
+
+        Assert.assertFalse(LoggedInSession.getLoggedInSession(anotherIdPSession.getSession()).isPresent());
+        Assert.assertFalse(LoggedInSession.getLoggedInSession(strictSession.getSession()).isPresent());
+        Assert.assertEquals(SSOAgentSessionManager.getAllInvalidatableSessions(sessionIndex),
+                Collections.singleton(fooSession.getSession()));
+    }
+
+    @Test(description = "Tests whether the single-sign-on cookie of an entry which no longer exists is expired")
+    public void testCookieOfMissingEntry() {
+        Response response = mock(Response.class);
+        Cookie cookie = new Cookie(org.apache.catalina.authenticator.Constants.SINGLE_SIGN_ON_COOKIE, "missing");
+        Request request = createRequest(barContext, createSession(barContext), cookie);
+
+        Assert.assertFalse(valve.authenticateFromSingleSignOnEntry(request, response,
+                createManager(IDP_ENTITY_ID, false)));
+        ArgumentCaptor<Cookie> expired = ArgumentCaptor.forClass(Cookie.class);
+        verify(response).addCookie(expired.capture());
+        Assert.assertEquals(expired.getValue().getName(),
+                org.apache.catalina.authenticator.Constants.SINGLE_SIGN_ON_COOKIE);
+        Assert.assertEquals(expired.getValue().getMaxAge(), 0);
+        verify(request, never()).getSessionInternal(true);
+    }
+
+    @Test(description = "Tests whether only the Logout Requests of the identity provider of the context are " +
+            "classified as exempt from the rate limit of their client address")
+    public void testIdentityProviderLogoutRequest() throws SSOException {
+        SAML2SSOManager manager = createManager(IDP_ENTITY_ID, false);
+        LogoutRequest logoutRequest = new LogoutRequestBuilder().buildObject();
+        logoutRequest.setIssuer(createIssuer(IDP_ENTITY_ID));
+        LogoutRequest foreignLogoutRequest = new LogoutRequestBuilder().buildObject();
+        foreignLogoutRequest.setIssuer(createIssuer("another-idp"));
+        LogoutResponse logoutResponse = new LogoutResponseBuilder().buildObject();
+        logoutResponse.setIssuer(createIssuer(IDP_ENTITY_ID));
+
+        Assert.assertTrue(SAML2SSOValve.isIdentityProviderLogoutRequest(
+                Optional.of(SAML2InboundMessageTest.decode(logoutRequest)), manager));
+        Assert.assertFalse(SAML2SSOValve.isIdentityProviderLogoutRequest(
+                Optional.of(SAML2InboundMessageTest.decode(foreignLogoutRequest)), manager));
+        Assert.assertFalse(SAML2SSOValve.isIdentityProviderLogoutRequest(
+                Optional.of(SAML2InboundMessageTest.decode(new LogoutRequestBuilder().buildObject())), manager));
+        Assert.assertFalse(SAML2SSOValve.isIdentityProviderLogoutRequest(
+                Optional.of(SAML2InboundMessageTest.decode(logoutResponse)), manager));
+        Assert.assertFalse(SAML2SSOValve.isIdentityProviderLogoutRequest(Optional.empty(), manager));
+    }
+
+    /**
+     * Logs in the specified session, registering a single-sign-on entry, and returns the single-sign-on cookie.
+     */
+    private Cookie login(StandardSession session, SAML2SSOManager manager, String sessionIndex) {
+        LoggedInSession loggedInSession = new LoggedInSession(new SAML2SSO(TestConstants.DEFAULT_SP_ENTITY_ID,
+                sessionIndex, Collections.emptyMap(), null, null));
+        session.getSession().setAttribute(Constants.LOGGED_IN_SESSION, loggedInSession);
+        SSOAgentSessionManager.addAuthenticatedSession(sessionIndex, session);
+
+        Request request = createRequest(fooContext, session, null);
+        Response response = mock(Response.class);
+        valve.registerSingleSignOnEntry(request, response, loggedInSession, manager);
+
+        ArgumentCaptor<Cookie> cookie = ArgumentCaptor.forClass(Cookie.class);
+        verify(response).addCookie(cookie.capture());
+        return cookie.getValue();
+    }
+
+    private static SAML2SSOManager createManager(String idpEntityId, boolean assertionSigningEnabled) {
+        SSOAgentPolicy policy = SSOLoginOriginTest.compilePolicy(idpEntityId, assertionSigningEnabled);
+        SAML2SSOManager manager = mock(SAML2SSOManager.class);
+        when(manager.getPolicy()).thenReturn(policy);
+        return manager;
+    }
+
+    private static Issuer createIssuer(String value) {
+        Issuer issuer = new IssuerBuilder().buildObject();
+        issuer.setValue(value);
+        return issuer;
+    }
+
+    private static Request createRequest(Context context, StandardSession session, Cookie cookie) {
+        Request request = mock(Request.class);
+        when(request.getContext()).thenReturn(context);
+        when(request.getSessionInternal(false)).thenReturn(session);
+        when(request.getSessionInternal(true)).thenReturn(session);
+        when(request.getCookies()).thenReturn((cookie == null) ? null : new Cookie[]{cookie});
+        return request;
+    }
+
+    private StandardSession createSession(Context context) {
+        StandardSession session = new StandardSession(context.getManager());
+        session.setValid(true);
+        session.setId("valve-session-" + sessionIds.incrementAndGet(), false);
+        return session;
+    }
+
+    private static Context createContext(Host host, String name) {
+        Context context = new StandardContext();
+        context.setName("/" + name);
+        context.setPath("/" + name);
+        context.setParent(host);
+        StandardManager manager = new StandardManager();
+        manager.setContext(context);
+        context.setManager(manager);
+        return context;
+    }
+}
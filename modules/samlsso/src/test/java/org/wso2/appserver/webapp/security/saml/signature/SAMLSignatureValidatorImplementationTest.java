@@ -0,0 +1,128 @@
+/*
+ *  Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.wso2.appserver.webapp.security.saml.signature;
+
+import org.opensaml.core.xml.config.XMLObjectProviderRegistrySupport;
+import org.opensaml.core.xml.io.MarshallingException;
+import org.opensaml.saml.saml2.core.Assertion;
+import org.opensaml.saml.saml2.core.Response;
+import org.opensaml.saml.saml2.core.impl.AssertionBuilder;
+import org.opensaml.saml.saml2.core.impl.ResponseBuilder;
+import org.opensaml.xmlsec.signature.Signature;
+import org.opensaml.xmlsec.signature.impl.SignatureBuilder;
+import org.opensaml.xmlsec.signature.support.SignatureConstants;
+import org.opensaml.xmlsec.signature.support.SignatureException;
+import org.opensaml.xmlsec.signature.support.Signer;
+import org.testng.Assert;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+import org.wso2.appserver.webapp.security.utils.SSOUtils;
+import org.wso2.appserver.webapp.security.utils.exception.SSOException;
+
+import java.util.Optional;
+
+/**
+ * This class defines unit tests for the validation of the XML Digital Signatures of SAML 2.0 Responses.
+ *
+ * @since 6.0.0
+ */
+public class SAMLSignatureValidatorImplementationTest {
+    private static final String RESPONSE_ID = "_9f8e7d6c5b4a39281706f5e4d3c2b1a0";
+    private static final String ASSERTION_ID = "_1a2b3c4d5e6f708192a3b4c5d6e7f809";
+
+    private final SAMLSignatureValidatorImplementation validator = new SAMLSignatureValidatorImplementation();
+    private SSOX509Credential credential;
+
+    @BeforeClass
+    public void init() throws SSOException {
+        SSOUtils.doBootstrap();
+        credential = SSOX509CredentialTest.createCredential(SSOX509CredentialTest.CERTIFICATE_ALIAS);
+    }
+
+    @Test(description = "Tests validating a signed SAML 2.0 Response, received from the identity provider")
+    public void testValidatingSignedResponse() throws SSOException {
+        Response response = receive(sign(createResponse()));
+
+        validator.validateSignature(response, response.getAssertions().get(0), true, false, credential);
+    }
+
+    @Test(description = "Tests whether a SAML 2.0 Response without the required signature is rejected",
+            expectedExceptions = SSOException.class)
+    public void testValidatingUnsignedResponse() throws SSOException {
+        Response response = receive(createResponse());
+
+        validator.validateSignature(response, response.getAssertions().get(0), true, false, credential);
+    }
+
+    @Test(description = "Tests whether a signature which does not reference its parent element, as required by the " +
+            "SAML signature profile, is rejected")
+    public void testValidatingProfileViolatingSignature() throws SSOException {
+        Response response = receive(sign(createResponse()));
+        //  the signature now references an element other than the Response which envelopes it
+        response.setID("_0a1b2c3d4e5f60718293a4b5c6d7e8f9");
+
+        try {
+            validator.validateSignature(response, response.getAssertions().get(0), true, false, credential);
+            Assert.fail("A signature violating the SAML signature profile has been accepted");
+        } catch (SSOException e) {
+            Assert.assertTrue(e.getCause() instanceof SignatureException);
+        }
+    }
+
+    @Test(description = "Tests whether a missing identity provider certificate is reported as an SSOException",
+            expectedExceptions = SSOException.class)
+    public void testValidatingWithoutIdentityProviderCertificate() throws SSOException {
+        Response response = receive(sign(createResponse()));
+
+        validator.validateSignature(response, response.getAssertions().get(0), true, false,
+                SSOX509CredentialTest.createCredential("missing-certificate-alias"));
+    }
+
+    private static Response createResponse() {
+        Response response = new ResponseBuilder().buildObject();
+        response.setID(RESPONSE_ID);
+        Assertion assertion = new AssertionBuilder().buildObject();
+        assertion.setID(ASSERTION_ID);
+        response.getAssertions().add(assertion);
+        return response;
+    }
+
+    private Response sign(Response response) throws SSOException {
+        Signature signature = new SignatureBuilder().buildObject();
+        signature.setSigningCredential(credential.getServiceProviderCredential());
+        signature.setSignatureAlgorithm(SignatureConstants.ALGO_ID_SIGNATURE_RSA_SHA256);
+        signature.setCanonicalizationAlgorithm(SignatureConstants.ALGO_ID_C14N_EXCL_OMIT_COMMENTS);
+        response.setSignature(signature);
+        try {
+            XMLObjectProviderRegistrySupport.getMarshallerFactory().getMarshaller(response).marshall(response);
+            Signer.signObject(signature);
+        } catch (MarshallingException | SignatureException e) {
+            throw new SSOException("Error when signing the SAML 2.0 Response", e);
+        }
+        return response;
+    }
+
+    /**
+     * Serializes the specified Response and parses it again, as received from the identity provider.
+     */
+    private static Response receive(Response response) throws SSOException {
+        Optional<Response> received = SSOUtils.unmarshall(SSOUtils.marshall(response))
+                .filter(Response.class::isInstance)
+                .map(Response.class::cast);
+        Assert.assertTrue(received.isPresent());
+        return received.get();
+    }
+}
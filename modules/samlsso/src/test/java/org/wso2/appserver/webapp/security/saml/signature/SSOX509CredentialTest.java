@@ -0,0 +1,74 @@
+/*
+ *  Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.wso2.appserver.webapp.security.saml.signature;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+import org.wso2.appserver.webapp.security.TestConstants;
+import org.wso2.appserver.webapp.security.utils.exception.SSOException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+
+/**
+ * This class defines unit tests for the entity credential read from the key store.
+ *
+ * @since 6.0.0
+ */
+public class SSOX509CredentialTest {
+    static final String CERTIFICATE_ALIAS = "wso2carbon";
+
+    @Test(description = "Tests whether the identity provider verification credential is built once and reused")
+    public void testVerificationCredentialReuse() throws SSOException {
+        SSOX509Credential credential = createCredential(CERTIFICATE_ALIAS);
+
+        X509CredentialImplementation verificationCredential = credential.getVerificationCredential();
+        Assert.assertSame(credential.getVerificationCredential(), verificationCredential);
+        Assert.assertEquals(verificationCredential.getEntityCertificate(), credential.getEntityCertificate());
+        Assert.assertNull(verificationCredential.getPrivateKey());
+        Assert.assertSame(credential.getServiceProviderCredential(), credential.getServiceProviderCredential());
+        Assert.assertNotNull(credential.getServiceProviderCredential().getPrivateKey());
+    }
+
+    @Test(description = "Tests whether a missing identity provider certificate is reported as an SSOException",
+            expectedExceptions = SSOException.class)
+    public void testMissingIdentityProviderCertificate() throws SSOException {
+        createCredential("missing-certificate-alias").getVerificationCredential();
+    }
+
+    /**
+     * Creates an entity credential from the test key store, with the specified identity provider certificate
+     * alias and the service provider private key of the test key store.
+     *
+     * @param idpCertificateAlias the alias of the identity provider certificate
+     * @return the entity credential
+     * @throws SSOException if the credentials cannot be read
+     */
+    public static SSOX509Credential createCredential(String idpCertificateAlias) throws SSOException {
+        try (InputStream stream = Files.newInputStream(Paths.get(TestConstants.DEFAULT_KEY_STORE_LOCATION))) {
+            KeyStore keyStore = KeyStore.getInstance(TestConstants.DEFAULT_KEY_STORE_TYPE);
+            keyStore.load(stream, TestConstants.DEFAULT_KEY_STORE_PASSWORD.toCharArray());
+            return new SSOX509Credential(idpCertificateAlias, keyStore, CERTIFICATE_ALIAS,
+                    TestConstants.DEFAULT_KEY_STORE_PASSWORD);
+        } catch (IOException | GeneralSecurityException e) {
+            throw new SSOException("Error when loading the test key store", e);
+        }
+    }
+}
@@ -0,0 +1,112 @@
+/*
+ *  Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.wso2.appserver.webapp.security.saml.signature;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+import org.wso2.appserver.webapp.security.agent.SSOSignatureAlgorithm;
+import org.wso2.appserver.webapp.security.utils.exception.SSOException;
+
+import java.io.ByteArrayOutputStream;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.Signature;
+import java.security.spec.ECGenParameterSpec;
+import java.util.Arrays;
+import java.util.Optional;
+
+/**
+ * This class defines unit tests for the per thread cached signature engines.
+ *
+ * @since 6.0.0
+ */
+public class SignatureEnginesTest {
+    private static final byte[] CONTENT = ("SAMLRequest=fZJBT4NAEIX%2FCtm7LlAKdVNIqj3YpEajxYMXswtDuwnsrjtD1X%2Fv0mq" +
+            "&SigAlg=http%3A%2F%2Fwww.w3.org%2F2001%2F04%2Fxmldsig-more%23rsa-sha256").getBytes(StandardCharsets.UTF_8);
+
+    @Test(description = "Tests signing repeatedly with RSA signature algorithms through the cached engines")
+    public void testRSASigning() throws GeneralSecurityException, SSOException {
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+        generator.initialize(2048);
+        KeyPair keyPair = generator.generateKeyPair();
+
+        for (SSOSignatureAlgorithm algorithm : new SSOSignatureAlgorithm[]{SSOSignatureAlgorithm.RSA_SHA1,
+                SSOSignatureAlgorithm.RSA_SHA256}) {
+            for (int index = 0; index < 3; index++) {
+                byte[] value = SignatureEngines.sign(algorithm, keyPair.getPrivate(), CONTENT);
+                Signature verifier = Signature.getInstance(algorithm.getJCAName());
+                verifier.initVerify(keyPair.getPublic());
+                verifier.update(CONTENT);
+                Assert.assertTrue(verifier.verify(value));
+            }
+        }
+    }
+
+    @Test(description = "Tests whether an ECDSA P-256 signature value is the concatenation of the integers r and s")
+    public void testECDSASigning() throws GeneralSecurityException, SSOException {
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("EC");
+        generator.initialize(new ECGenParameterSpec("secp256r1"));
+        KeyPair keyPair = generator.generateKeyPair();
+
+        for (int index = 0; index < 10; index++) {
+            byte[] value = SignatureEngines.sign(SSOSignatureAlgorithm.ECDSA_SHA256, keyPair.getPrivate(), CONTENT);
+            Assert.assertEquals(value.length, 64);
+
+            Signature verifier = Signature.getInstance(SSOSignatureAlgorithm.ECDSA_SHA256.getJCAName());
+            verifier.initVerify(keyPair.getPublic());
+            verifier.update(CONTENT);
+            Assert.assertTrue(verifier.verify(toDER(value)));
+        }
+    }
+
+    @Test(description = "Tests signing with a key not of the key type of the algorithm",
+            expectedExceptions = SSOException.class)
+    public void testSigningWithMismatchedKey() throws GeneralSecurityException, SSOException {
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+        generator.initialize(2048);
+        SignatureEngines.sign(SSOSignatureAlgorithm.ECDSA_SHA256, generator.generateKeyPair().getPrivate(), CONTENT);
+    }
+
+    @Test(description = "Tests resolving signature algorithms by name and by XML Signature identifier")
+    public void testResolvingAlgorithms() {
+        Assert.assertEquals(SSOSignatureAlgorithm.fromName(" rsa-sha256 "),
+                Optional.of(SSOSignatureAlgorithm.RSA_SHA256));
+        Assert.assertEquals(SSOSignatureAlgorithm.fromName(SSOSignatureAlgorithm.ECDSA_SHA256.getURI()),
+                Optional.of(SSOSignatureAlgorithm.ECDSA_SHA256));
+        Assert.assertFalse(SSOSignatureAlgorithm.fromName("dsa-sha1").isPresent());
+        Assert.assertFalse(SSOSignatureAlgorithm.fromName(null).isPresent());
+    }
+
+    private static byte[] toDER(byte[] concatenated) {
+        int length = concatenated.length / 2;
+        byte[] r = new BigInteger(1, Arrays.copyOfRange(concatenated, 0, length)).toByteArray();
+        byte[] s = new BigInteger(1, Arrays.copyOfRange(concatenated, length, concatenated.length)).toByteArray();
+
+        ByteArrayOutputStream der = new ByteArrayOutputStream();
+        der.write(0x30);
+        der.write(r.length + s.length + 4);
+        der.write(0x02);
+        der.write(r.length);
+        der.write(r, 0, r.length);
+        der.write(0x02);
+        der.write(s.length);
+        der.write(s, 0, s.length);
+        return der.toByteArray();
+    }
+}
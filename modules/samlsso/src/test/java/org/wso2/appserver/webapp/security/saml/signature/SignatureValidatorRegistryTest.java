@@ -0,0 +1,51 @@
+/*
+ *  Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.wso2.appserver.webapp.security.saml.signature;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+import org.wso2.appserver.webapp.security.Constants;
+import org.wso2.appserver.webapp.security.utils.exception.SSOException;
+
+/**
+ * This class defines unit tests for SignatureValidatorRegistry Java class.
+ *
+ * @since 6.0.0
+ */
+public class SignatureValidatorRegistryTest {
+    @Test(description = "Tests whether a signature validator implementation is instantiated only once")
+    public void testSharedSignatureValidatorInstance() throws SSOException {
+        SignatureValidator refOne = SignatureValidatorRegistry.getSignatureValidator(
+                Constants.DEFAULT_SIGN_VALIDATOR_IMPL);
+        SignatureValidator refTwo = SignatureValidatorRegistry.getSignatureValidator(
+                Constants.DEFAULT_SIGN_VALIDATOR_IMPL);
+
+        Assert.assertTrue(refOne instanceof SAMLSignatureValidatorImplementation);
+        Assert.assertTrue(refOne == refTwo);
+    }
+
+    @Test(description = "Tests loading a non-existent signature validator class",
+            expectedExceptions = {SSOException.class})
+    public void testNonExistentSignatureValidatorClass() throws SSOException {
+        SignatureValidatorRegistry.getSignatureValidator("org.wso2.appserver.NonExistentSignatureValidator");
+    }
+
+    @Test(description = "Tests loading a class which does not implement the signature validator interface",
+            expectedExceptions = {SSOException.class})
+    public void testInvalidSignatureValidatorClass() throws SSOException {
+        SignatureValidatorRegistry.getSignatureValidator(String.class.getName());
+    }
+}
@@ -0,0 +1,85 @@
+/*
+ *  Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.wso2.appserver.webapp.security.utils;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Base64;
+import java.util.Random;
+
+/**
+ * This class defines unit tests for the streaming base64 decoder.
+ *
+ * @since 6.0.0
+ */
+public class Base64DecodingInputStreamTest {
+    @Test(description = "Tests decoding content of every padding length, encoded with the basic alphabet")
+    public void testDecodingBasicEncoding() throws IOException {
+        Random random = new Random(7);
+        for (int length = 0; length < 64; length++) {
+            byte[] content = new byte[length];
+            random.nextBytes(content);
+            Assert.assertEquals(readFully(Base64.getEncoder().encodeToString(content), 5), content);
+        }
+    }
+
+    @Test(description = "Tests decoding MIME encoded content with line breaks and URL safe content without padding")
+    public void testDecodingMIMEAndURLSafeEncodings() throws IOException {
+        byte[] content = new byte[4096];
+        new Random(11).nextBytes(content);
+
+        Assert.assertEquals(readFully(Base64.getMimeEncoder().encodeToString(content), 1024), content);
+        Assert.assertEquals(readFully(Base64.getUrlEncoder().withoutPadding().encodeToString(content), 1), content);
+    }
+
+    @Test(description = "Tests retaining the decoded content, including content which was not read")
+    public void testRetainingDecodedContent() throws IOException {
+        byte[] content = new byte[1000];
+        new Random(13).nextBytes(content);
+
+        Base64DecodingInputStream stream =
+                new Base64DecodingInputStream(Base64.getMimeEncoder().encodeToString(content), true);
+        byte[] buffer = new byte[100];
+        Assert.assertEquals(stream.read(buffer, 0, buffer.length), buffer.length);
+        Assert.assertEquals(stream.getDecodedContent(), content);
+        Assert.assertEquals(stream.read(), -1);
+    }
+
+    @Test(description = "Tests decoding content with an invalid character", expectedExceptions = IOException.class)
+    public void testDecodingInvalidCharacter() throws IOException {
+        readFully("PHNhbWxw$lJlc3BvbnNlLz4=", 16);
+    }
+
+    @Test(description = "Tests decoding truncated content", expectedExceptions = IOException.class)
+    public void testDecodingTruncatedContent() throws IOException {
+        readFully("PHNhbWxwO", 16);
+    }
+
+    private static byte[] readFully(String encoded, int bufferSize) throws IOException {
+        InputStream stream = new Base64DecodingInputStream(encoded);
+        ByteArrayOutputStream content = new ByteArrayOutputStream();
+        byte[] buffer = new byte[bufferSize];
+        int count;
+        while ((count = stream.read(buffer, 0, buffer.length)) != -1) {
+            content.write(buffer, 0, count);
+        }
+        return content.toByteArray();
+    }
+}
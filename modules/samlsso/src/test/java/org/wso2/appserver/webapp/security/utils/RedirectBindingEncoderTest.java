@@ -0,0 +1,104 @@
+/*
+ *  Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.wso2.appserver.webapp.security.utils;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * This class defines unit tests for the streaming HTTP-Redirect binding encoder.
+ *
+ * @since 6.0.0
+ */
+public class RedirectBindingEncoderTest {
+    private static final int THREADS = 8;
+
+    @Test(description = "Tests whether the encoding is identical to URL encoding the base64 encoded DEFLATE " +
+            "compressed message, for compressed lengths of every base64 padding length and beyond a single buffer")
+    public void testEncoding() throws IOException {
+        Random random = new Random(13);
+        for (int length = 0; length < 20000; length += 1 + (length / 8)) {
+            byte[] message = new byte[length];
+            random.nextBytes(message);
+            //  half of each message is compressible
+            Random compressible = new Random(length);
+            for (int index = 0; index < length / 2; index++) {
+                message[index] = (byte) ('a' + compressible.nextInt(4));
+            }
+
+            StringBuilder encoded = new StringBuilder("SAMLRequest=");
+            RedirectBindingEncoder.encode(message, encoded);
+            Assert.assertEquals(encoded.toString(), "SAMLRequest=" + referenceEncode(message));
+        }
+    }
+
+    @Test(description = "Tests concurrent encoding, reusing the pooled Deflaters")
+    public void testConcurrentEncoding() throws InterruptedException, ExecutionException, IOException {
+        byte[] message = ("<samlp:AuthnRequest xmlns:samlp=\"urn:oasis:names:tc:SAML:2.0:protocol\" " +
+                "ID=\"_0a1b2c3d4e5f60718293a4b5c6d7e8f9\" Version=\"2.0\"/>").getBytes(StandardCharsets.UTF_8);
+        String expected = referenceEncode(message);
+
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            List<Future<Boolean>> results = new ArrayList<>();
+            for (int thread = 0; thread < THREADS; thread++) {
+                results.add(executor.submit(() -> {
+                    boolean identical = true;
+                    for (int index = 0; index < 1000; index++) {
+                        StringBuilder encoded = new StringBuilder();
+                        RedirectBindingEncoder.encode(message, encoded);
+                        identical &= expected.contentEquals(encoded);
+                    }
+                    return identical;
+                }));
+            }
+            for (Future<Boolean> result : results) {
+                Assert.assertTrue(result.get());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        Assert.assertTrue(RedirectBindingEncoder.getCreatedDeflaterCount() <=
+                THREADS + Runtime.getRuntime().availableProcessors() * 2);
+    }
+
+    private static String referenceEncode(byte[] message) throws IOException {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        Deflater deflater = new Deflater(Deflater.DEFLATED, true);
+        try (DeflaterOutputStream stream = new DeflaterOutputStream(compressed, deflater)) {
+            stream.write(message);
+        } finally {
+            deflater.end();
+        }
+        return URLEncoder.encode(Base64.getEncoder().encodeToString(compressed.toByteArray()),
+                StandardCharsets.UTF_8.name());
+    }
+}
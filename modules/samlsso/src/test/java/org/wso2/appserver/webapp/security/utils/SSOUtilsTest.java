@@ -23,6 +23,7 @@ import org.apache.catalina.connector.Request;
 import org.apache.catalina.core.StandardEngine;
 import org.apache.catalina.core.StandardHost;
 import org.apache.catalina.core.StandardService;
+import org.opensaml.core.xml.XMLObject;
 import org.testng.Assert;
 import org.testng.annotations.BeforeClass;
 import org.testng.annotations.Test;
@@ -31,6 +32,7 @@ import org.wso2.appserver.webapp.security.Constants;
 import org.wso2.appserver.webapp.security.TestConstants;
 import org.wso2.appserver.webapp.security.utils.exception.SSOException;
 
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
@@ -231,6 +233,88 @@ public class SSOUtilsTest {
         SSOUtils.generateKeyStore();
     }
 
+    @Test(description = "Tests unmarshalling a SAML 2.0 message with pooled parsers, from concurrent threads")
+    public void testUnmarshallingWithPooledParsers() throws SSOException {
+        String response = "<samlp:Response xmlns:samlp=\"urn:oasis:names:tc:SAML:2.0:protocol\" ID=\"_" +
+                "a1b2c3\" Version=\"2.0\" IssueInstant=\"2016-06-01T00:00:00Z\"/>";
+
+        long unmarshalled = IntStream.range(0, 200)
+                .parallel()
+                .filter(index -> {
+                    try {
+                        return SSOUtils.unmarshall(response)
+                                .filter(xmlObject -> xmlObject instanceof org.opensaml.saml.saml2.core.Response)
+                                .isPresent();
+                    } catch (SSOException e) {
+                        return false;
+                    }
+                })
+                .count();
+        Assert.assertEquals(unmarshalled, 200);
+    }
+
+    @Test(description = "Tests whether a message declaring a DOCTYPE is rejected, as an XML External Entity attack",
+            expectedExceptions = {SSOException.class})
+    public void testUnmarshallingMessageWithDoctype() throws SSOException {
+        SSOUtils.unmarshall("<!DOCTYPE foo [<!ENTITY xxe SYSTEM \"file:///etc/passwd\">]>" +
+                "<samlp:Response xmlns:samlp=\"urn:oasis:names:tc:SAML:2.0:protocol\" ID=\"&xxe;\"/>");
+    }
+
+    @Test(description = "Tests locating an Assertion within the raw bytes of the Response it was parsed from")
+    public void testLocatingElement() throws SSOException {
+        String assertion = "<saml:Assertion ID=\"_a1\" Version=\"2.0\"><saml:Advice><saml:Assertion ID=\"_a2\"/>" +
+                "</saml:Advice></saml:Assertion>";
+        String response = "<samlp:Response xmlns:samlp=\"urn:oasis:names:tc:SAML:2.0:protocol\" " +
+                "xmlns:saml=\"urn:oasis:names:tc:SAML:2.0:assertion\" ID=\"_r1\" Version=\"2.0\" " +
+                "IssueInstant=\"2016-06-01T00:00:00Z\">" + assertion + "</samlp:Response>";
+        byte[] rawResponse = response.getBytes(StandardCharsets.UTF_8);
+
+        Optional<XMLObject> xmlObject = SSOUtils.unmarshall(rawResponse);
+        Assert.assertTrue(xmlObject.isPresent());
+        org.opensaml.saml.saml2.core.Assertion parsed =
+                ((org.opensaml.saml.saml2.core.Response) xmlObject.get()).getAssertions().get(0);
+
+        Optional<int[]> location = SSOUtils.locateElement(rawResponse, parsed.getDOM());
+        Assert.assertTrue(location.isPresent());
+        Assert.assertEquals(new String(rawResponse, location.get()[0], location.get()[1], StandardCharsets.UTF_8),
+                assertion);
+        Assert.assertEquals(location.get()[2], "<saml:Assertion".length());
+        Assert.assertEquals(SSOUtils.getInheritedNamespaceDeclarations(parsed.getDOM()),
+                " xmlns:saml=\"urn:oasis:names:tc:SAML:2.0:assertion\"" +
+                        " xmlns:samlp=\"urn:oasis:names:tc:SAML:2.0:protocol\"");
+    }
+
+    @Test(description = "Tests whether an Assertion start tag injected within a comment, CDATA section or " +
+            "processing instruction is never located in place of the parsed Assertion")
+    public void testLocatingElementWithInjectedMarkup() throws SSOException {
+        String assertion = "<saml:Assertion ID=\"_a1\" Version=\"2.0\"><saml:Issuer>idp</saml:Issuer></saml:Assertion>";
+        String forged = "<saml:Assertion ID=\"_a1\" Version=\"2.0\"><saml:Issuer>forged</saml:Issuer></saml:Assertion>";
+        for (String injected : new String[]{"<!--" + forged + "-->", "<?forged " + forged + "?>"}) {
+            String response = "<samlp:Response xmlns:samlp=\"urn:oasis:names:tc:SAML:2.0:protocol\" " +
+                    "xmlns:saml=\"urn:oasis:names:tc:SAML:2.0:assertion\" ID=\"_r1\" Version=\"2.0\" " +
+                    "IssueInstant=\"2016-06-01T00:00:00Z\">" + injected + assertion + "</samlp:Response>";
+            byte[] rawResponse = response.getBytes(StandardCharsets.UTF_8);
+
+            Optional<XMLObject> xmlObject = SSOUtils.unmarshall(rawResponse);
+            Assert.assertTrue(xmlObject.isPresent());
+            org.opensaml.saml.saml2.core.Assertion parsed =
+                    ((org.opensaml.saml.saml2.core.Response) xmlObject.get()).getAssertions().get(0);
+            Assert.assertEquals(parsed.getIssuer().getValue(), "idp");
+            Assert.assertFalse(SSOUtils.locateElement(rawResponse, parsed.getDOM()).isPresent());
+        }
+
+        //  a CDATA section within the element itself is never located either
+        String response = "<samlp:Response xmlns:samlp=\"urn:oasis:names:tc:SAML:2.0:protocol\" " +
+                "xmlns:saml=\"urn:oasis:names:tc:SAML:2.0:assertion\" ID=\"_r1\" Version=\"2.0\" " +
+                "IssueInstant=\"2016-06-01T00:00:00Z\"><saml:Assertion ID=\"_a1\" Version=\"2.0\">" +
+                "<saml:Issuer><![CDATA[idp]]></saml:Issuer></saml:Assertion></samlp:Response>";
+        byte[] rawResponse = response.getBytes(StandardCharsets.UTF_8);
+        Optional<XMLObject> xmlObject = SSOUtils.unmarshall(rawResponse);
+        Assert.assertTrue(xmlObject.isPresent());
+        Assert.assertFalse(SSOUtils.locateElement(rawResponse, ((org.opensaml.saml.saml2.core.Response)
+                xmlObject.get()).getAssertions().get(0).getDOM()).isPresent());
+    }
+
     private static Map<String, String[]> getQueryParams() {
         Map<String, String[]> queryParams = new HashMap<>();
 
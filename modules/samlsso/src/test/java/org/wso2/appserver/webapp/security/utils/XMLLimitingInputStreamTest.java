@@ -0,0 +1,99 @@
+/*
+ *  Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.wso2.appserver.webapp.security.utils;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Optional;
+
+/**
+ * This class defines unit tests for the size and element structure limits of XML content read through a stream.
+ *
+ * @since 6.0.0
+ */
+public class XMLLimitingInputStreamTest {
+    private static final String XML = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>" +
+            "<samlp:Response xmlns:samlp=\"urn:oasis:names:tc:SAML:2.0:protocol\" ID=\"_1\" Note=\"a > b/\">" +
+            "<!-- <Comment> -- /> --><saml:Issuer xmlns:saml=\"urn:oasis:names:tc:SAML:2.0:assertion\">" +
+            "<![CDATA[<Fake><Fake>]]></saml:Issuer><samlp:Status/>" +
+            "<samlp:Extensions><Caf\u00e9 Value='\u00e9'/><?target <Fake>?></samlp:Extensions></samlp:Response>";
+
+    @Test(description = "Tests reading content within the limits, skipping markup which declares no elements")
+    public void testReadingWithinLimits() throws IOException {
+        byte[] content = XML.getBytes(StandardCharsets.UTF_8);
+
+        XMLLimitingInputStream stream = new XMLLimitingInputStream(new ByteArrayInputStream(content),
+                content.length, 3, 5);
+        Assert.assertEquals(readFully(stream, 7), content);
+        Assert.assertFalse(stream.getExceededLimit().isPresent());
+    }
+
+    @Test(description = "Tests whether the maximum size is enforced")
+    public void testExceedingSize() {
+        byte[] content = XML.getBytes(StandardCharsets.UTF_8);
+        assertExceeded(content, content.length - 1, 0, 0, XMLLimitingInputStream.Limit.SIZE);
+    }
+
+    @Test(description = "Tests whether the maximum element depth is enforced")
+    public void testExceedingElementDepth() {
+        assertExceeded(XML.getBytes(StandardCharsets.UTF_8), 0, 2, 0, XMLLimitingInputStream.Limit.ELEMENT_DEPTH);
+    }
+
+    @Test(description = "Tests whether the maximum element count is enforced")
+    public void testExceedingElementCount() {
+        assertExceeded(XML.getBytes(StandardCharsets.UTF_8), 0, 0, 4, XMLLimitingInputStream.Limit.ELEMENT_COUNT);
+    }
+
+    @Test(description = "Tests whether sibling elements do not accumulate depth, read a single byte at a time")
+    public void testReadingSiblingElements() throws IOException {
+        StringBuilder xml = new StringBuilder("<Root>");
+        for (int index = 0; index < 100; index++) {
+            xml.append("<Empty/><Element attribute=\"/\">text</Element>");
+        }
+        byte[] content = xml.append("</Root>").toString().getBytes(StandardCharsets.UTF_8);
+
+        XMLLimitingInputStream stream = new XMLLimitingInputStream(new ByteArrayInputStream(content), 0, 2, 201);
+        Assert.assertEquals(readFully(stream, 1), content);
+    }
+
+    private static void assertExceeded(byte[] content, long maxSize, int maxElementDepth, int maxElementCount,
+                                       XMLLimitingInputStream.Limit limit) {
+        XMLLimitingInputStream stream = new XMLLimitingInputStream(new ByteArrayInputStream(content), maxSize,
+                maxElementDepth, maxElementCount);
+        try {
+            readFully(stream, 16);
+            Assert.fail();
+        } catch (IOException e) {
+            Assert.assertEquals(stream.getExceededLimit(), Optional.of(limit));
+        }
+    }
+
+    private static byte[] readFully(InputStream stream, int bufferSize) throws IOException {
+        ByteArrayOutputStream content = new ByteArrayOutputStream();
+        byte[] buffer = new byte[bufferSize];
+        int count;
+        while ((count = stream.read(buffer, 0, buffer.length)) != -1) {
+            content.write(buffer, 0, count);
+        }
+        return content.toByteArray();
+    }
+}